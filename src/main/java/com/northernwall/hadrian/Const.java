@@ -62,8 +62,55 @@ public class Const {
     public static final int JETTY_PORT_DEFAULT = 9090;
     public static final String JETTY_IDLE_TIMEOUT = "jetty.idleTimeout";
     public static final int JETTY_IDLE_TIMEOUT_DEFAULT = 1000;
-    public static final String JETTY_ACCEPT_QUEUE_SIZE = "jetty.idleTimeout";
+    public static final String JETTY_ACCEPT_QUEUE_SIZE = "jetty.acceptQueueSize";
     public static final int JETTY_ACCEPT_QUEUE_SIZE_DEFAULT = 100;
+    public static final String JETTY_ACCEPTORS = "jetty.acceptors";
+    public static final int JETTY_ACCEPTORS_DEFAULT = -1;
+    public static final String JETTY_SELECTORS = "jetty.selectors";
+    public static final int JETTY_SELECTORS_DEFAULT = -1;
+    public static final String JETTY_MIN_THREADS = "jetty.minThreads";
+    public static final int JETTY_MIN_THREADS_DEFAULT = 5;
+    public static final String JETTY_MAX_THREADS = "jetty.maxThreads";
+    public static final int JETTY_MAX_THREADS_DEFAULT = 10;
+    public static final String JETTY_MAX_QUEUED = "jetty.maxQueued";
+    public static final int JETTY_MAX_QUEUED_DEFAULT = 1000;
+    public static final String JETTY_THREAD_IDLE_TIMEOUT = "jetty.threadIdleTimeout";
+    public static final int JETTY_THREAD_IDLE_TIMEOUT_DEFAULT = 60000;
+
+    public static final String OUTBOUND_MAVEN_THREADS = "outbound.maven.threads";
+    public static final int OUTBOUND_MAVEN_THREADS_DEFAULT = 10;
+    public static final String OUTBOUND_VIP_DETAILS_THREADS = "outbound.vipDetails.threads";
+    public static final int OUTBOUND_VIP_DETAILS_THREADS_DEFAULT = 10;
+    public static final String OUTBOUND_QUEUE_SIZE = "outbound.queueSize";
+    public static final int OUTBOUND_QUEUE_SIZE_DEFAULT = 500;
+    public static final String OUTBOUND_TARGET_LIMIT = "outbound.targetLimit";
+    public static final int OUTBOUND_TARGET_LIMIT_DEFAULT = 4;
+    public static final String CHANGE_FEED_RING_SIZE = "changeFeed.ringSize";
+    public static final int CHANGE_FEED_RING_SIZE_DEFAULT = 256;
+    public static final String CHANGE_FEED_POLL_TIMEOUT = "changeFeed.pollTimeout";
+    public static final int CHANGE_FEED_POLL_TIMEOUT_DEFAULT = 25000;
+    public static final String CHANGE_FEED_WAKE_THREADS = "changeFeed.wakeThreads";
+    public static final int CHANGE_FEED_WAKE_THREADS_DEFAULT = 2;
+    public static final String HOST_POLLER_INTERVAL = "hostPoller.interval";
+    public static final int HOST_POLLER_INTERVAL_DEFAULT = 60000;
+    public static final String HOST_POLLER_BUSY_INTERVAL = "hostPoller.busyInterval";
+    public static final int HOST_POLLER_BUSY_INTERVAL_DEFAULT = 5000;
+    public static final String SINGLE_FLIGHT_PROBE_WINDOW = "singleFlight.probeWindow";
+    public static final int SINGLE_FLIGHT_PROBE_WINDOW_DEFAULT = 1000;
+    public static final String SINGLE_FLIGHT_REFRESH_WINDOW = "singleFlight.refreshWindow";
+    public static final int SINGLE_FLIGHT_REFRESH_WINDOW_DEFAULT = 2000;
+    public static final String OUTBOUND_PROBE_MAX_REQUESTS = "outbound.probe.maxRequests";
+    public static final int OUTBOUND_PROBE_MAX_REQUESTS_DEFAULT = 128;
+    public static final String OUTBOUND_PROBE_MAX_REQUESTS_PER_HOST = "outbound.probe.maxRequestsPerHost";
+    public static final int OUTBOUND_PROBE_MAX_REQUESTS_PER_HOST_DEFAULT = 2;
+    public static final String OUTBOUND_PROBE_MAX_IDLE_CONNECTIONS = "outbound.probe.maxIdleConnections";
+    public static final int OUTBOUND_PROBE_MAX_IDLE_CONNECTIONS_DEFAULT = 64;
+    public static final String OUTBOUND_PROBE_KEEP_ALIVE = "outbound.probe.keepAlive";
+    public static final int OUTBOUND_PROBE_KEEP_ALIVE_DEFAULT = 60000;
+    public static final String OUTBOUND_PROBE_CONNECT_TIMEOUT = "outbound.probe.connectTimeout";
+    public static final int OUTBOUND_PROBE_CONNECT_TIMEOUT_DEFAULT = 2000;
+    public static final String OUTBOUND_PROBE_READ_TIMEOUT = "outbound.probe.readTimeout";
+    public static final int OUTBOUND_PROBE_READ_TIMEOUT_DEFAULT = 5000;
     
     public static final String HOST_DETAILS_HELPER_FACTORY_CLASS_NAME = "hostDetailsHelper.factoryClassName";
     public static final String HOST_DETAILS_HELPER_FACTORY_CLASS_NAME_DEFAULT = "com.northernwall.hadrian.details.simple.SimpleHostDetailsHelperFactory";
@@ -80,8 +127,38 @@ public class Const {
     public static final String WORK_ITEM_SENDER_FACTORY_CLASS_NAME = "workItemSender.factoryClassName";
     public static final String WORK_ITEM_SENDER_FACTORY_CLASS_NAME_DEFAULT = "com.northernwall.hadrian.workItem.noop.NoopWorkItemSenderFactory";
 
+    public static final String WORK_ITEM_DISPATCH_THREADS = "workItem.dispatch.threads";
+    public static final int WORK_ITEM_DISPATCH_THREADS_DEFAULT = 4;
+    public static final String WORK_ITEM_DISPATCH_MAX_ATTEMPTS = "workItem.dispatch.maxAttempts";
+    public static final int WORK_ITEM_DISPATCH_MAX_ATTEMPTS_DEFAULT = 8;
+    public static final String WORK_ITEM_DISPATCH_RETRY_DELAY = "workItem.dispatch.retryDelay";
+    public static final int WORK_ITEM_DISPATCH_RETRY_DELAY_DEFAULT = 1000;
+    public static final String WORK_ITEM_DISPATCH_MAX_RETRY_DELAY = "workItem.dispatch.maxRetryDelay";
+    public static final int WORK_ITEM_DISPATCH_MAX_RETRY_DELAY_DEFAULT = 300000;
+
+    public static final String DEPLOY_BATCH_SIZE = "deploy.batchSize";
+    public static final int DEPLOY_BATCH_SIZE_DEFAULT = 1;
+    public static final String DEPLOY_BATCH_PERCENT = "deploy.batchPercent";
+    public static final int DEPLOY_BATCH_PERCENT_DEFAULT = 0;
+    public static final String DEPLOY_WAVE_BY_DATA_CENTER = "deploy.waveByDataCenter";
+    public static final boolean DEPLOY_WAVE_BY_DATA_CENTER_DEFAULT = false;
+
     public static final String SIMPLE_WORK_ITEM_URL = "simpleWorkItem.url";
     public static final String SIMPLE_WORK_ITEM_URL_DEFAULT = "http://127.0.0.1:9090/webhook/simple";
+    public static final String SIMPLE_WORK_ITEM_MAX_IDLE_CONNECTIONS = "simpleWorkItem.maxIdleConnections";
+    public static final int SIMPLE_WORK_ITEM_MAX_IDLE_CONNECTIONS_DEFAULT = 4;
+    public static final String SIMPLE_WORK_ITEM_KEEP_ALIVE = "simpleWorkItem.keepAlive";
+    public static final int SIMPLE_WORK_ITEM_KEEP_ALIVE_DEFAULT = 300000;
+    public static final String SIMPLE_WORK_ITEM_CONNECT_TIMEOUT = "simpleWorkItem.connectTimeout";
+    public static final int SIMPLE_WORK_ITEM_CONNECT_TIMEOUT_DEFAULT = 5000;
+    public static final String SIMPLE_WORK_ITEM_READ_TIMEOUT = "simpleWorkItem.readTimeout";
+    public static final int SIMPLE_WORK_ITEM_READ_TIMEOUT_DEFAULT = 30000;
+    public static final String SIMPLE_WORK_ITEM_HTTP2 = "simpleWorkItem.http2";
+    public static final boolean SIMPLE_WORK_ITEM_HTTP2_DEFAULT = true;
+    public static final String SIMPLE_WORK_ITEM_COMPRESSION = "simpleWorkItem.compression";
+    public static final String SIMPLE_WORK_ITEM_COMPRESSION_DEFAULT = "none";
+    public static final String SIMPLE_WORK_ITEM_COMPRESSION_MIN_MODULES = "simpleWorkItem.compressionMinModules";
+    public static final int SIMPLE_WORK_ITEM_COMPRESSION_MIN_MODULES_DEFAULT = 10;
 
     public static final String EMAIL_WORK_ITEM_SMTP_HOSTNAME = "emailWorkItem.smtp.hostname";
     public static final String EMAIL_WORK_ITEM_SMTP_POST = "emailWorkItem.smtp.port";
@@ -112,6 +189,15 @@ public class Const {
 
     public static final String DATA_ACCESS_FACTORY_CLASS_NAME = "dataAccess.factoryClassName";
     public static final String DATA_ACCESS_FACTORY_CLASS_NAME_DEFAULT = "com.northernwall.hadrian.db.inMemory.InMemoryDataAccessFactory";
+    public static final String AUDIT_STORE_DIRECTORY = "dataAccess.auditStore.directory";
+    public static final String AUDIT_STORE_TTL_DAYS = "dataAccess.auditStore.ttlDays";
+    public static final int AUDIT_STORE_TTL_DAYS_DEFAULT = 732;
+    public static final String DATA_ACCESS_CACHE_ENABLED = "dataAccess.cache.enabled";
+    public static final boolean DATA_ACCESS_CACHE_ENABLED_DEFAULT = false;
+    public static final String DATA_ACCESS_CACHE_MAX_SIZE = "dataAccess.cache.maxSize";
+    public static final int DATA_ACCESS_CACHE_MAX_SIZE_DEFAULT = 1000;
+    public static final String DATA_ACCESS_CACHE_TTL_SECONDS = "dataAccess.cache.ttlSeconds";
+    public static final int DATA_ACCESS_CACHE_TTL_SECONDS_DEFAULT = 60;
 
     public static final String CASS_NODES = "dataAccess.cassandra.nodes";
     public static final String CASS_NODES_DEFAULT = "127.0.0.1";
@@ -126,9 +212,18 @@ public class Const {
     public static final int CASS_REPLICATION_FACTOR_DEFAULT = 1;
     public static final String CASS_AUDIT_TTL_DAYS = "dataAccess.cassandra.auditTtlDays";
     public static final int CASS_AUDIT_TTL_DAYS_DEFAULT = 732;
+    public static final String CASS_CODEC = "dataAccess.cassandra.codec";
+    public static final String CASS_CODEC_JSON = "json";
+    public static final String CASS_CODEC_COMPACT = "compact";
+    public static final String CASS_CODEC_DEFAULT = CASS_CODEC_JSON;
     
     public static final String IN_MEMORY_DATA_FILE_NAME = "dataAccess.inMemory.dataFileName";
     public static final String IN_MEMORY_DATA_FILE_NAME_DEFAULT = "data.json";
+
+    public static final String JOURNAL_DIRECTORY = "dataAccess.journal.directory";
+    public static final String JOURNAL_DIRECTORY_DEFAULT = "data";
+    public static final String JOURNAL_SNAPSHOT_MINUTES = "dataAccess.journal.snapshotMinutes";
+    public static final int JOURNAL_SNAPSHOT_MINUTES_DEFAULT = 60;
     
     public static final String ACCESS_HANDLER_FACTORY_CLASS_NAME = "accessHandler.factoryClassName";
     public static final String ACCESS_HANDLER_FACTORY_CLASS_NAME_DEFAULT = "com.northernwall.hadrian.access.simple.SimpleAccessHandlerFactory";
@@ -19,9 +19,13 @@ import com.codahale.metrics.MetricRegistry;
 import com.northernwall.hadrian.access.AccessHelper;
 import com.northernwall.hadrian.calendar.CalendarHelper;
 import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.feed.ChangeFeed;
 import com.northernwall.hadrian.graph.GraphAllHandler;
+import com.northernwall.hadrian.graph.GraphCyclesHandler;
 import com.northernwall.hadrian.graph.GraphFanInHandler;
 import com.northernwall.hadrian.graph.GraphFanOutHandler;
+import com.northernwall.hadrian.graph.GraphImpactHandler;
+import com.northernwall.hadrian.graph.ModuleGraph;
 import com.northernwall.hadrian.module.ModuleArtifactHelper;
 import com.northernwall.hadrian.messaging.MessageSendHandler;
 import com.northernwall.hadrian.messaging.MessagingCoodinator;
@@ -30,6 +34,7 @@ import com.northernwall.hadrian.parameters.Parameters;
 import com.northernwall.hadrian.service.AuditCreateHandler;
 import com.northernwall.hadrian.service.AuditGetHandler;
 import com.northernwall.hadrian.service.AuditOutputGetHandler;
+import com.northernwall.hadrian.service.ServiceChangesGetHandler;
 import com.northernwall.hadrian.service.CalendarGetHandler;
 import com.northernwall.hadrian.service.ConfigGetHandler;
 import com.northernwall.hadrian.service.CustomFuntionCreateHandler;
@@ -76,18 +81,23 @@ import com.northernwall.hadrian.service.DocumentCreateHandler;
 import com.northernwall.hadrian.service.DocumentDeleteHandler;
 import com.northernwall.hadrian.service.DocumentGetHandler;
 import com.northernwall.hadrian.service.VipGetDetailsHandler;
+import com.northernwall.hadrian.service.helper.HostStatusPoller;
 import com.northernwall.hadrian.service.helper.InfoHelper;
 import com.northernwall.hadrian.tree.TreeHandler;
 import com.northernwall.hadrian.utilityHandlers.AvailabilityHandler;
 import com.northernwall.hadrian.utilityHandlers.ContentHandler;
 import com.northernwall.hadrian.utilityHandlers.FaviconHandler;
 import com.northernwall.hadrian.utilityHandlers.HealthHandler;
+import com.northernwall.hadrian.utilityHandlers.InstrumentedThreadPool;
 import com.northernwall.hadrian.utilityHandlers.MetricHandler;
+import com.northernwall.hadrian.utilityHandlers.OutboundExecutor;
 import com.northernwall.hadrian.utilityHandlers.RedirectHandler;
 import com.northernwall.hadrian.utilityHandlers.VersionHandler;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.MethodRule;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.TargetRule;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.RoutingHandler;
+import com.northernwall.hadrian.workItem.DeploymentPlanner;
+import com.northernwall.hadrian.workItem.WorkItemBatchCallbackHandler;
 import com.northernwall.hadrian.workItem.WorkItemCallbackHandler;
 import com.northernwall.hadrian.workItem.WorkItemProcessor;
 import com.northernwall.hadrian.workItem.WorkItemSender;
@@ -101,7 +111,8 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.slf4j.Logger;
 
 public class Hadrian {
@@ -123,28 +134,37 @@ public class Hadrian {
     private final InfoHelper infoHelper;
     private final HostDetailsHelper hostDetailsHelper;
     private final VipDetailsHelper vipDetailsHelper;
+    private final OutboundExecutor outboundExecutor;
+    private final ModuleGraph moduleGraph;
+    private final ChangeFeed changeFeed;
     private final MessagingCoodinator messagingCoodinator;
+    private final HostStatusPoller hostStatusPoller;
     private int port;
+    private InstrumentedThreadPool threadPool;
     private Server server;
 
-    Hadrian(Parameters parameters, OkHttpClient client, ConfigHelper configHelper, DataAccess dataAccess, ModuleArtifactHelper moduleArtifactHelper, ModuleConfigHelper moduleConfigHelper, AccessHelper accessHelper, Handler accessHandler, HostDetailsHelper hostDetailsHelper, VipDetailsHelper vipDetailsHelper, CalendarHelper calendarHelper, WorkItemProcessor workItemProcess, WorkItemSender workItemSender, MetricRegistry metricRegistry) {
+    Hadrian(Parameters parameters, OkHttpClient client, ConfigHelper configHelper, DataAccess dataAccess, ModuleGraph moduleGraph, ChangeFeed changeFeed, ModuleArtifactHelper moduleArtifactHelper, ModuleConfigHelper moduleConfigHelper, AccessHelper accessHelper, Handler accessHandler, HostDetailsHelper hostDetailsHelper, VipDetailsHelper vipDetailsHelper, OutboundExecutor outboundExecutor, CalendarHelper calendarHelper, WorkItemProcessor workItemProcess, WorkItemSender workItemSender, MetricRegistry metricRegistry) {
         this.parameters = parameters;
         this.client = client;
         this.configHelper = configHelper;
         this.dataAccess = dataAccess;
+        this.moduleGraph = moduleGraph;
+        this.changeFeed = changeFeed;
         this.moduleArtifactHelper = moduleArtifactHelper;
         this.moduleConfigHelper = moduleConfigHelper;
         this.accessHelper = accessHelper;
         this.accessHandler = accessHandler;
         this.hostDetailsHelper = hostDetailsHelper;
         this.vipDetailsHelper = vipDetailsHelper;
+        this.outboundExecutor = outboundExecutor;
         this.calendarHelper = calendarHelper;
         this.workItemProcess = workItemProcess;
         this.workItemSender = workItemSender;
         this.metricRegistry = metricRegistry;
 
-        infoHelper = new InfoHelper(parameters, client);
-        messagingCoodinator = new MessagingCoodinator(dataAccess, parameters, client);
+        infoHelper = new InfoHelper(parameters, client, metricRegistry);
+        hostStatusPoller = new HostStatusPoller(dataAccess, moduleGraph, changeFeed, infoHelper, parameters, metricRegistry);
+        messagingCoodinator = new MessagingCoodinator(dataAccess, moduleGraph, parameters, client);
 
         setupJetty();
     }
@@ -152,13 +172,30 @@ public class Hadrian {
     private void setupJetty() {
         port = parameters.getInt(Const.JETTY_PORT, Const.JETTY_PORT_DEFAULT);
 
-        server = new Server(new QueuedThreadPool(10, 5));
+        threadPool = new InstrumentedThreadPool(
+                parameters.getInt(Const.JETTY_MIN_THREADS, Const.JETTY_MIN_THREADS_DEFAULT),
+                parameters.getInt(Const.JETTY_MAX_THREADS, Const.JETTY_MAX_THREADS_DEFAULT),
+                parameters.getInt(Const.JETTY_THREAD_IDLE_TIMEOUT, Const.JETTY_THREAD_IDLE_TIMEOUT_DEFAULT),
+                parameters.getInt(Const.JETTY_MAX_QUEUED, Const.JETTY_MAX_QUEUED_DEFAULT),
+                metricRegistry);
+        server = new Server(threadPool);
         server.setStopAtShutdown(true);
+        server.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
+            @Override
+            public void lifeCycleStopped(LifeCycle event) {
+                hostStatusPoller.stop();
+                outboundExecutor.shutdown();
+            }
+        });
 
         HttpConfiguration httpConfig = new HttpConfiguration();
         httpConfig.setSendServerVersion(false);
         HttpConnectionFactory httpFactory = new HttpConnectionFactory(httpConfig);
-        ServerConnector connector = new ServerConnector(server, httpFactory);
+        ServerConnector connector = new ServerConnector(
+                server,
+                parameters.getInt(Const.JETTY_ACCEPTORS, Const.JETTY_ACCEPTORS_DEFAULT),
+                parameters.getInt(Const.JETTY_SELECTORS, Const.JETTY_SELECTORS_DEFAULT),
+                httpFactory);
         connector.setPort(port);
         connector.setIdleTimeout(parameters.getInt(Const.JETTY_IDLE_TIMEOUT, Const.JETTY_IDLE_TIMEOUT_DEFAULT));
         connector.setAcceptQueueSize(parameters.getInt(Const.JETTY_ACCEPT_QUEUE_SIZE, Const.JETTY_ACCEPT_QUEUE_SIZE_DEFAULT));
@@ -166,12 +203,13 @@ public class Hadrian {
 
         HandlerList handlers = new HandlerList();
         
-        RoutingHandler routingHandler = new RoutingHandler();
+        RoutingHandler routingHandler = new RoutingHandler(metricRegistry);
         //These urls do not require a login
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/availability", new AvailabilityHandler(dataAccess), false);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/version", new VersionHandler(), false);
-        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/health", new HealthHandler(accessHandler, calendarHelper, dataAccess, moduleArtifactHelper, moduleConfigHelper, parameters, workItemSender, messagingCoodinator), true);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/health", new HealthHandler(accessHandler, calendarHelper, dataAccess, moduleArtifactHelper, moduleConfigHelper, parameters, workItemSender, messagingCoodinator, threadPool, outboundExecutor, hostStatusPoller), true);
         routingHandler.add(MethodRule.GET, TargetRule.STARTS_WITH, "/ui/", new ContentHandler("/webcontent"), false);
+        routingHandler.add(MethodRule.POST, TargetRule.EQUALS, "/webhook/callback/batch", new WorkItemBatchCallbackHandler(workItemProcess), true);
         routingHandler.add(MethodRule.POST, TargetRule.STARTS_WITH, "/webhook/callback", new WorkItemCallbackHandler(workItemProcess), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/favicon.ico", new FaviconHandler(), false);
         //Accees Handler
@@ -188,9 +226,10 @@ public class Hadrian {
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/team/addUser", new TeamAddUserHandler(accessHelper, dataAccess), true);
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/team/removeUser", new TeamRemoveUserHandler(accessHelper, dataAccess), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/services", new ServicesGetHandler(dataAccess), true);
-        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service", new ServiceGetHandler(accessHelper, dataAccess, configHelper, infoHelper), true);
-        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/refresh", new ServiceRefreshHandler(accessHelper, dataAccess, configHelper, infoHelper), false);
-        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/version", new VersionsGetHandler(dataAccess, moduleArtifactHelper, moduleConfigHelper), true);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service", new ServiceGetHandler(accessHelper, dataAccess, configHelper, infoHelper, hostStatusPoller), true);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/refresh", new ServiceRefreshHandler(accessHelper, dataAccess, configHelper, infoHelper, hostStatusPoller, parameters.getInt(Const.SINGLE_FLIGHT_REFRESH_WINDOW, Const.SINGLE_FLIGHT_REFRESH_WINDOW_DEFAULT), metricRegistry), false);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/changes", new ServiceChangesGetHandler(dataAccess, changeFeed, parameters.getInt(Const.CHANGE_FEED_POLL_TIMEOUT, Const.CHANGE_FEED_POLL_TIMEOUT_DEFAULT)), false);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/version", new VersionsGetHandler(dataAccess, moduleArtifactHelper, moduleConfigHelper, outboundExecutor.getMaven()), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/notuses", new ServiceNotUsesGetHandler(dataAccess), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/audit", new AuditGetHandler(dataAccess), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service/auditOutput", new AuditOutputGetHandler(dataAccess), true);
@@ -211,7 +250,7 @@ public class Hadrian {
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/module/delete", new ModuleDeleteHandler(accessHelper, dataAccess, workItemProcess), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/host/details", new HostGetDetailsHandler(dataAccess, hostDetailsHelper), true);
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/host/create", new HostCreateHandler(accessHelper, configHelper, dataAccess, workItemProcess), true);
-        routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/host/deploy", new HostDeploySoftwareHandler(accessHelper, configHelper, infoHelper, dataAccess, workItemProcess), true);
+        routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/host/deploy", new HostDeploySoftwareHandler(accessHelper, configHelper, infoHelper, dataAccess, workItemProcess, new DeploymentPlanner(parameters)), true);
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/host/restart", new HostRestartHandler(accessHelper, dataAccess, workItemProcess), true);
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/host/delete", new HostDeleteHandler(accessHelper, dataAccess, workItemProcess), true);
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/host/backfill", new HostBackfillHandler(accessHelper, configHelper, dataAccess), true);
@@ -225,9 +264,11 @@ public class Hadrian {
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/workitems", new WorkItemGetHandler(dataAccess), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/datastore", new DataStoreGetHandler(), true);
         routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/calendar", new CalendarGetHandler(dataAccess, calendarHelper), true);
-        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/graph/all", new GraphAllHandler(dataAccess), true);
-        routingHandler.add(MethodRule.GET, TargetRule.MATCHES, "/v1/graph/fanin/\\w+-\\w+-\\w+-\\w+-\\w+", new GraphFanInHandler(dataAccess), true);
-        routingHandler.add(MethodRule.GET, TargetRule.MATCHES, "/v1/graph/fanout/\\w+-\\w+-\\w+-\\w+-\\w+", new GraphFanOutHandler(dataAccess), true);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/graph/all", new GraphAllHandler(moduleGraph), true);
+        routingHandler.add(MethodRule.GET, TargetRule.MATCHES, "/v1/graph/fanin/\\w+-\\w+-\\w+-\\w+-\\w+", new GraphFanInHandler(moduleGraph), true);
+        routingHandler.add(MethodRule.GET, TargetRule.MATCHES, "/v1/graph/fanout/\\w+-\\w+-\\w+-\\w+-\\w+", new GraphFanOutHandler(moduleGraph), true);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/graph/impact", new GraphImpactHandler(moduleGraph), true);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/graph/cycles", new GraphCyclesHandler(moduleGraph), true);
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/audit", new AuditCreateHandler(dataAccess, accessHelper), true);
         routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/sendMessage", new MessageSendHandler(dataAccess, accessHelper, messagingCoodinator), true);
         //Catch all handler
@@ -246,6 +287,9 @@ public class Hadrian {
     public void start() {
         try {
             server.start();
+            //only once the store is up to date and callbacks can be taken
+            workItemProcess.recover();
+            hostStatusPoller.start();
             logger.info("Jetty server started on port {}, joining with server thread now", port);
             server.join();
         } catch (BindException be) {
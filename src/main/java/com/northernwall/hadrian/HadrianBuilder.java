@@ -28,6 +28,13 @@ import com.northernwall.hadrian.calendar.CalendarHelperFactory;
 import com.northernwall.hadrian.db.DataAccess;
 import com.northernwall.hadrian.db.DataAccessFactory;
 import com.northernwall.hadrian.db.DataAccessUpdater;
+import com.northernwall.hadrian.db.audit.AuditStore;
+import com.northernwall.hadrian.db.audit.AuditStoreDataAccess;
+import com.northernwall.hadrian.db.cache.CachingDataAccess;
+import com.northernwall.hadrian.feed.ChangeFeed;
+import com.northernwall.hadrian.feed.ChangeFeedDataAccess;
+import com.northernwall.hadrian.graph.ModuleGraph;
+import com.northernwall.hadrian.graph.ModuleGraphDataAccess;
 import com.northernwall.hadrian.details.HostDetailsHelper;
 import com.northernwall.hadrian.details.HostDetailsHelperFactory;
 import com.northernwall.hadrian.details.VipDetailsHelper;
@@ -37,16 +44,18 @@ import com.northernwall.hadrian.module.ModuleArtifactHelperFactory;
 import com.northernwall.hadrian.module.ModuleConfigHelper;
 import com.northernwall.hadrian.module.ModuleConfigHelperFactory;
 import com.northernwall.hadrian.parameters.Parameters;
-import com.northernwall.hadrian.workItem.WorkItemProcessor;
+import com.northernwall.hadrian.utilityHandlers.OutboundExecutor;
 import com.northernwall.hadrian.workItem.WorkItemProcessorImpl;
 import com.northernwall.hadrian.workItem.WorkItemSender;
 import com.northernwall.hadrian.workItem.WorkItemSenderFactory;
 import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
 import com.sun.management.OperatingSystemMXBean;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 import org.eclipse.jetty.server.Handler;
 import org.slf4j.Logger;
@@ -168,8 +177,27 @@ public class HadrianBuilder {
                 throw new RuntimeException("Could not build Hadrian, could not access DataAccess class " + factoryName);
             }
             dataAccess = factory.createDataAccess(parameters, metricRegistry);
+            String auditStoreDirectory = parameters.getString(Const.AUDIT_STORE_DIRECTORY, null);
+            //some factories, like the journal, put their own audit store in front
+            if (auditStoreDirectory != null && !auditStoreDirectory.isEmpty() && !(dataAccess instanceof AuditStoreDataAccess)) {
+                int auditTimeToLive = parameters.getInt(Const.AUDIT_STORE_TTL_DAYS, Const.AUDIT_STORE_TTL_DAYS_DEFAULT);
+                try {
+                    AuditStore auditStore = new AuditStore(Paths.get(auditStoreDirectory), auditTimeToLive, metricRegistry);
+                    dataAccess = new AuditStoreDataAccess(dataAccess, auditStore);
+                } catch (IOException ex) {
+                    throw new RuntimeException("Could not build Hadrian, could not open audit store in " + auditStoreDirectory);
+                }
+            }
+            if (parameters.getBoolean(Const.DATA_ACCESS_CACHE_ENABLED, Const.DATA_ACCESS_CACHE_ENABLED_DEFAULT)) {
+                dataAccess = new CachingDataAccess(dataAccess, parameters, metricRegistry);
+            }
         }
 
+        ModuleGraph moduleGraph = new ModuleGraph();
+        dataAccess = new ModuleGraphDataAccess(dataAccess, moduleGraph);
+        ChangeFeed changeFeed = new ChangeFeed(parameters, metricRegistry);
+        dataAccess = new ChangeFeedDataAccess(dataAccess, changeFeed);
+
         if (moduleArtifactHelper == null) {
             String factoryName = parameters.getString(Const.MODULE_ARTIFACT_HELPER_FACTORY_CLASS_NAME, Const.MODULE_ARTIFACT_HELPER_FACTORY_CLASS_NAME_DEFAULT);
             if (factoryName != null && !factoryName.isEmpty()) {
@@ -254,6 +282,8 @@ public class HadrianBuilder {
             hostDetailsHelper = hostDetailsHelperFactory.create(client, parameters);
         }
 
+        OutboundExecutor outboundExecutor = new OutboundExecutor(parameters, metricRegistry);
+
         if (vipDetailsHelper == null) {
             String factoryName = parameters.getString(Const.VIP_DETAILS_HELPER_FACTORY_CLASS_NAME, Const.VIP_DETAILS_HELPER_FACTORY_CLASS_NAME_DEFAULT);
             if (factoryName != null && !factoryName.isEmpty()) {
@@ -271,7 +301,7 @@ public class HadrianBuilder {
                 } catch (IllegalAccessException ex) {
                     throw new RuntimeException("Could not build Hadrian, could not access VIP Details Helper class " + factoryName);
                 }
-                vipDetailsHelper = vipDetailsHelperFactory.create(client, parameters, configHelper);
+                vipDetailsHelper = vipDetailsHelperFactory.create(client, parameters, configHelper, outboundExecutor);
             }
         }
 
@@ -313,12 +343,13 @@ public class HadrianBuilder {
             workItemSender = workItemSenderFactory.create(parameters, dataAccess, client, metricRegistry);
         }
 
-        WorkItemProcessor workItemProcessor = new WorkItemProcessorImpl(dataAccess, workItemSender, metricRegistry);
+        WorkItemProcessorImpl workItemProcessor = new WorkItemProcessorImpl(dataAccess, workItemSender, changeFeed, parameters, metricRegistry);
         workItemSender.setWorkItemProcessor(workItemProcessor);
 
         DataAccessUpdater.update(dataAccess);
+        moduleGraph.load(dataAccess);
 
-        return new Hadrian(parameters, client, configHelper, dataAccess, moduleArtifactHelper, moduleConfigHelper, accessHelper, accessHandler, hostDetailsHelper, vipDetailsHelper, calendarHelper, workItemProcessor, workItemSender, metricRegistry);
+        return new Hadrian(parameters, client, configHelper, dataAccess, moduleGraph, changeFeed, moduleArtifactHelper, moduleConfigHelper, accessHelper, accessHandler, hostDetailsHelper, vipDetailsHelper, outboundExecutor, calendarHelper, workItemProcessor, workItemSender, metricRegistry);
     }
 
     private String getHostname() {
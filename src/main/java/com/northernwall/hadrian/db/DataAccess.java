@@ -28,10 +28,14 @@ import com.northernwall.hadrian.domain.ModuleRef;
 import com.northernwall.hadrian.domain.Team;
 import com.northernwall.hadrian.domain.User;
 import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
 import com.northernwall.hadrian.utilityHandlers.HealthWriter;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  *
@@ -58,7 +62,9 @@ public interface DataAccess {
     Host getHost(String hostName);
     Host getHost(String serviceId, String hostId);
     void saveHost(Host host);
+    void saveHosts(List<Host> hosts);
     void updateHost(Host host);
+    void updateHosts(List<Host> hosts);
     void deleteHost(Host host);
 
     List<Vip> getVips(String serviceId);
@@ -80,6 +86,7 @@ public interface DataAccess {
     void deleteCustomFunction(String serviceId, String customFunctionId);
 
     List<Module> getModules(String serviceId);
+    List<Module> getModules(Collection<String> serviceIds);
     Module getModule(String serviceId, String moduleId);
     void saveModule(Module module);
     void updateModule(Module module);
@@ -105,15 +112,36 @@ public interface DataAccess {
     void deleteUser(String userName);
 
     List<WorkItem> getWorkItems();
+    List<WorkItem> getWorkItems(WorkItemState state);
+    List<WorkItem> getServiceWorkItems(String serviceId);
+    List<WorkItem> getChainWorkItems(String chainId);
     WorkItem getWorkItem(String id);
     void saveWorkItem(WorkItem workItem);
+    void saveWorkItems(List<WorkItem> workItems);
+    /**
+     * Saves the work item only if it is still stored and was last saved in
+     * the expected state, so a work item deleted by its callback is never
+     * written back.
+     *
+     * @return false if nothing was saved
+     */
+    boolean updateWorkItem(WorkItem workItem, WorkItemState expected);
     void deleteWorkItem(String id);
+    void deleteWorkItems(List<String> ids);
 
     public int getWorkItemStatus(String id);
     public void saveWorkItemStatus(String id, int i);
+    void saveWorkItemStatuses(Map<String, Integer> statuses);
 
     void saveAudit(Audit audit, String output);
+    /**
+     * Saves a group of audits in one write, outputs.get(i) being the output
+     * of audits.get(i).
+     */
+    void saveAudits(List<Audit> audits, List<String> outputs);
     List<Audit> getAudit(String serviceId, int year, int month, int startDay, int endDay);
+    List<Audit> getAudit(String serviceId, Date start, Date end);
+    void streamAudit(String serviceId, Date start, Date end, Predicate<Audit> consumer);
     public String getAuditOutput(String serviceId, String auditId);
 
     public boolean getAvailability();
@@ -1,5 +1,13 @@
 package com.northernwall.hadrian.db;
 
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,11 +21,98 @@ public class DataAccessUpdater {
         if (version == null) {
             dataAccess.setVersion("1.5");
             update(dataAccess);
+            return;
+        }
+
+        if (version.equals("1.5")) {
+            logger.info("Upgrading DB from version 1.5 to 1.6");
+            updateWorkItems(dataAccess);
+            dataAccess.setVersion("1.6");
+            update(dataAccess);
+            return;
         }
 
         logger.info("Current DB version is {}, no upgrade required.", version);
     }
 
+    /**
+     * Work items saved before 1.6 have no state or chain id. The work item at
+     * the front of a chain, the one no other work item points to, has been
+     * sent unless it is still waiting in the dispatch queue, and the rest of
+     * the chain is pending. A chain takes the id of its first work item, and
+     * a rolling deployment takes the first id of its earliest remaining wave.
+     */
+    private static void updateWorkItems(DataAccess dataAccess) {
+        List<WorkItem> workItems = dataAccess.getWorkItems();
+        Map<String, WorkItem> byId = new HashMap<>();
+        Set<String> followers = new HashSet<>();
+        List<WorkItem> oldWorkItems = new LinkedList<>();
+        for (WorkItem workItem : workItems) {
+            byId.put(workItem.getId(), workItem);
+            if (workItem.getNextId() != null) {
+                followers.add(workItem.getNextId());
+            }
+            if (workItem.getWave() != null) {
+                followers.addAll(workItem.getWave().nextWaveIds);
+            }
+            if (workItem.getState() == null || workItem.getChainId() == null) {
+                oldWorkItems.add(workItem);
+            }
+        }
+        if (oldWorkItems.isEmpty()) {
+            return;
+        }
+
+        for (WorkItem workItem : oldWorkItems) {
+            if (workItem.getChainId() == null && workItem.getWave() == null && !followers.contains(workItem.getId())) {
+                WorkItem next = workItem;
+                while (next != null && next.getChainId() == null) {
+                    next.setChainId(workItem.getId());
+                    next = next.getNextId() == null ? null : byId.get(next.getNextId());
+                }
+            }
+        }
+
+        List<WorkItem> waveWorkItems = new LinkedList<>();
+        for (WorkItem workItem : oldWorkItems) {
+            if (workItem.getChainId() == null && workItem.getWave() != null) {
+                waveWorkItems.add(workItem);
+            }
+        }
+        waveWorkItems.sort((WorkItem o1, WorkItem o2) -> Integer.compare(o1.getWave().wave, o2.getWave().wave));
+        Map<String, String> waveChains = new HashMap<>();
+        for (WorkItem workItem : waveWorkItems) {
+            String chainId = waveChains.get(workItem.getId());
+            if (chainId == null) {
+                chainId = workItem.getWave().waveIds.isEmpty() ? workItem.getId() : workItem.getWave().waveIds.get(0);
+            }
+            workItem.setChainId(chainId);
+            for (String id : workItem.getWave().waveIds) {
+                waveChains.putIfAbsent(id, chainId);
+            }
+            for (String id : workItem.getWave().nextWaveIds) {
+                waveChains.putIfAbsent(id, chainId);
+            }
+        }
+
+        for (WorkItem workItem : oldWorkItems) {
+            if (workItem.getChainId() == null) {
+                workItem.setChainId(workItem.getId());
+            }
+            if (workItem.getState() == null) {
+                if (workItem.getDispatch() != null) {
+                    workItem.setState(WorkItemState.queued);
+                } else if (followers.contains(workItem.getId())) {
+                    workItem.setState(WorkItemState.pending);
+                } else {
+                    workItem.setState(WorkItemState.sent);
+                }
+            }
+        }
+        dataAccess.saveWorkItems(oldWorkItems);
+        logger.info("Set the state and chain of {} work items", oldWorkItems.size());
+    }
+
     private DataAccessUpdater() {
     }
 }
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db;
+
+import com.northernwall.hadrian.domain.Audit;
+import com.northernwall.hadrian.domain.CustomFunction;
+import com.northernwall.hadrian.domain.DataStore;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleFile;
+import com.northernwall.hadrian.domain.ModuleRef;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.domain.User;
+import com.northernwall.hadrian.domain.Vip;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Base class for DataAccess implementations that wrap another DataAccess,
+ * every method is passed through to the wrapped instance. Subclasses only
+ * override the methods they change.
+ */
+public abstract class DelegatingDataAccess implements DataAccess {
+
+    protected final DataAccess dataAccess;
+
+    public DelegatingDataAccess(DataAccess dataAccess) {
+        this.dataAccess = dataAccess;
+    }
+
+    public DataAccess getDataAccess() {
+        return dataAccess;
+    }
+
+    @Override
+    public String getVersion() {
+        return dataAccess.getVersion();
+    }
+
+    @Override
+    public void setVersion(String version) {
+        dataAccess.setVersion(version);
+    }
+
+    @Override
+    public void getHealth(HealthWriter writer) throws IOException {
+        dataAccess.getHealth(writer);
+    }
+
+    @Override
+    public List<Team> getTeams() {
+        return dataAccess.getTeams();
+    }
+
+    @Override
+    public Team getTeam(String teamId) {
+        return dataAccess.getTeam(teamId);
+    }
+
+    @Override
+    public void saveTeam(Team team) {
+        dataAccess.saveTeam(team);
+    }
+
+    @Override
+    public void updateTeam(Team team) {
+        dataAccess.updateTeam(team);
+    }
+
+    @Override
+    public List<Service> getAllServices() {
+        return dataAccess.getAllServices();
+    }
+
+    @Override
+    public List<Service> getActiveServices() {
+        return dataAccess.getActiveServices();
+    }
+
+    @Override
+    public Service getService(String serviceId) {
+        return dataAccess.getService(serviceId);
+    }
+
+    @Override
+    public void saveService(Service service) {
+        dataAccess.saveService(service);
+    }
+
+    @Override
+    public void updateService(Service service) {
+        dataAccess.updateService(service);
+    }
+
+    @Override
+    public List<Host> getHosts(String serviceId) {
+        return dataAccess.getHosts(serviceId);
+    }
+
+    @Override
+    public Host getHost(String hostName) {
+        return dataAccess.getHost(hostName);
+    }
+
+    @Override
+    public Host getHost(String serviceId, String hostId) {
+        return dataAccess.getHost(serviceId, hostId);
+    }
+
+    @Override
+    public void saveHost(Host host) {
+        dataAccess.saveHost(host);
+    }
+
+    @Override
+    public void saveHosts(List<Host> hosts) {
+        dataAccess.saveHosts(hosts);
+    }
+
+    @Override
+    public void updateHost(Host host) {
+        dataAccess.updateHost(host);
+    }
+
+    @Override
+    public void updateHosts(List<Host> hosts) {
+        dataAccess.updateHosts(hosts);
+    }
+
+    @Override
+    public void deleteHost(Host host) {
+        dataAccess.deleteHost(host);
+    }
+
+    @Override
+    public List<Vip> getVips(String serviceId) {
+        return dataAccess.getVips(serviceId);
+    }
+
+    @Override
+    public Vip getVip(String serviceId, String vipId) {
+        return dataAccess.getVip(serviceId, vipId);
+    }
+
+    @Override
+    public void saveVip(Vip vip) {
+        dataAccess.saveVip(vip);
+    }
+
+    @Override
+    public void updateVip(Vip vip) {
+        dataAccess.updateVip(vip);
+    }
+
+    @Override
+    public void deleteVip(String serviceId, String vipId) {
+        dataAccess.deleteVip(serviceId, vipId);
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefs() {
+        return dataAccess.getModuleRefs();
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefsByClient(String clientServiceId, String clientModuleId) {
+        return dataAccess.getModuleRefsByClient(clientServiceId, clientModuleId);
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefsByServer(String serverServiceId, String serverModuleId) {
+        return dataAccess.getModuleRefsByServer(serverServiceId, serverModuleId);
+    }
+
+    @Override
+    public void saveModuleRef(ModuleRef moduleRef) {
+        dataAccess.saveModuleRef(moduleRef);
+    }
+
+    @Override
+    public void deleteModuleRef(String clientServiceId, String clientModuleId, String serverServiceId, String serverModuleId) {
+        dataAccess.deleteModuleRef(clientServiceId, clientModuleId, serverServiceId, serverModuleId);
+    }
+
+    @Override
+    public List<CustomFunction> getCustomFunctions(String serviceId) {
+        return dataAccess.getCustomFunctions(serviceId);
+    }
+
+    @Override
+    public CustomFunction getCustomFunction(String serviceId, String customFunctionId) {
+        return dataAccess.getCustomFunction(serviceId, customFunctionId);
+    }
+
+    @Override
+    public void saveCustomFunction(CustomFunction customFunction) {
+        dataAccess.saveCustomFunction(customFunction);
+    }
+
+    @Override
+    public void updateCustomFunction(CustomFunction customFunction) {
+        dataAccess.updateCustomFunction(customFunction);
+    }
+
+    @Override
+    public void deleteCustomFunction(String serviceId, String customFunctionId) {
+        dataAccess.deleteCustomFunction(serviceId, customFunctionId);
+    }
+
+    @Override
+    public List<Module> getModules(String serviceId) {
+        return dataAccess.getModules(serviceId);
+    }
+
+    @Override
+    public List<Module> getModules(Collection<String> serviceIds) {
+        return dataAccess.getModules(serviceIds);
+    }
+
+    @Override
+    public Module getModule(String serviceId, String moduleId) {
+        return dataAccess.getModule(serviceId, moduleId);
+    }
+
+    @Override
+    public void saveModule(Module module) {
+        dataAccess.saveModule(module);
+    }
+
+    @Override
+    public void updateModule(Module module) {
+        dataAccess.updateModule(module);
+    }
+
+    @Override
+    public void deleteModule(String serviceId, String moduleId) {
+        dataAccess.deleteModule(serviceId, moduleId);
+    }
+
+    @Override
+    public List<ModuleFile> getModuleFiles(String serviceId) {
+        return dataAccess.getModuleFiles(serviceId);
+    }
+
+    @Override
+    public List<ModuleFile> getModuleFiles(String serviceId, String moduleId, String network) {
+        return dataAccess.getModuleFiles(serviceId, moduleId, network);
+    }
+
+    @Override
+    public ModuleFile getModuleFile(String serviceId, String moduleId, String network, String name) {
+        return dataAccess.getModuleFile(serviceId, moduleId, network, name);
+    }
+
+    @Override
+    public void saveModuleFile(ModuleFile moduleFile) {
+        dataAccess.saveModuleFile(moduleFile);
+    }
+
+    @Override
+    public void updateModuleFile(ModuleFile moduleFile) {
+        dataAccess.updateModuleFile(moduleFile);
+    }
+
+    @Override
+    public void deleteModuleFile(String serviceId, String moduleId, String network, String name) {
+        dataAccess.deleteModuleFile(serviceId, moduleId, network, name);
+    }
+
+    @Override
+    public List<DataStore> getDataStores(String serviceId) {
+        return dataAccess.getDataStores(serviceId);
+    }
+
+    @Override
+    public DataStore getDataStore(String serviceId, String dataStoreId) {
+        return dataAccess.getDataStore(serviceId, dataStoreId);
+    }
+
+    @Override
+    public void saveDataStore(DataStore dataStore) {
+        dataAccess.saveDataStore(dataStore);
+    }
+
+    @Override
+    public void updateDataStore(DataStore dataStore) {
+        dataAccess.updateDataStore(dataStore);
+    }
+
+    @Override
+    public void deleteDataStore(String serviceId, String dataStoreId) {
+        dataAccess.deleteDataStore(serviceId, dataStoreId);
+    }
+
+    @Override
+    public List<User> getUsers() {
+        return dataAccess.getUsers();
+    }
+
+    @Override
+    public User getUser(String userName) {
+        return dataAccess.getUser(userName);
+    }
+
+    @Override
+    public void saveUser(User user) {
+        dataAccess.saveUser(user);
+    }
+
+    @Override
+    public void updateUser(User user) {
+        dataAccess.updateUser(user);
+    }
+
+    @Override
+    public void deleteUser(String userName) {
+        dataAccess.deleteUser(userName);
+    }
+
+    @Override
+    public List<WorkItem> getWorkItems() {
+        return dataAccess.getWorkItems();
+    }
+
+    @Override
+    public List<WorkItem> getWorkItems(WorkItemState state) {
+        return dataAccess.getWorkItems(state);
+    }
+
+    @Override
+    public List<WorkItem> getServiceWorkItems(String serviceId) {
+        return dataAccess.getServiceWorkItems(serviceId);
+    }
+
+    @Override
+    public List<WorkItem> getChainWorkItems(String chainId) {
+        return dataAccess.getChainWorkItems(chainId);
+    }
+
+    @Override
+    public WorkItem getWorkItem(String id) {
+        return dataAccess.getWorkItem(id);
+    }
+
+    @Override
+    public void saveWorkItem(WorkItem workItem) {
+        dataAccess.saveWorkItem(workItem);
+    }
+
+    @Override
+    public void saveWorkItems(List<WorkItem> workItems) {
+        dataAccess.saveWorkItems(workItems);
+    }
+
+    @Override
+    public boolean updateWorkItem(WorkItem workItem, WorkItemState expected) {
+        return dataAccess.updateWorkItem(workItem, expected);
+    }
+
+    @Override
+    public void deleteWorkItem(String id) {
+        dataAccess.deleteWorkItem(id);
+    }
+
+    @Override
+    public void deleteWorkItems(List<String> ids) {
+        dataAccess.deleteWorkItems(ids);
+    }
+
+    @Override
+    public int getWorkItemStatus(String id) {
+        return dataAccess.getWorkItemStatus(id);
+    }
+
+    @Override
+    public void saveWorkItemStatus(String id, int i) {
+        dataAccess.saveWorkItemStatus(id, i);
+    }
+
+    @Override
+    public void saveWorkItemStatuses(Map<String, Integer> statuses) {
+        dataAccess.saveWorkItemStatuses(statuses);
+    }
+
+    @Override
+    public void saveAudit(Audit audit, String output) {
+        dataAccess.saveAudit(audit, output);
+    }
+
+    @Override
+    public void saveAudits(List<Audit> audits, List<String> outputs) {
+        dataAccess.saveAudits(audits, outputs);
+    }
+
+    @Override
+    public List<Audit> getAudit(String serviceId, int year, int month, int startDay, int endDay) {
+        return dataAccess.getAudit(serviceId, year, month, startDay, endDay);
+    }
+
+    @Override
+    public List<Audit> getAudit(String serviceId, Date start, Date end) {
+        return dataAccess.getAudit(serviceId, start, end);
+    }
+
+    @Override
+    public void streamAudit(String serviceId, Date start, Date end, Predicate<Audit> consumer) {
+        dataAccess.streamAudit(serviceId, start, end, consumer);
+    }
+
+    @Override
+    public String getAuditOutput(String serviceId, String auditId) {
+        return dataAccess.getAuditOutput(serviceId, auditId);
+    }
+
+    @Override
+    public boolean getAvailability() {
+        return dataAccess.getAvailability();
+    }
+
+}
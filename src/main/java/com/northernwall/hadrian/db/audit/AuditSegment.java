@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.audit;
+
+import com.google.gson.Gson;
+import com.northernwall.hadrian.domain.Audit;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The audit records of a single day. Records are appended to the end of the
+ * file and read back through a MappedByteBuffer, using an in memory index of
+ * record offsets by serviceId and of the records that have output by
+ * auditId. Each record is laid out as
+ * [int length][short serviceId length][serviceId][int audit length][audit json][int output length, -1 for none][output].
+ */
+public class AuditSegment {
+
+    private final static Logger logger = LoggerFactory.getLogger(AuditSegment.class);
+
+    private final int day;
+    private final Path path;
+    private final Gson gson;
+    private final FileChannel channel;
+    private final Map<String, List<Integer>> offsetsByService;
+    private final Map<String, Integer> outputOffsets;
+    private MappedByteBuffer mapped;
+    private int length;
+
+    public AuditSegment(int day, Path path, Gson gson) throws IOException {
+        this.day = day;
+        this.path = path;
+        this.gson = gson;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.offsetsByService = new HashMap<>();
+        this.outputOffsets = new HashMap<>();
+        this.mapped = null;
+        this.length = 0;
+        buildIndex();
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public synchronized int getLength() {
+        return length;
+    }
+
+    /**
+     * Scans the existing records to rebuild the index. A record cut short by
+     * a crash ends the scan and is truncated.
+     */
+    private void buildIndex() throws IOException {
+        int size = (int) channel.size();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int offset = 0;
+        while (offset + 4 <= size) {
+            int recordLength = buffer.getInt(offset);
+            if (recordLength <= 0 || offset + 4 + recordLength > size) {
+                break;
+            }
+            buffer.position(offset + 4);
+            String serviceId = readString(buffer, buffer.getShort());
+            int auditLength = buffer.getInt();
+            buffer.position(buffer.position() + auditLength);
+            int outputLength = buffer.getInt();
+            if (outputLength >= 0) {
+                Audit audit = readAudit(buffer, offset);
+                outputOffsets.put(audit.auditId, offset);
+            }
+            index(serviceId, offset);
+            offset += 4 + recordLength;
+        }
+        if (offset < size) {
+            logger.warn("Audit segment {} has a partial record, {} bytes truncated", path.getFileName(), size - offset);
+            channel.truncate(offset);
+        }
+        length = offset;
+    }
+
+    public synchronized void append(Audit audit, String output) throws IOException {
+        byte[] serviceId = audit.serviceId.getBytes(StandardCharsets.UTF_8);
+        byte[] data = gson.toJson(audit).getBytes(StandardCharsets.UTF_8);
+        byte[] out = output == null ? null : output.getBytes(StandardCharsets.UTF_8);
+        int recordLength = 2 + serviceId.length + 4 + data.length + 4 + (out == null ? 0 : out.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + recordLength);
+        buffer.putInt(recordLength);
+        buffer.putShort((short) serviceId.length);
+        buffer.put(serviceId);
+        buffer.putInt(data.length);
+        buffer.put(data);
+        if (out == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(out.length);
+            buffer.put(out);
+        }
+        buffer.flip();
+        int offset = length;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        length += 4 + recordLength;
+
+        index(audit.serviceId, offset);
+        if (out != null) {
+            outputOffsets.put(audit.auditId, offset);
+        }
+    }
+
+    public List<Audit> getAudits(String serviceId) throws IOException {
+        List<Integer> offsets;
+        ByteBuffer buffer;
+        synchronized (this) {
+            List<Integer> temp = offsetsByService.get(serviceId);
+            if (temp == null) {
+                return new LinkedList<>();
+            }
+            offsets = new ArrayList<>(temp);
+            buffer = view();
+        }
+        List<Audit> audits = new LinkedList<>();
+        for (int offset : offsets) {
+            audits.add(readAudit(buffer, offset));
+        }
+        return audits;
+    }
+
+    /**
+     * Passes the records of the service to the consumer newest first,
+     * returning false if the consumer asked to stop.
+     */
+    public boolean streamAudits(String serviceId, Predicate<Audit> consumer) throws IOException {
+        int[] offsets;
+        ByteBuffer buffer;
+        synchronized (this) {
+            List<Integer> temp = offsetsByService.get(serviceId);
+            if (temp == null) {
+                return true;
+            }
+            offsets = new int[temp.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = temp.get(i);
+            }
+            buffer = view();
+        }
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            if (!consumer.test(readAudit(buffer, offsets[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getOutput(String auditId) throws IOException {
+        Integer offset;
+        ByteBuffer buffer;
+        synchronized (this) {
+            offset = outputOffsets.get(auditId);
+            if (offset == null) {
+                return null;
+            }
+            buffer = view();
+        }
+        buffer.position(offset + 4);
+        buffer.position(buffer.position() + 2 + buffer.getShort());
+        buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+        return readString(buffer, buffer.getInt());
+    }
+
+    public boolean hasOutput(String auditId) {
+        synchronized (this) {
+            return outputOffsets.containsKey(auditId);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Returns a private view of the mapped file, remapping it when records
+     * have been appended since it was last mapped.
+     */
+    private ByteBuffer view() throws IOException {
+        if (mapped == null || mapped.capacity() < length) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        return mapped.duplicate();
+    }
+
+    private Audit readAudit(ByteBuffer buffer, int offset) {
+        buffer.position(offset + 4);
+        buffer.position(buffer.position() + 2 + buffer.getShort());
+        return gson.fromJson(readString(buffer, buffer.getInt()), Audit.class);
+    }
+
+    private void index(String serviceId, int offset) {
+        List<Integer> offsets = offsetsByService.get(serviceId);
+        if (offsets == null) {
+            offsets = new ArrayList<>();
+            offsetsByService.put(serviceId, offsets);
+        }
+        offsets.add(offset);
+    }
+
+    private static String readString(ByteBuffer buffer, int count) {
+        byte[] bytes = new byte[count];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
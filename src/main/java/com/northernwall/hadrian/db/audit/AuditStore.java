@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.audit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.Gson;
+import com.northernwall.hadrian.domain.Audit;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores audit records in one segment file per day, named by the day as
+ * yyyyMMdd in local time, the same day partitioning CassandraDataAccess uses.
+ * Time range queries only open the segments in the range, and records older
+ * than the time to live are expired by deleting whole segments.
+ */
+public class AuditStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(AuditStore.class);
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int timeToLiveDays;
+    private final Gson gson;
+    private final ConcurrentSkipListMap<Integer, AuditSegment> segments;
+
+    public AuditStore(Path directory, int timeToLiveDays, MetricRegistry metricRegistry) throws IOException {
+        this.directory = directory;
+        this.timeToLiveDays = timeToLiveDays;
+        this.gson = new Gson();
+        this.segments = new ConcurrentSkipListMap<>();
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    int day = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(day, new AuditSegment(day, path, gson));
+                } catch (NumberFormatException ex) {
+                    logger.warn("Ignoring unexpected file {} in audit store", name);
+                }
+            }
+        }
+        logger.info("Audit store opened with {} segments in {}", segments.size(), directory);
+        expire();
+
+        metricRegistry.register("dataAccess.auditStore.segments", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return segments.size();
+            }
+        });
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public void append(Audit audit, String output) throws IOException {
+        if (audit.auditId == null) {
+            audit.auditId = UUID.randomUUID().toString();
+        }
+        if (output != null) {
+            output = output.trim();
+            if (output.isEmpty()) {
+                output = null;
+            }
+        }
+        int day = dayKey(audit.timePerformed);
+        AuditSegment segment = segments.get(day);
+        if (segment == null) {
+            segment = openSegment(day);
+        }
+        segment.append(audit, output);
+    }
+
+    private synchronized AuditSegment openSegment(int day) throws IOException {
+        AuditSegment segment = segments.get(day);
+        if (segment == null) {
+            segment = new AuditSegment(day, directory.resolve(SEGMENT_PREFIX + day + SEGMENT_SUFFIX), gson);
+            segments.put(day, segment);
+            expire();
+        }
+        return segment;
+    }
+
+    public List<Audit> getAudit(String serviceId, int year, int month, int startDay, int endDay) throws IOException {
+        int base = year * 10_000 + month * 100;
+        return readAudits(segments.subMap(base + startDay, true, base + endDay, true), serviceId);
+    }
+
+    public List<Audit> getAudit(String serviceId, Date start, Date end) throws IOException {
+        List<Audit> audits = new LinkedList<>();
+        for (Audit audit : readAudits(segments.subMap(dayKey(start), true, dayKey(end), true), serviceId)) {
+            if (!audit.timePerformed.before(start) && audit.timePerformed.before(end)) {
+                audits.add(audit);
+            }
+        }
+        return audits;
+    }
+
+    public void streamAudit(String serviceId, Date start, Date end, Predicate<Audit> consumer) throws IOException {
+        NavigableMap<Integer, AuditSegment> range = segments.subMap(dayKey(start), true, dayKey(end), true).descendingMap();
+        for (AuditSegment segment : range.values()) {
+            boolean more = segment.streamAudits(serviceId, (Audit audit) -> {
+                if (audit.timePerformed.before(start) || !audit.timePerformed.before(end)) {
+                    return true;
+                }
+                return consumer.test(audit);
+            });
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    public String getAuditOutput(String serviceId, String auditId) throws IOException {
+        for (AuditSegment segment : segments.descendingMap().values()) {
+            if (segment.hasOutput(auditId)) {
+                return segment.getOutput(auditId);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the segments of the days that are older than the time to live.
+     */
+    public void expire() {
+        Calendar c = new GregorianCalendar();
+        c.add(Calendar.DAY_OF_MONTH, -timeToLiveDays);
+        int cutoff = dayKey(c.getTime());
+        Iterator<Map.Entry<Integer, AuditSegment>> it = segments.headMap(cutoff, false).entrySet().iterator();
+        while (it.hasNext()) {
+            AuditSegment segment = it.next().getValue();
+            it.remove();
+            try {
+                segment.delete();
+                logger.info("Expired audit segment {}", segment.getDay());
+            } catch (IOException ex) {
+                logger.warn("Could not delete expired audit segment {}, {}", segment.getDay(), ex.getMessage());
+            }
+        }
+    }
+
+    public void close() {
+        for (AuditSegment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException ex) {
+                logger.warn("Could not close audit segment {}, {}", segment.getDay(), ex.getMessage());
+            }
+        }
+    }
+
+    private static List<Audit> readAudits(NavigableMap<Integer, AuditSegment> range, String serviceId) throws IOException {
+        List<Audit> audits = new LinkedList<>();
+        for (AuditSegment segment : range.values()) {
+            audits.addAll(segment.getAudits(serviceId));
+        }
+        return audits;
+    }
+
+    private static int dayKey(Date date) {
+        Calendar c = new GregorianCalendar();
+        c.setTime(date);
+        return c.get(Calendar.YEAR) * 10_000 + (c.get(Calendar.MONTH) + 1) * 100 + c.get(Calendar.DAY_OF_MONTH);
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.audit;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DelegatingDataAccess;
+import com.northernwall.hadrian.domain.Audit;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Wraps any DataAccess and keeps the audit records, and their output, in an
+ * AuditStore instead of the wrapped store.
+ */
+public class AuditStoreDataAccess extends DelegatingDataAccess {
+
+    private final AuditStore auditStore;
+
+    public AuditStoreDataAccess(DataAccess dataAccess, AuditStore auditStore) {
+        super(dataAccess);
+        this.auditStore = auditStore;
+    }
+
+    @Override
+    public void getHealth(HealthWriter writer) throws IOException {
+        dataAccess.getHealth(writer);
+        writer.addLine("Audit Store - Directory", auditStore.getDirectory().toAbsolutePath().toString());
+        writer.addLine("Audit Store - Segments", auditStore.getSegmentCount());
+    }
+
+    @Override
+    public void saveAudit(Audit audit, String output) {
+        try {
+            auditStore.append(audit, output);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not append audit record", ex);
+        }
+    }
+
+    @Override
+    public void saveAudits(List<Audit> audits, List<String> outputs) {
+        try {
+            for (int i = 0; i < audits.size(); i++) {
+                auditStore.append(audits.get(i), outputs.get(i));
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not append audit record", ex);
+        }
+    }
+
+    @Override
+    public List<Audit> getAudit(String serviceId, int year, int month, int startDay, int endDay) {
+        try {
+            return auditStore.getAudit(serviceId, year, month, startDay, endDay);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not read audit records", ex);
+        }
+    }
+
+    @Override
+    public List<Audit> getAudit(String serviceId, Date start, Date end) {
+        try {
+            return auditStore.getAudit(serviceId, start, end);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not read audit records", ex);
+        }
+    }
+
+    @Override
+    public void streamAudit(String serviceId, Date start, Date end, Predicate<Audit> consumer) {
+        try {
+            auditStore.streamAudit(serviceId, start, end, consumer);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not read audit records", ex);
+        }
+    }
+
+    @Override
+    public String getAuditOutput(String serviceId, String auditId) {
+        try {
+            return auditStore.getAuditOutput(serviceId, auditId);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not read audit output", ex);
+        }
+    }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.cache;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.Gson;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DelegatingDataAccess;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleRef;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.domain.Vip;
+import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-through, write-through DataAccess that wraps another DataAccess and
+ * keeps the parsed Team, Service, Module, Host, Vip and ModuleRef objects that
+ * the UI reads on every page load. Single entities are replaced on write,
+ * per service lists are invalidated and reloaded on the next read.
+ *
+ * The cache is local to this instance of Hadrian, so when several instances
+ * share a store the TTL bounds how stale a read can be.
+ */
+public class CachingDataAccess extends DelegatingDataAccess {
+
+    private final EntityCache<Team> teamCache;
+    private final EntityCache<Service> serviceCache;
+    private final EntityCache<List<Module>> moduleCache;
+    private final EntityCache<List<Host>> hostCache;
+    private final EntityCache<List<Vip>> vipCache;
+    private final EntityCache<List<ModuleRef>> moduleRefClientCache;
+    private final EntityCache<List<ModuleRef>> moduleRefServerCache;
+    private final Gson gson;
+
+    public CachingDataAccess(DataAccess dataAccess, Parameters parameters, MetricRegistry metricRegistry) {
+        super(dataAccess);
+
+        int maxSize = parameters.getInt(Const.DATA_ACCESS_CACHE_MAX_SIZE, Const.DATA_ACCESS_CACHE_MAX_SIZE_DEFAULT);
+        int timeToLive = parameters.getInt(Const.DATA_ACCESS_CACHE_TTL_SECONDS, Const.DATA_ACCESS_CACHE_TTL_SECONDS_DEFAULT);
+
+        teamCache = new EntityCache<>("team", maxSize, timeToLive, metricRegistry);
+        serviceCache = new EntityCache<>("service", maxSize, timeToLive, metricRegistry);
+        moduleCache = new EntityCache<>("module", maxSize, timeToLive, metricRegistry);
+        hostCache = new EntityCache<>("host", maxSize, timeToLive, metricRegistry);
+        vipCache = new EntityCache<>("vip", maxSize, timeToLive, metricRegistry);
+        moduleRefClientCache = new EntityCache<>("moduleRefClient", maxSize, timeToLive, metricRegistry);
+        moduleRefServerCache = new EntityCache<>("moduleRefServer", maxSize, timeToLive, metricRegistry);
+        gson = new Gson();
+    }
+
+    @Override
+    public void getHealth(HealthWriter writer) throws IOException {
+        writer.addLine("Cache - Data Access", dataAccess.getClass().getCanonicalName());
+        writer.addLine("Cache - Teams", teamCache.size());
+        writer.addLine("Cache - Services", serviceCache.size());
+        writer.addLine("Cache - Modules", moduleCache.size());
+        writer.addLine("Cache - Hosts", hostCache.size());
+        writer.addLine("Cache - Vips", vipCache.size());
+        writer.addLine("Cache - Module Refs", moduleRefClientCache.size() + moduleRefServerCache.size());
+        dataAccess.getHealth(writer);
+    }
+
+    @Override
+    public Team getTeam(String teamId) {
+        Team team = teamCache.get(teamId);
+        if (team == null) {
+            team = dataAccess.getTeam(teamId);
+            teamCache.put(teamId, copy(team, Team.class));
+            return team;
+        }
+        return copy(team, Team.class);
+    }
+
+    @Override
+    public void saveTeam(Team team) {
+        dataAccess.saveTeam(team);
+        teamCache.put(team.getTeamId(), copy(team, Team.class));
+    }
+
+    @Override
+    public void updateTeam(Team team) {
+        dataAccess.updateTeam(team);
+        teamCache.put(team.getTeamId(), copy(team, Team.class));
+    }
+
+    @Override
+    public Service getService(String serviceId) {
+        Service service = serviceCache.get(serviceId);
+        if (service == null) {
+            service = dataAccess.getService(serviceId);
+            serviceCache.put(serviceId, copy(service, Service.class));
+            return service;
+        }
+        return copy(service, Service.class);
+    }
+
+    @Override
+    public void saveService(Service service) {
+        dataAccess.saveService(service);
+        serviceCache.put(service.getServiceId(), copy(service, Service.class));
+    }
+
+    @Override
+    public void updateService(Service service) {
+        dataAccess.updateService(service);
+        serviceCache.put(service.getServiceId(), copy(service, Service.class));
+    }
+
+    @Override
+    public List<Host> getHosts(String serviceId) {
+        List<Host> hosts = hostCache.get(serviceId);
+        if (hosts == null) {
+            hosts = dataAccess.getHosts(serviceId);
+            hostCache.put(serviceId, copy(hosts, Host.class));
+            return hosts;
+        }
+        return copy(hosts, Host.class);
+    }
+
+    @Override
+    public Host getHost(String serviceId, String hostId) {
+        List<Host> hosts = hostCache.get(serviceId);
+        if (hosts != null) {
+            for (Host host : hosts) {
+                if (host.getHostId().equals(hostId)) {
+                    return copy(host, Host.class);
+                }
+            }
+        }
+        return dataAccess.getHost(serviceId, hostId);
+    }
+
+    @Override
+    public void saveHost(Host host) {
+        dataAccess.saveHost(host);
+        hostCache.invalidate(host.getServiceId());
+    }
+
+    @Override
+    public void saveHosts(List<Host> hosts) {
+        dataAccess.saveHosts(hosts);
+        for (Host host : hosts) {
+            hostCache.invalidate(host.getServiceId());
+        }
+    }
+
+    @Override
+    public void updateHost(Host host) {
+        dataAccess.updateHost(host);
+        hostCache.invalidate(host.getServiceId());
+    }
+
+    @Override
+    public void updateHosts(List<Host> hosts) {
+        dataAccess.updateHosts(hosts);
+        for (Host host : hosts) {
+            hostCache.invalidate(host.getServiceId());
+        }
+    }
+
+    @Override
+    public void deleteHost(Host host) {
+        dataAccess.deleteHost(host);
+        hostCache.invalidate(host.getServiceId());
+    }
+
+    @Override
+    public List<Vip> getVips(String serviceId) {
+        List<Vip> vips = vipCache.get(serviceId);
+        if (vips == null) {
+            vips = dataAccess.getVips(serviceId);
+            vipCache.put(serviceId, copy(vips, Vip.class));
+            return vips;
+        }
+        return copy(vips, Vip.class);
+    }
+
+    @Override
+    public Vip getVip(String serviceId, String vipId) {
+        List<Vip> vips = vipCache.get(serviceId);
+        if (vips != null) {
+            for (Vip vip : vips) {
+                if (vip.getVipId().equals(vipId)) {
+                    return copy(vip, Vip.class);
+                }
+            }
+        }
+        return dataAccess.getVip(serviceId, vipId);
+    }
+
+    @Override
+    public void saveVip(Vip vip) {
+        dataAccess.saveVip(vip);
+        vipCache.invalidate(vip.getServiceId());
+    }
+
+    @Override
+    public void updateVip(Vip vip) {
+        dataAccess.updateVip(vip);
+        vipCache.invalidate(vip.getServiceId());
+    }
+
+    @Override
+    public void deleteVip(String serviceId, String vipId) {
+        dataAccess.deleteVip(serviceId, vipId);
+        vipCache.invalidate(serviceId);
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefsByClient(String clientServiceId, String clientModuleId) {
+        String key = buildKey(clientServiceId, clientModuleId);
+        List<ModuleRef> moduleRefs = moduleRefClientCache.get(key);
+        if (moduleRefs == null) {
+            moduleRefs = dataAccess.getModuleRefsByClient(clientServiceId, clientModuleId);
+            moduleRefClientCache.put(key, copy(moduleRefs, ModuleRef.class));
+            return moduleRefs;
+        }
+        return copy(moduleRefs, ModuleRef.class);
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefsByServer(String serverServiceId, String serverModuleId) {
+        String key = buildKey(serverServiceId, serverModuleId);
+        List<ModuleRef> moduleRefs = moduleRefServerCache.get(key);
+        if (moduleRefs == null) {
+            moduleRefs = dataAccess.getModuleRefsByServer(serverServiceId, serverModuleId);
+            moduleRefServerCache.put(key, copy(moduleRefs, ModuleRef.class));
+            return moduleRefs;
+        }
+        return copy(moduleRefs, ModuleRef.class);
+    }
+
+    @Override
+    public void saveModuleRef(ModuleRef moduleRef) {
+        dataAccess.saveModuleRef(moduleRef);
+        moduleRefClientCache.invalidate(buildKey(moduleRef.getClientServiceId(), moduleRef.getClientModuleId()));
+        moduleRefServerCache.invalidate(buildKey(moduleRef.getServerServiceId(), moduleRef.getServerModuleId()));
+    }
+
+    @Override
+    public void deleteModuleRef(String clientServiceId, String clientModuleId, String serverServiceId, String serverModuleId) {
+        dataAccess.deleteModuleRef(clientServiceId, clientModuleId, serverServiceId, serverModuleId);
+        moduleRefClientCache.invalidate(buildKey(clientServiceId, clientModuleId));
+        moduleRefServerCache.invalidate(buildKey(serverServiceId, serverModuleId));
+    }
+
+    @Override
+    public List<Module> getModules(String serviceId) {
+        List<Module> modules = moduleCache.get(serviceId);
+        if (modules == null) {
+            modules = dataAccess.getModules(serviceId);
+            moduleCache.put(serviceId, copy(modules, Module.class));
+            return modules;
+        }
+        return copy(modules, Module.class);
+    }
+
+    @Override
+    public Module getModule(String serviceId, String moduleId) {
+        List<Module> modules = moduleCache.get(serviceId);
+        if (modules != null) {
+            for (Module module : modules) {
+                if (module.getModuleId().equals(moduleId)) {
+                    return copy(module, Module.class);
+                }
+            }
+        }
+        return dataAccess.getModule(serviceId, moduleId);
+    }
+
+    @Override
+    public void saveModule(Module module) {
+        dataAccess.saveModule(module);
+        moduleCache.invalidate(module.getServiceId());
+    }
+
+    @Override
+    public void updateModule(Module module) {
+        dataAccess.updateModule(module);
+        moduleCache.invalidate(module.getServiceId());
+    }
+
+    @Override
+    public void deleteModule(String serviceId, String moduleId) {
+        dataAccess.deleteModule(serviceId, moduleId);
+        moduleCache.invalidate(serviceId);
+    }
+
+    private static String buildKey(String serviceId, String moduleId) {
+        return serviceId + "/" + moduleId;
+    }
+
+    /**
+     * Callers change the entities they are given, such as setting a host's
+     * status before it is saved, and may sort or filter the lists. So what
+     * goes in to the cache and what comes out of it are always copies, a
+     * cached entity only changes when a write to the store succeeds.
+     */
+    private <T> T copy(T entity, Class<T> type) {
+        if (entity == null) {
+            return null;
+        }
+        return gson.fromJson(gson.toJsonTree(entity), type);
+    }
+
+    private <T> List<T> copy(List<T> entities, Class<T> type) {
+        if (entities == null) {
+            return null;
+        }
+        List<T> copies = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            copies.add(copy(entity, type));
+        }
+        return copies;
+    }
+
+}
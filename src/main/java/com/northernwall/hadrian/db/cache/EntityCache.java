@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small LRU cache with a time to live, used by CachingDataAccess to hold
+ * parsed entities. Entries are evicted when the cache grows past maxSize or
+ * when they are read after their time to live has passed.
+ *
+ * @param <V> the type of the cached entity
+ */
+public class EntityCache<V> {
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<String, CacheEntry<V>> entries;
+    private final Meter meterHit;
+    private final Meter meterMiss;
+    private final Meter meterEviction;
+
+    public EntityCache(String name, int maxSize, int timeToLiveSeconds, MetricRegistry metricRegistry) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLiveSeconds * 1000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        meterHit = metricRegistry.meter("dataAccess.cache." + name + ".hit");
+        meterMiss = metricRegistry.meter("dataAccess.cache." + name + ".miss");
+        meterEviction = metricRegistry.meter("dataAccess.cache." + name + ".eviction");
+        metricRegistry.register("dataAccess.cache." + name + ".size", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return size();
+            }
+        });
+    }
+
+    public synchronized V get(String key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            meterMiss.mark();
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.remove(key);
+            meterEviction.mark();
+            meterMiss.mark();
+            return null;
+        }
+        meterHit.mark();
+        return entry.value;
+    }
+
+    public synchronized void put(String key, V value) {
+        if (value == null) {
+            entries.remove(key);
+            return;
+        }
+        entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + timeToLive));
+        while (entries.size() > maxSize) {
+            String eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+            meterEviction.mark();
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final long expires;
+
+        private CacheEntry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+    }
+
+}
@@ -16,16 +16,17 @@
 package com.northernwall.hadrian.db.cassandra;
 
 import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.Session.State;
-import com.google.gson.Gson;
 import com.northernwall.hadrian.db.DataAccess;
 import com.northernwall.hadrian.domain.Audit;
 import com.northernwall.hadrian.domain.CustomFunction;
@@ -39,14 +40,22 @@ import com.northernwall.hadrian.domain.Team;
 import com.northernwall.hadrian.domain.User;
 import com.northernwall.hadrian.domain.Vip;
 import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
 import com.northernwall.hadrian.utilityHandlers.HealthWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,12 +65,14 @@ public class CassandraDataAccess implements DataAccess {
 
     private static final String CQL_SELECT_PRE = "SELECT * FROM ";
     private static final String CQL_SELECT_POST = ";";
+    private static final int AUDIT_FETCH_SIZE = 100;
 
     private final String username;
     private final String dataCenter;
     private final Session session;
 
     private final PreparedStatement auditSelect;
+    private final PreparedStatement auditSelectNewest;
     private final PreparedStatement auditInsert;
     private final PreparedStatement auditOutputSelect;
     private final PreparedStatement auditOutputInsert;
@@ -119,13 +130,24 @@ public class CassandraDataAccess implements DataAccess {
     private final PreparedStatement vipDelete;
     private final PreparedStatement workItemSelect;
     private final PreparedStatement workItemInsert;
+    private final PreparedStatement workItemUpdate;
     private final PreparedStatement workItemDelete;
+    private final PreparedStatement workItemBackfill;
+    private final PreparedStatement workItemRefStateSelect;
+    private final PreparedStatement workItemRefStateInsert;
+    private final PreparedStatement workItemRefStateDelete;
+    private final PreparedStatement workItemRefServiceSelect;
+    private final PreparedStatement workItemRefServiceInsert;
+    private final PreparedStatement workItemRefServiceDelete;
+    private final PreparedStatement workItemRefChainSelect;
+    private final PreparedStatement workItemRefChainInsert;
+    private final PreparedStatement workItemRefChainDelete;
     private final PreparedStatement workItemStatusSelect;
     private final PreparedStatement workItemStatusInsert;
 
-    private final Gson gson;
+    private final EntityCodec codec;
 
-    public CassandraDataAccess(Cluster cluster, String keyspace, String username, String dataCenter, int auditTimeToLive, MetricRegistry metricRegistry) {
+    public CassandraDataAccess(Cluster cluster, String keyspace, String username, String dataCenter, int auditTimeToLive, EntityCodec codec, MetricRegistry metricRegistry) {
         this.username = username;
         this.dataCenter = dataCenter;
         session = cluster.connect(keyspace);
@@ -261,10 +283,35 @@ public class CassandraDataAccess implements DataAccess {
         logger.info("Praparing workItem statements...");
         workItemSelect = session.prepare("SELECT * FROM workItem WHERE id = ?;");
         workItemSelect.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
-        workItemInsert = session.prepare("INSERT INTO workItem (id, data) VALUES (?, ?);");
+        workItemInsert = session.prepare("INSERT INTO workItem (id, data, state, serviceId, chainId) VALUES (?, ?, ?, ?, ?);");
         workItemInsert.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
-        workItemDelete = session.prepare("DELETE FROM workItem WHERE id = ?;");
+        workItemUpdate = session.prepare("UPDATE workItem SET data = ?, state = ?, serviceId = ?, chainId = ? WHERE id = ? IF state = ?;");
+        workItemUpdate.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemUpdate.setSerialConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL);
+        workItemDelete = session.prepare("DELETE FROM workItem WHERE id = ? IF EXISTS;");
         workItemDelete.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemDelete.setSerialConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL);
+        workItemBackfill = session.prepare("UPDATE workItem SET state = ?, serviceId = ?, chainId = ? WHERE id = ? IF data = ? AND state = null;");
+        workItemBackfill.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemBackfill.setSerialConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL);
+        workItemRefStateSelect = session.prepare("SELECT id FROM workItemRefState WHERE state = ?;");
+        workItemRefStateSelect.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefStateInsert = session.prepare("INSERT INTO workItemRefState (state, id) VALUES (?, ?);");
+        workItemRefStateInsert.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefStateDelete = session.prepare("DELETE FROM workItemRefState WHERE state = ? AND id = ?;");
+        workItemRefStateDelete.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefServiceSelect = session.prepare("SELECT id FROM workItemRefService WHERE serviceId = ?;");
+        workItemRefServiceSelect.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefServiceInsert = session.prepare("INSERT INTO workItemRefService (serviceId, id) VALUES (?, ?);");
+        workItemRefServiceInsert.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefServiceDelete = session.prepare("DELETE FROM workItemRefService WHERE serviceId = ? AND id = ?;");
+        workItemRefServiceDelete.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefChainSelect = session.prepare("SELECT id FROM workItemRefChain WHERE chainId = ?;");
+        workItemRefChainSelect.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefChainInsert = session.prepare("INSERT INTO workItemRefChain (chainId, id) VALUES (?, ?);");
+        workItemRefChainInsert.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        workItemRefChainDelete = session.prepare("DELETE FROM workItemRefChain WHERE chainId = ? AND id = ?;");
+        workItemRefChainDelete.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
 
         logger.info("Praparing workItem statements...");
         workItemStatusSelect = session.prepare("SELECT * FROM workItemStatus WHERE id = ?;");
@@ -275,6 +322,8 @@ public class CassandraDataAccess implements DataAccess {
         logger.info("Praparing audit statements...");
         logger.info("Audit TTL {}", auditTimeToLive);
         auditSelect = session.prepare("SELECT data FROM auditRecord WHERE serviceId = ? AND year = ? AND month = ? AND day = ?");
+        auditSelectNewest = session.prepare("SELECT data FROM auditRecord WHERE serviceId = ? AND year = ? AND month = ? AND day = ? ORDER BY time DESC");
+        auditSelectNewest.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
         auditInsert = session.prepare("INSERT INTO auditRecord (serviceId, year, month, day, time, data) VALUES (?, ?, ?, ?, now(), ?) USING TTL " + auditTimeToLive + ";");
         auditInsert.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
         auditOutputSelect = session.prepare("SELECT data FROM auditOutput WHERE serviceId = ? AND auditId = ?");
@@ -283,7 +332,7 @@ public class CassandraDataAccess implements DataAccess {
 
         logger.info("Prapared statements created");
 
-        gson = new Gson();
+        this.codec = codec;
     }
 
     @Override
@@ -301,6 +350,7 @@ public class CassandraDataAccess implements DataAccess {
             writer.addLine("Cassandra - Preferred DC", dataCenter);
         }
         writer.addLine("Cassandra - Keyspace", session.getLoggedKeyspace());
+        writer.addLine("Cassandra - Codec", codec.getClass().getSimpleName());
         List<String> dcs = new LinkedList<>();
         for (com.datastax.driver.core.Host host : metadata.getAllHosts()) {
             if (!dcs.contains(host.getDatacenter())) {
@@ -361,12 +411,12 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveTeam(Team team) {
-        saveData(team.getTeamId(), gson.toJson(team), teamInsert);
+        saveData(team.getTeamId(), codec.encode(team), teamInsert);
     }
 
     @Override
     public void updateTeam(Team team) {
-        updateData(team.getTeamId(), gson.toJson(team), teamUpdate);
+        updateData(team.getTeamId(), codec.encode(team), teamUpdate);
     }
 
     @Override
@@ -396,12 +446,12 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveService(Service service) {
-        saveData(service.getServiceId(), gson.toJson(service), serviceInsert);
+        saveData(service.getServiceId(), codec.encode(service), serviceInsert);
     }
 
     @Override
     public void updateService(Service service) {
-        updateData(service.getServiceId(), gson.toJson(service), serviceUpdate);
+        updateData(service.getServiceId(), codec.encode(service), serviceUpdate);
     }
 
     @Override
@@ -427,24 +477,83 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveHost(Host host) {
-        saveServiceData(host.getServiceId(), host.getHostId(), gson.toJson(host), hostInsert);
-        BoundStatement boundStatement = new BoundStatement(hostNameInsert);
-        session.execute(boundStatement.bind(
+        List<ResultSetFuture> futures = new LinkedList<>();
+        BoundStatement boundStatement;
+
+        boundStatement = new BoundStatement(hostInsert);
+        futures.add(session.executeAsync(boundStatement.bind(
+                host.getServiceId(),
+                host.getHostId(),
+                codec.encode(host))));
+
+        boundStatement = new BoundStatement(hostNameInsert);
+        futures.add(session.executeAsync(boundStatement.bind(
                 host.getHostName().toLowerCase(), 
                 host.getServiceId(), 
-                host.getHostId()));
+                host.getHostId())));
+
+        waitForFutures(futures);
+    }
+
+    @Override
+    public void saveHosts(List<Host> hosts) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        Map<String, BatchStatement> batches = new HashMap<>();
+        for (Host host : hosts) {
+            BoundStatement boundStatement;
+
+            boundStatement = new BoundStatement(hostInsert);
+            getBatch(batches, host.getServiceId()).add(boundStatement.bind(
+                    host.getServiceId(),
+                    host.getHostId(),
+                    codec.encode(host)));
+
+            boundStatement = new BoundStatement(hostNameInsert);
+            futures.add(session.executeAsync(boundStatement.bind(
+                    host.getHostName().toLowerCase(),
+                    host.getServiceId(),
+                    host.getHostId())));
+        }
+        for (BatchStatement batch : batches.values()) {
+            futures.add(session.executeAsync(batch));
+        }
+        waitForFutures(futures);
     }
 
     @Override
     public void updateHost(Host host) {
-        updateServiceData(host.getServiceId(), host.getHostId(), gson.toJson(host), hostUpdate);
+        updateServiceData(host.getServiceId(), host.getHostId(), codec.encode(host), hostUpdate);
+    }
+
+    @Override
+    public void updateHosts(List<Host> hosts) {
+        Map<String, BatchStatement> batches = new HashMap<>();
+        for (Host host : hosts) {
+            BoundStatement boundStatement = new BoundStatement(hostUpdate);
+            getBatch(batches, host.getServiceId()).add(boundStatement.bind(
+                    codec.encode(host),
+                    host.getServiceId(),
+                    host.getHostId()));
+        }
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (BatchStatement batch : batches.values()) {
+            futures.add(session.executeAsync(batch));
+        }
+        waitForFutures(futures);
     }
 
     @Override
     public void deleteHost(Host host) {
-        deleteServiceData(host.getServiceId(), host.getHostId(), hostDelete);
-        BoundStatement boundStatement = new BoundStatement(hostNameDelete);
-        session.execute(boundStatement.bind(host.getHostName().toLowerCase()));
+        List<ResultSetFuture> futures = new LinkedList<>();
+        BoundStatement boundStatement;
+
+        boundStatement = new BoundStatement(hostDelete);
+        futures.add(session.executeAsync(boundStatement.bind(host.getServiceId(), host.getHostId())));
+
+        boundStatement = new BoundStatement(hostNameDelete);
+        futures.add(session.executeAsync(boundStatement.bind(host.getHostName().toLowerCase())));
+
+        waitForFutures(futures);
     }
 
     @Override
@@ -452,6 +561,23 @@ public class CassandraDataAccess implements DataAccess {
         return getServiceData(serviceId, moduleSelect, Module.class);
     }
 
+    @Override
+    public List<Module> getModules(Collection<String> serviceIds) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (String serviceId : serviceIds) {
+            BoundStatement boundStatement = new BoundStatement(moduleSelect);
+            futures.add(session.executeAsync(boundStatement.bind(serviceId)));
+        }
+        List<Module> modules = new LinkedList<>();
+        for (ResultSet results : waitForFutures(futures)) {
+            for (Row row : results) {
+                String data = row.getString("data");
+                modules.add(codec.decode(data, Module.class));
+            }
+        }
+        return modules;
+    }
+
     @Override
     public Module getModule(String serviceId, String moduleId) {
         return getServiceData(serviceId, moduleId, moduleSelect2, Module.class);
@@ -459,12 +585,12 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveModule(Module module) {
-        saveServiceData(module.getServiceId(), module.getModuleId(), gson.toJson(module), moduleInsert);
+        saveServiceData(module.getServiceId(), module.getModuleId(), codec.encode(module), moduleInsert);
     }
 
     @Override
     public void updateModule(Module module) {
-        updateServiceData(module.getServiceId(), module.getModuleId(), gson.toJson(module), moduleUpdate);
+        updateServiceData(module.getServiceId(), module.getModuleId(), codec.encode(module), moduleUpdate);
     }
 
     @Override
@@ -567,12 +693,12 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveVip(Vip vip) {
-        saveServiceData(vip.getServiceId(), vip.getVipId(), gson.toJson(vip), vipInsert);
+        saveServiceData(vip.getServiceId(), vip.getVipId(), codec.encode(vip), vipInsert);
     }
 
     @Override
     public void updateVip(Vip vip) {
-        updateServiceData(vip.getServiceId(), vip.getVipId(), gson.toJson(vip), vipUpdate);
+        updateServiceData(vip.getServiceId(), vip.getVipId(), codec.encode(vip), vipUpdate);
     }
 
     @Override
@@ -626,40 +752,46 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveModuleRef(ModuleRef moduleRef) {
+        List<ResultSetFuture> futures = new LinkedList<>();
         BoundStatement boundStatement;
 
         boundStatement = new BoundStatement(moduleRefInsertClient);
-        session.execute(boundStatement.bind(
+        futures.add(session.executeAsync(boundStatement.bind(
                 moduleRef.getClientServiceId(),
                 moduleRef.getClientModuleId(),
                 moduleRef.getServerServiceId(),
-                moduleRef.getServerModuleId()));
+                moduleRef.getServerModuleId())));
 
         boundStatement = new BoundStatement(moduleRefInsertServer);
-        session.execute(boundStatement.bind(
+        futures.add(session.executeAsync(boundStatement.bind(
                 moduleRef.getServerServiceId(),
                 moduleRef.getServerModuleId(),
                 moduleRef.getClientServiceId(),
-                moduleRef.getClientModuleId()));
+                moduleRef.getClientModuleId())));
+
+        waitForFutures(futures);
     }
 
     @Override
     public void deleteModuleRef(String clientServiceId, String clientModuleId, String serverServiceId, String serverModuleId) {
+        List<ResultSetFuture> futures = new LinkedList<>();
         BoundStatement boundStatement;
 
         boundStatement = new BoundStatement(moduleRefDeleteClient);
-        session.execute(boundStatement.bind(
+        futures.add(session.executeAsync(boundStatement.bind(
                 clientServiceId,
                 clientModuleId,
                 serverServiceId,
-                serverModuleId));
+                serverModuleId)));
 
         boundStatement = new BoundStatement(moduleRefDeleteServer);
-        session.execute(boundStatement.bind(
+        futures.add(session.executeAsync(boundStatement.bind(
                 serverServiceId,
                 serverModuleId,
                 clientServiceId,
-                clientModuleId));
+                clientModuleId)));
+
+        waitForFutures(futures);
     }
 
     @Override
@@ -674,12 +806,12 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveCustomFunction(CustomFunction customFunction) {
-        saveServiceData(customFunction.getServiceId(), customFunction.getCustomFunctionId(), gson.toJson(customFunction), customFunctionInsert);
+        saveServiceData(customFunction.getServiceId(), customFunction.getCustomFunctionId(), codec.encode(customFunction), customFunctionInsert);
     }
 
     @Override
     public void updateCustomFunction(CustomFunction customFunction) {
-        updateServiceData(customFunction.getServiceId(), customFunction.getCustomFunctionId(), gson.toJson(customFunction), customFunctionUpdate);
+        updateServiceData(customFunction.getServiceId(), customFunction.getCustomFunctionId(), codec.encode(customFunction), customFunctionUpdate);
     }
 
     @Override
@@ -699,12 +831,12 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveDataStore(DataStore dataStore) {
-        saveServiceData(dataStore.getServiceId(), dataStore.getDataStoreId(), gson.toJson(dataStore), dataStoreInsert);
+        saveServiceData(dataStore.getServiceId(), dataStore.getDataStoreId(), codec.encode(dataStore), dataStoreInsert);
     }
 
     @Override
     public void updateDataStore(DataStore dataStore) {
-        updateServiceData(dataStore.getServiceId(), dataStore.getDataStoreId(), gson.toJson(dataStore), dataStoreUpdate);
+        updateServiceData(dataStore.getServiceId(), dataStore.getDataStoreId(), codec.encode(dataStore), dataStoreUpdate);
     }
 
     @Override
@@ -724,12 +856,12 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveUser(User user) {
-        saveData(user.getUsername(), gson.toJson(user), userInsert);
+        saveData(user.getUsername(), codec.encode(user), userInsert);
     }
 
     @Override
     public void updateUser(User user) {
-        updateData(user.getUsername(), gson.toJson(user), userUpdate);
+        updateData(user.getUsername(), codec.encode(user), userUpdate);
     }
 
     @Override
@@ -742,6 +874,63 @@ public class CassandraDataAccess implements DataAccess {
         return getData("workItem", WorkItem.class);
     }
 
+    /**
+     * The state, service and chain of each work item are kept in their own
+     * ref tables, keyed by the value, so pending work can be found without
+     * reading every work item. A ref row can briefly outlive a change to the
+     * work item, so the work items read through one are checked again.
+     */
+    @Override
+    public List<WorkItem> getWorkItems(WorkItemState state) {
+        List<WorkItem> workItems = new LinkedList<>();
+        for (WorkItem workItem : getRefWorkItems(state.toString(), workItemRefStateSelect)) {
+            if (workItem.getState() == state) {
+                workItems.add(workItem);
+            }
+        }
+        return workItems;
+    }
+
+    @Override
+    public List<WorkItem> getServiceWorkItems(String serviceId) {
+        List<WorkItem> workItems = new LinkedList<>();
+        for (WorkItem workItem : getRefWorkItems(serviceId, workItemRefServiceSelect)) {
+            if (workItem.getService() != null && serviceId.equals(workItem.getService().serviceId)) {
+                workItems.add(workItem);
+            }
+        }
+        return workItems;
+    }
+
+    @Override
+    public List<WorkItem> getChainWorkItems(String chainId) {
+        List<WorkItem> workItems = new LinkedList<>();
+        for (WorkItem workItem : getRefWorkItems(chainId, workItemRefChainSelect)) {
+            if (chainId.equals(workItem.getChainId())) {
+                workItems.add(workItem);
+            }
+        }
+        return workItems;
+    }
+
+    private List<WorkItem> getRefWorkItems(String key, PreparedStatement statement) {
+        BoundStatement boundStatement = new BoundStatement(statement);
+        ResultSet refs = session.execute(boundStatement.bind(key));
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (Row row : refs) {
+            boundStatement = new BoundStatement(workItemSelect);
+            futures.add(session.executeAsync(boundStatement.bind(row.getString("id"))));
+        }
+        List<WorkItem> workItems = new LinkedList<>();
+        for (ResultSet results : waitForFutures(futures)) {
+            Row row = results.one();
+            if (row != null) {
+                workItems.add(codec.decode(row.getString("data"), WorkItem.class));
+            }
+        }
+        return workItems;
+    }
+
     @Override
     public WorkItem getWorkItem(String id) {
         return getData(id, workItemSelect, WorkItem.class);
@@ -749,12 +938,163 @@ public class CassandraDataAccess implements DataAccess {
 
     @Override
     public void saveWorkItem(WorkItem workItem) {
-        saveData(workItem.getId(), gson.toJson(workItem), workItemInsert);
+        saveWorkItems(Collections.singletonList(workItem));
+    }
+
+    /**
+     * A plain insert, not a lightweight transaction like updateWorkItem and
+     * deleteWorkItems. Work items are saved once, under a new random id,
+     * before anything else can know about them, so there is no conditional
+     * write on the same row to race with. The only rewrite of existing rows
+     * is DataAccessUpdater, which runs at start up before work items are
+     * dispatched.
+     */
+    @Override
+    public void saveWorkItems(List<WorkItem> workItems) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (WorkItem workItem : workItems) {
+            String state = workItem.getState() == null ? null : workItem.getState().toString();
+            String serviceId = workItem.getService() == null ? null : workItem.getService().serviceId;
+            BoundStatement boundStatement = new BoundStatement(workItemInsert);
+            futures.add(session.executeAsync(boundStatement.bind(
+                    workItem.getId(),
+                    codec.encode(workItem),
+                    state,
+                    serviceId,
+                    workItem.getChainId())));
+            //The work item may have been saved before in another state
+            for (WorkItemState other : WorkItemState.values()) {
+                if (other != workItem.getState()) {
+                    executeRef(other.toString(), workItem.getId(), workItemRefStateDelete, futures);
+                }
+            }
+            executeRef(state, workItem.getId(), workItemRefStateInsert, futures);
+            executeRef(serviceId, workItem.getId(), workItemRefServiceInsert, futures);
+            executeRef(workItem.getChainId(), workItem.getId(), workItemRefChainInsert, futures);
+        }
+        waitForFutures(futures);
+    }
+
+    /**
+     * A lightweight transaction, so only one of several Hadrian instances
+     * racing on the same work item wins, and a deleted row, whose state no
+     * longer matches, is never written back. The state ref is only moved by
+     * the winner.
+     */
+    @Override
+    public boolean updateWorkItem(WorkItem workItem, WorkItemState expected) {
+        BoundStatement boundStatement = new BoundStatement(workItemUpdate);
+        boundStatement.bind(
+                codec.encode(workItem),
+                workItem.getState() == null ? null : workItem.getState().toString(),
+                workItem.getService() == null ? null : workItem.getService().serviceId,
+                workItem.getChainId(),
+                workItem.getId(),
+                expected.toString());
+        if (!session.execute(boundStatement).wasApplied()) {
+            return false;
+        }
+        if (workItem.getState() != expected) {
+            List<ResultSetFuture> futures = new LinkedList<>();
+            executeRef(workItem.getState() == null ? null : workItem.getState().toString(), workItem.getId(), workItemRefStateInsert, futures);
+            executeRef(expected.toString(), workItem.getId(), workItemRefStateDelete, futures);
+            waitForFutures(futures);
+        }
+        return true;
     }
 
     @Override
     public void deleteWorkItem(String id) {
-        deleteData(id, workItemDelete);
+        deleteWorkItems(Collections.singletonList(id));
+    }
+
+    /**
+     * Each work item is read first to find the ref rows to delete with it.
+     * The delete is a lightweight transaction, the same as updateWorkItem,
+     * as mixing plain and conditional writes on a row can let a plain write
+     * be ordered before a conditional one that it actually followed.
+     */
+    @Override
+    public void deleteWorkItems(List<String> ids) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (String id : ids) {
+            BoundStatement boundStatement = new BoundStatement(workItemSelect);
+            futures.add(session.executeAsync(boundStatement.bind(id)));
+        }
+        List<ResultSet> results = waitForFutures(futures);
+
+        futures = new LinkedList<>();
+        for (ResultSet result : results) {
+            Row row = result.one();
+            if (row == null) {
+                continue;
+            }
+            String id = row.getString("id");
+            BoundStatement boundStatement = new BoundStatement(workItemDelete);
+            futures.add(session.executeAsync(boundStatement.bind(id)));
+            executeRef(row.getString("state"), id, workItemRefStateDelete, futures);
+            executeRef(row.getString("serviceId"), id, workItemRefServiceDelete, futures);
+            executeRef(row.getString("chainId"), id, workItemRefChainDelete, futures);
+        }
+        waitForFutures(futures);
+    }
+
+    /**
+     * Work item rows written before the state, serviceId and chainId columns
+     * were added have none of the ref rows that getWorkItems(state),
+     * getServiceWorkItems and getChainWorkItems read through, so they would
+     * never be sent or cancelled. Their columns and refs are filled in from
+     * their data, as long as the row has not changed since it was read.
+     * Work items with no state at all are left to DataAccessUpdater.
+     */
+    void backfillWorkItemRefs() {
+        ResultSet results = session.execute("SELECT id, data, state FROM workItem;");
+        List<ResultSetFuture> futures = new LinkedList<>();
+        List<WorkItem> workItems = new LinkedList<>();
+        for (Row row : results) {
+            if (row.getString("state") != null) {
+                continue;
+            }
+            String data = row.getString("data");
+            WorkItem workItem = codec.decode(data, WorkItem.class);
+            if (workItem == null || workItem.getState() == null) {
+                continue;
+            }
+            BoundStatement boundStatement = new BoundStatement(workItemBackfill);
+            futures.add(session.executeAsync(boundStatement.bind(
+                    workItem.getState().toString(),
+                    workItem.getService() == null ? null : workItem.getService().serviceId,
+                    workItem.getChainId(),
+                    row.getString("id"),
+                    data)));
+            workItems.add(workItem);
+        }
+        if (workItems.isEmpty()) {
+            return;
+        }
+
+        Iterator<WorkItem> iterator = workItems.iterator();
+        int count = 0;
+        List<ResultSet> applied = waitForFutures(futures);
+        futures = new LinkedList<>();
+        for (ResultSet result : applied) {
+            WorkItem workItem = iterator.next();
+            if (result.wasApplied()) {
+                executeRef(workItem.getState().toString(), workItem.getId(), workItemRefStateInsert, futures);
+                executeRef(workItem.getService() == null ? null : workItem.getService().serviceId, workItem.getId(), workItemRefServiceInsert, futures);
+                executeRef(workItem.getChainId(), workItem.getId(), workItemRefChainInsert, futures);
+                count++;
+            }
+        }
+        waitForFutures(futures);
+        logger.info("Backfilled the state, service and chain refs of {} work items", count);
+    }
+
+    private void executeRef(String key, String id, PreparedStatement statement, List<ResultSetFuture> futures) {
+        if (key != null) {
+            BoundStatement boundStatement = new BoundStatement(statement);
+            futures.add(session.executeAsync(boundStatement.bind(key, id)));
+        }
     }
 
     @Override
@@ -774,28 +1114,52 @@ public class CassandraDataAccess implements DataAccess {
         session.execute(boundStatement.bind(id, status));
     }
 
+    @Override
+    public void saveWorkItemStatuses(Map<String, Integer> statuses) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (Map.Entry<String, Integer> entry : statuses.entrySet()) {
+            BoundStatement boundStatement = new BoundStatement(workItemStatusInsert);
+            futures.add(session.executeAsync(boundStatement.bind(entry.getKey(), entry.getValue())));
+        }
+        waitForFutures(futures);
+    }
+
     @Override
     public void saveAudit(Audit audit, String output) {
+        waitForFutures(insertAudit(audit, output, new LinkedList<>()));
+    }
+
+    @Override
+    public void saveAudits(List<Audit> audits, List<String> outputs) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (int i = 0; i < audits.size(); i++) {
+            insertAudit(audits.get(i), outputs.get(i), futures);
+        }
+        waitForFutures(futures);
+    }
+
+    private List<ResultSetFuture> insertAudit(Audit audit, String output, List<ResultSetFuture> futures) {
         audit.auditId = UUID.randomUUID().toString();
         Calendar c = new GregorianCalendar();
         c.setTime(audit.timePerformed);
         BoundStatement boundStatement = new BoundStatement(auditInsert);
-        session.execute(boundStatement.bind(
+        futures.add(session.executeAsync(boundStatement.bind(
                 audit.serviceId,
                 c.get(Calendar.YEAR),
                 c.get(Calendar.MONTH) + 1,
                 c.get(Calendar.DAY_OF_MONTH),
-                gson.toJson(audit)));
+                codec.encode(audit))));
 
         if (output == null) {
-            return;
+            return futures;
         }
         output = output.trim();
         if (output.isEmpty()) {
-            return;
+            return futures;
         }
         boundStatement = new BoundStatement(auditOutputInsert);
-        session.execute(boundStatement.bind(audit.serviceId, audit.auditId, output));
+        futures.add(session.executeAsync(boundStatement.bind(audit.serviceId, audit.auditId, output)));
+        return futures;
     }
 
     @Override
@@ -810,27 +1174,111 @@ public class CassandraDataAccess implements DataAccess {
         if (endDay > 31) {
             endDay = 31;
         }
-        int day = startDay;
-        while (day <= endDay) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        for (int day = startDay; day <= endDay; day++) {
             BoundStatement boundStatement = new BoundStatement(auditSelect);
-            ResultSet results = session.execute(boundStatement.bind(
+            futures.add(session.executeAsync(boundStatement.bind(
                     serviceId,
                     year,
                     month,
-                    day));
+                    day)));
+        }
+        for (ResultSet results : waitForFutures(futures)) {
             for (Row row : results) {
-                String data = row.getString("data");
-                Audit audit = gson.fromJson(data, Audit.class);
-                if (audit.auditId == null) {
-                    audit.auditId = UUID.randomUUID().toString();
+                audits.add(readAudit(row));
+            }
+        }
+        return audits;
+    }
+
+    @Override
+    public List<Audit> getAudit(String serviceId, Date start, Date end) {
+        List<ResultSetFuture> futures = new LinkedList<>();
+        Calendar c = new GregorianCalendar();
+        c.setTime(start);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        while (c.getTime().before(end)) {
+            BoundStatement boundStatement = new BoundStatement(auditSelect);
+            futures.add(session.executeAsync(boundStatement.bind(
+                    serviceId,
+                    c.get(Calendar.YEAR),
+                    c.get(Calendar.MONTH) + 1,
+                    c.get(Calendar.DAY_OF_MONTH))));
+            c.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        List<Audit> audits = new LinkedList<>();
+        for (ResultSet results : waitForFutures(futures)) {
+            for (Row row : results) {
+                Audit audit = readAudit(row);
+                if (!audit.timePerformed.before(start) && audit.timePerformed.before(end)) {
+                    audits.add(audit);
                 }
-                audits.add(audit);
             }
-            day++;
         }
         return audits;
     }
 
+    /**
+     * Reads the day partitions newest first, each one paged by the driver
+     * with a small fetch size, while the query for the next day is already
+     * in flight. Stops as soon as the consumer returns false.
+     */
+    @Override
+    public void streamAudit(String serviceId, Date start, Date end, Predicate<Audit> consumer) {
+        List<Calendar> days = new ArrayList<>();
+        Calendar c = new GregorianCalendar();
+        c.setTime(start);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        while (c.getTime().before(end)) {
+            days.add(0, (Calendar) c.clone());
+            c.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        if (days.isEmpty()) {
+            return;
+        }
+        ResultSetFuture future = selectAuditDay(serviceId, days.get(0));
+        for (int i = 0; i < days.size(); i++) {
+            ResultSet results = future.getUninterruptibly();
+            future = (i + 1 < days.size()) ? selectAuditDay(serviceId, days.get(i + 1)) : null;
+            for (Row row : results) {
+                Audit audit = readAudit(row);
+                if (!audit.timePerformed.before(start) && audit.timePerformed.before(end)) {
+                    if (!consumer.test(audit)) {
+                        if (future != null) {
+                            future.cancel(true);
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private ResultSetFuture selectAuditDay(String serviceId, Calendar day) {
+        BoundStatement boundStatement = new BoundStatement(auditSelectNewest);
+        boundStatement.setFetchSize(AUDIT_FETCH_SIZE);
+        return session.executeAsync(boundStatement.bind(
+                serviceId,
+                day.get(Calendar.YEAR),
+                day.get(Calendar.MONTH) + 1,
+                day.get(Calendar.DAY_OF_MONTH)));
+    }
+
+    private Audit readAudit(Row row) {
+        String data = row.getString("data");
+        Audit audit = codec.decode(data, Audit.class);
+        if (audit.auditId == null) {
+            audit.auditId = UUID.randomUUID().toString();
+        }
+        return audit;
+    }
+
     @Override
     public String getAuditOutput(String serviceId, String auditId) {
         BoundStatement boundStatement = new BoundStatement(auditOutputSelect);
@@ -846,7 +1294,7 @@ public class CassandraDataAccess implements DataAccess {
         List<T> listOfData = new LinkedList<>();
         for (Row row : results) {
             String data = row.getString("data");
-            listOfData.add(gson.fromJson(data, classOfT));
+            listOfData.add(codec.decode(data, classOfT));
         }
         return listOfData;
     }
@@ -856,7 +1304,7 @@ public class CassandraDataAccess implements DataAccess {
         ResultSet results = session.execute(boundStatement.bind(id));
         for (Row row : results) {
             String data = row.getString("data");
-            return gson.fromJson(data, classOfT);
+            return codec.decode(data, classOfT);
         }
         return null;
     }
@@ -882,7 +1330,7 @@ public class CassandraDataAccess implements DataAccess {
         List<T> listOfData = new LinkedList<>();
         for (Row row : results) {
             String data = row.getString("data");
-            listOfData.add(gson.fromJson(data, classOfT));
+            listOfData.add(codec.decode(data, classOfT));
         }
         return listOfData;
     }
@@ -892,7 +1340,7 @@ public class CassandraDataAccess implements DataAccess {
         ResultSet results = session.execute(boundStatement.bind(serviceId, id));
         for (Row row : results) {
             String data = row.getString("data");
-            return gson.fromJson(data, classOfT);
+            return codec.decode(data, classOfT);
         }
         return null;
     }
@@ -912,6 +1360,32 @@ public class CassandraDataAccess implements DataAccess {
         session.execute(boundStatement.bind(serviceId, id));
     }
 
+    /**
+     * Each batch only holds rows for a single partition, so it can be
+     * unlogged and is applied by the replicas as one mutation.
+     */
+    private BatchStatement getBatch(Map<String, BatchStatement> batches, String serviceId) {
+        BatchStatement batch = batches.get(serviceId);
+        if (batch == null) {
+            batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            batch.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+            batches.put(serviceId, batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Waits for all of the statements issued with executeAsync, returning
+     * their results in the order the statements were issued.
+     */
+    private List<ResultSet> waitForFutures(List<ResultSetFuture> futures) {
+        List<ResultSet> results = new LinkedList<>();
+        for (ResultSetFuture future : futures) {
+            results.add(future.getUninterruptibly());
+        }
+        return results;
+    }
+
     public void close() {
         session.close();
     }
@@ -21,6 +21,7 @@ import com.datastax.driver.core.Cluster.Builder;
 import com.datastax.driver.core.Host;
 import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
 import com.datastax.driver.core.exceptions.InvalidQueryException;
 import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
 import com.northernwall.hadrian.Const;
@@ -47,6 +48,7 @@ public class CassandraDataAccessFactory implements DataAccessFactory, Runnable {
         String keyspace = parameters.getString(Const.CASS_KEY_SPACE, Const.CASS_KEY_SPACE_DEFAULT);
         int replicationFactor = parameters.getInt(Const.CASS_REPLICATION_FACTOR, Const.CASS_REPLICATION_FACTOR_DEFAULT);
         int auditTimeToLive = parameters.getInt(Const.CASS_AUDIT_TTL_DAYS, Const.CASS_AUDIT_TTL_DAYS_DEFAULT) * 86_400;
+        String codecName = parameters.getString(Const.CASS_CODEC, Const.CASS_CODEC_DEFAULT);
 
         connect(nodes, dataCenter, username, password);
 
@@ -55,10 +57,21 @@ public class CassandraDataAccessFactory implements DataAccessFactory, Runnable {
         Thread thread = new Thread(this);
         Runtime.getRuntime().addShutdownHook(thread);
 
-        dataAccess = new CassandraDataAccess(cluster, keyspace, username, dataCenter, auditTimeToLive, metricRegistry);
+        dataAccess = new CassandraDataAccess(cluster, keyspace, username, dataCenter, auditTimeToLive, buildCodec(codecName), metricRegistry);
+        dataAccess.backfillWorkItemRefs();
         return dataAccess;
     }
 
+    private EntityCodec buildCodec(String codecName) {
+        if (codecName.equalsIgnoreCase(Const.CASS_CODEC_JSON)) {
+            return new JsonEntityCodec();
+        }
+        if (codecName.equalsIgnoreCase(Const.CASS_CODEC_COMPACT)) {
+            return new CompactEntityCodec();
+        }
+        throw new RuntimeException("Unknown " + Const.CASS_CODEC + " " + codecName);
+    }
+
     private void connect(String nodes, String dataCenter, String username, String password) {
         Builder builder = Cluster.builder();
         if (nodes == null || nodes.isEmpty()) {
@@ -104,7 +117,21 @@ public class CassandraDataAccessFactory implements DataAccessFactory, Runnable {
             session.execute("CREATE TABLE IF NOT EXISTS service (id text, data text, PRIMARY KEY (id));");
             session.execute("CREATE TABLE IF NOT EXISTS team (id text, data text, PRIMARY KEY (id));");
             session.execute("CREATE TABLE IF NOT EXISTS user (id text, data text, PRIMARY KEY (id));");
-            session.execute("CREATE TABLE IF NOT EXISTS workItem (id text, data text, PRIMARY KEY (id));");
+            session.execute("CREATE TABLE IF NOT EXISTS workItem (id text, data text, state text, serviceId text, chainId text, PRIMARY KEY (id));");
+            TableMetadata workItemTable = cluster.getMetadata().getKeyspace(keyspace).getTable("workItem");
+            for (String column : new String[]{"state", "serviceId", "chainId"}) {
+                if (workItemTable.getColumn(column) == null) {
+                    try {
+                        session.execute("ALTER TABLE workItem ADD " + column + " text;");
+                        logger.info("Added column {} to workItem", column);
+                    } catch (InvalidQueryException e) {
+                        logger.error("Could not add column {} to workItem, {}", column, e.getMessage());
+                    }
+                }
+            }
+            session.execute("DROP INDEX IF EXISTS workItemByState;");
+            session.execute("DROP INDEX IF EXISTS workItemByService;");
+            session.execute("DROP INDEX IF EXISTS workItemByChain;");
             session.execute("CREATE TABLE IF NOT EXISTS workItemStatus (id text, status int, PRIMARY KEY (id));");
             //Data tables below Service
             session.execute("CREATE TABLE IF NOT EXISTS customFunction (serviceId text, id text, data text, PRIMARY KEY (serviceId, id));");
@@ -133,6 +160,9 @@ public class CassandraDataAccessFactory implements DataAccessFactory, Runnable {
             }
             session.execute("CREATE TABLE IF NOT EXISTS moduleRefClient (clientServiceId text, clientModuleId text, serverServiceId text, serverModuleId text, PRIMARY KEY (clientServiceId, clientModuleId, serverServiceId, serverModuleId));");
             session.execute("CREATE TABLE IF NOT EXISTS moduleRefServer (serverServiceId text, serverModuleId text, clientServiceId text, clientModuleId text, PRIMARY KEY (serverServiceId, serverModuleId, clientServiceId, clientModuleId));");
+            session.execute("CREATE TABLE IF NOT EXISTS workItemRefState (state text, id text, PRIMARY KEY (state, id));");
+            session.execute("CREATE TABLE IF NOT EXISTS workItemRefService (serviceId text, id text, PRIMARY KEY (serviceId, id));");
+            session.execute("CREATE TABLE IF NOT EXISTS workItemRefChain (chainId text, id text, PRIMARY KEY (chainId, id));");
             //Audit table
             try {
                 session.execute("DROP TABLE audit;");
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.cassandra;
+
+import com.google.gson.JsonElement;
+import java.util.Base64;
+
+/**
+ * Stores entities in the CompactFormat binary layout, base64 encoded behind
+ * a version header so it still fits the existing text data column. Small
+ * entities such as Host come out larger than their JSON once base64
+ * encoded, so a row is only written compact when that makes it smaller.
+ */
+public class CompactEntityCodec extends JsonEntityCodec {
+
+    @Override
+    public String encode(Object entity) {
+        JsonElement tree = gson.toJsonTree(entity);
+        String json = gson.toJson(tree);
+        String compact = new StringBuilder()
+                .append(HEADER)
+                .append(VERSION_2)
+                .append(Base64.getEncoder().encodeToString(CompactFormat.write(tree)))
+                .toString();
+        return compact.length() < json.length() ? compact : json;
+    }
+
+}
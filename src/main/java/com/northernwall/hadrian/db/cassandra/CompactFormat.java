@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.cassandra;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A binary layout for the JSON tree of an entity. Field names and string
+ * values are written once to a string table at the front and referred to by
+ * index, so the ids repeated across a WorkItem's nested data cost a byte or
+ * two each time. Integers are zig-zag varints. Field names are kept, so
+ * entities can gain and lose fields exactly as they can in JSON.
+ *
+ * The first byte holds flags. Bodies over DEFLATE_THRESHOLD bytes are
+ * deflated when that makes them smaller, in which case the body's length
+ * follows the flags so it can be inflated in to an array of the right size.
+ */
+class CompactFormat {
+
+    private static final int FLAG_DEFLATED = 1;
+    private static final int DEFLATE_THRESHOLD = 256;
+    /**
+     * Deflate can not shrink data by more than about 1032 to 1.
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater());
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 4;
+    private static final int STRING = 5;
+    private static final int ARRAY = 6;
+    private static final int OBJECT = 7;
+
+    static byte[] write(JsonElement element) {
+        Writer writer = new Writer();
+        writer.writeValue(element);
+
+        Buffer body = new Buffer(writer.out.size() + 16 * writer.strings.size());
+        body.writeVarint(writer.strings.size());
+        for (String string : writer.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            body.writeVarint(bytes.length);
+            body.write(bytes, 0, bytes.length);
+        }
+        writer.out.writeTo(body);
+
+        byte[] bytes = body.toByteArray();
+        if (bytes.length > DEFLATE_THRESHOLD) {
+            Buffer deflated = new Buffer(bytes.length / 2 + 16);
+            deflated.write(FLAG_DEFLATED);
+            deflated.writeVarint(bytes.length);
+            deflate(bytes, deflated);
+            if (deflated.size() < bytes.length) {
+                return deflated.toByteArray();
+            }
+        }
+        byte[] result = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, result, 1, bytes.length);
+        return result;
+    }
+
+    static JsonElement read(byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new RuntimeException("Empty compact entity");
+        }
+        if ((bytes[0] & ~FLAG_DEFLATED) != 0) {
+            throw new RuntimeException("Unknown compact entity flags " + bytes[0]);
+        }
+        Reader reader = new Reader(bytes, 1);
+        if (bytes[0] == FLAG_DEFLATED) {
+            int length = reader.readVarint();
+            if (length / MAX_DEFLATE_RATIO > bytes.length) {
+                throw new RuntimeException("Corrupt compact entity, bad length " + length);
+            }
+            byte[] body = new byte[length];
+            inflate(bytes, reader.position, body);
+            reader = new Reader(body, 0);
+        }
+        int count = reader.readVarint();
+        reader.strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = reader.readVarint();
+            if (length > reader.bytes.length - reader.position) {
+                throw new RuntimeException("Truncated compact entity");
+            }
+            reader.strings[i] = new String(reader.bytes, reader.position, length, StandardCharsets.UTF_8);
+            reader.position += length;
+        }
+        JsonElement element = reader.readValue();
+        if (reader.position != reader.bytes.length) {
+            throw new RuntimeException("Corrupt compact entity, " + (reader.bytes.length - reader.position) + " trailing bytes");
+        }
+        return element;
+    }
+
+    private static void deflate(byte[] bytes, Buffer out) {
+        Deflater deflater = DEFLATERS.get();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static void inflate(byte[] bytes, int offset, byte[] body) {
+        Inflater inflater = INFLATERS.get();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            int count = 0;
+            while (count < body.length) {
+                int inflated = inflater.inflate(body, count, body.length - count);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("Truncated compact entity");
+                }
+                count += inflated;
+            }
+            if (!inflater.finished() && inflater.inflate(new byte[1]) != 0) {
+                throw new RuntimeException("Corrupt compact entity, longer than recorded");
+            }
+            if (!inflater.finished()) {
+                throw new RuntimeException("Truncated compact entity");
+            }
+        } catch (DataFormatException ex) {
+            throw new RuntimeException("Corrupt compact entity", ex);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+
+        private Buffer(int size) {
+            super(size);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private void writeTo(Buffer other) {
+            other.write(buf, 0, count);
+        }
+
+    }
+
+    private static class Writer {
+
+        private final Buffer out = new Buffer(256);
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        private void writeString(String string) {
+            Integer index = indexes.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                indexes.put(string, index);
+            }
+            out.writeVarint(index);
+        }
+
+        private void writeValue(JsonElement element) {
+            if (element == null || element.isJsonNull()) {
+                out.write(NULL);
+            } else if (element.isJsonObject()) {
+                JsonObject object = element.getAsJsonObject();
+                out.write(OBJECT);
+                out.writeVarint(object.entrySet().size());
+                for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                    writeString(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (element.isJsonArray()) {
+                JsonArray array = element.getAsJsonArray();
+                out.write(ARRAY);
+                out.writeVarint(array.size());
+                for (JsonElement item : array) {
+                    writeValue(item);
+                }
+            } else {
+                writePrimitive(element.getAsJsonPrimitive());
+            }
+        }
+
+        private void writePrimitive(JsonPrimitive primitive) {
+            if (primitive.isBoolean()) {
+                out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                double value = primitive.getAsDouble();
+                long longValue = (long) value;
+                if (longValue == value && !(value == 0 && 1 / value < 0)) {
+                    out.write(INTEGER);
+                    out.writeVarint((longValue << 1) ^ (longValue >> 63));
+                } else {
+                    out.write(DOUBLE);
+                    long bits = Double.doubleToLongBits(value);
+                    for (int i = 56; i >= 0; i -= 8) {
+                        out.write((int) (bits >>> i));
+                    }
+                }
+            } else {
+                out.write(STRING);
+                writeString(primitive.getAsString());
+            }
+        }
+
+    }
+
+    private static class Reader {
+
+        private final byte[] bytes;
+        private int position;
+        private String[] strings;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private int readByte() {
+            if (position >= bytes.length) {
+                throw new RuntimeException("Truncated compact entity");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("Corrupt compact entity, varint too long");
+        }
+
+        private int readVarint() {
+            long value = readLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new RuntimeException("Corrupt compact entity, bad length " + value);
+            }
+            return (int) value;
+        }
+
+        private String readString() {
+            int index = readVarint();
+            if (index >= strings.length) {
+                throw new RuntimeException("Corrupt compact entity, bad string " + index);
+            }
+            return strings[index];
+        }
+
+        private JsonElement readValue() {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return JsonNull.INSTANCE;
+                case TRUE:
+                    return new JsonPrimitive(true);
+                case FALSE:
+                    return new JsonPrimitive(false);
+                case INTEGER:
+                    long zigzag = readLong();
+                    return new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+                case DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return new JsonPrimitive(Double.longBitsToDouble(bits));
+                case STRING:
+                    return new JsonPrimitive(readString());
+                case ARRAY:
+                    int size = readVarint();
+                    JsonArray array = new JsonArray();
+                    for (int i = 0; i < size; i++) {
+                        array.add(readValue());
+                    }
+                    return array;
+                case OBJECT:
+                    int fields = readVarint();
+                    JsonObject object = new JsonObject();
+                    for (int i = 0; i < fields; i++) {
+                        String name = readString();
+                        object.add(name, readValue());
+                    }
+                    return object;
+                default:
+                    throw new RuntimeException("Corrupt compact entity, unknown tag " + tag);
+            }
+        }
+
+    }
+
+    private CompactFormat() {
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.cassandra;
+
+/**
+ * Converts an entity to and from the string stored in the data column of
+ * the Cassandra tables. Every codec must be able to decode rows written by
+ * any other codec, so the codec can be changed on a live keyspace.
+ */
+public interface EntityCodec {
+
+    String encode(Object entity);
+
+    <T extends Object> T decode(String data, Class<T> classOfT);
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.cassandra;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Stores entities as plain JSON, the original format of the data column.
+ * Rows written by CompactEntityCodec are recognized by their header and
+ * decoded as well.
+ */
+public class JsonEntityCodec implements EntityCodec {
+
+    /**
+     * Prefix of rows written by CompactEntityCodec, followed by a one
+     * character format version. JSON rows always start with '{' or '['.
+     */
+    protected static final char HEADER = '~';
+    /**
+     * Deflated JSON, written by the first compact codec. Only read.
+     */
+    protected static final char VERSION_1 = '1';
+    /**
+     * The CompactFormat binary layout.
+     */
+    protected static final char VERSION_2 = '2';
+
+    protected final Gson gson;
+
+    public JsonEntityCodec() {
+        gson = new Gson();
+    }
+
+    @Override
+    public String encode(Object entity) {
+        return gson.toJson(entity);
+    }
+
+    @Override
+    public <T extends Object> T decode(String data, Class<T> classOfT) {
+        if (data == null || data.isEmpty()) {
+            return null;
+        }
+        if (data.charAt(0) != HEADER) {
+            return gson.fromJson(data, classOfT);
+        }
+        if (data.length() >= 2 && data.charAt(1) == VERSION_2) {
+            return gson.fromJson(CompactFormat.read(Base64.getDecoder().decode(data.substring(2))), classOfT);
+        }
+        if (data.length() >= 2 && data.charAt(1) == VERSION_1) {
+            return gson.fromJson(inflate(Base64.getDecoder().decode(data.substring(2))), classOfT);
+        }
+        throw new RuntimeException("Unknown entity encoding for " + classOfT.getSimpleName());
+    }
+
+    private static String inflate(byte[] bytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("Truncated compact entity");
+                }
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException ex) {
+            throw new RuntimeException("Corrupt compact entity", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -28,9 +28,12 @@ import com.northernwall.hadrian.domain.ModuleRef;
 import com.northernwall.hadrian.domain.Team;
 import com.northernwall.hadrian.domain.User;
 import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
 import com.northernwall.hadrian.utilityHandlers.HealthWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,26 +41,49 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Predicate;
 
 /**
+ * The entity maps are what gets persisted to the data file, so they are
+ * declared with concrete thread safe types for Gson to instantiate on load.
+ * The transient indexes are derived from them and are rebuilt by
+ * buildIndexes() after a load.
  *
  * @author Richard Thurston
  */
 public class InMemoryDataAccess implements DataAccess {
 
+    private static final int MAX_AUDITS = 1000;
+    private static final long WORK_ITEM_STATUS_TTL = 24 * 60 * 60 * 1000L;
+
     private String version;
-    private final Map<String, Team> teams;
-    private final Map<String, Service> services;
-    private final Map<String, Host> hosts;
-    private final Map<String, Vip> vips;
-    private final List<ModuleRef> moduleRefs;
-    private final Map<String, CustomFunction> customFunctions;
-    private final Map<String, Module> modules;
-    private final Map<String, DataStore> dataStores;
-    private final Map<String, WorkItem> workItems;
-    private final Map<String, User> users;
-    private final List<Audit> audits;
-    private final Map<String, ModuleFile> moduleFiles;
+    private final ConcurrentHashMap<String, Team> teams;
+    private final ConcurrentHashMap<String, Service> services;
+    private final ConcurrentHashMap<String, Host> hosts;
+    private final ConcurrentHashMap<String, Vip> vips;
+    private final CopyOnWriteArrayList<ModuleRef> moduleRefs;
+    private final ConcurrentHashMap<String, CustomFunction> customFunctions;
+    private final ConcurrentHashMap<String, Module> modules;
+    private final ConcurrentHashMap<String, DataStore> dataStores;
+    private final ConcurrentHashMap<String, WorkItem> workItems;
+    private final ConcurrentHashMap<String, WorkItemStatus> workItemStatuses;
+    private final ConcurrentHashMap<String, User> users;
+    private final LinkedBlockingDeque<Audit> audits;
+    private final ConcurrentHashMap<String, ModuleFile> moduleFiles;
+
+    private final transient Map<String, Map<String, Host>> hostsByService;
+    private final transient Map<String, Host> hostsByName;
+    private final transient Map<String, Map<String, Vip>> vipsByService;
+    private final transient Map<String, Map<String, CustomFunction>> customFunctionsByService;
+    private final transient Map<String, Map<String, Module>> modulesByService;
+    private final transient Map<String, List<ModuleRef>> moduleRefsByClient;
+    private final transient Map<String, List<ModuleRef>> moduleRefsByServer;
+    private final transient Map<String, WorkItemState> workItemStates;
+    private final transient Map<String, Map<String, WorkItem>> workItemsByState;
+    private final transient Map<String, Map<String, WorkItem>> workItemsByService;
+    private final transient Map<String, Map<String, WorkItem>> workItemsByChain;
 
     public InMemoryDataAccess() {
         version = null;
@@ -65,14 +91,52 @@ public class InMemoryDataAccess implements DataAccess {
         services = new ConcurrentHashMap<>();
         hosts = new ConcurrentHashMap<>();
         vips = new ConcurrentHashMap<>();
-        moduleRefs = new LinkedList<>();
+        moduleRefs = new CopyOnWriteArrayList<>();
         customFunctions = new ConcurrentHashMap<>();
         modules = new ConcurrentHashMap<>();
         dataStores = new ConcurrentHashMap<>();
         workItems = new ConcurrentHashMap<>();
+        workItemStatuses = new ConcurrentHashMap<>();
         users = new ConcurrentHashMap<>();
-        audits = new LinkedList<>();
+        audits = new LinkedBlockingDeque<>();
         moduleFiles = new ConcurrentHashMap<>();
+
+        hostsByService = new ConcurrentHashMap<>();
+        hostsByName = new ConcurrentHashMap<>();
+        vipsByService = new ConcurrentHashMap<>();
+        customFunctionsByService = new ConcurrentHashMap<>();
+        modulesByService = new ConcurrentHashMap<>();
+        moduleRefsByClient = new ConcurrentHashMap<>();
+        moduleRefsByServer = new ConcurrentHashMap<>();
+        workItemStates = new ConcurrentHashMap<>();
+        workItemsByState = new ConcurrentHashMap<>();
+        workItemsByService = new ConcurrentHashMap<>();
+        workItemsByChain = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Rebuilds the transient indexes from the entity maps, called after the
+     * entity maps have been loaded from the data file.
+     */
+    public void buildIndexes() {
+        for (Host host : hosts.values()) {
+            indexHost(host);
+        }
+        for (Vip vip : vips.values()) {
+            index(vipsByService, vip.getServiceId(), vip.getVipId(), vip);
+        }
+        for (CustomFunction customFunction : customFunctions.values()) {
+            index(customFunctionsByService, customFunction.getServiceId(), customFunction.getCustomFunctionId(), customFunction);
+        }
+        for (Module module : modules.values()) {
+            index(modulesByService, module.getServiceId(), module.getModuleId(), module);
+        }
+        for (ModuleRef moduleRef : moduleRefs) {
+            indexModuleRef(moduleRef);
+        }
+        for (WorkItem workItem : workItems.values()) {
+            indexWorkItem(workItem);
+        }
     }
 
     @Override
@@ -155,24 +219,15 @@ public class InMemoryDataAccess implements DataAccess {
 
     @Override
     public List<Host> getHosts(String serviceId) {
-        List<Host> temp = new LinkedList<>();
-        for (Host host : hosts.values()) {
-            if (host.getServiceId().equals(serviceId)) {
-                temp.add(host);
-            }
-        }
-        Collections.sort(temp);
-        return temp;
+        return list(hostsByService, serviceId);
     }
 
     @Override
     public Host getHost(String hostName) {
-        for (Host host : hosts.values()) {
-            if (host.getHostName().equalsIgnoreCase(hostName)) {
-                return host;
-            }
+        if (hostName == null) {
+            return null;
         }
-        return null;
+        return hostsByName.get(hostName.toLowerCase());
     }
 
     @Override
@@ -183,28 +238,42 @@ public class InMemoryDataAccess implements DataAccess {
     @Override
     public void saveHost(Host host) {
         hosts.put(host.getHostId(), host);
+        indexHost(host);
+    }
+
+    @Override
+    public void saveHosts(List<Host> hosts) {
+        for (Host host : hosts) {
+            saveHost(host);
+        }
     }
 
     @Override
     public void updateHost(Host host) {
-        hosts.put(host.getHostId(), host);
+        Host oldHost = hosts.put(host.getHostId(), host);
+        if (oldHost != null && !oldHost.getHostName().equalsIgnoreCase(host.getHostName())) {
+            hostsByName.remove(oldHost.getHostName().toLowerCase());
+        }
+        indexHost(host);
+    }
+
+    @Override
+    public void updateHosts(List<Host> hosts) {
+        for (Host host : hosts) {
+            updateHost(host);
+        }
     }
 
     @Override
     public void deleteHost(Host host) {
         hosts.remove(host.getHostId());
+        unindex(hostsByService, host.getServiceId(), host.getHostId());
+        hostsByName.remove(host.getHostName().toLowerCase());
     }
 
     @Override
     public List<Vip> getVips(String serviceId) {
-        List<Vip> temp = new LinkedList<>();
-        for (Vip vip : vips.values()) {
-            if (vip.getServiceId().equals(serviceId)) {
-                temp.add(vip);
-            }
-        }
-        Collections.sort(temp);
-        return temp;
+        return list(vipsByService, serviceId);
     }
 
     @Override
@@ -215,65 +284,67 @@ public class InMemoryDataAccess implements DataAccess {
     @Override
     public void saveVip(Vip vip) {
         vips.put(vip.getVipId(), vip);
+        index(vipsByService, vip.getServiceId(), vip.getVipId(), vip);
     }
 
     @Override
     public void updateVip(Vip vip) {
         vips.put(vip.getVipId(), vip);
+        index(vipsByService, vip.getServiceId(), vip.getVipId(), vip);
     }
 
     @Override
     public void deleteVip(String serviceId, String vipId) {
         vips.remove(vipId);
+        unindex(vipsByService, serviceId, vipId);
     }
 
     @Override
     public List<ModuleRef> getModuleRefs() {
-        return moduleRefs;
+        return new LinkedList<>(moduleRefs);
     }
 
     @Override
     public List<ModuleRef> getModuleRefsByClient(String clientServiceId, String clientModuleId) {
-        List<ModuleRef> temp = new LinkedList<>();
-        for (ModuleRef moduleRef : moduleRefs) {
-            if (moduleRef.getClientServiceId().equals(clientServiceId) && moduleRef.getClientModuleId().equals(clientModuleId)) {
-                temp.add(moduleRef);
-            }
+        List<ModuleRef> temp = moduleRefsByClient.get(buildKey(clientServiceId, clientModuleId));
+        if (temp == null) {
+            return new LinkedList<>();
         }
-        return temp;
+        return new LinkedList<>(temp);
     }
 
     @Override
     public List<ModuleRef> getModuleRefsByServer(String serverServiceId, String serverModuleId) {
-        List<ModuleRef> temp = new LinkedList<>();
-        for (ModuleRef moduleRef : moduleRefs) {
-            if (moduleRef.getServerServiceId().equals(serverServiceId) && moduleRef.getServerModuleId().equals(serverModuleId)) {
-                temp.add(moduleRef);
-            }
+        List<ModuleRef> temp = moduleRefsByServer.get(buildKey(serverServiceId, serverModuleId));
+        if (temp == null) {
+            return new LinkedList<>();
         }
-        return temp;
+        return new LinkedList<>(temp);
     }
 
     @Override
     public void saveModuleRef(ModuleRef moduleRef) {
         moduleRefs.add(moduleRef);
+        indexModuleRef(moduleRef);
     }
 
     @Override
     public void deleteModuleRef(String clientServiceId, String clientModuleId, String serverServiceId, String serverModuleId) {
-        moduleRefs.removeIf(new ModuleRefPredicate(clientServiceId, clientModuleId, serverServiceId, serverModuleId));
+        ModuleRefPredicate predicate = new ModuleRefPredicate(clientServiceId, clientModuleId, serverServiceId, serverModuleId);
+        moduleRefs.removeIf(predicate);
+        List<ModuleRef> temp = moduleRefsByClient.get(buildKey(clientServiceId, clientModuleId));
+        if (temp != null) {
+            temp.removeIf(predicate);
+        }
+        temp = moduleRefsByServer.get(buildKey(serverServiceId, serverModuleId));
+        if (temp != null) {
+            temp.removeIf(predicate);
+        }
     }
 
     @Override
     public List<CustomFunction> getCustomFunctions(String serviceId) {
-        List<CustomFunction> temp = new LinkedList<>();
-        for (CustomFunction customFunction : customFunctions.values()) {
-            if (customFunction.getServiceId().equals(serviceId)) {
-                temp.add(customFunction);
-            }
-        }
-        Collections.sort(temp);
-        return temp;
+        return list(customFunctionsByService, serviceId);
     }
 
     @Override
@@ -284,24 +355,33 @@ public class InMemoryDataAccess implements DataAccess {
     @Override
     public void saveCustomFunction(CustomFunction customFunction) {
         customFunctions.put(customFunction.getCustomFunctionId(), customFunction);
+        index(customFunctionsByService, customFunction.getServiceId(), customFunction.getCustomFunctionId(), customFunction);
     }
 
     @Override
     public void updateCustomFunction(CustomFunction customFunction) {
         customFunctions.put(customFunction.getCustomFunctionId(), customFunction);
+        index(customFunctionsByService, customFunction.getServiceId(), customFunction.getCustomFunctionId(), customFunction);
     }
 
     @Override
     public void deleteCustomFunction(String serviceId, String customFunctionId) {
         customFunctions.remove(customFunctionId);
+        unindex(customFunctionsByService, serviceId, customFunctionId);
     }
 
     @Override
     public List<Module> getModules(String serviceId) {
+        return list(modulesByService, serviceId);
+    }
+
+    @Override
+    public List<Module> getModules(Collection<String> serviceIds) {
         List<Module> temp = new LinkedList<>();
-        for (Module module : modules.values()) {
-            if (module.getServiceId().equals(serviceId)) {
-                temp.add(module);
+        for (String serviceId : serviceIds) {
+            Map<String, Module> serviceModules = modulesByService.get(serviceId);
+            if (serviceModules != null) {
+                temp.addAll(serviceModules.values());
             }
         }
         Collections.sort(temp);
@@ -316,16 +396,19 @@ public class InMemoryDataAccess implements DataAccess {
     @Override
     public void saveModule(Module module) {
         modules.put(module.getModuleId(), module);
+        index(modulesByService, module.getServiceId(), module.getModuleId(), module);
     }
 
     @Override
     public void updateModule(Module module) {
         modules.put(module.getModuleId(), module);
+        index(modulesByService, module.getServiceId(), module.getModuleId(), module);
     }
 
     @Override
     public void deleteModule(String serviceId, String moduleId) {
         modules.remove(moduleId);
+        unindex(modulesByService, serviceId, moduleId);
     }
 
     @Override
@@ -428,6 +511,21 @@ public class InMemoryDataAccess implements DataAccess {
         return temp;
     }
 
+    @Override
+    public List<WorkItem> getWorkItems(WorkItemState state) {
+        return listWorkItems(workItemsByState, state.toString());
+    }
+
+    @Override
+    public List<WorkItem> getServiceWorkItems(String serviceId) {
+        return listWorkItems(workItemsByService, serviceId);
+    }
+
+    @Override
+    public List<WorkItem> getChainWorkItems(String chainId) {
+        return listWorkItems(workItemsByChain, chainId);
+    }
+
     @Override
     public WorkItem getWorkItem(String id) {
         return workItems.get(id);
@@ -435,22 +533,136 @@ public class InMemoryDataAccess implements DataAccess {
 
     @Override
     public void saveWorkItem(WorkItem workItem) {
-        workItems.put(workItem.getId(), workItem);
+        synchronized (workItems) {
+            putWorkItem(workItem);
+        }
+    }
+
+    @Override
+    public void saveWorkItems(List<WorkItem> workItems) {
+        synchronized (this.workItems) {
+            for (WorkItem workItem : workItems) {
+                putWorkItem(workItem);
+            }
+        }
+    }
+
+    /**
+     * The expected state is compared with the state the work item was last
+     * saved in, not the one it carries, as the caller may be holding the
+     * stored object and have already changed it.
+     */
+    @Override
+    public boolean updateWorkItem(WorkItem workItem, WorkItemState expected) {
+        synchronized (workItems) {
+            if (!workItems.containsKey(workItem.getId())
+                    || workItemStates.get(workItem.getId()) != expected) {
+                return false;
+            }
+            putWorkItem(workItem);
+            return true;
+        }
     }
 
     @Override
     public void deleteWorkItem(String id) {
-        workItems.remove(id);
+        synchronized (workItems) {
+            removeWorkItem(id);
+        }
+    }
+
+    @Override
+    public void deleteWorkItems(List<String> ids) {
+        synchronized (workItems) {
+            for (String id : ids) {
+                removeWorkItem(id);
+            }
+        }
+    }
+
+    /**
+     * Callers hold the workItems lock, so a work item is never in the map
+     * without its index entries.
+     */
+    private void putWorkItem(WorkItem workItem) {
+        removeWorkItem(workItem.getId());
+        workItems.put(workItem.getId(), workItem);
+        indexWorkItem(workItem);
+    }
+
+    private void removeWorkItem(String id) {
+        WorkItemState state = workItemStates.remove(id);
+        if (state != null) {
+            unindexWorkItem(workItemsByState, state.toString(), id);
+        }
+        WorkItem workItem = workItems.remove(id);
+        if (workItem != null) {
+            if (workItem.getService() != null) {
+                unindexWorkItem(workItemsByService, workItem.getService().serviceId, id);
+            }
+            if (workItem.getChainId() != null) {
+                unindexWorkItem(workItemsByChain, workItem.getChainId(), id);
+            }
+        }
+    }
+
+    private void indexWorkItem(WorkItem workItem) {
+        if (workItem.getState() != null) {
+            workItemStates.put(workItem.getId(), workItem.getState());
+            index(workItemsByState, workItem.getState().toString(), workItem.getId(), workItem);
+        }
+        if (workItem.getService() != null) {
+            index(workItemsByService, workItem.getService().serviceId, workItem.getId(), workItem);
+        }
+        if (workItem.getChainId() != null) {
+            index(workItemsByChain, workItem.getChainId(), workItem.getId(), workItem);
+        }
+    }
 
+    /**
+     * Unlike services, chains come and go, so an emptied chain entry is
+     * dropped.
+     */
+    private static void unindexWorkItem(Map<String, Map<String, WorkItem>> index, String key, String id) {
+        index.computeIfPresent(key, (k, indexed) -> {
+            indexed.remove(id);
+            return indexed.isEmpty() ? null : indexed;
+        });
+    }
+
+    private static List<WorkItem> listWorkItems(Map<String, Map<String, WorkItem>> index, String key) {
+        Map<String, WorkItem> indexed = index.get(key);
+        if (indexed == null) {
+            return new LinkedList<>();
+        }
+        return new LinkedList<>(indexed.values());
     }
 
     @Override
     public int getWorkItemStatus(String id) {
-        return 200;
+        WorkItemStatus workItemStatus = workItemStatuses.get(id);
+        if (workItemStatus == null || workItemStatus.time < System.currentTimeMillis() - WORK_ITEM_STATUS_TTL) {
+            return -1;
+        }
+        return workItemStatus.status;
     }
 
+    /**
+     * Statuses are kept for a day, the same as the TTL the Cassandra store
+     * writes them with, expired ones are dropped as new ones are saved.
+     */
     @Override
     public void saveWorkItemStatus(String id, int status) {
+        long now = System.currentTimeMillis();
+        workItemStatuses.values().removeIf(workItemStatus -> workItemStatus.time < now - WORK_ITEM_STATUS_TTL);
+        workItemStatuses.put(id, new WorkItemStatus(status, now));
+    }
+
+    @Override
+    public void saveWorkItemStatuses(Map<String, Integer> statuses) {
+        for (Map.Entry<String, Integer> entry : statuses.entrySet()) {
+            saveWorkItemStatus(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
@@ -482,15 +694,24 @@ public class InMemoryDataAccess implements DataAccess {
 
     @Override
     public void saveAudit(Audit audit, String output) {
-        audit.auditId = UUID.randomUUID().toString();
+        if (audit.auditId == null) {
+            audit.auditId = UUID.randomUUID().toString();
+        }
         synchronized (audits) {
-            audits.add(audit);
-            if (audits.size() > 1000) {
-                audits.remove(0);
+            audits.addLast(audit);
+            while (audits.size() > MAX_AUDITS) {
+                audits.pollFirst();
             }
         }
     }
 
+    @Override
+    public void saveAudits(List<Audit> audits, List<String> outputs) {
+        for (int i = 0; i < audits.size(); i++) {
+            saveAudit(audits.get(i), outputs.get(i));
+        }
+    }
+
     @Override
     public List<Audit> getAudit(String serviceId, int year, int month, int startDay, int endDay) {
         List<Audit> temp = new LinkedList<>();
@@ -505,9 +726,90 @@ public class InMemoryDataAccess implements DataAccess {
         return temp;
     }
 
+    @Override
+    public List<Audit> getAudit(String serviceId, Date start, Date end) {
+        List<Audit> temp = new LinkedList<>();
+        for (Audit audit : audits) {
+            if (audit.serviceId.equals(serviceId)
+                    && audit.timePerformed != null
+                    && !audit.timePerformed.before(start)
+                    && audit.timePerformed.before(end)) {
+                temp.add(audit);
+            }
+        }
+        return temp;
+    }
+
+    @Override
+    public void streamAudit(String serviceId, Date start, Date end, Predicate<Audit> consumer) {
+        Iterator<Audit> it = audits.descendingIterator();
+        while (it.hasNext()) {
+            Audit audit = it.next();
+            if (audit.serviceId.equals(serviceId)
+                    && audit.timePerformed != null
+                    && !audit.timePerformed.before(start)
+                    && audit.timePerformed.before(end)) {
+                if (!consumer.test(audit)) {
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
     public String getAuditOutput(String serviceId, String auditId) {
         return null;
     }
 
+    private void indexHost(Host host) {
+        index(hostsByService, host.getServiceId(), host.getHostId(), host);
+        hostsByName.put(host.getHostName().toLowerCase(), host);
+    }
+
+    private void indexModuleRef(ModuleRef moduleRef) {
+        moduleRefsByClient.computeIfAbsent(
+                buildKey(moduleRef.getClientServiceId(), moduleRef.getClientModuleId()),
+                k -> new CopyOnWriteArrayList<>()).add(moduleRef);
+        moduleRefsByServer.computeIfAbsent(
+                buildKey(moduleRef.getServerServiceId(), moduleRef.getServerModuleId()),
+                k -> new CopyOnWriteArrayList<>()).add(moduleRef);
+    }
+
+    private static <T> void index(Map<String, Map<String, T>> index, String serviceId, String id, T entity) {
+        index.computeIfAbsent(serviceId, k -> new ConcurrentHashMap<>()).put(id, entity);
+    }
+
+    private static <T> void unindex(Map<String, Map<String, T>> index, String serviceId, String id) {
+        Map<String, T> serviceEntities = index.get(serviceId);
+        if (serviceEntities != null) {
+            serviceEntities.remove(id);
+        }
+    }
+
+    private static <T extends Comparable<T>> List<T> list(Map<String, Map<String, T>> index, String serviceId) {
+        Map<String, T> serviceEntities = index.get(serviceId);
+        if (serviceEntities == null) {
+            return new LinkedList<>();
+        }
+        List<T> temp = new LinkedList<>(serviceEntities.values());
+        Collections.sort(temp);
+        return temp;
+    }
+
+    private static String buildKey(String serviceId, String moduleId) {
+        return serviceId + "/" + moduleId;
+    }
+
+    private static class WorkItemStatus {
+
+        private final int status;
+        private final long time;
+
+        private WorkItemStatus(int status, long time) {
+            this.status = status;
+            this.time = time;
+        }
+
+    }
+
 }
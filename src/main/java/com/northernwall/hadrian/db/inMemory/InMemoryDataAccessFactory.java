@@ -45,6 +45,8 @@ public class InMemoryDataAccessFactory implements DataAccessFactory, Runnable {
         if (dataAccess == null) {
             logger.info("Creating a new In Memory store");
             dataAccess = new InMemoryDataAccess();
+        } else {
+            dataAccess.buildIndexes();
         }
         
         Thread thread = new Thread(this);
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.journal;
+
+/**
+ * The mutations recorded in the journal, one per write method of DataAccess.
+ */
+public enum JournalAction {
+    SET_VERSION,
+    SAVE_TEAM,
+    UPDATE_TEAM,
+    SAVE_SERVICE,
+    UPDATE_SERVICE,
+    SAVE_HOST,
+    UPDATE_HOST,
+    DELETE_HOST,
+    SAVE_VIP,
+    UPDATE_VIP,
+    DELETE_VIP,
+    SAVE_MODULE_REF,
+    DELETE_MODULE_REF,
+    SAVE_CUSTOM_FUNCTION,
+    UPDATE_CUSTOM_FUNCTION,
+    DELETE_CUSTOM_FUNCTION,
+    SAVE_MODULE,
+    UPDATE_MODULE,
+    DELETE_MODULE,
+    SAVE_MODULE_FILE,
+    UPDATE_MODULE_FILE,
+    DELETE_MODULE_FILE,
+    SAVE_DATA_STORE,
+    UPDATE_DATA_STORE,
+    DELETE_DATA_STORE,
+    SAVE_USER,
+    UPDATE_USER,
+    DELETE_USER,
+    SAVE_WORK_ITEM,
+    DELETE_WORK_ITEM,
+    SAVE_WORK_ITEM_STATUS,
+    SAVE_AUDIT
+}
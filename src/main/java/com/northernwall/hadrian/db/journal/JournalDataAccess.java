@@ -0,0 +1,790 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.journal;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonWriter;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+import com.northernwall.hadrian.domain.Audit;
+import com.northernwall.hadrian.domain.CustomFunction;
+import com.northernwall.hadrian.domain.DataStore;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleFile;
+import com.northernwall.hadrian.domain.ModuleRef;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.domain.User;
+import com.northernwall.hadrian.domain.Vip;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single node, file backed DataAccess. All entities are held in an
+ * InMemoryDataAccess and every change is appended to a journal before the
+ * write returns. Snapshots of the whole store are written periodically,
+ * after which the journal is emptied. At startup the latest snapshot is
+ * loaded and the journal entries newer than it are replayed.
+ */
+public class JournalDataAccess implements DataAccess {
+
+    private final static Logger logger = LoggerFactory.getLogger(JournalDataAccess.class);
+
+    private static final String SNAPSHOT_FILE_NAME = "snapshot.json";
+    private static final String SNAPSHOT_TEMP_FILE_NAME = "snapshot.json.tmp";
+    private static final String JOURNAL_FILE_NAME = "journal.log";
+
+    private final Path directory;
+    private final Gson gson;
+    private final ReentrantLock lock;
+    private final Timer timerSync;
+    private final Timer timerSnapshot;
+    private InMemoryDataAccess dataAccess;
+    private Journal journal;
+    private long seq;
+    private int entriesSinceSnapshot;
+    private Date lastSnapshot;
+
+    public JournalDataAccess(Path directory, MetricRegistry metricRegistry) throws IOException {
+        this.directory = directory;
+        this.gson = new Gson();
+        this.lock = new ReentrantLock();
+        this.timerSync = metricRegistry.timer("dataAccess.journal.sync");
+        this.timerSnapshot = metricRegistry.timer("dataAccess.journal.snapshot");
+
+        Files.createDirectories(directory);
+        loadSnapshot();
+        long validLength = replayJournal();
+        journal = new Journal(directory.resolve(JOURNAL_FILE_NAME), validLength);
+    }
+
+    private void loadSnapshot() throws IOException {
+        Path path = directory.resolve(SNAPSHOT_FILE_NAME);
+        seq = 0;
+        dataAccess = null;
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                JournalSnapshot snapshot = gson.fromJson(reader, JournalSnapshot.class);
+                if (snapshot != null && snapshot.data != null) {
+                    seq = snapshot.seq;
+                    dataAccess = snapshot.data;
+                    lastSnapshot = new Date(Files.getLastModifiedTime(path).toMillis());
+                }
+            }
+        }
+        if (dataAccess == null) {
+            logger.info("Creating a new Journal store in {}", directory);
+            dataAccess = new InMemoryDataAccess();
+        }
+        dataAccess.buildIndexes();
+    }
+
+    /**
+     * Replays the entries newer than the snapshot and returns the length of
+     * the journal up to the last complete entry, so a line torn by a crash is
+     * truncated before new entries are appended.
+     */
+    private long replayJournal() throws IOException {
+        Path path = directory.resolve(JOURNAL_FILE_NAME);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        int start = 0;
+        int replayed = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+            JournalEntry entry;
+            try {
+                entry = gson.fromJson(line, JournalEntry.class);
+            } catch (JsonSyntaxException ex) {
+                logger.warn("Journal entry at offset {} is corrupt, ignoring the rest of the journal", start);
+                return start;
+            }
+            if (entry != null && entry.seq > seq) {
+                apply(entry);
+                seq = entry.seq;
+                entriesSinceSnapshot++;
+                replayed++;
+            }
+            start = i + 1;
+        }
+        if (start < bytes.length) {
+            logger.warn("Journal ends with a partial entry, {} bytes ignored", bytes.length - start);
+        }
+        logger.info("Replayed {} journal entries, store is at sequence {}", replayed, seq);
+        return start;
+    }
+
+    private void apply(JournalEntry entry) {
+        switch (entry.action) {
+            case SET_VERSION:
+                dataAccess.setVersion(entry.keys[0]);
+                break;
+            case SAVE_TEAM:
+                dataAccess.saveTeam(gson.fromJson(entry.data, Team.class));
+                break;
+            case UPDATE_TEAM:
+                dataAccess.updateTeam(gson.fromJson(entry.data, Team.class));
+                break;
+            case SAVE_SERVICE:
+                dataAccess.saveService(gson.fromJson(entry.data, Service.class));
+                break;
+            case UPDATE_SERVICE:
+                dataAccess.updateService(gson.fromJson(entry.data, Service.class));
+                break;
+            case SAVE_HOST:
+                dataAccess.saveHost(gson.fromJson(entry.data, Host.class));
+                break;
+            case UPDATE_HOST:
+                dataAccess.updateHost(gson.fromJson(entry.data, Host.class));
+                break;
+            case DELETE_HOST:
+                dataAccess.deleteHost(gson.fromJson(entry.data, Host.class));
+                break;
+            case SAVE_VIP:
+                dataAccess.saveVip(gson.fromJson(entry.data, Vip.class));
+                break;
+            case UPDATE_VIP:
+                dataAccess.updateVip(gson.fromJson(entry.data, Vip.class));
+                break;
+            case DELETE_VIP:
+                dataAccess.deleteVip(entry.keys[0], entry.keys[1]);
+                break;
+            case SAVE_MODULE_REF:
+                dataAccess.saveModuleRef(gson.fromJson(entry.data, ModuleRef.class));
+                break;
+            case DELETE_MODULE_REF:
+                dataAccess.deleteModuleRef(entry.keys[0], entry.keys[1], entry.keys[2], entry.keys[3]);
+                break;
+            case SAVE_CUSTOM_FUNCTION:
+                dataAccess.saveCustomFunction(gson.fromJson(entry.data, CustomFunction.class));
+                break;
+            case UPDATE_CUSTOM_FUNCTION:
+                dataAccess.updateCustomFunction(gson.fromJson(entry.data, CustomFunction.class));
+                break;
+            case DELETE_CUSTOM_FUNCTION:
+                dataAccess.deleteCustomFunction(entry.keys[0], entry.keys[1]);
+                break;
+            case SAVE_MODULE:
+                dataAccess.saveModule(gson.fromJson(entry.data, Module.class));
+                break;
+            case UPDATE_MODULE:
+                dataAccess.updateModule(gson.fromJson(entry.data, Module.class));
+                break;
+            case DELETE_MODULE:
+                dataAccess.deleteModule(entry.keys[0], entry.keys[1]);
+                break;
+            case SAVE_MODULE_FILE:
+                dataAccess.saveModuleFile(gson.fromJson(entry.data, ModuleFile.class));
+                break;
+            case UPDATE_MODULE_FILE:
+                dataAccess.updateModuleFile(gson.fromJson(entry.data, ModuleFile.class));
+                break;
+            case DELETE_MODULE_FILE:
+                dataAccess.deleteModuleFile(entry.keys[0], entry.keys[1], entry.keys[2], entry.keys[3]);
+                break;
+            case SAVE_DATA_STORE:
+                dataAccess.saveDataStore(gson.fromJson(entry.data, DataStore.class));
+                break;
+            case UPDATE_DATA_STORE:
+                dataAccess.updateDataStore(gson.fromJson(entry.data, DataStore.class));
+                break;
+            case DELETE_DATA_STORE:
+                dataAccess.deleteDataStore(entry.keys[0], entry.keys[1]);
+                break;
+            case SAVE_USER:
+                dataAccess.saveUser(gson.fromJson(entry.data, User.class));
+                break;
+            case UPDATE_USER:
+                dataAccess.updateUser(gson.fromJson(entry.data, User.class));
+                break;
+            case DELETE_USER:
+                dataAccess.deleteUser(entry.keys[0]);
+                break;
+            case SAVE_WORK_ITEM:
+                dataAccess.saveWorkItem(gson.fromJson(entry.data, WorkItem.class));
+                break;
+            case DELETE_WORK_ITEM:
+                dataAccess.deleteWorkItem(entry.keys[0]);
+                break;
+            case SAVE_WORK_ITEM_STATUS:
+                dataAccess.saveWorkItemStatus(entry.keys[0], Integer.parseInt(entry.keys[1]));
+                break;
+            case SAVE_AUDIT:
+                dataAccess.saveAudit(gson.fromJson(entry.data, Audit.class), entry.keys[0]);
+                break;
+            default:
+                throw new RuntimeException("Unknown journal action " + entry.action);
+        }
+    }
+
+    private void commit(JournalEntry entry) {
+        commit(Collections.singletonList(entry));
+    }
+
+    private void commit(List<JournalEntry> entries) {
+        commit(entries, () -> {
+            for (JournalEntry entry : entries) {
+                apply(entry);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Makes the change and appends the entries while holding the lock, so the
+     * journal order always matches the order the store saw the changes, then
+     * waits outside the lock for the entries to reach the disk. The store is
+     * changed by decoding the entries rather than keeping the caller's
+     * objects, so nothing outside the lock holds a reference into the store.
+     * A change that returns false, a failed condition, journals nothing.
+     */
+    private boolean commit(List<JournalEntry> entries, BooleanSupplier change) {
+        long ticket = 0;
+        lock.lock();
+        try {
+            if (!change.getAsBoolean()) {
+                return false;
+            }
+            for (JournalEntry entry : entries) {
+                seq++;
+                entry.seq = seq;
+                ticket = journal.append(gson.toJson(entry));
+                entriesSinceSnapshot++;
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not append to journal in " + directory, ex);
+        } finally {
+            lock.unlock();
+        }
+        Timer.Context context = timerSync.time();
+        try {
+            journal.sync(ticket);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not sync journal in " + directory, ex);
+        } finally {
+            context.stop();
+        }
+        return true;
+    }
+
+    /**
+     * Reads hand out copies, so a caller changing what it got back can not
+     * alter the store, and so the next snapshot, without a journal entry.
+     */
+    private <T> T copy(T entity, Class<T> type) {
+        if (entity == null) {
+            return null;
+        }
+        return gson.fromJson(gson.toJsonTree(entity), type);
+    }
+
+    private <T> List<T> copy(List<T> entities, Class<T> type) {
+        List<T> copies = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            copies.add(copy(entity, type));
+        }
+        return copies;
+    }
+
+    /**
+     * Writes the whole store to a new snapshot file, swaps it in and then
+     * empties the journal. Writes are blocked while the snapshot is taken.
+     */
+    public void snapshot() {
+        lock.lock();
+        Timer.Context context = timerSnapshot.time();
+        try {
+            if (entriesSinceSnapshot == 0) {
+                return;
+            }
+            Path tempPath = directory.resolve(SNAPSHOT_TEMP_FILE_NAME);
+            try (FileOutputStream stream = new FileOutputStream(tempPath.toFile())) {
+                JsonWriter jw = new JsonWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                gson.toJson(new JournalSnapshot(seq, dataAccess), JournalSnapshot.class, jw);
+                jw.flush();
+                stream.getFD().sync();
+            }
+            Files.move(tempPath, directory.resolve(SNAPSHOT_FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal.reset();
+            logger.info("Journal store snapshot written at sequence {}, {} entries compacted", seq, entriesSinceSnapshot);
+            entriesSinceSnapshot = 0;
+            lastSnapshot = new Date();
+        } catch (IOException ex) {
+            logger.error("Failed to write journal snapshot, {}", ex.getMessage());
+        } finally {
+            context.stop();
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        snapshot();
+        try {
+            journal.close();
+        } catch (IOException ex) {
+            logger.error("Failed to close journal, {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public boolean getAvailability() {
+        return true;
+    }
+
+    @Override
+    public void getHealth(HealthWriter writer) throws IOException {
+        writer.addLine("Journal - Directory", directory.toAbsolutePath().toString());
+        writer.addLine("Journal - Entries Since Snapshot", entriesSinceSnapshot);
+        if (lastSnapshot != null) {
+            writer.addLine("Journal - Last Snapshot", lastSnapshot);
+        }
+    }
+
+    @Override
+    public String getVersion() {
+        return dataAccess.getVersion();
+    }
+
+    @Override
+    public void setVersion(String version) {
+        commit(new JournalEntry(JournalAction.SET_VERSION, null, version));
+    }
+
+    @Override
+    public List<Team> getTeams() {
+        return copy(dataAccess.getTeams(), Team.class);
+    }
+
+    @Override
+    public Team getTeam(String teamId) {
+        return copy(dataAccess.getTeam(teamId), Team.class);
+    }
+
+    @Override
+    public void saveTeam(Team team) {
+        commit(new JournalEntry(JournalAction.SAVE_TEAM, gson.toJsonTree(team)));
+    }
+
+    @Override
+    public void updateTeam(Team team) {
+        commit(new JournalEntry(JournalAction.UPDATE_TEAM, gson.toJsonTree(team)));
+    }
+
+    @Override
+    public List<Service> getAllServices() {
+        return copy(dataAccess.getAllServices(), Service.class);
+    }
+
+    @Override
+    public List<Service> getActiveServices() {
+        return copy(dataAccess.getActiveServices(), Service.class);
+    }
+
+    @Override
+    public Service getService(String serviceId) {
+        return copy(dataAccess.getService(serviceId), Service.class);
+    }
+
+    @Override
+    public void saveService(Service service) {
+        commit(new JournalEntry(JournalAction.SAVE_SERVICE, gson.toJsonTree(service)));
+    }
+
+    @Override
+    public void updateService(Service service) {
+        commit(new JournalEntry(JournalAction.UPDATE_SERVICE, gson.toJsonTree(service)));
+    }
+
+    @Override
+    public List<Host> getHosts(String serviceId) {
+        return copy(dataAccess.getHosts(serviceId), Host.class);
+    }
+
+    @Override
+    public Host getHost(String hostName) {
+        return copy(dataAccess.getHost(hostName), Host.class);
+    }
+
+    @Override
+    public Host getHost(String serviceId, String hostId) {
+        return copy(dataAccess.getHost(serviceId, hostId), Host.class);
+    }
+
+    @Override
+    public void saveHost(Host host) {
+        commit(new JournalEntry(JournalAction.SAVE_HOST, gson.toJsonTree(host)));
+    }
+
+    @Override
+    public void saveHosts(List<Host> hosts) {
+        List<JournalEntry> entries = new ArrayList<>(hosts.size());
+        for (Host host : hosts) {
+            entries.add(new JournalEntry(JournalAction.SAVE_HOST, gson.toJsonTree(host)));
+        }
+        commit(entries);
+    }
+
+    @Override
+    public void updateHost(Host host) {
+        commit(new JournalEntry(JournalAction.UPDATE_HOST, gson.toJsonTree(host)));
+    }
+
+    @Override
+    public void updateHosts(List<Host> hosts) {
+        List<JournalEntry> entries = new ArrayList<>(hosts.size());
+        for (Host host : hosts) {
+            entries.add(new JournalEntry(JournalAction.UPDATE_HOST, gson.toJsonTree(host)));
+        }
+        commit(entries);
+    }
+
+    @Override
+    public void deleteHost(Host host) {
+        commit(new JournalEntry(JournalAction.DELETE_HOST, gson.toJsonTree(host)));
+    }
+
+    @Override
+    public List<Vip> getVips(String serviceId) {
+        return copy(dataAccess.getVips(serviceId), Vip.class);
+    }
+
+    @Override
+    public Vip getVip(String serviceId, String vipId) {
+        return copy(dataAccess.getVip(serviceId, vipId), Vip.class);
+    }
+
+    @Override
+    public void saveVip(Vip vip) {
+        commit(new JournalEntry(JournalAction.SAVE_VIP, gson.toJsonTree(vip)));
+    }
+
+    @Override
+    public void updateVip(Vip vip) {
+        commit(new JournalEntry(JournalAction.UPDATE_VIP, gson.toJsonTree(vip)));
+    }
+
+    @Override
+    public void deleteVip(String serviceId, String vipId) {
+        commit(new JournalEntry(JournalAction.DELETE_VIP, null, serviceId, vipId));
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefs() {
+        return copy(dataAccess.getModuleRefs(), ModuleRef.class);
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefsByClient(String clientServiceId, String clientModuleId) {
+        return copy(dataAccess.getModuleRefsByClient(clientServiceId, clientModuleId), ModuleRef.class);
+    }
+
+    @Override
+    public List<ModuleRef> getModuleRefsByServer(String serverServiceId, String serverModuleId) {
+        return copy(dataAccess.getModuleRefsByServer(serverServiceId, serverModuleId), ModuleRef.class);
+    }
+
+    @Override
+    public void saveModuleRef(ModuleRef moduleRef) {
+        commit(new JournalEntry(JournalAction.SAVE_MODULE_REF, gson.toJsonTree(moduleRef)));
+    }
+
+    @Override
+    public void deleteModuleRef(String clientServiceId, String clientModuleId, String serverServiceId, String serverModuleId) {
+        commit(new JournalEntry(JournalAction.DELETE_MODULE_REF, null, clientServiceId, clientModuleId, serverServiceId, serverModuleId));
+    }
+
+    @Override
+    public List<CustomFunction> getCustomFunctions(String serviceId) {
+        return copy(dataAccess.getCustomFunctions(serviceId), CustomFunction.class);
+    }
+
+    @Override
+    public CustomFunction getCustomFunction(String serviceId, String customFunctionId) {
+        return copy(dataAccess.getCustomFunction(serviceId, customFunctionId), CustomFunction.class);
+    }
+
+    @Override
+    public void saveCustomFunction(CustomFunction customFunction) {
+        commit(new JournalEntry(JournalAction.SAVE_CUSTOM_FUNCTION, gson.toJsonTree(customFunction)));
+    }
+
+    @Override
+    public void updateCustomFunction(CustomFunction customFunction) {
+        commit(new JournalEntry(JournalAction.UPDATE_CUSTOM_FUNCTION, gson.toJsonTree(customFunction)));
+    }
+
+    @Override
+    public void deleteCustomFunction(String serviceId, String customFunctionId) {
+        commit(new JournalEntry(JournalAction.DELETE_CUSTOM_FUNCTION, null, serviceId, customFunctionId));
+    }
+
+    @Override
+    public List<Module> getModules(String serviceId) {
+        return copy(dataAccess.getModules(serviceId), Module.class);
+    }
+
+    @Override
+    public List<Module> getModules(Collection<String> serviceIds) {
+        return copy(dataAccess.getModules(serviceIds), Module.class);
+    }
+
+    @Override
+    public Module getModule(String serviceId, String moduleId) {
+        return copy(dataAccess.getModule(serviceId, moduleId), Module.class);
+    }
+
+    @Override
+    public void saveModule(Module module) {
+        commit(new JournalEntry(JournalAction.SAVE_MODULE, gson.toJsonTree(module)));
+    }
+
+    @Override
+    public void updateModule(Module module) {
+        commit(new JournalEntry(JournalAction.UPDATE_MODULE, gson.toJsonTree(module)));
+    }
+
+    @Override
+    public void deleteModule(String serviceId, String moduleId) {
+        commit(new JournalEntry(JournalAction.DELETE_MODULE, null, serviceId, moduleId));
+    }
+
+    @Override
+    public List<ModuleFile> getModuleFiles(String serviceId) {
+        return copy(dataAccess.getModuleFiles(serviceId), ModuleFile.class);
+    }
+
+    @Override
+    public List<ModuleFile> getModuleFiles(String serviceId, String moduleId, String network) {
+        return copy(dataAccess.getModuleFiles(serviceId, moduleId, network), ModuleFile.class);
+    }
+
+    @Override
+    public ModuleFile getModuleFile(String serviceId, String moduleId, String network, String name) {
+        return copy(dataAccess.getModuleFile(serviceId, moduleId, network, name), ModuleFile.class);
+    }
+
+    @Override
+    public void saveModuleFile(ModuleFile moduleFile) {
+        commit(new JournalEntry(JournalAction.SAVE_MODULE_FILE, gson.toJsonTree(moduleFile)));
+    }
+
+    @Override
+    public void updateModuleFile(ModuleFile moduleFile) {
+        commit(new JournalEntry(JournalAction.UPDATE_MODULE_FILE, gson.toJsonTree(moduleFile)));
+    }
+
+    @Override
+    public void deleteModuleFile(String serviceId, String moduleId, String network, String name) {
+        commit(new JournalEntry(JournalAction.DELETE_MODULE_FILE, null, serviceId, moduleId, network, name));
+    }
+
+    @Override
+    public List<DataStore> getDataStores(String serviceId) {
+        return copy(dataAccess.getDataStores(serviceId), DataStore.class);
+    }
+
+    @Override
+    public DataStore getDataStore(String serviceId, String dataStoreId) {
+        return copy(dataAccess.getDataStore(serviceId, dataStoreId), DataStore.class);
+    }
+
+    @Override
+    public void saveDataStore(DataStore dataStore) {
+        commit(new JournalEntry(JournalAction.SAVE_DATA_STORE, gson.toJsonTree(dataStore)));
+    }
+
+    @Override
+    public void updateDataStore(DataStore dataStore) {
+        commit(new JournalEntry(JournalAction.UPDATE_DATA_STORE, gson.toJsonTree(dataStore)));
+    }
+
+    @Override
+    public void deleteDataStore(String serviceId, String dataStoreId) {
+        commit(new JournalEntry(JournalAction.DELETE_DATA_STORE, null, serviceId, dataStoreId));
+    }
+
+    @Override
+    public List<User> getUsers() {
+        return copy(dataAccess.getUsers(), User.class);
+    }
+
+    @Override
+    public User getUser(String userName) {
+        return copy(dataAccess.getUser(userName), User.class);
+    }
+
+    @Override
+    public void saveUser(User user) {
+        commit(new JournalEntry(JournalAction.SAVE_USER, gson.toJsonTree(user)));
+    }
+
+    @Override
+    public void updateUser(User user) {
+        commit(new JournalEntry(JournalAction.UPDATE_USER, gson.toJsonTree(user)));
+    }
+
+    @Override
+    public void deleteUser(String userName) {
+        commit(new JournalEntry(JournalAction.DELETE_USER, null, userName));
+    }
+
+    @Override
+    public List<WorkItem> getWorkItems() {
+        return copy(dataAccess.getWorkItems(), WorkItem.class);
+    }
+
+    @Override
+    public List<WorkItem> getWorkItems(WorkItemState state) {
+        return copy(dataAccess.getWorkItems(state), WorkItem.class);
+    }
+
+    @Override
+    public List<WorkItem> getServiceWorkItems(String serviceId) {
+        return copy(dataAccess.getServiceWorkItems(serviceId), WorkItem.class);
+    }
+
+    @Override
+    public List<WorkItem> getChainWorkItems(String chainId) {
+        return copy(dataAccess.getChainWorkItems(chainId), WorkItem.class);
+    }
+
+    @Override
+    public WorkItem getWorkItem(String id) {
+        return copy(dataAccess.getWorkItem(id), WorkItem.class);
+    }
+
+    @Override
+    public void saveWorkItem(WorkItem workItem) {
+        commit(new JournalEntry(JournalAction.SAVE_WORK_ITEM, gson.toJsonTree(workItem)));
+    }
+
+    @Override
+    public void saveWorkItems(List<WorkItem> workItems) {
+        List<JournalEntry> entries = new ArrayList<>(workItems.size());
+        for (WorkItem workItem : workItems) {
+            entries.add(new JournalEntry(JournalAction.SAVE_WORK_ITEM, gson.toJsonTree(workItem)));
+        }
+        commit(entries);
+    }
+
+    @Override
+    public boolean updateWorkItem(WorkItem workItem, WorkItemState expected) {
+        JournalEntry entry = new JournalEntry(JournalAction.SAVE_WORK_ITEM, gson.toJsonTree(workItem));
+        return commit(Collections.singletonList(entry),
+                () -> dataAccess.updateWorkItem(gson.fromJson(entry.data, WorkItem.class), expected));
+    }
+
+    @Override
+    public void deleteWorkItem(String id) {
+        commit(new JournalEntry(JournalAction.DELETE_WORK_ITEM, null, id));
+    }
+
+    @Override
+    public void deleteWorkItems(List<String> ids) {
+        List<JournalEntry> entries = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            entries.add(new JournalEntry(JournalAction.DELETE_WORK_ITEM, null, id));
+        }
+        commit(entries);
+    }
+
+    @Override
+    public int getWorkItemStatus(String id) {
+        return dataAccess.getWorkItemStatus(id);
+    }
+
+    @Override
+    public void saveWorkItemStatus(String id, int status) {
+        commit(new JournalEntry(JournalAction.SAVE_WORK_ITEM_STATUS, null, id, Integer.toString(status)));
+    }
+
+    @Override
+    public void saveWorkItemStatuses(Map<String, Integer> statuses) {
+        List<JournalEntry> entries = new ArrayList<>(statuses.size());
+        for (Map.Entry<String, Integer> entry : statuses.entrySet()) {
+            entries.add(new JournalEntry(JournalAction.SAVE_WORK_ITEM_STATUS, null, entry.getKey(), Integer.toString(entry.getValue())));
+        }
+        commit(entries);
+    }
+
+    @Override
+    public void saveAudit(Audit audit, String output) {
+        audit.auditId = UUID.randomUUID().toString();
+        commit(new JournalEntry(JournalAction.SAVE_AUDIT, gson.toJsonTree(audit), output));
+    }
+
+    @Override
+    public void saveAudits(List<Audit> audits, List<String> outputs) {
+        List<JournalEntry> entries = new ArrayList<>(audits.size());
+        for (int i = 0; i < audits.size(); i++) {
+            Audit audit = audits.get(i);
+            audit.auditId = UUID.randomUUID().toString();
+            entries.add(new JournalEntry(JournalAction.SAVE_AUDIT, gson.toJsonTree(audit), outputs.get(i)));
+        }
+        commit(entries);
+    }
+
+    @Override
+    public List<Audit> getAudit(String serviceId, int year, int month, int startDay, int endDay) {
+        return copy(dataAccess.getAudit(serviceId, year, month, startDay, endDay), Audit.class);
+    }
+
+    @Override
+    public List<Audit> getAudit(String serviceId, Date start, Date end) {
+        return copy(dataAccess.getAudit(serviceId, start, end), Audit.class);
+    }
+
+    @Override
+    public void streamAudit(String serviceId, Date start, Date end, Predicate<Audit> consumer) {
+        dataAccess.streamAudit(serviceId, start, end, audit -> consumer.test(copy(audit, Audit.class)));
+    }
+
+    @Override
+    public String getAuditOutput(String serviceId, String auditId) {
+        return dataAccess.getAuditOutput(serviceId, auditId);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.journal;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DataAccessFactory;
+import com.northernwall.hadrian.db.audit.AuditStore;
+import com.northernwall.hadrian.db.audit.AuditStoreDataAccess;
+import com.northernwall.hadrian.domain.Audit;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.parameters.Parameters;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The journal keeps its state in memory, which holds only the newest
+ * audits and none of their output, so an AuditStore is always put in front
+ * of it. The store lives in the audit store directory when one is set, or
+ * in the audit folder of the journal directory.
+ */
+public class JournalDataAccessFactory implements DataAccessFactory, Runnable {
+    private final static Logger logger = LoggerFactory.getLogger(JournalDataAccessFactory.class);
+
+    private JournalDataAccess dataAccess;
+    private AuditStore auditStore;
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public DataAccess createDataAccess(Parameters parameters, MetricRegistry metricRegistry) {
+        String directory = parameters.getString(Const.JOURNAL_DIRECTORY, Const.JOURNAL_DIRECTORY_DEFAULT);
+        int snapshotMinutes = parameters.getInt(Const.JOURNAL_SNAPSHOT_MINUTES, Const.JOURNAL_SNAPSHOT_MINUTES_DEFAULT);
+
+        try {
+            dataAccess = new JournalDataAccess(Paths.get(directory), metricRegistry);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not open journal store in " + directory, ex);
+        }
+
+        String auditDirectory = parameters.getString(Const.AUDIT_STORE_DIRECTORY, null);
+        if (auditDirectory == null || auditDirectory.isEmpty()) {
+            auditDirectory = Paths.get(directory, "audit").toString();
+        }
+        int auditTimeToLive = parameters.getInt(Const.AUDIT_STORE_TTL_DAYS, Const.AUDIT_STORE_TTL_DAYS_DEFAULT);
+        try {
+            auditStore = new AuditStore(Paths.get(auditDirectory), auditTimeToLive, metricRegistry);
+            if (auditStore.getSegmentCount() == 0) {
+                moveAudits();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not open audit store in " + auditDirectory, ex);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> dataAccess.snapshot(), snapshotMinutes, snapshotMinutes, TimeUnit.MINUTES);
+
+        Thread thread = new Thread(this);
+        Runtime.getRuntime().addShutdownHook(thread);
+
+        return new AuditStoreDataAccess(dataAccess, auditStore);
+    }
+
+    /**
+     * Journals written before the audit store was put in front of them hold
+     * their audits in the journal state. They are copied to a new, empty,
+     * audit store once; their output was never kept.
+     */
+    private void moveAudits() throws IOException {
+        int count = 0;
+        for (Service service : dataAccess.getAllServices()) {
+            for (Audit audit : dataAccess.getAudit(service.getServiceId(), new Date(0), new Date(Long.MAX_VALUE))) {
+                auditStore.append(audit, null);
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("Moved {} audits from the journal to the audit store", count);
+        }
+    }
+
+    @Override
+    public void run() {
+        scheduler.shutdown();
+        dataAccess.close();
+        auditStore.close();
+        logger.info("Journal store closed");
+    }
+
+}
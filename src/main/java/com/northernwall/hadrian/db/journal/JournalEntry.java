@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.journal;
+
+import com.google.gson.JsonElement;
+
+/**
+ * One line of the journal. Entities are carried in data, ids of deletes and
+ * other scalar arguments in keys.
+ */
+public class JournalEntry {
+
+    public long seq;
+    public JournalAction action;
+    public JsonElement data;
+    public String[] keys;
+
+    public JournalEntry() {
+    }
+
+    public JournalEntry(JournalAction action, JsonElement data, String... keys) {
+        this.action = action;
+        this.data = data;
+        this.keys = keys;
+    }
+
+}
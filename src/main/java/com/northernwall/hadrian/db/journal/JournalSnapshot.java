@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.db.journal;
+
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+
+/**
+ * A compacted copy of the whole store, along with the sequence number of the
+ * last journal entry it includes.
+ */
+public class JournalSnapshot {
+
+    public long seq;
+    public InMemoryDataAccess data;
+
+    public JournalSnapshot() {
+    }
+
+    public JournalSnapshot(long seq, InMemoryDataAccess data) {
+        this.seq = seq;
+        this.data = data;
+    }
+
+}
@@ -17,10 +17,20 @@ package com.northernwall.hadrian.details;
 
 import com.northernwall.hadrian.ConfigHelper;
 import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.utilityHandlers.OutboundExecutor;
 import com.squareup.okhttp.OkHttpClient;
 
 public interface VipDetailsHelperFactory {
     
     VipDetailsHelper create(OkHttpClient client, Parameters parameters, ConfigHelper configHelper);
 
+    /**
+     * Factories that make outbound calls should override this to run them on
+     * the shared VIP details bulkhead. The default keeps factories written
+     * before the bulkhead working unchanged.
+     */
+    default VipDetailsHelper create(OkHttpClient client, Parameters parameters, ConfigHelper configHelper, OutboundExecutor outboundExecutor) {
+        return create(client, parameters, configHelper);
+    }
+
 }
@@ -23,31 +23,29 @@ import com.northernwall.hadrian.domain.Vip;
 import com.northernwall.hadrian.parameters.Parameters;
 import com.northernwall.hadrian.service.dao.GetVipDetailRowData;
 import com.northernwall.hadrian.service.dao.GetVipDetailsData;
+import com.northernwall.hadrian.utilityHandlers.FanOut;
 import com.squareup.okhttp.OkHttpClient;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.function.Predicate;
+import java.util.concurrent.Executor;
 
 public class SimpleVipDetailsHelper implements VipDetailsHelper {
 
+    private static final long DETAILS_TIMEOUT = 15100;
+
     private final OkHttpClient client;
     private final Parameters parameters;
     private final ConfigHelper configHelper;
     private final Gson gson;
-    private final ExecutorService executorService;
+    private final Executor executor;
 
-    public SimpleVipDetailsHelper(OkHttpClient client, Parameters parameters, ConfigHelper configHelper) {
+    public SimpleVipDetailsHelper(OkHttpClient client, Parameters parameters, ConfigHelper configHelper, Executor executor) {
         this.client = client;
         this.parameters = parameters;
         this.configHelper = configHelper;
         
         gson = new Gson();
-        executorService = Executors.newFixedThreadPool(20);
+        this.executor = executor;
     }
 
     @Override
@@ -61,31 +59,13 @@ public class SimpleVipDetailsHelper implements VipDetailsHelper {
         vipUrl = vipUrl.replace("{vip}", vip.getDns());
         GetVipDetailsData data = new GetVipDetailsData();
         
-        List<Future> futures = new LinkedList<>();
+        List<Runnable> tasks = new LinkedList<>();
         for (String dataCenter : configHelper.getConfig().dataCenters) {
-            futures.add(executorService.submit(new SimpleVipDetailsRunnable(gson, client, vip, data, vipUrl, poolUrl, dataCenter)));
+            tasks.add(new SimpleVipDetailsRunnable(gson, client, vip, data, vipUrl, poolUrl, dataCenter));
         }
 
-        waitForFutures(futures);
+        FanOut.awaitAll(tasks, executor, DETAILS_TIMEOUT);
         return data;
     }
 
-    protected void waitForFutures(List<Future> futures) {
-        for (int i = 0; i < 151; i++) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException ex) {
-            }
-            futures.removeIf(new Predicate<Future>() {
-                @Override
-                public boolean test(Future t) {
-                    return t.isDone();
-                }
-            });
-            if (futures.isEmpty()) {
-                return;
-            }
-        }
-    }
-
 }
@@ -19,13 +19,20 @@ import com.northernwall.hadrian.ConfigHelper;
 import com.northernwall.hadrian.details.VipDetailsHelper;
 import com.northernwall.hadrian.details.VipDetailsHelperFactory;
 import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.utilityHandlers.OutboundExecutor;
 import com.squareup.okhttp.OkHttpClient;
+import java.util.concurrent.Executors;
 
 public class SimpleVipDetailsHelperFactory implements VipDetailsHelperFactory {
 
     @Override
     public VipDetailsHelper create(OkHttpClient client, Parameters parameters, ConfigHelper configHelper) {
-        return new SimpleVipDetailsHelper(client, parameters, configHelper);
+        return new SimpleVipDetailsHelper(client, parameters, configHelper, Executors.newFixedThreadPool(20));
+    }
+
+    @Override
+    public VipDetailsHelper create(OkHttpClient client, Parameters parameters, ConfigHelper configHelper, OutboundExecutor outboundExecutor) {
+        return new SimpleVipDetailsHelper(client, parameters, configHelper, outboundExecutor.getVipDetails());
     }
 
 }
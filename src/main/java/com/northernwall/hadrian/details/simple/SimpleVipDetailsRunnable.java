@@ -10,6 +10,7 @@ import com.northernwall.hadrian.details.simple.dao.VipsDao;
 import com.northernwall.hadrian.domain.Vip;
 import com.northernwall.hadrian.service.dao.GetVipDetailCellData;
 import com.northernwall.hadrian.service.dao.GetVipDetailsData;
+import com.northernwall.hadrian.utilityHandlers.TargetedRunnable;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
@@ -19,7 +20,7 @@ import java.io.Reader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class SimpleVipDetailsRunnable implements Runnable {
+public class SimpleVipDetailsRunnable implements TargetedRunnable {
 
     private final static Logger logger = LoggerFactory.getLogger(SimpleVipDetailsRunnable.class);
 
@@ -41,6 +42,11 @@ public class SimpleVipDetailsRunnable implements Runnable {
         this.dataCenter = dataCenter;
     }
 
+    @Override
+    public String getTarget() {
+        return dataCenter;
+    }
+
     @Override
     public void run() {
         VipDao vipInfo = getVipInfo(vipUrl, dataCenter);
@@ -15,11 +15,13 @@
  */
 package com.northernwall.hadrian.domain;
 
+import com.northernwall.hadrian.workItem.dao.DispatchData;
 import com.northernwall.hadrian.workItem.dao.HostData;
 import com.northernwall.hadrian.workItem.dao.ModuleData;
 import com.northernwall.hadrian.workItem.dao.ServiceData;
 import com.northernwall.hadrian.workItem.dao.TeamData;
 import com.northernwall.hadrian.workItem.dao.VipData;
+import com.northernwall.hadrian.workItem.dao.WaveData;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.LinkedList;
@@ -37,6 +39,8 @@ public class WorkItem {
     private Type type;
     private Operation operation;
     private String nextId;
+    private String chainId;
+    private WorkItemState state;
     private String username;
     private String fullname;
     private Date requestDate;
@@ -46,12 +50,16 @@ public class WorkItem {
     private List<ModuleData> modules;
     private HostData host;
     private VipData vip;
+    private DispatchData dispatch;
+    private WaveData wave;
 
     public WorkItem(Type type, Operation operation, User user, Team team, Service service, Module module, Host host, Vip vip) {
         this.id = UUID.randomUUID().toString();
         this.type = type;
         this.operation = operation;
         this.nextId = null;
+        this.chainId = id;
+        this.state = WorkItemState.pending;
         this.username = user.getUsername();
         this.fullname = user.getFullName();
         this.requestDate = Calendar.getInstance(TimeZone.getTimeZone("GMT")).getTime();
@@ -95,6 +103,26 @@ public class WorkItem {
         this.nextId = nextId;
     }
 
+    /**
+     * Id of the first work item in the chain or deployment this work item
+     * belongs to, a work item on its own is its own chain.
+     */
+    public String getChainId() {
+        return chainId;
+    }
+
+    public void setChainId(String chainId) {
+        this.chainId = chainId;
+    }
+
+    public WorkItemState getState() {
+        return state;
+    }
+
+    public void setState(WorkItemState state) {
+        this.state = state;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -167,6 +195,22 @@ public class WorkItem {
         this.vip = vip;
     }
 
+    public DispatchData getDispatch() {
+        return dispatch;
+    }
+
+    public void setDispatch(DispatchData dispatch) {
+        this.dispatch = dispatch;
+    }
+
+    public WaveData getWave() {
+        return wave;
+    }
+
+    public void setWave(WaveData wave) {
+        this.wave = wave;
+    }
+
     @Override
     public String toString() {
         StringBuffer str = new StringBuffer();
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.domain;
+
+/**
+ * Where a stored work item is in its life. A work item is deleted once its
+ * callback has been processed, so finished work items have no state.
+ */
+public enum WorkItemState {
+
+    /**
+     * Waiting for an earlier work item in its chain to finish.
+     */
+    pending,
+    /**
+     * Waiting to be handed to the WorkItemSender.
+     */
+    queued,
+    /**
+     * Accepted by the WorkItemSender, waiting for its callback.
+     */
+    sent;
+
+}
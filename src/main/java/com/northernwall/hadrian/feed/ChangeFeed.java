@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.feed;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.service.dao.GetChangeData;
+import com.northernwall.hadrian.service.dao.GetChangesData;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small, incremental changes to services, host status, host version and
+ * availability, and work item completions, so a page watching a service can
+ * be told what changed instead of downloading the whole service again.
+ *
+ * Each service has its own ChangeRing. Readers poll with the sequence number
+ * they last saw, and can register a Runnable to be woken by the next change.
+ * Publishing takes no locks once a service has a feed, only creating and
+ * dropping a feed go through the map's compute methods.
+ * Changes are published from inside DataAccess writes and work item locks,
+ * so waiters are run on the feed's own threads, never the publisher's. A
+ * service only keeps a feed once something has been published to it.
+ */
+public class ChangeFeed {
+
+    private final int ringSize;
+    private final ConcurrentMap<String, ServiceFeed> feeds;
+    private final AtomicInteger waiterCount;
+    private final ExecutorService waker;
+    private final Meter published;
+
+    public ChangeFeed(Parameters parameters, MetricRegistry metricRegistry) {
+        ringSize = parameters.getInt(Const.CHANGE_FEED_RING_SIZE, Const.CHANGE_FEED_RING_SIZE_DEFAULT);
+        feeds = new ConcurrentHashMap<>();
+        waiterCount = new AtomicInteger(0);
+        waker = Executors.newFixedThreadPool(
+                parameters.getInt(Const.CHANGE_FEED_WAKE_THREADS, Const.CHANGE_FEED_WAKE_THREADS_DEFAULT),
+                (Runnable r) -> {
+                    Thread thread = new Thread(r, "change-feed-waker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        published = metricRegistry.meter("changeFeed.published");
+        metricRegistry.register("changeFeed.waiters", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return waiterCount.get();
+            }
+        });
+    }
+
+    public void hostChanged(Host host) {
+        GetChangeData change = new GetChangeData();
+        change.kind = GetChangeData.HOST;
+        change.hostId = host.getHostId();
+        change.hostName = host.getHostName();
+        change.status = host.getStatus();
+        change.busy = host.isBusy();
+        publish(host.getServiceId(), change);
+    }
+
+    public void hostDeleted(Host host) {
+        GetChangeData change = new GetChangeData();
+        change.kind = GetChangeData.HOST_DELETED;
+        change.hostId = host.getHostId();
+        change.hostName = host.getHostName();
+        publish(host.getServiceId(), change);
+    }
+
+    public void hostProbed(String serviceId, String hostId, String version, int availability) {
+        GetChangeData change = new GetChangeData();
+        change.kind = GetChangeData.HOST_PROBED;
+        change.hostId = hostId;
+        change.version = version;
+        change.availability = availability;
+        publish(serviceId, change);
+    }
+
+    public void workItemCompleted(WorkItem workItem, int status) {
+        if (workItem.getService() == null) {
+            return;
+        }
+        GetChangeData change = new GetChangeData();
+        change.kind = GetChangeData.WORK_ITEM;
+        change.workItemId = workItem.getId();
+        change.operation = workItem.getType() + "." + workItem.getOperation();
+        change.workItemStatus = status;
+        if (workItem.getHost() != null) {
+            change.hostId = workItem.getHost().hostId;
+            change.hostName = workItem.getHost().hostName;
+        }
+        publish(workItem.getService().serviceId, change);
+    }
+
+    /**
+     * @param since the next value from the previous read, or a negative
+     * number to just get the current position
+     */
+    public GetChangesData read(String serviceId, long since) {
+        GetChangesData data = new GetChangesData();
+        ServiceFeed feed = feeds.get(serviceId);
+        if (feed == null) {
+            //nothing published yet, the same answer an empty ring gives
+            data.reset = since > 0;
+            data.next = 0;
+        } else if (since < 0) {
+            data.next = feed.ring.getNext();
+        } else {
+            feed.ring.read(since, data);
+        }
+        return data;
+    }
+
+    /**
+     * Registers waiter to be run once, on the next change to the service.
+     * Callers should read again after registering, a change may have been
+     * published in between.
+     */
+    public void addWaiter(String serviceId, Runnable waiter) {
+        feeds.compute(serviceId, (key, feed) -> {
+            if (feed == null) {
+                feed = new ServiceFeed(ringSize);
+            }
+            feed.waiters.add(waiter);
+            return feed;
+        });
+        waiterCount.incrementAndGet();
+    }
+
+    public void removeWaiter(String serviceId, Runnable waiter) {
+        ServiceFeed feed = feeds.get(serviceId);
+        if (feed != null && feed.waiters.remove(waiter)) {
+            waiterCount.decrementAndGet();
+        }
+        //a feed made only to hold waiters is dropped with its last one
+        feeds.computeIfPresent(serviceId, (key, current) -> current.waiters.isEmpty() && current.markDropped() ? null : current);
+    }
+
+    private void publish(String serviceId, GetChangeData change) {
+        if (serviceId == null) {
+            return;
+        }
+        //nothing here takes a lock once the service has a feed, so the ring
+        //and the waiter queue stay lock free for every publisher
+        ServiceFeed feed = feeds.get(serviceId);
+        while (feed == null || !feed.markPublished()) {
+            //either no feed yet, or removeWaiter is dropping it
+            feed = feeds.computeIfAbsent(serviceId, key -> new ServiceFeed(ringSize));
+        }
+        feed.ring.publish(change);
+        final List<Runnable> woken = new ArrayList<>();
+        Runnable next;
+        while ((next = feed.waiters.poll()) != null) {
+            woken.add(next);
+        }
+        published.mark();
+        if (woken.isEmpty()) {
+            return;
+        }
+        waiterCount.addAndGet(-woken.size());
+        waker.execute(() -> {
+            for (Runnable waiter : woken) {
+                waiter.run();
+            }
+        });
+    }
+
+    public int size() {
+        return feeds.size();
+    }
+
+    public void getHealth(HealthWriter writer) throws IOException {
+        writer.addLine("Change Feed - Services", feeds.size());
+        writer.addLine("Change Feed - Waiters", waiterCount.get());
+    }
+
+    private static class ServiceFeed {
+
+        private static final int FRESH = 0;
+        private static final int PUBLISHED = 1;
+        private static final int DROPPED = 2;
+
+        private final ChangeRing ring;
+        private final Queue<Runnable> waiters;
+        private final AtomicInteger state;
+
+        private ServiceFeed(int ringSize) {
+            ring = new ChangeRing(ringSize);
+            waiters = new ConcurrentLinkedQueue<>();
+            state = new AtomicInteger(FRESH);
+        }
+
+        /**
+         * @return false if the feed has been dropped and a publisher has to
+         * use the one that replaces it
+         */
+        private boolean markPublished() {
+            return state.compareAndSet(FRESH, PUBLISHED) || state.get() == PUBLISHED;
+        }
+
+        /**
+         * @return true if nothing has been, or ever will be, published to
+         * this feed
+         */
+        private boolean markDropped() {
+            return state.compareAndSet(FRESH, DROPPED);
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.feed;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DelegatingDataAccess;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Publishes every host write to the ChangeFeed once the wrapped DataAccess
+ * has accepted it, so status changes made by work item actions and handlers
+ * alike reach pages watching the service.
+ */
+public class ChangeFeedDataAccess extends DelegatingDataAccess {
+
+    private final ChangeFeed changeFeed;
+
+    public ChangeFeedDataAccess(DataAccess dataAccess, ChangeFeed changeFeed) {
+        super(dataAccess);
+        this.changeFeed = changeFeed;
+    }
+
+    @Override
+    public void getHealth(HealthWriter writer) throws IOException {
+        changeFeed.getHealth(writer);
+        dataAccess.getHealth(writer);
+    }
+
+    @Override
+    public void saveHost(Host host) {
+        dataAccess.saveHost(host);
+        changeFeed.hostChanged(host);
+    }
+
+    @Override
+    public void saveHosts(List<Host> hosts) {
+        dataAccess.saveHosts(hosts);
+        for (Host host : hosts) {
+            changeFeed.hostChanged(host);
+        }
+    }
+
+    @Override
+    public void updateHost(Host host) {
+        dataAccess.updateHost(host);
+        changeFeed.hostChanged(host);
+    }
+
+    @Override
+    public void updateHosts(List<Host> hosts) {
+        dataAccess.updateHosts(hosts);
+        for (Host host : hosts) {
+            changeFeed.hostChanged(host);
+        }
+    }
+
+    @Override
+    public void deleteHost(Host host) {
+        dataAccess.deleteHost(host);
+        changeFeed.hostDeleted(host);
+    }
+
+}
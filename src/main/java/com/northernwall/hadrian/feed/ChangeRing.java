@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.feed;
+
+import com.northernwall.hadrian.service.dao.GetChangeData;
+import com.northernwall.hadrian.service.dao.GetChangesData;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size, lock free ring of the most recent changes to one service.
+ * Publishers claim a sequence number with a single atomic increment and then
+ * publish into that slot, readers never block publishers and simply notice
+ * when the slot they want has been overwritten.
+ */
+class ChangeRing {
+
+    private final AtomicReferenceArray<GetChangeData> slots;
+    private final int mask;
+    private final AtomicLong next;
+
+    ChangeRing(int size) {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        next = new AtomicLong(0);
+    }
+
+    long publish(GetChangeData change) {
+        long seq = next.getAndIncrement();
+        change.seq = seq;
+        slots.set((int) (seq & mask), change);
+        return seq;
+    }
+
+    long getNext() {
+        return next.get();
+    }
+
+    /**
+     * Reads the changes from since onwards in to data, stopping at the first
+     * slot that has been claimed but not yet published.
+     */
+    void read(long since, GetChangesData data) {
+        long head = next.get();
+        if (since < 0 || since > head || head - since > slots.length()) {
+            data.reset = true;
+            data.next = head;
+            return;
+        }
+        long seq = since;
+        while (seq < head) {
+            GetChangeData change = slots.get((int) (seq & mask));
+            if (change == null || change.seq < seq) {
+                //claimed but not published yet, pick it up next time
+                break;
+            }
+            if (change.seq > seq) {
+                //lapped while reading
+                data.changes.clear();
+                data.reset = true;
+                data.next = head;
+                return;
+            }
+            data.changes.add(change);
+            seq++;
+        }
+        data.next = seq;
+    }
+
+}
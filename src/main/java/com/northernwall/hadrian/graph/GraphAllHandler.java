@@ -16,15 +16,14 @@
 package com.northernwall.hadrian.graph;
 
 import com.northernwall.hadrian.Const;
-import com.northernwall.hadrian.db.DataAccess;
 import com.northernwall.hadrian.domain.Module;
 import com.northernwall.hadrian.domain.Service;
-import com.northernwall.hadrian.domain.ModuleRef;
 import com.northernwall.hadrian.domain.ModuleType;
-import com.northernwall.hadrian.domain.Team;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -37,10 +36,10 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
  */
 public class GraphAllHandler extends AbstractHandler {
 
-    private final DataAccess dataAccess;
+    private final ModuleGraph moduleGraph;
 
-    public GraphAllHandler(DataAccess dataAccess) {
-        this.dataAccess = dataAccess;
+    public GraphAllHandler(ModuleGraph moduleGraph) {
+        this.moduleGraph = moduleGraph;
     }
 
     @Override
@@ -48,15 +47,15 @@ public class GraphAllHandler extends AbstractHandler {
         response.setContentType(Const.TEXT);
         Graph graph = new Graph(response.getOutputStream(), true);
 
-        List<Service> services = dataAccess.getActiveServices();
-        for (Service service : services) {
-            Team team = dataAccess.getTeam(service.getTeamId());
-            List<Module> modules = dataAccess.getModules(service.getServiceId());
-            for (Module module : modules) {
+        for (Service service : moduleGraph.getActiveServices()) {
+            String colour = moduleGraph.getColour(service.getServiceId());
+            for (Module module : moduleGraph.getModules(service.getServiceId())) {
                 if (module.getModuleType() == ModuleType.Deployable) {
                     List<Module> libraries = new LinkedList<>();
-                    processLibrary(module, module, libraries, graph);
-                    graph.writeModuleStructure(module, libraries, team.getColour());
+                    Set<Module> visited = new HashSet<>();
+                    visited.add(module);
+                    processLibrary(module, module, libraries, visited, graph);
+                    graph.writeModuleStructure(module, libraries, colour);
                 }
             }
         }
@@ -66,14 +65,12 @@ public class GraphAllHandler extends AbstractHandler {
         response.setStatus(200);
     }
 
-    public void processLibrary(Module root, Module module, List<Module> libraries, Graph graph) throws IOException {
-        List<ModuleRef> moduleRefs = dataAccess.getModuleRefsByClient(module.getServiceId(), module.getModuleId());
-        for (ModuleRef moduleRef : moduleRefs) {
-            Module serverModule = dataAccess.getModule(moduleRef.getServerServiceId(), moduleRef.getServerModuleId());
+    private void processLibrary(Module root, Module module, List<Module> libraries, Set<Module> visited, Graph graph) throws IOException {
+        for (Module serverModule : moduleGraph.getServers(module)) {
             if (serverModule.getModuleType() == ModuleType.Library) {
-                if (!libraries.contains(serverModule)) {
+                if (visited.add(serverModule)) {
                     libraries.add(serverModule);
-                    processLibrary(root, serverModule, libraries, graph);
+                    processLibrary(root, serverModule, libraries, visited, graph);
                 }
             }
             if (serverModule.getModuleType() == ModuleType.Deployable) {
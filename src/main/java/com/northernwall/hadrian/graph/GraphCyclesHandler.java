@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.graph;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.service.dao.GetCyclesData;
+import com.northernwall.hadrian.service.dao.GetGraphModuleData;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.LinkedList;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * Lists every group of modules that transitively depend on each other.
+ *
+ * @author Richard Thurston
+ */
+public class GraphCyclesHandler extends AbstractHandler {
+
+    private final ModuleGraph moduleGraph;
+    private final Gson gson;
+
+    public GraphCyclesHandler(ModuleGraph moduleGraph) {
+        this.moduleGraph = moduleGraph;
+        gson = new Gson();
+    }
+
+    @Override
+    public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
+        GetCyclesData cyclesData = new GetCyclesData();
+        for (List<Module> cycle : moduleGraph.getCycles()) {
+            List<GetGraphModuleData> cycleData = new LinkedList<>();
+            for (Module module : cycle) {
+                Service service = moduleGraph.getService(module.getServiceId());
+                cycleData.add(create(module, service == null ? null : service.getServiceName()));
+            }
+            cyclesData.cycles.add(cycleData);
+        }
+
+        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
+            gson.toJson(cyclesData, GetCyclesData.class, jw);
+        }
+        response.setStatus(200);
+        request.setHandled(true);
+    }
+
+    static GetGraphModuleData create(Module module, String serviceName) {
+        GetGraphModuleData data = new GetGraphModuleData();
+        data.serviceId = module.getServiceId();
+        data.moduleId = module.getModuleId();
+        data.serviceName = serviceName;
+        data.moduleName = module.getModuleName();
+        return data;
+    }
+
+}
@@ -16,15 +16,13 @@
 package com.northernwall.hadrian.graph;
 
 import com.northernwall.hadrian.Const;
-import com.northernwall.hadrian.db.DataAccess;
 import com.northernwall.hadrian.domain.Module;
-import com.northernwall.hadrian.domain.ModuleRef;
 import com.northernwall.hadrian.domain.ModuleType;
-import com.northernwall.hadrian.domain.Service;
-import com.northernwall.hadrian.domain.Team;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -37,10 +35,10 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
  */
 public class GraphFanInHandler extends AbstractHandler {
 
-    private final DataAccess dataAccess;
+    private final ModuleGraph moduleGraph;
 
-    public GraphFanInHandler(DataAccess dataAccess) {
-        this.dataAccess = dataAccess;
+    public GraphFanInHandler(ModuleGraph moduleGraph) {
+        this.moduleGraph = moduleGraph;
     }
 
     @Override
@@ -50,26 +48,25 @@ public class GraphFanInHandler extends AbstractHandler {
         response.setContentType(Const.TEXT);
         Graph graph = new Graph(response.getOutputStream(), false);
 
-        List<Module> modules = new LinkedList<>();
-        List<String> foundIds = new LinkedList<>();
-        Service service = dataAccess.getService(serviceId);
-        Team team = dataAccess.getTeam(service.getTeamId());
-        for (Module module : dataAccess.getModules(serviceId)) {
+        Deque<Module> modules = new ArrayDeque<>();
+        Set<Module> found = new HashSet<>();
+        String colour = moduleGraph.getColour(serviceId);
+        for (Module module : moduleGraph.getModules(serviceId)) {
             if (module.getModuleType() != ModuleType.Test) {
-                fanIn(module, graph, modules, foundIds, false);
-                graph.writeModule(module, team.getColour());
+                fanIn(module, graph, modules, found, false);
+                graph.writeModule(module, colour);
             }
-            foundIds.add(module.getModuleId());
+            found.add(module);
         }
         while (!modules.isEmpty()) {
-            Module module = modules.remove(0);
+            Module module = modules.removeFirst();
+            if (!found.add(module)) {
+                continue;
+            }
             if (module.getModuleType() != ModuleType.Test) {
-                fanIn(module, graph, modules, foundIds, true);
-                service = dataAccess.getService(module.getServiceId());
-                team = dataAccess.getTeam(service.getTeamId());
-                graph.writeModule(module, team.getColour());
+                fanIn(module, graph, modules, found, true);
+                graph.writeModule(module, moduleGraph.getColour(module.getServiceId()));
             }
-            foundIds.add(module.getModuleId());
         }
         graph.close();
 
@@ -77,18 +74,12 @@ public class GraphFanInHandler extends AbstractHandler {
         response.setStatus(200);
     }
 
-    private void fanIn(Module module, Graph graph, List<Module> modules, List<String> foundIds, boolean checkFound) throws IOException {
-        List<ModuleRef> moduleRefs;
-
-        moduleRefs = dataAccess.getModuleRefsByServer(module.getServiceId(), module.getModuleId());
-        if (moduleRefs != null && !moduleRefs.isEmpty()) {
-            for (ModuleRef moduleRef : moduleRefs) {
-                if (!checkFound || !foundIds.contains(moduleRef.getClientModuleId())) {
-                    Module temp = dataAccess.getModule(moduleRef.getClientServiceId(), moduleRef.getClientModuleId());
-                    graph.writeLink(temp.getModuleName(), module.getModuleName());
-                    if (checkFound || !temp.getServiceId().equals(module.getServiceId())) {
-                        modules.add(temp);
-                    }
+    private void fanIn(Module module, Graph graph, Deque<Module> modules, Set<Module> found, boolean checkFound) throws IOException {
+        for (Module temp : moduleGraph.getClients(module)) {
+            if (!checkFound || !found.contains(temp)) {
+                graph.writeLink(temp.getModuleName(), module.getModuleName());
+                if (checkFound || !temp.getServiceId().equals(module.getServiceId())) {
+                    modules.add(temp);
                 }
             }
         }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.graph;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.service.dao.GetGraphModuleData;
+import com.northernwall.hadrian.service.dao.GetImpactData;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.Http400BadRequestException;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.Http404NotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * Answers "who is affected if this module changes", the transitive fan in
+ * and fan out of a module, straight from the in memory ModuleGraph.
+ *
+ * @author Richard Thurston
+ */
+public class GraphImpactHandler extends AbstractHandler {
+
+    private final ModuleGraph moduleGraph;
+    private final Gson gson;
+
+    public GraphImpactHandler(ModuleGraph moduleGraph) {
+        this.moduleGraph = moduleGraph;
+        gson = new Gson();
+    }
+
+    @Override
+    public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
+        String serviceId = request.getParameter("serviceId");
+        String moduleId = request.getParameter("moduleId");
+        if (serviceId == null || serviceId.isEmpty() || moduleId == null || moduleId.isEmpty()) {
+            throw new Http400BadRequestException("serviceId and moduleId are required");
+        }
+
+        ModuleClosure fanIn = moduleGraph.getFanInClosure(serviceId, moduleId);
+        ModuleClosure fanOut = moduleGraph.getFanOutClosure(serviceId, moduleId);
+        if (fanIn == null || fanOut == null) {
+            throw new Http404NotFoundException("Could not find module with ID " + moduleId);
+        }
+
+        GetImpactData impact = new GetImpactData();
+        impact.serviceId = serviceId;
+        impact.moduleId = moduleId;
+        impact.serviceName = getServiceName(serviceId);
+        impact.moduleName = fanIn.getModule().getModuleName();
+        impact.inCycle = fanIn.isCyclic();
+        impact.fanInDepth = fanIn.getMaxDepth();
+        impact.fanOutDepth = fanOut.getMaxDepth();
+        addModules(fanIn, impact.fanIn);
+        addModules(fanOut, impact.fanOut);
+
+        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
+            gson.toJson(impact, GetImpactData.class, jw);
+        }
+        response.setStatus(200);
+        request.setHandled(true);
+    }
+
+    private void addModules(ModuleClosure closure, List<GetGraphModuleData> target) {
+        List<Module> modules = closure.getModules();
+        for (int i = 0; i < modules.size(); i++) {
+            GetGraphModuleData data = GraphCyclesHandler.create(modules.get(i), getServiceName(modules.get(i).getServiceId()));
+            data.depth = closure.getDepth(i);
+            target.add(data);
+        }
+    }
+
+    private String getServiceName(String serviceId) {
+        Service service = moduleGraph.getService(serviceId);
+        return service == null ? null : service.getServiceName();
+    }
+
+}
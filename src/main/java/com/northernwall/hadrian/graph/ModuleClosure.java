@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.graph;
+
+import com.northernwall.hadrian.domain.Module;
+import java.util.List;
+
+/**
+ * The set of modules transitively reachable from one module, in breadth first
+ * order, along with how many refs away each one is.
+ */
+public class ModuleClosure {
+
+    private final Module module;
+    private final List<Module> modules;
+    private final List<Integer> depths;
+    private final int maxDepth;
+    private final boolean cyclic;
+
+    public ModuleClosure(Module module, List<Module> modules, List<Integer> depths, int maxDepth, boolean cyclic) {
+        this.module = module;
+        this.modules = modules;
+        this.depths = depths;
+        this.maxDepth = maxDepth;
+        this.cyclic = cyclic;
+    }
+
+    public Module getModule() {
+        return module;
+    }
+
+    public List<Module> getModules() {
+        return modules;
+    }
+
+    public int getDepth(int i) {
+        return depths.get(i);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return true if the module can reach itself, that is it is part of a
+     * dependency cycle
+     */
+    public boolean isCyclic() {
+        return cyclic;
+    }
+
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.graph;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleRef;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in memory copy of the module dependency graph, with adjacency sets in
+ * both directions keyed by serviceId and moduleId. It is loaded once at start
+ * up and then kept current by ModuleGraphDataAccess, so the graph endpoints
+ * and the messaging fan out never have to walk ModuleRefs in the store.
+ *
+ * Readers get copies, so a traversal can never see a half applied update and
+ * writers are never blocked by a slow client reading a graph.
+ *
+ * Fan in and fan out closures are computed on first use and kept until a ref
+ * change could alter them. Adding or removing the ref client -> server only
+ * drops the fan out closures of client and its ancestors and the fan in
+ * closures of server and its descendants, everything else stays warm.
+ */
+public class ModuleGraph {
+
+    private final static Logger logger = LoggerFactory.getLogger(ModuleGraph.class);
+
+    private final ReentrantReadWriteLock lock;
+    private final Map<String, Team> teams;
+    private final Map<String, Service> services;
+    private final Map<String, Node> nodes;
+    private final Map<String, Map<String, Node>> nodesByService;
+    private final Map<Node, Closure> fanInClosures;
+    private final Map<Node, Closure> fanOutClosures;
+    private volatile List<List<Node>> cycles;
+
+    public ModuleGraph() {
+        lock = new ReentrantReadWriteLock();
+        teams = new HashMap<>();
+        services = new HashMap<>();
+        nodes = new HashMap<>();
+        nodesByService = new HashMap<>();
+        fanInClosures = new ConcurrentHashMap<>();
+        fanOutClosures = new ConcurrentHashMap<>();
+        cycles = null;
+    }
+
+    public void load(DataAccess dataAccess) {
+        long start = System.currentTimeMillis();
+        List<Team> allTeams = dataAccess.getTeams();
+        List<Service> allServices = dataAccess.getAllServices();
+        List<String> serviceIds = new ArrayList<>(allServices.size());
+        for (Service service : allServices) {
+            serviceIds.add(service.getServiceId());
+        }
+        List<Module> allModules = dataAccess.getModules(serviceIds);
+        List<ModuleRef> allModuleRefs = dataAccess.getModuleRefs();
+
+        lock.writeLock().lock();
+        try {
+            teams.clear();
+            services.clear();
+            nodes.clear();
+            nodesByService.clear();
+            clearClosures();
+            for (Team team : allTeams) {
+                teams.put(team.getTeamId(), team);
+            }
+            for (Service service : allServices) {
+                services.put(service.getServiceId(), service);
+            }
+            for (Module module : allModules) {
+                getOrCreateNode(module.getServiceId(), module.getModuleId()).module = module;
+            }
+            for (ModuleRef moduleRef : allModuleRefs) {
+                link(getOrCreateNode(moduleRef.getClientServiceId(), moduleRef.getClientModuleId()), getOrCreateNode(moduleRef.getServerServiceId(), moduleRef.getServerModuleId()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Loaded module graph with {} modules and {} refs in {}ms", allModules.size(), allModuleRefs.size(), System.currentTimeMillis() - start);
+    }
+
+    public void putTeam(Team team) {
+        lock.writeLock().lock();
+        try {
+            teams.put(team.getTeamId(), team);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putService(Service service) {
+        lock.writeLock().lock();
+        try {
+            services.put(service.getServiceId(), service);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putModule(Module module) {
+        lock.writeLock().lock();
+        try {
+            getOrCreateNode(module.getServiceId(), module.getModuleId()).module = module;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeModule(String serviceId, String moduleId) {
+        lock.writeLock().lock();
+        try {
+            Node node = nodes.remove(buildKey(serviceId, moduleId));
+            if (node == null) {
+                return;
+            }
+            Map<String, Node> serviceNodes = nodesByService.get(serviceId);
+            if (serviceNodes != null) {
+                serviceNodes.remove(moduleId);
+                if (serviceNodes.isEmpty()) {
+                    nodesByService.remove(serviceId);
+                }
+            }
+            for (Node client : node.clients) {
+                client.servers.remove(node);
+            }
+            for (Node server : node.servers) {
+                server.clients.remove(node);
+            }
+            clearClosures();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addModuleRef(ModuleRef moduleRef) {
+        lock.writeLock().lock();
+        try {
+            Node client = getOrCreateNode(moduleRef.getClientServiceId(), moduleRef.getClientModuleId());
+            Node server = getOrCreateNode(moduleRef.getServerServiceId(), moduleRef.getServerModuleId());
+            if (link(client, server)) {
+                invalidateClosures(client, server);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeModuleRef(String clientServiceId, String clientModuleId, String serverServiceId, String serverModuleId) {
+        lock.writeLock().lock();
+        try {
+            Node client = nodes.get(buildKey(clientServiceId, clientModuleId));
+            Node server = nodes.get(buildKey(serverServiceId, serverModuleId));
+            if (client != null && server != null && client.servers.remove(server)) {
+                server.clients.remove(client);
+                invalidateClosures(client, server);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public String getColour(String serviceId) {
+        lock.readLock().lock();
+        try {
+            Team team = getTeamInternal(serviceId);
+            return team == null ? null : team.getColour();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Team getTeam(String serviceId) {
+        lock.readLock().lock();
+        try {
+            return getTeamInternal(serviceId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Service getService(String serviceId) {
+        lock.readLock().lock();
+        try {
+            return services.get(serviceId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Service> getActiveServices() {
+        lock.readLock().lock();
+        try {
+            List<Service> activeServices = new ArrayList<>();
+            for (Service service : services.values()) {
+                if (service.isActive()) {
+                    activeServices.add(service);
+                }
+            }
+            return activeServices;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Module> getModules(String serviceId) {
+        lock.readLock().lock();
+        try {
+            Map<String, Node> serviceNodes = nodesByService.get(serviceId);
+            if (serviceNodes == null) {
+                return new ArrayList<>(0);
+            }
+            return toModules(serviceNodes.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the modules that use the given module
+     */
+    public List<Module> getClients(Module module) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(buildKey(module.getServiceId(), module.getModuleId()));
+            if (node == null) {
+                return new ArrayList<>(0);
+            }
+            return toModules(node.clients);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the modules that the given module uses
+     */
+    public List<Module> getServers(Module module) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(buildKey(module.getServiceId(), module.getModuleId()));
+            if (node == null) {
+                return new ArrayList<>(0);
+            }
+            return toModules(node.servers);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return every module that transitively uses the given module, or null
+     * if the module is not in the graph
+     */
+    public ModuleClosure getFanInClosure(String serviceId, String moduleId) {
+        return getClosure(serviceId, moduleId, true);
+    }
+
+    /**
+     * @return every module that the given module transitively uses, or null
+     * if the module is not in the graph
+     */
+    public ModuleClosure getFanOutClosure(String serviceId, String moduleId) {
+        return getClosure(serviceId, moduleId, false);
+    }
+
+    /**
+     * @return the strongly connected groups of modules, each group is a set
+     * of modules that all transitively use each other
+     */
+    public List<List<Module>> getCycles() {
+        lock.readLock().lock();
+        try {
+            List<List<Node>> temp = cycles;
+            if (temp == null) {
+                temp = findCycles();
+                cycles = temp;
+            }
+            List<List<Module>> result = new ArrayList<>(temp.size());
+            for (List<Node> cycle : temp) {
+                result.add(toModules(cycle));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void getHealth(HealthWriter writer) throws IOException {
+        int moduleCount;
+        int refCount = 0;
+        lock.readLock().lock();
+        try {
+            moduleCount = nodes.size();
+            for (Node node : nodes.values()) {
+                refCount += node.servers.size();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        writer.addLine("Module Graph - Modules", moduleCount);
+        writer.addLine("Module Graph - Refs", refCount);
+        writer.addLine("Module Graph - Cached Closures", fanInClosures.size() + fanOutClosures.size());
+    }
+
+    private ModuleClosure getClosure(String serviceId, String moduleId, boolean fanIn) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(buildKey(serviceId, moduleId));
+            if (node == null || node.module == null) {
+                return null;
+            }
+            Map<Node, Closure> closures = fanIn ? fanInClosures : fanOutClosures;
+            Closure closure = closures.get(node);
+            if (closure == null) {
+                //Writers hold the write lock, so nothing can change the graph
+                //between computing the closure and caching it
+                closure = computeClosure(node, fanIn);
+                closures.put(node, closure);
+            }
+            List<Module> modules = new ArrayList<>(closure.nodes.length);
+            List<Integer> depths = new ArrayList<>(closure.nodes.length);
+            int maxDepth = 0;
+            for (int i = 0; i < closure.nodes.length; i++) {
+                if (closure.nodes[i].module != null) {
+                    modules.add(closure.nodes[i].module);
+                    depths.add(closure.depths[i]);
+                    maxDepth = Math.max(maxDepth, closure.depths[i]);
+                }
+            }
+            return new ModuleClosure(node.module, modules, depths, maxDepth, closure.cyclic);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Closure computeClosure(Node start, boolean fanIn) {
+        Map<Node, Integer> found = new LinkedHashMap<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        boolean cyclic = false;
+        queue.add(start);
+        found.put(start, 0);
+        while (!queue.isEmpty()) {
+            Node node = queue.removeFirst();
+            int depth = found.get(node) + 1;
+            for (Node next : fanIn ? node.clients : node.servers) {
+                if (next == start) {
+                    cyclic = true;
+                } else if (!found.containsKey(next)) {
+                    found.put(next, depth);
+                    queue.add(next);
+                }
+            }
+        }
+        found.remove(start);
+        Node[] closureNodes = new Node[found.size()];
+        int[] closureDepths = new int[found.size()];
+        int i = 0;
+        for (Map.Entry<Node, Integer> entry : found.entrySet()) {
+            closureNodes[i] = entry.getKey();
+            closureDepths[i] = entry.getValue();
+            i++;
+        }
+        return new Closure(closureNodes, closureDepths, cyclic);
+    }
+
+    /**
+     * Tarjan's strongly connected components, written with an explicit stack
+     * so a long chain of refs can not overflow the thread's stack.
+     */
+    private List<List<Node>> findCycles() {
+        List<List<Node>> result = new ArrayList<>();
+        Map<Node, Integer> index = new HashMap<>();
+        Map<Node, Integer> low = new HashMap<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        Set<Node> onStack = new HashSet<>();
+        Deque<Node> callStack = new ArrayDeque<>();
+        Deque<Iterator<Node>> iterators = new ArrayDeque<>();
+        int counter = 0;
+
+        for (Node root : nodes.values()) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            index.put(root, counter);
+            low.put(root, counter);
+            counter++;
+            stack.push(root);
+            onStack.add(root);
+            callStack.push(root);
+            iterators.push(root.servers.iterator());
+            while (!callStack.isEmpty()) {
+                Node node = callStack.peek();
+                Iterator<Node> iterator = iterators.peek();
+                if (iterator.hasNext()) {
+                    Node next = iterator.next();
+                    if (!index.containsKey(next)) {
+                        index.put(next, counter);
+                        low.put(next, counter);
+                        counter++;
+                        stack.push(next);
+                        onStack.add(next);
+                        callStack.push(next);
+                        iterators.push(next.servers.iterator());
+                    } else if (onStack.contains(next)) {
+                        low.put(node, Math.min(low.get(node), index.get(next)));
+                    }
+                } else {
+                    callStack.pop();
+                    iterators.pop();
+                    if (!callStack.isEmpty()) {
+                        Node parent = callStack.peek();
+                        low.put(parent, Math.min(low.get(parent), low.get(node)));
+                    }
+                    if (low.get(node).equals(index.get(node))) {
+                        List<Node> component = new ArrayList<>();
+                        Node member;
+                        do {
+                            member = stack.pop();
+                            onStack.remove(member);
+                            component.add(member);
+                        } while (member != node);
+                        if (component.size() > 1 || node.servers.contains(node)) {
+                            result.add(Collections.unmodifiableList(component));
+                        }
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private void invalidateClosures(Node client, Node server) {
+        cycles = null;
+        for (Node node : reachable(client, true)) {
+            fanOutClosures.remove(node);
+        }
+        for (Node node : reachable(server, false)) {
+            fanInClosures.remove(node);
+        }
+    }
+
+    private void clearClosures() {
+        cycles = null;
+        fanInClosures.clear();
+        fanOutClosures.clear();
+    }
+
+    /**
+     * @return the start node and every node reachable from it
+     */
+    private static Set<Node> reachable(Node start, boolean fanIn) {
+        Set<Node> found = new HashSet<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        found.add(start);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Node node = queue.removeFirst();
+            for (Node next : fanIn ? node.clients : node.servers) {
+                if (found.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return found;
+    }
+
+    private Team getTeamInternal(String serviceId) {
+        Service service = services.get(serviceId);
+        if (service == null) {
+            return null;
+        }
+        return teams.get(service.getTeamId());
+    }
+
+    private static boolean link(Node client, Node server) {
+        if (client.servers.add(server)) {
+            server.clients.add(client);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A ref can arrive before the module it points at has been loaded, in
+     * which case the node is created without a module and filled in later.
+     */
+    private Node getOrCreateNode(String serviceId, String moduleId) {
+        String key = buildKey(serviceId, moduleId);
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = new Node();
+            nodes.put(key, node);
+            Map<String, Node> serviceNodes = nodesByService.get(serviceId);
+            if (serviceNodes == null) {
+                serviceNodes = new LinkedHashMap<>();
+                nodesByService.put(serviceId, serviceNodes);
+            }
+            serviceNodes.put(moduleId, node);
+        }
+        return node;
+    }
+
+    private static List<Module> toModules(Collection<Node> source) {
+        List<Module> modules = new ArrayList<>(source.size());
+        for (Node node : source) {
+            if (node.module != null) {
+                modules.add(node.module);
+            }
+        }
+        return modules;
+    }
+
+    private static String buildKey(String serviceId, String moduleId) {
+        return serviceId + "/" + moduleId;
+    }
+
+    private static class Node {
+
+        private Module module;
+        private final Set<Node> clients = new LinkedHashSet<>();
+        private final Set<Node> servers = new LinkedHashSet<>();
+
+    }
+
+    private static class Closure {
+
+        private final Node[] nodes;
+        private final int[] depths;
+        private final boolean cyclic;
+
+        private Closure(Node[] nodes, int[] depths, boolean cyclic) {
+            this.nodes = nodes;
+            this.depths = depths;
+            this.cyclic = cyclic;
+        }
+
+    }
+
+}
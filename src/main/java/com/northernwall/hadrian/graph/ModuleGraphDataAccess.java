@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.graph;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DelegatingDataAccess;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleRef;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+
+/**
+ * Keeps a ModuleGraph current by applying every team, service, module and
+ * module ref write to it once the wrapped DataAccess has accepted the write.
+ */
+public class ModuleGraphDataAccess extends DelegatingDataAccess {
+
+    private final ModuleGraph moduleGraph;
+
+    public ModuleGraphDataAccess(DataAccess dataAccess, ModuleGraph moduleGraph) {
+        super(dataAccess);
+        this.moduleGraph = moduleGraph;
+    }
+
+    @Override
+    public void getHealth(HealthWriter writer) throws IOException {
+        moduleGraph.getHealth(writer);
+        dataAccess.getHealth(writer);
+    }
+
+    @Override
+    public void saveTeam(Team team) {
+        dataAccess.saveTeam(team);
+        moduleGraph.putTeam(team);
+    }
+
+    @Override
+    public void updateTeam(Team team) {
+        dataAccess.updateTeam(team);
+        moduleGraph.putTeam(team);
+    }
+
+    @Override
+    public void saveService(Service service) {
+        dataAccess.saveService(service);
+        moduleGraph.putService(service);
+    }
+
+    @Override
+    public void updateService(Service service) {
+        dataAccess.updateService(service);
+        moduleGraph.putService(service);
+    }
+
+    @Override
+    public void saveModule(Module module) {
+        dataAccess.saveModule(module);
+        moduleGraph.putModule(module);
+    }
+
+    @Override
+    public void updateModule(Module module) {
+        dataAccess.updateModule(module);
+        moduleGraph.putModule(module);
+    }
+
+    @Override
+    public void deleteModule(String serviceId, String moduleId) {
+        dataAccess.deleteModule(serviceId, moduleId);
+        moduleGraph.removeModule(serviceId, moduleId);
+    }
+
+    @Override
+    public void saveModuleRef(ModuleRef moduleRef) {
+        dataAccess.saveModuleRef(moduleRef);
+        moduleGraph.addModuleRef(moduleRef);
+    }
+
+    @Override
+    public void deleteModuleRef(String clientServiceId, String clientModuleId, String serverServiceId, String serverModuleId) {
+        dataAccess.deleteModuleRef(clientServiceId, clientModuleId, serverServiceId, serverModuleId);
+        moduleGraph.removeModuleRef(clientServiceId, clientModuleId, serverServiceId, serverModuleId);
+    }
+
+}
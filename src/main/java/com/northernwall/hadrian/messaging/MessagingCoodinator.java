@@ -19,9 +19,9 @@ import com.google.gson.Gson;
 import com.northernwall.hadrian.Const;
 import com.northernwall.hadrian.db.DataAccess;
 import com.northernwall.hadrian.domain.Module;
-import com.northernwall.hadrian.domain.ModuleRef;
 import com.northernwall.hadrian.domain.Service;
 import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.graph.ModuleGraph;
 import com.northernwall.hadrian.parameters.ParameterChangeListener;
 import com.northernwall.hadrian.parameters.Parameters;
 import com.northernwall.hadrian.utilityHandlers.HealthWriter;
@@ -44,13 +44,15 @@ public class MessagingCoodinator implements ParameterChangeListener {
     private final static Logger logger = LoggerFactory.getLogger(MessagingCoodinator.class);
 
     private final DataAccess dataAccess;
+    private final ModuleGraph moduleGraph;
     private final Parameters parameters;
     private final List<MessageProcessor> messageProcessors;
     private final List<MessageType> messageTypes;
     private final Gson gson;
 
-    public MessagingCoodinator(DataAccess dataAccess, Parameters parameters, OkHttpClient client) {
+    public MessagingCoodinator(DataAccess dataAccess, ModuleGraph moduleGraph, Parameters parameters, OkHttpClient client) {
         this.dataAccess = dataAccess;
+        this.moduleGraph = moduleGraph;
         this.parameters = parameters;
         messageProcessors = new LinkedList<>();
         messageTypes = new LinkedList<>();
@@ -133,10 +135,11 @@ public class MessagingCoodinator implements ParameterChangeListener {
     }
 
     private void processModuleRefs(Module module, MessageType messageType, Set<Team> teams) {
-        List<ModuleRef> refs = dataAccess.getModuleRefsByServer(module.getServiceId(), module.getModuleId());
-        for (ModuleRef ref : refs) {
-            Service tempService = dataAccess.getService(ref.getClientServiceId());
-            Team tempTeam = dataAccess.getTeam(tempService.getTeamId());
+        for (Module client : moduleGraph.getClients(module)) {
+            Team tempTeam = moduleGraph.getTeam(client.getServiceId());
+            if (tempTeam == null) {
+                continue;
+            }
             logger.info("also sending message {} to {}", messageType.name, tempTeam.getTeamName());
             teams.add(tempTeam);
         }
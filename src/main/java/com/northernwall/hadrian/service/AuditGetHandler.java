@@ -15,14 +15,18 @@
  */
 package com.northernwall.hadrian.service;
 
+import com.google.gson.Gson;
 import com.google.gson.stream.JsonWriter;
 import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.domain.Audit;
 import com.northernwall.hadrian.domain.Service;
-import com.northernwall.hadrian.service.dao.GetAuditData;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.Http400BadRequestException;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.Collections;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.function.Predicate;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,6 +35,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Streams the audit records of a service, newest first, as they are read
+ * from the DataAccess. An optional limit caps the page size, in which case a
+ * cursor is returned that can be passed back to read the next page.
  *
  * @author Richard Thurston
  */
@@ -48,8 +55,9 @@ public class AuditGetHandler extends BasicHandler {
         String month = request.getParameter("month");
         String start = request.getParameter("start");
         String end = request.getParameter("end");
+        String limit = request.getParameter("limit");
+        String cursor = request.getParameter("cursor");
         String id = request.getParameter("serviceId");
-        GetAuditData auditData = new GetAuditData();
 
         Service service = getService(request);
         if (year == null || year.isEmpty()) {
@@ -64,27 +72,121 @@ public class AuditGetHandler extends BasicHandler {
         if (end == null || end.isEmpty()) {
             throw new Http400BadRequestException("parameter end is missing");
         }
-        
-        auditData.audits = getDataAccess().getAudit(
-                id, 
-                Integer.parseInt(year), 
-                Integer.parseInt(month), 
-                Integer.parseInt(start), 
-                Integer.parseInt(end));
-        logger.info("Got {} audit record for {} between {} {} {} and {}", 
-                auditData.audits.size(), 
-                service.getServiceName(), 
-                year, 
-                month, 
-                start, 
-                end);
-        Collections.sort(auditData.audits);
 
-        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
-            getGson().toJson(auditData, GetAuditData.class, jw);
+        Calendar c = new GregorianCalendar(Integer.parseInt(year), Integer.parseInt(month) - 1, Integer.parseInt(start));
+        Date from = c.getTime();
+        c.add(Calendar.DAY_OF_MONTH, Integer.parseInt(end) - Integer.parseInt(start) + 1);
+        Date to = c.getTime();
+
+        AuditPage page = new AuditPage(getGson(), parseLimit(limit));
+        if (cursor != null && !cursor.isEmpty()) {
+            page.resume(cursor);
+            if (page.skipTime < to.getTime()) {
+                to = new Date(page.skipTime + 1);
+            }
         }
+
         response.setStatus(200);
+        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
+            page.jw = jw;
+            jw.beginObject();
+            jw.name("audits");
+            jw.beginArray();
+            getDataAccess().streamAudit(id, from, to, page);
+            jw.endArray();
+            if (page.hasMore) {
+                jw.name("cursor").value(page.getCursor());
+            }
+            jw.endObject();
+        }
+        logger.info("Got {} audit record for {} between {} {} {} and {}",
+                page.count,
+                service.getServiceName(),
+                year,
+                month,
+                start,
+                end);
         request.setHandled(true);
     }
 
+    private static int parseLimit(String limit) {
+        if (limit == null || limit.isEmpty()) {
+            return Integer.MAX_VALUE;
+        }
+        try {
+            int temp = Integer.parseInt(limit);
+            if (temp < 1) {
+                throw new Http400BadRequestException("parameter limit must be at least 1");
+            }
+            return temp;
+        } catch (NumberFormatException ex) {
+            throw new Http400BadRequestException("parameter limit is not a number");
+        }
+    }
+
+    /**
+     * Writes each audit record as it arrives. Records are ordered newest
+     * first, so the cursor is the time of the last record written plus the
+     * number of records written with that time, which are skipped when the
+     * next page is read.
+     */
+    private static class AuditPage implements Predicate<Audit> {
+
+        private final Gson gson;
+        private final int limit;
+        private JsonWriter jw;
+        private int count;
+        private boolean hasMore;
+        private long skipTime;
+        private int skip;
+        private long lastTime;
+        private int lastTimeCount;
+
+        private AuditPage(Gson gson, int limit) {
+            this.gson = gson;
+            this.limit = limit;
+            this.skipTime = -1;
+            this.lastTime = -1;
+        }
+
+        private void resume(String cursor) {
+            int i = cursor.indexOf('.');
+            try {
+                skipTime = Long.parseLong(cursor.substring(0, i));
+                skip = Integer.parseInt(cursor.substring(i + 1));
+            } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+                throw new Http400BadRequestException("parameter cursor is not valid");
+            }
+            lastTime = skipTime;
+            lastTimeCount = skip;
+        }
+
+        private String getCursor() {
+            return lastTime + "." + lastTimeCount;
+        }
+
+        @Override
+        public boolean test(Audit audit) {
+            long time = audit.timePerformed.getTime();
+            if (skip > 0 && time == skipTime) {
+                skip--;
+                return true;
+            }
+            if (count >= limit) {
+                hasMore = true;
+                return false;
+            }
+            gson.toJson(audit, Audit.class, jw);
+            count++;
+            if (time == lastTime) {
+                lastTimeCount++;
+            } else {
+                lastTime = time;
+                lastTimeCount = 1;
+            }
+            return true;
+        }
+
+    }
+
 }
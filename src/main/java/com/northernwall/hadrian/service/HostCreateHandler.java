@@ -34,6 +34,7 @@ import com.northernwall.hadrian.workItem.WorkItemProcessor;
 import com.northernwall.hadrian.service.dao.PostHostData;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.Http400BadRequestException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -112,6 +113,9 @@ public class HostCreateHandler extends BasicHandler {
             }
         }
         num++;
+        List<Host> newHosts = new ArrayList<>(data.count);
+        List<WorkItem> workItems = new ArrayList<>(data.count * 2);
+        List<WorkItem> createWorkItems = new ArrayList<>(data.count);
         for (int c = 0; c < data.count; c++) {
             String numStr = Integer.toString(num + c);
             numStr = "000".substring(numStr.length()) + numStr;
@@ -123,7 +127,7 @@ public class HostCreateHandler extends BasicHandler {
                     data.dataCenter,
                     data.network,
                     data.env);
-            getDataAccess().saveHost(host);
+            newHosts.add(host);
 
             WorkItem workItemCreate = new WorkItem(Type.host, Operation.create, user, team, service, module, host, null);
             WorkItem workItemDeploy = new WorkItem(Type.host, Operation.deploy, user, team, service, module, host, null);
@@ -135,13 +139,19 @@ public class HostCreateHandler extends BasicHandler {
             workItemCreate.getHost().configVersion = data.configVersion;
             workItemCreate.getHost().reason = data.reason;
             workItemCreate.setNextId(workItemDeploy.getId());
+            workItemDeploy.setChainId(workItemCreate.getId());
             workItemDeploy.getHost().version = data.version;
             workItemDeploy.getHost().configVersion = data.configVersion;
             workItemDeploy.getHost().reason = data.reason;
 
-            getDataAccess().saveWorkItem(workItemCreate);
-            getDataAccess().saveWorkItem(workItemDeploy);
+            workItems.add(workItemCreate);
+            workItems.add(workItemDeploy);
+            createWorkItems.add(workItemCreate);
+        }
 
+        getDataAccess().saveHosts(newHosts);
+        getDataAccess().saveWorkItems(workItems);
+        for (WorkItem workItemCreate : createWorkItems) {
             workItemProcess.sendWorkItem(workItemCreate);
         }
 
@@ -27,13 +27,20 @@ import com.northernwall.hadrian.domain.Team;
 import com.northernwall.hadrian.domain.Type;
 import com.northernwall.hadrian.domain.User;
 import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.workItem.DeploymentPlanner;
 import com.northernwall.hadrian.workItem.WorkItemProcessor;
+import com.northernwall.hadrian.workItem.WorkItemStatusListener;
 import com.northernwall.hadrian.service.dao.PutDeploySoftwareData;
+import com.northernwall.hadrian.service.helper.AsyncCompletion;
 import com.northernwall.hadrian.service.helper.InfoHelper;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.Http400BadRequestException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -53,13 +60,15 @@ public class HostDeploySoftwareHandler extends BasicHandler {
     private final ConfigHelper configHelper;
     private final InfoHelper infoHelper;
     private final WorkItemProcessor workItemProcess;
+    private final DeploymentPlanner deploymentPlanner;
 
-    public HostDeploySoftwareHandler(AccessHelper accessHelper, ConfigHelper configHelper, InfoHelper infoHelper, DataAccess dataAccess, WorkItemProcessor workItemProcess) {
+    public HostDeploySoftwareHandler(AccessHelper accessHelper, ConfigHelper configHelper, InfoHelper infoHelper, DataAccess dataAccess, WorkItemProcessor workItemProcess, DeploymentPlanner deploymentPlanner) {
         super(dataAccess);
         this.accessHelper = accessHelper;
         this.configHelper = configHelper;
         this.infoHelper = infoHelper;
         this.workItemProcess = workItemProcess;
+        this.deploymentPlanner = deploymentPlanner;
     }
 
     @Override
@@ -95,6 +104,7 @@ public class HostDeploySoftwareHandler extends BasicHandler {
         if (hosts == null || hosts.isEmpty()) {
             return;
         }
+        Map<String, Host> deployHosts = new LinkedHashMap<>();
         List<WorkItem> workItems = new ArrayList<>(hosts.size());
         for (Host host : hosts) {
             if (host.getModuleId().equals(module.getModuleId()) && host.getNetwork().equals(data.network)) {
@@ -106,48 +116,106 @@ public class HostDeploySoftwareHandler extends BasicHandler {
                         workItem.getHost().versionUrl = data.versionUrl;
                         workItem.getHost().configVersion = data.configVersion;
                         workItem.getHost().reason = data.reason;
-                        if (workItems.isEmpty()) {
-                            host.setStatus(true, "Deploying...");
-                        } else {
-                            host.setStatus(true, "Deploy Queued");
-                        }
-                        getDataAccess().updateHost(host);
+                        deployHosts.put(workItem.getId(), host);
                         workItems.add(workItem);
                     }
                 }
             }
         }
 
-        String prevId = null;
-        int size = workItems.size();
-        if (size > 0) {
-            for (int i = 0; i < size; i++) {
-                WorkItem workItem = workItems.get(size - i - 1);
-                workItem.setNextId(prevId);
-                prevId = workItem.getId();
-                getDataAccess().saveWorkItem(workItem);
-            }
-            workItemProcess.sendWorkItem(workItems.get(0));
-            if (data.wait) {
-                logger.info("Waiting for deployment, {} {} {}", service.getServiceName(), module.getModuleName(), data.version);
-                String lastId = workItems.get(size - 1).getId();
-                for (int i = 0; i < (size*2*10); i++) {
-                    try {
-                        Thread.sleep(module.getStartTimeOut() * 100);
-                    } catch (InterruptedException ex) {
-                    }
-                    int workItemStatus = getDataAccess().getWorkItemStatus(lastId);
-                    if (workItemStatus > 0) {
-                        logger.info("Waiting done, status {}", workItemStatus);
-                        response.setStatus(workItemStatus);
-                        request.setHandled(true);
-                        return;
+        if (!workItems.isEmpty()) {
+            List<List<WorkItem>> waves = deploymentPlanner.plan(workItems, data.batchSize, data.batchPercent, data.byDataCenter);
+            for (int i = 0; i < waves.size(); i++) {
+                for (WorkItem workItem : waves.get(i)) {
+                    if (i == 0) {
+                        deployHosts.get(workItem.getId()).setStatus(true, "Deploying...");
+                    } else {
+                        deployHosts.get(workItem.getId()).setStatus(true, "Deploy Queued");
                     }
                 }
             }
+            getDataAccess().updateHosts(new ArrayList<>(deployHosts.values()));
+            getDataAccess().saveWorkItems(workItems);
+            for (WorkItem workItem : waves.get(0)) {
+                workItemProcess.sendWorkItem(workItem);
+            }
+            if (data.wait) {
+                logger.info("Waiting for deployment, {} {} {} in {} waves", service.getServiceName(), module.getModuleName(), data.version, waves.size());
+                List<WorkItem> lastWave = waves.get(waves.size() - 1);
+                waitForWorkItems(request, lastWave, (long) waves.size() * 2 * module.getStartTimeOut() * 1000);
+                return;
+            }
         }
         response.setStatus(200);
         request.setHandled(true);
     }
 
+    /**
+     * Parks the request until every work item in the last wave reaches a final
+     * status. If an earlier wave fails the remaining waves are cancelled, which
+     * also sets a final status. The callbacks that set the status complete the
+     * request, so no Jetty thread is held while the deployment runs.
+     */
+    private void waitForWorkItems(Request request, List<WorkItem> workItems, long timeout) {
+        List<String> workItemIds = new ArrayList<>(workItems.size());
+        for (WorkItem workItem : workItems) {
+            workItemIds.add(workItem.getId());
+        }
+        DeployWaiter waiter = new DeployWaiter(workItemIds);
+        waiter.completion = new AsyncCompletion(request.startAsync(), workItemIds.size(), timeout, waiter);
+        request.setHandled(true);
+        for (String workItemId : workItemIds) {
+            workItemProcess.addStatusListener(workItemId, waiter);
+        }
+        for (String workItemId : workItemIds) {
+            if (getDataAccess().getWorkItemStatus(workItemId) > 0 && waiter.finished.add(workItemId)) {
+                //Finished before the listener was registered
+                waiter.completion.workDone();
+            }
+        }
+    }
+
+    private class DeployWaiter implements WorkItemStatusListener, AsyncCompletion.ResponseWriter {
+
+        private final List<String> workItemIds;
+        private final Set<String> finished;
+        private AsyncCompletion completion;
+
+        private DeployWaiter(List<String> workItemIds) {
+            this.workItemIds = workItemIds;
+            this.finished = ConcurrentHashMap.newKeySet();
+        }
+
+        @Override
+        public void statusChanged(String workItemId, int status) {
+            if (finished.add(workItemId)) {
+                completion.workDone();
+            }
+        }
+
+        @Override
+        public void write(HttpServletResponse response, boolean timedOut) throws IOException {
+            int worstStatus = 0;
+            for (String workItemId : workItemIds) {
+                workItemProcess.removeStatusListener(workItemId, this);
+                //The callback may have been processed by another Hadrian instance,
+                //so the stored status is the final word
+                int workItemStatus = getDataAccess().getWorkItemStatus(workItemId);
+                if (workItemStatus <= 0) {
+                    worstStatus = -1;
+                } else if (worstStatus >= 0) {
+                    worstStatus = Math.max(worstStatus, workItemStatus);
+                }
+            }
+            if (worstStatus > 0) {
+                logger.info("Waiting done, status {}", worstStatus);
+                response.setStatus(worstStatus);
+            } else {
+                logger.info("Waiting timed out for work items {}", workItemIds);
+                response.setStatus(200);
+            }
+        }
+
+    }
+
 }
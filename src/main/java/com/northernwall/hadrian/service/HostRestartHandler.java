@@ -89,6 +89,7 @@ public class HostRestartHandler extends BasicHandler {
             for (int i = 0; i < size; i++) {
                 WorkItem workItem = workItems.get(size - i - 1);
                 workItem.setNextId(prevId);
+                workItem.setChainId(workItems.get(0).getId());
                 prevId = workItem.getId();
                 getDataAccess().saveWorkItem(workItem);
             }
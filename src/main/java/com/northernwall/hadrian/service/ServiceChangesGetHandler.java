@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.service;
+
+import com.google.gson.stream.JsonWriter;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.feed.ChangeFeed;
+import com.northernwall.hadrian.service.dao.GetChangesData;
+import com.northernwall.hadrian.service.helper.AsyncCompletion;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.Http400BadRequestException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+
+/**
+ * Long poll for changes to a service. Called without since it returns the
+ * current position straight away. Called with since it returns as soon as
+ * there are changes after that position, or with no changes once the poll
+ * timeout passes, without holding a Jetty thread while it waits.
+ *
+ * @author Richard Thurston
+ */
+public class ServiceChangesGetHandler extends BasicHandler {
+
+    private final ChangeFeed changeFeed;
+    private final long pollTimeout;
+
+    public ServiceChangesGetHandler(DataAccess dataAccess, ChangeFeed changeFeed, long pollTimeout) {
+        super(dataAccess);
+        this.changeFeed = changeFeed;
+        this.pollTimeout = pollTimeout;
+    }
+
+    @Override
+    public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
+        response.setContentType(Const.JSON);
+        Service service = getService(request);
+        long since = getSince(request);
+
+        GetChangesData data = changeFeed.read(service.getServiceId(), since);
+        if (since < 0 || data.reset || !data.changes.isEmpty()) {
+            send(response, data);
+            request.setHandled(true);
+            return;
+        }
+
+        ChangeWait wait = new ChangeWait(service.getServiceId(), since);
+        wait.completion = new AsyncCompletion(request.startAsync(), 1, pollTimeout, wait);
+        request.setHandled(true);
+        changeFeed.addWaiter(service.getServiceId(), wait);
+        //a change, or enough changes to lap the caller, may have landed
+        //before the waiter was registered
+        data = changeFeed.read(service.getServiceId(), since);
+        if (data.reset || !data.changes.isEmpty()) {
+            wait.run();
+        }
+    }
+
+    private long getSince(Request request) {
+        String since = request.getParameter("since");
+        if (since == null || since.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(since);
+        } catch (NumberFormatException ex) {
+            throw new Http400BadRequestException("since must be a number");
+        }
+    }
+
+    private void send(HttpServletResponse response, GetChangesData data) throws IOException {
+        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
+            getGson().toJson(data, GetChangesData.class, jw);
+        }
+        response.setStatus(200);
+    }
+
+    /**
+     * Woken by the feed on the next change, writes whatever has changed since
+     * the caller's position, which is nothing if the poll timed out.
+     */
+    private class ChangeWait implements Runnable, AsyncCompletion.ResponseWriter {
+
+        private final String serviceId;
+        private final long since;
+        private AsyncCompletion completion;
+
+        private ChangeWait(String serviceId, long since) {
+            this.serviceId = serviceId;
+            this.since = since;
+        }
+
+        @Override
+        public void run() {
+            completion.workDone();
+        }
+
+        @Override
+        public void write(HttpServletResponse response, boolean timedOut) throws IOException {
+            changeFeed.removeWaiter(serviceId, this);
+            send(response, changeFeed.read(serviceId, since));
+        }
+
+    }
+
+}
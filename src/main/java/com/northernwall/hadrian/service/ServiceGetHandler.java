@@ -15,7 +15,6 @@
  */
 package com.northernwall.hadrian.service;
 
-import com.google.gson.stream.JsonWriter;
 import com.northernwall.hadrian.service.helper.InfoHelper;
 import com.northernwall.hadrian.ConfigHelper;
 import com.northernwall.hadrian.Const;
@@ -32,12 +31,11 @@ import com.northernwall.hadrian.service.dao.GetDataStoreData;
 import com.northernwall.hadrian.service.dao.GetModuleData;
 import com.northernwall.hadrian.service.dao.GetServiceData;
 import com.northernwall.hadrian.service.dao.GetVipData;
+import com.northernwall.hadrian.service.helper.HostProbes;
+import com.northernwall.hadrian.service.helper.HostStatusPoller;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.Future;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -50,10 +48,12 @@ import org.eclipse.jetty.server.Request;
 public class ServiceGetHandler extends ServiceRefreshHandler {
 
     private final AccessHelper accessHelper;
+    private final InfoHelper infoHelper;
 
-    public ServiceGetHandler(AccessHelper accessHelper, DataAccess dataAccess, ConfigHelper configHelper, InfoHelper infoHelper) {
-        super(accessHelper, dataAccess, configHelper, infoHelper);
+    public ServiceGetHandler(AccessHelper accessHelper, DataAccess dataAccess, ConfigHelper configHelper, InfoHelper infoHelper, HostStatusPoller hostStatusPoller) {
+        super(accessHelper, dataAccess, configHelper, infoHelper, hostStatusPoller);
         this.accessHelper = accessHelper;
+        this.infoHelper = infoHelper;
     }
 
     @Override
@@ -64,27 +64,20 @@ public class ServiceGetHandler extends ServiceRefreshHandler {
         GetServiceData getServiceData = GetServiceData.create(service);
         getServiceData.canModify = accessHelper.canUserModify(request, service.getTeamId());
 
+        HostProbes probes = new HostProbes(infoHelper);
         if (service.isActive()) {
-            List<Future> futures = new LinkedList<>();
-
-            getModuleInfo(service, getServiceData, true, futures);
+            getModuleInfo(service, getServiceData, true);
 
             getVipInfo(service, getServiceData);
 
-            getHostInfo(service, getServiceData, futures);
+            getHostInfo(service, getServiceData, probes, isLive(request));
 
             getDataStoreInfo(service, getServiceData);
 
             getCustomFunctionInfo(service, getServiceData);
-
-            waitForFutures(futures, 151, 100);
         }
-        
-        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
-            getGson().toJson(getServiceData, GetServiceData.class, jw);
-        }
-        response.setStatus(200);
-        request.setHandled(true);
+
+        sendWhenProbed(request, getServiceData, probes.start(PROBE_TIMEOUT), getServiceData.canModify);
     }
 
     private void getCustomFunctionInfo(Service service, GetServiceData getServiceData) {
@@ -1,5 +1,7 @@
 package com.northernwall.hadrian.service;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonWriter;
 import com.northernwall.hadrian.ConfigHelper;
 import com.northernwall.hadrian.Const;
@@ -13,17 +15,17 @@ import com.northernwall.hadrian.service.dao.GetHostData;
 import com.northernwall.hadrian.service.dao.GetModuleData;
 import com.northernwall.hadrian.service.dao.GetModuleRefData;
 import com.northernwall.hadrian.service.dao.GetServiceData;
+import com.northernwall.hadrian.service.helper.AsyncCompletion;
+import com.northernwall.hadrian.service.helper.HostProbes;
+import com.northernwall.hadrian.service.helper.HostStatusPoller;
 import com.northernwall.hadrian.service.helper.InfoHelper;
-import com.northernwall.hadrian.service.helper.ReadAvailabilityRunnable;
-import com.northernwall.hadrian.service.helper.ReadVersionRunnable;
+import com.northernwall.hadrian.utilityHandlers.SingleFlight;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -33,46 +35,112 @@ import static com.northernwall.hadrian.service.BasicHandler.getGson;
 
 public class ServiceRefreshHandler extends BasicHandler {
 
+    /**
+     * How long a service page waits on host version and availability probes
+     * before it is sent with whatever has come back.
+     */
+    protected static final long PROBE_TIMEOUT = 15100;
+
+    /**
+     * Leeway given to the async request beyond PROBE_TIMEOUT, so the probe
+     * deadline and not the request timeout normally decides what is sent.
+     */
+    private static final long SEND_GRACE = 2000;
+
     private final AccessHelper accessHelper;
     private final ConfigHelper configHelper;
     private final InfoHelper infoHelper;
-    private final ExecutorService executorService;
+    private final HostStatusPoller hostStatusPoller;
+    private final SingleFlight<String, Refresh> refreshes;
 
-    public ServiceRefreshHandler(AccessHelper accessHelper, DataAccess dataAccess, ConfigHelper configHelper, InfoHelper infoHelper) {
+    public ServiceRefreshHandler(AccessHelper accessHelper, DataAccess dataAccess, ConfigHelper configHelper, InfoHelper infoHelper, HostStatusPoller hostStatusPoller, int refreshWindow, MetricRegistry metricRegistry) {
         super(dataAccess);
         this.accessHelper = accessHelper;
         this.configHelper = configHelper;
         this.infoHelper = infoHelper;
+        this.hostStatusPoller = hostStatusPoller;
+        this.refreshes = new SingleFlight<>("serviceRefresh", refreshWindow, metricRegistry);
+    }
 
-        executorService = Executors.newFixedThreadPool(20);
+    /**
+     * For subclasses that build their own, uncoalesced, service data and
+     * only use the shared module, host and send methods.
+     */
+    protected ServiceRefreshHandler(AccessHelper accessHelper, DataAccess dataAccess, ConfigHelper configHelper, InfoHelper infoHelper, HostStatusPoller hostStatusPoller) {
+        super(dataAccess);
+        this.accessHelper = accessHelper;
+        this.configHelper = configHelper;
+        this.infoHelper = infoHelper;
+        this.hostStatusPoller = hostStatusPoller;
+        this.refreshes = null;
     }
 
     @Override
     public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
         response.setContentType(Const.JSON);
-        Service service = getService(request);
+        final Service service = getService(request);
+        boolean canModify = accessHelper.canUserModify(request, service.getTeamId());
+        final boolean live = isLive(request);
+
+        //Every open page of a service polls this while a deploy runs, so
+        //refreshes within the window share one read and one round of probes.
+        //The refresh is built synchronously, so it is always done by now.
+        String key = live ? service.getServiceId() + "/live" : service.getServiceId();
+        Refresh refresh;
+        try {
+            refresh = refreshes.execute(key, () -> refresh(service, live)).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
 
-        GetServiceData getServiceData = GetServiceData.create(service);
-        getServiceData.canModify = accessHelper.canUserModify(request, service.getTeamId());
+        sendWhenProbed(request, refresh.getServiceData, refresh.probed, canModify);
+    }
 
+    private CompletableFuture<Refresh> refresh(Service service, boolean live) {
+        GetServiceData getServiceData = GetServiceData.create(service);
+        HostProbes probes = new HostProbes(infoHelper);
         if (service.isActive()) {
-            List<Future> futures = new LinkedList<>();
-
-            getModuleInfo(service, getServiceData, false, futures);
-
-            getHostInfo(service, getServiceData, futures);
+            getModuleInfo(service, getServiceData, false);
 
-            waitForFutures(futures, 151, 100);
+            getHostInfo(service, getServiceData, probes, live);
         }
+        return CompletableFuture.completedFuture(new Refresh(getServiceData, probes.start(PROBE_TIMEOUT)));
+    }
 
-        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
-            getGson().toJson(getServiceData, GetServiceData.class, jw);
-        }
-        response.setStatus(200);
+    /**
+     * Sends the service once its probes have answered, or with whatever has
+     * come back if the deadline passes first, without holding a Jetty thread
+     * while they run. The service may be shared with other requests, so this
+     * caller's canModify is applied to the output rather than to it.
+     */
+    protected void sendWhenProbed(Request request, final GetServiceData getServiceData, CompletableFuture<Boolean> probed, final boolean canModify) {
+        final AsyncCompletion completion = new AsyncCompletion(request.startAsync(), 1, PROBE_TIMEOUT + SEND_GRACE, new AsyncCompletion.ResponseWriter() {
+            @Override
+            public void write(HttpServletResponse response, boolean timedOut) throws IOException {
+                JsonObject json = getGson().toJsonTree(getServiceData, GetServiceData.class).getAsJsonObject();
+                json.addProperty("canModify", canModify);
+                try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
+                    getGson().toJson(json, jw);
+                }
+                response.setStatus(200);
+            }
+        });
         request.setHandled(true);
+        probed.whenComplete((allProbed, ex) -> completion.workDone());
     }
 
-    protected void getModuleInfo(Service service, GetServiceData getServiceData, boolean includeStuff, List<Future> futures) {
+    /**
+     * @return true when the caller has asked for hosts to be probed now
+     * rather than served from the poller's snapshot
+     */
+    protected static boolean isLive(Request request) {
+        return Boolean.parseBoolean(request.getParameter("live"));
+    }
+
+    protected void getModuleInfo(Service service, GetServiceData getServiceData, boolean includeStuff) {
         List<Module> modules = getDataAccess().getModules(service.getServiceId());
         Collections.sort(modules);
         for (Module module : modules) {
@@ -107,7 +175,7 @@ public class ServiceRefreshHandler extends BasicHandler {
         Collections.sort(getModuleData.usedBy);
     }
 
-    protected void getHostInfo(Service service, GetServiceData getServiceData, List<Future> futures) {
+    protected void getHostInfo(Service service, GetServiceData getServiceData, HostProbes probes, boolean live) {
         List<Host> hosts = getDataAccess().getHosts(service.getServiceId());
         Collections.sort(hosts);
         for (Host host : hosts) {
@@ -119,11 +187,24 @@ public class ServiceRefreshHandler extends BasicHandler {
             }
             if (getModuleData != null) {
                 GetHostData getHostData = GetHostData.create(host);
-                futures.add(executorService.submit(new ReadVersionRunnable(getHostData, getModuleData, infoHelper)));
-                futures.add(executorService.submit(new ReadAvailabilityRunnable(getHostData, getModuleData, infoHelper)));
+                if (live || !hostStatusPoller.fill(getHostData)) {
+                    probes.add(getHostData, getModuleData);
+                }
                 getModuleData.addHost(getHostData);
             }
         }
     }
 
+    private static class Refresh {
+
+        private final GetServiceData getServiceData;
+        private final CompletableFuture<Boolean> probed;
+
+        private Refresh(GetServiceData getServiceData, CompletableFuture<Boolean> probed) {
+            this.getServiceData = getServiceData;
+            this.probed = probed;
+        }
+
+    }
+
 }
@@ -9,12 +9,14 @@ import com.northernwall.hadrian.module.ModuleArtifactHelper;
 import com.northernwall.hadrian.module.ModuleConfigHelper;
 import com.northernwall.hadrian.service.dao.GetVersionData;
 import com.northernwall.hadrian.service.helper.ReadModuleArtifactVersionsRunnable;
+import com.northernwall.hadrian.service.helper.AsyncCompletion;
 import com.northernwall.hadrian.service.helper.ReadModuleConfigVersionsRunnable;
+import com.northernwall.hadrian.utilityHandlers.FanOut;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -23,16 +25,19 @@ import org.eclipse.jetty.server.Request;
 import static com.northernwall.hadrian.service.BasicHandler.getGson;
 
 public class VersionsGetHandler extends BasicHandler {
+
+    private static final long VERSIONS_TIMEOUT = 15100;
+
     private final ModuleArtifactHelper moduleArtifactHelper;
     private final ModuleConfigHelper moduleConfigHelper;
-    private final ExecutorService executorService;
+    private final Executor executor;
 
-    public VersionsGetHandler(DataAccess dataAccess, ModuleArtifactHelper moduleArtifactHelper, ModuleConfigHelper moduleConfigHelper) {
+    public VersionsGetHandler(DataAccess dataAccess, ModuleArtifactHelper moduleArtifactHelper, ModuleConfigHelper moduleConfigHelper, Executor executor) {
         super(dataAccess);
         this.moduleArtifactHelper = moduleArtifactHelper;
         this.moduleConfigHelper = moduleConfigHelper;
 
-        executorService = Executors.newFixedThreadPool(20);
+        this.executor = executor;
     }
 
     @Override
@@ -41,22 +46,20 @@ public class VersionsGetHandler extends BasicHandler {
         Service service = getService(request);
         Module module = getModule(request, service);
 
-        GetVersionData data = new GetVersionData();
-        
-        Future artifactFuture = executorService.submit(new ReadModuleArtifactVersionsRunnable(module, data, moduleArtifactHelper));
-        Future configFuture = executorService.submit(new ReadModuleConfigVersionsRunnable(module, data, moduleConfigHelper));
-        
-        while (!artifactFuture.isDone() || !configFuture.isDone()) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException ex) {
+        final GetVersionData data = new GetVersionData();
+        final AsyncCompletion completion = new AsyncCompletion(request.startAsync(), 1, VERSIONS_TIMEOUT, new AsyncCompletion.ResponseWriter() {
+            @Override
+            public void write(HttpServletResponse response, boolean timedOut) throws IOException {
+                try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
+                    getGson().toJson(data, GetVersionData.class, jw);
+                }
+                response.setStatus(200);
             }
-        }
-        
-        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
-            getGson().toJson(data, GetVersionData.class, jw);
-        }
-        response.setStatus(200);
+        });
+        List<Runnable> tasks = Arrays.asList(
+                new ReadModuleArtifactVersionsRunnable(module, data, moduleArtifactHelper),
+                new ReadModuleConfigVersionsRunnable(module, data, moduleConfigHelper));
+        FanOut.runAll(tasks, executor, VERSIONS_TIMEOUT).thenRun(completion::workDone);
         request.setHandled(true);
     }
 
@@ -20,10 +20,10 @@ import com.google.gson.stream.JsonWriter;
 import com.northernwall.hadrian.Const;
 import com.northernwall.hadrian.db.DataAccess;
 import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
 import com.northernwall.hadrian.service.dao.GetWorkItemData;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -48,17 +48,18 @@ public class WorkItemGetHandler extends AbstractHandler {
     public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
         response.setContentType(Const.JSON);
         GetWorkItemData getWorkItemData = new GetWorkItemData();
-        List<WorkItem> workItems = dataAccess.getWorkItems();
-        for (WorkItem workItem : workItems) {
-            boolean found = false;
-            for (WorkItem workItem2 : workItems) {
-                if (workItem.getId().equals(workItem2.getNextId())) {
-                    found = true;
+        String serviceId = request.getParameter("serviceId");
+        if (serviceId == null || serviceId.isEmpty()) {
+            //The work item at the front of each chain is the one that has been
+            //queued or sent, the rest of the chain is still pending
+            getWorkItemData.workItems.addAll(dataAccess.getWorkItems(WorkItemState.queued));
+            getWorkItemData.workItems.addAll(dataAccess.getWorkItems(WorkItemState.sent));
+        } else {
+            for (WorkItem workItem : dataAccess.getServiceWorkItems(serviceId)) {
+                if (workItem.getState() != WorkItemState.pending) {
+                    getWorkItemData.workItems.add(workItem);
                 }
             }
-            if (!found) {
-                getWorkItemData.workItems.add(workItem);
-            }
         }
         try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
             gson.toJson(getWorkItemData, GetWorkItemData.class, jw);
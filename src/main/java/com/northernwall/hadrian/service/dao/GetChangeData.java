@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.service.dao;
+
+/**
+ * One change to a service, as sent on the change feed. Only the fields that
+ * apply to the kind of change are set.
+ */
+public class GetChangeData {
+
+    public static final String HOST = "host";
+    public static final String HOST_DELETED = "hostDeleted";
+    public static final String HOST_PROBED = "hostProbed";
+    public static final String WORK_ITEM = "workItem";
+
+    public long seq;
+    public String kind;
+    public String hostId;
+    public String hostName;
+    public String status;
+    public Boolean busy;
+    public String version;
+    public Integer availability;
+    public String workItemId;
+    public String operation;
+    public Integer workItemStatus;
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014 Richard Thurston.
+ * Copyright 2016 Richard Thurston.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,11 +15,10 @@
  */
 package com.northernwall.hadrian.service.dao;
 
-import com.northernwall.hadrian.domain.Audit;
 import java.util.LinkedList;
 import java.util.List;
 
-public class GetAuditData {
-    public List<Audit> audits = new LinkedList<>();
+public class GetCyclesData {
+    public List<List<GetGraphModuleData>> cycles = new LinkedList<>();
 
 }
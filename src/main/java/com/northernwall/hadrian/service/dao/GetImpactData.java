@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.service.dao;
+
+import java.util.LinkedList;
+import java.util.List;
+
+public class GetImpactData {
+    public String serviceId;
+    public String moduleId;
+    public String serviceName;
+    public String moduleName;
+    public boolean inCycle;
+    public int fanInDepth;
+    public int fanOutDepth;
+    public List<GetGraphModuleData> fanIn = new LinkedList<>();
+    public List<GetGraphModuleData> fanOut = new LinkedList<>();
+
+}
@@ -36,5 +36,8 @@ public class PutDeploySoftwareData {
     public String configVersion;
     public String reason;
     public boolean wait = false;
+    public int batchSize = 0;
+    public int batchPercent = 0;
+    public boolean byDataCenter = false;
 
 }
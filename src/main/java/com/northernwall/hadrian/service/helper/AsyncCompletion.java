@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.service.helper;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finishes an async request once a number of pieces of work have reported in,
+ * or once the async timeout expires, whichever comes first. The response is
+ * written exactly once, by whichever thread gets there first, so the Jetty
+ * thread that started the request is free to serve other requests while the
+ * work is outstanding.
+ */
+public class AsyncCompletion implements AsyncListener {
+
+    private final static Logger logger = LoggerFactory.getLogger(AsyncCompletion.class);
+
+    public interface ResponseWriter {
+
+        void write(HttpServletResponse response, boolean timedOut) throws IOException;
+
+    }
+
+    private final AsyncContext asyncContext;
+    private final ResponseWriter responseWriter;
+    private final AtomicInteger pending;
+    private final AtomicBoolean done;
+
+    public AsyncCompletion(AsyncContext asyncContext, int pending, long timeout, ResponseWriter responseWriter) {
+        this.asyncContext = asyncContext;
+        this.responseWriter = responseWriter;
+        this.pending = new AtomicInteger(pending);
+        this.done = new AtomicBoolean(false);
+        asyncContext.setTimeout(timeout);
+        asyncContext.addListener(this);
+        if (pending <= 0) {
+            finish(false);
+        }
+    }
+
+    /**
+     * Called once for each piece of work, the response is written after the
+     * last one.
+     */
+    public void workDone() {
+        if (pending.decrementAndGet() <= 0) {
+            finish(false);
+        }
+    }
+
+    public boolean isDone() {
+        return done.get();
+    }
+
+    public void finish(boolean timedOut) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            responseWriter.write((HttpServletResponse) asyncContext.getResponse(), timedOut);
+        } catch (Exception ex) {
+            logger.warn("Failed to write async response, {}", ex.getMessage());
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+        finish(true);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+        if (done.compareAndSet(false, true)) {
+            logger.warn("Async request failed, {}", event.getThrowable() == null ? "unknown" : event.getThrowable().getMessage());
+            asyncContext.complete();
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+        done.set(true);
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.service.helper;
+
+import com.northernwall.hadrian.service.dao.GetHostData;
+import com.northernwall.hadrian.service.dao.GetModuleData;
+import com.northernwall.hadrian.utilityHandlers.FanOut;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The version and availability probes for the hosts on one service page.
+ * They are all issued at once as non-blocking calls, each result is written
+ * into its GetHostData as it arrives, and probes still outstanding at the
+ * deadline are abandoned. A probe shared with another caller, the host poller
+ * or another page, carries on for them.
+ */
+public class HostProbes {
+
+    private final InfoHelper infoHelper;
+    private final List<GetHostData> hosts;
+    private final List<GetModuleData> modules;
+    private final List<CompletableFuture<?>> started;
+
+    public HostProbes(InfoHelper infoHelper) {
+        this.infoHelper = infoHelper;
+        this.hosts = new ArrayList<>();
+        this.modules = new ArrayList<>();
+        this.started = new ArrayList<>();
+    }
+
+    public void add(GetHostData getHostData, GetModuleData getModuleData) {
+        hosts.add(getHostData);
+        modules.add(getModuleData);
+    }
+
+    public int size() {
+        return hosts.size();
+    }
+
+    /**
+     * @return a future that completes with true once every probe has
+     * answered, or with false if the timeout passes first.
+     */
+    public CompletableFuture<Boolean> start(long timeoutMillis) {
+        if (hosts.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        final CompletableFuture<Void> probed = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(hosts.size() * 2);
+        Runnable done = new Runnable() {
+            @Override
+            public void run() {
+                if (pending.decrementAndGet() == 0) {
+                    probed.complete(null);
+                }
+            }
+        };
+        for (int i = 0; i < hosts.size(); i++) {
+            GetHostData getHostData = hosts.get(i);
+            GetModuleData getModuleData = modules.get(i);
+            started.add(infoHelper.probeVersion(getHostData, getModuleData.versionUrl, done));
+            started.add(infoHelper.probeAvailability(getHostData, getModuleData.availabilityUrl, done));
+        }
+        CompletableFuture<Boolean> result = FanOut.withDeadline(probed, timeoutMillis);
+        result.thenAccept(allProbed -> {
+            if (!allProbed) {
+                for (CompletableFuture<?> probe : started) {
+                    probe.cancel(false);
+                }
+            }
+        });
+        return result;
+    }
+
+}
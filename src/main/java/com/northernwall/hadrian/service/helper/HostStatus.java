@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.service.helper;
+
+/**
+ * The last known version and availability of a host, as seen by the
+ * HostStatusPoller.
+ */
+public class HostStatus {
+
+    private final String version;
+    private final int availability;
+    private final boolean busy;
+    private final long probed;
+
+    public HostStatus(String version, int availability, boolean busy, long probed) {
+        this.version = version;
+        this.availability = availability;
+        this.busy = busy;
+        this.probed = probed;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public int getAvailability() {
+        return availability;
+    }
+
+    /**
+     * @return whether the host was busy when it was probed
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+
+    public long getProbed() {
+        return probed;
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.service.helper;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.feed.ChangeFeed;
+import com.northernwall.hadrian.graph.ModuleGraph;
+import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.service.dao.GetHostData;
+import com.northernwall.hadrian.utilityHandlers.HealthWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Probes the version and availability of every host of every active service
+ * in the background and keeps the latest answer for each host, so service
+ * pages can be served from the snapshot no matter how many people have them
+ * open. Busy hosts, the ones being deployed or restarted, are probed on the
+ * shorter busy interval so a deploy can be watched as it happens.
+ */
+public class HostStatusPoller {
+
+    private final static Logger logger = LoggerFactory.getLogger(HostStatusPoller.class);
+
+    private final DataAccess dataAccess;
+    private final ModuleGraph moduleGraph;
+    private final ChangeFeed changeFeed;
+    private final InfoHelper infoHelper;
+    private final long interval;
+    private final long busyInterval;
+    private final Map<String, HostStatus> snapshots;
+    private final Set<String> inFlight;
+    private final Meter probes;
+    private final ScheduledExecutorService scheduler;
+
+    public HostStatusPoller(DataAccess dataAccess, ModuleGraph moduleGraph, ChangeFeed changeFeed, InfoHelper infoHelper, Parameters parameters, MetricRegistry metricRegistry) {
+        this.dataAccess = dataAccess;
+        this.moduleGraph = moduleGraph;
+        this.changeFeed = changeFeed;
+        this.infoHelper = infoHelper;
+        this.interval = parameters.getInt(Const.HOST_POLLER_INTERVAL, Const.HOST_POLLER_INTERVAL_DEFAULT);
+        this.busyInterval = parameters.getInt(Const.HOST_POLLER_BUSY_INTERVAL, Const.HOST_POLLER_BUSY_INTERVAL_DEFAULT);
+        this.snapshots = new ConcurrentHashMap<>();
+        this.inFlight = ConcurrentHashMap.newKeySet();
+        this.probes = metricRegistry.meter("hostPoller.probes");
+        metricRegistry.register("hostPoller.hosts", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return snapshots.size();
+            }
+        });
+        metricRegistry.register("hostPoller.inFlight", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return inFlight.size();
+            }
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "host-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        if (interval <= 0) {
+            logger.info("Host poller is disabled, service pages will probe hosts live");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(() -> poll(), 0, Math.min(interval, busyInterval), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Copies the host's last known version and availability into
+     * getHostData.
+     *
+     * @return false if the host has not been probed yet
+     */
+    public boolean fill(GetHostData getHostData) {
+        HostStatus status = snapshots.get(getHostData.hostId);
+        if (status == null) {
+            return false;
+        }
+        getHostData.version = status.getVersion();
+        getHostData.availability = status.getAvailability();
+        return true;
+    }
+
+    public HostStatus getStatus(String hostId) {
+        return snapshots.get(hostId);
+    }
+
+    /**
+     * Starts a probe for every host that is due one. Probes are non-blocking,
+     * so a pass takes as long as reading the host list, not as long as the
+     * slowest host.
+     */
+    void poll() {
+        try {
+            long now = System.currentTimeMillis();
+            Set<String> seen = new HashSet<>();
+            for (Service service : moduleGraph.getActiveServices()) {
+                Map<String, Module> modules = new HashMap<>();
+                for (Module module : moduleGraph.getModules(service.getServiceId())) {
+                    modules.put(module.getModuleId(), module);
+                }
+                for (Host host : dataAccess.getHosts(service.getServiceId())) {
+                    Module module = modules.get(host.getModuleId());
+                    if (module == null) {
+                        continue;
+                    }
+                    seen.add(host.getHostId());
+                    HostStatus status = snapshots.get(host.getHostId());
+                    if (isDue(host, status, now) && inFlight.add(host.getHostId())) {
+                        probe(host, module);
+                    }
+                }
+            }
+            snapshots.keySet().retainAll(seen);
+        } catch (Exception ex) {
+            logger.warn("Host poll failed, {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * A host is due when it has never been probed, when it has gone in to or
+     * come out of a busy state since it was last probed, or when its interval
+     * has passed.
+     */
+    private boolean isDue(Host host, HostStatus status, long now) {
+        if (status == null || status.isBusy() != host.isBusy()) {
+            return true;
+        }
+        long due = host.isBusy() ? busyInterval : interval;
+        return now - status.getProbed() >= due;
+    }
+
+    private void probe(final Host host, Module module) {
+        probes.mark();
+        final GetHostData getHostData = GetHostData.create(host);
+        final AtomicInteger pending = new AtomicInteger(2);
+        Runnable done = new Runnable() {
+            @Override
+            public void run() {
+                if (pending.decrementAndGet() == 0) {
+                    HostStatus previous = snapshots.put(host.getHostId(), new HostStatus(getHostData.version, getHostData.availability, host.isBusy(), System.currentTimeMillis()));
+                    if (previous == null
+                            || previous.getAvailability() != getHostData.availability
+                            || !Objects.equals(previous.getVersion(), getHostData.version)) {
+                        changeFeed.hostProbed(host.getServiceId(), host.getHostId(), getHostData.version, getHostData.availability);
+                    }
+                    inFlight.remove(host.getHostId());
+                }
+            }
+        };
+        CompletableFuture.allOf(
+                infoHelper.probeVersion(getHostData, module.getVersionUrl(), done),
+                infoHelper.probeAvailability(getHostData, module.getAvailabilityUrl(), done)).whenComplete((probed, ex) -> {
+            if (ex != null) {
+                //a failed probe never runs done, let the next poll retry it
+                inFlight.remove(host.getHostId());
+            }
+        });
+    }
+
+    public void getHealth(HealthWriter writer) throws IOException {
+        writer.addLine("Host Poller - Hosts", snapshots.size());
+        writer.addLine("Host Poller - In Flight", inFlight.size());
+    }
+
+}
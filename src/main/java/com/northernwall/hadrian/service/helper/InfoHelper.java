@@ -15,9 +15,16 @@
  */
 package com.northernwall.hadrian.service.helper;
 
+import com.codahale.metrics.MetricRegistry;
 import com.northernwall.hadrian.Const;
 import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.service.dao.GetHostData;
+import com.northernwall.hadrian.utilityHandlers.SingleFlight;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.Dispatcher;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Request.Builder;
@@ -26,15 +33,40 @@ import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class InfoHelper {
 
     private final Parameters parameters;
     private final OkHttpClient client;
+    private final OkHttpClient probeClient;
+    private final SingleFlight<String, String> versionProbes;
+    private final SingleFlight<String, Integer> availabilityProbes;
 
-    public InfoHelper(Parameters parameters, OkHttpClient client) {
+    public InfoHelper(Parameters parameters, OkHttpClient client, MetricRegistry metricRegistry) {
         this.parameters = parameters;
         this.client = client;
+
+        //Host probes are fired for every host of a service at once, so they
+        //get their own dispatcher and a pool sized for that rather than
+        //queuing behind the shared client's handful of connections.
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(parameters.getInt(Const.OUTBOUND_PROBE_MAX_REQUESTS, Const.OUTBOUND_PROBE_MAX_REQUESTS_DEFAULT));
+        dispatcher.setMaxRequestsPerHost(parameters.getInt(Const.OUTBOUND_PROBE_MAX_REQUESTS_PER_HOST, Const.OUTBOUND_PROBE_MAX_REQUESTS_PER_HOST_DEFAULT));
+        probeClient = client.clone();
+        probeClient.setDispatcher(dispatcher);
+        probeClient.setConnectionPool(new ConnectionPool(
+                parameters.getInt(Const.OUTBOUND_PROBE_MAX_IDLE_CONNECTIONS, Const.OUTBOUND_PROBE_MAX_IDLE_CONNECTIONS_DEFAULT),
+                parameters.getInt(Const.OUTBOUND_PROBE_KEEP_ALIVE, Const.OUTBOUND_PROBE_KEEP_ALIVE_DEFAULT)));
+        probeClient.setConnectTimeout(parameters.getInt(Const.OUTBOUND_PROBE_CONNECT_TIMEOUT, Const.OUTBOUND_PROBE_CONNECT_TIMEOUT_DEFAULT), TimeUnit.MILLISECONDS);
+        probeClient.setReadTimeout(parameters.getInt(Const.OUTBOUND_PROBE_READ_TIMEOUT, Const.OUTBOUND_PROBE_READ_TIMEOUT_DEFAULT), TimeUnit.MILLISECONDS);
+
+        //The poller and any live page refreshes often want the same url at
+        //the same moment, they share one call rather than each making one.
+        int window = parameters.getInt(Const.SINGLE_FLIGHT_PROBE_WINDOW, Const.SINGLE_FLIGHT_PROBE_WINDOW_DEFAULT);
+        versionProbes = new SingleFlight<>("versionProbe", window, metricRegistry);
+        availabilityProbes = new SingleFlight<>("availabilityProbe", window, metricRegistry);
     }
 
     public int readAvailability(String host, String url) {
@@ -42,18 +74,8 @@ public class InfoHelper {
             return -1;
         }
         try {
-            Builder builder = new Request.Builder()
-                    .url(Const.HTTP + url.replace(Const.HOST, host));
-            if (parameters.getUsername() != null
-                    && parameters.getUsername().isEmpty()
-                    && parameters.getPassword() != null
-                    && parameters.getPassword().isEmpty()) {
-                builder.addHeader(
-                        "Authorization",
-                        Credentials.basic(parameters.getUsername(), parameters.getPassword()));
-            }
-            Request request = builder.build();
-            Response response = client.newCall(request).execute();
+            Response response = client.newCall(buildRequest(host, url)).execute();
+            response.body().close();
             return response.code();
         } catch (IOException ex) {
             return -1;
@@ -65,30 +87,141 @@ public class InfoHelper {
             return "No Version URL";
         }
         try {
-            Builder builder = new Request.Builder()
-                    .url(Const.HTTP + url.replace(Const.HOST, host));
-            if (parameters.getUsername() != null
-                    && parameters.getUsername().isEmpty()
-                    && parameters.getPassword() != null
-                    && parameters.getPassword().isEmpty()) {
-                builder.addHeader(
-                        "Authorization",
-                        Credentials.basic(parameters.getUsername(), parameters.getPassword()));
-            }
-            Request request = builder.build();
-            Response response = client.newCall(request).execute();
-            if (response.isSuccessful()) {
-                return response.body().string();
-            } else {
-                return "Error: " + response.code();
+            Response response = client.newCall(buildRequest(host, url)).execute();
+            return readVersion(response);
+        } catch (IOException ex) {
+            return versionError(ex);
+        }
+    }
+
+    /**
+     * Starts an availability probe without blocking. The result is written
+     * into getHostData and then done is run, on an OkHttp dispatcher thread.
+     * Cancelling the returned future abandons the probe, the call itself is
+     * only cancelled once no one else is waiting on it.
+     */
+    public CompletableFuture<Integer> probeAvailability(final GetHostData getHostData, String url, final Runnable done) {
+        if (url == null || url.isEmpty()) {
+            getHostData.availability = -1;
+            done.run();
+            return CompletableFuture.completedFuture(-1);
+        }
+        final Request request = buildRequest(getHostData.hostName, url);
+        CompletableFuture<Integer> probe = availabilityProbes.execute(request.urlString(), () -> {
+            final CompletableFuture<Integer> availability = new CompletableFuture<>();
+            final Call call = probeClient.newCall(request);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Request request, IOException ex) {
+                    if (call.isCanceled()) {
+                        availability.cancel(false);
+                    } else {
+                        availability.complete(-1);
+                    }
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    try {
+                        response.body().close();
+                    } finally {
+                        availability.complete(response.code());
+                    }
+                }
+            });
+            cancelWith(availability, call);
+            return availability;
+        });
+        probe.thenAccept(availability -> {
+            getHostData.availability = availability;
+            done.run();
+        });
+        return probe;
+    }
+
+    /**
+     * Starts a version probe without blocking. The result is written into
+     * getHostData and then done is run, on an OkHttp dispatcher thread.
+     * Cancelling the returned future abandons the probe, the call itself is
+     * only cancelled once no one else is waiting on it.
+     */
+    public CompletableFuture<String> probeVersion(final GetHostData getHostData, String url, final Runnable done) {
+        if (url == null || url.isEmpty()) {
+            getHostData.version = "No Version URL";
+            done.run();
+            return CompletableFuture.completedFuture(getHostData.version);
+        }
+        final Request request = buildRequest(getHostData.hostName, url);
+        CompletableFuture<String> probe = versionProbes.execute(request.urlString(), () -> {
+            final CompletableFuture<String> version = new CompletableFuture<>();
+            final Call call = probeClient.newCall(request);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Request request, IOException ex) {
+                    if (call.isCanceled()) {
+                        version.cancel(false);
+                    } else {
+                        version.complete(versionError(ex));
+                    }
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    try {
+                        version.complete(readVersion(response));
+                    } catch (IOException ex) {
+                        version.complete(versionError(ex));
+                    }
+                }
+            });
+            cancelWith(version, call);
+            return version;
+        });
+        probe.thenAccept(version -> {
+            getHostData.version = version;
+            done.run();
+        });
+        return probe;
+    }
+
+    private static void cancelWith(CompletableFuture<?> probe, final Call call) {
+        probe.whenComplete((result, ex) -> {
+            if (probe.isCancelled()) {
+                call.cancel();
             }
-        } catch (UnknownHostException ex) {
+        });
+    }
+
+    private Request buildRequest(String host, String url) {
+        Builder builder = new Request.Builder()
+                .url(Const.HTTP + url.replace(Const.HOST, host));
+        if (parameters.getUsername() != null
+                && parameters.getUsername().isEmpty()
+                && parameters.getPassword() != null
+                && parameters.getPassword().isEmpty()) {
+            builder.addHeader(
+                    "Authorization",
+                    Credentials.basic(parameters.getUsername(), parameters.getPassword()));
+        }
+        return builder.build();
+    }
+
+    private String readVersion(Response response) throws IOException {
+        if (response.isSuccessful()) {
+            return response.body().string();
+        } else {
+            response.body().close();
+            return "Error: " + response.code();
+        }
+    }
+
+    private String versionError(IOException ex) {
+        if (ex instanceof UnknownHostException) {
             return "Unknown Host";
-        } catch (ConnectException | SocketTimeoutException ex) {
+        } else if (ex instanceof ConnectException || ex instanceof SocketTimeoutException) {
             return "Time Out";
-        } catch (IOException ex) {
-            return "IO Exception";
         }
+        return "IO Exception";
     }
 
 }
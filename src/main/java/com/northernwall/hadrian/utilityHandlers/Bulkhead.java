@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed size pool with a bounded queue for one kind of outbound call, so a
+ * slow dependency can only tie up its own threads. TargetedRunnable tasks are
+ * also limited per target; tasks over the limit wait in a per target queue
+ * without holding a pool thread and are started as earlier ones finish.
+ */
+public class Bulkhead implements Executor {
+
+    private final String name;
+    private final int targetLimit;
+    private final int queueSize;
+    private final ThreadPoolExecutor pool;
+    private final Map<String, TargetQueue> targets;
+    private final Timer timerWait;
+    private final Timer timerRun;
+    private final Meter meterRejected;
+
+    public Bulkhead(final String name, int threads, int queueSize, int targetLimit, MetricRegistry metricRegistry) {
+        this.name = name;
+        this.targetLimit = targetLimit;
+        this.queueSize = queueSize;
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "outbound-" + name + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        targets = new ConcurrentHashMap<>();
+
+        timerWait = metricRegistry.timer("outbound." + name + ".wait");
+        timerRun = metricRegistry.timer("outbound." + name + ".run");
+        meterRejected = metricRegistry.meter("outbound." + name + ".rejected");
+        metricRegistry.register("outbound." + name + ".active", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return pool.getActiveCount();
+            }
+        });
+        metricRegistry.register("outbound." + name + ".queued", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getQueued();
+            }
+        });
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        String target = null;
+        if (task instanceof TargetedRunnable) {
+            target = ((TargetedRunnable) task).getTarget();
+        }
+        if (target == null || targetLimit <= 0) {
+            submit(new Measured(task, null));
+            return;
+        }
+
+        TargetQueue targetQueue = targets.computeIfAbsent(target, k -> new TargetQueue(k));
+        Measured measured = new Measured(task, targetQueue);
+        synchronized (targetQueue) {
+            if (targetQueue.running >= targetLimit) {
+                if (targetQueue.waiting.size() >= queueSize) {
+                    meterRejected.mark();
+                    throw new RejectedExecutionException("Too many outbound " + name + " calls queued for " + target);
+                }
+                targetQueue.waiting.add(measured);
+                return;
+            }
+            targetQueue.running++;
+        }
+        try {
+            submit(measured);
+        } catch (RejectedExecutionException ex) {
+            finished(targetQueue);
+            throw ex;
+        }
+    }
+
+    public void getHealth(HealthWriter writer) throws IOException {
+        writer.addLine("Outbound " + name + " - Threads", pool.getActiveCount() + "/" + pool.getMaximumPoolSize());
+        writer.addLine("Outbound " + name + " - Queued", getQueued());
+        writer.addLine("Outbound " + name + " - Rejected", Long.toString(meterRejected.getCount()));
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private int getQueued() {
+        int queued = pool.getQueue().size();
+        for (TargetQueue targetQueue : targets.values()) {
+            synchronized (targetQueue) {
+                queued += targetQueue.waiting.size();
+            }
+        }
+        return queued;
+    }
+
+    private void submit(Measured measured) {
+        try {
+            pool.execute(measured);
+        } catch (RejectedExecutionException ex) {
+            meterRejected.mark();
+            throw ex;
+        }
+    }
+
+    /**
+     * Starts the next task waiting on the target, or releases the target's
+     * slot if nothing is waiting. A waiting task the pool will not take is
+     * failed rather than run on this thread, which belongs to another call.
+     */
+    private void finished(TargetQueue targetQueue) {
+        while (true) {
+            Measured next;
+            synchronized (targetQueue) {
+                next = targetQueue.waiting.poll();
+                if (next == null) {
+                    targetQueue.running--;
+                    if (targetQueue.running == 0) {
+                        targets.remove(targetQueue.target, targetQueue);
+                    }
+                    return;
+                }
+            }
+            try {
+                pool.execute(next);
+                return;
+            } catch (RejectedExecutionException ex) {
+                meterRejected.mark();
+                next.rejected(ex);
+            }
+        }
+    }
+
+    private class Measured implements Runnable {
+
+        private final Runnable task;
+        private final TargetQueue targetQueue;
+        private final Timer.Context waitContext;
+
+        private Measured(Runnable task, TargetQueue targetQueue) {
+            this.task = task;
+            this.targetQueue = targetQueue;
+            this.waitContext = timerWait.time();
+        }
+
+        private void rejected(RejectedExecutionException ex) {
+            waitContext.stop();
+            if (task instanceof TargetedRunnable) {
+                ((TargetedRunnable) task).rejected(ex);
+            }
+        }
+
+        @Override
+        public void run() {
+            waitContext.stop();
+            Timer.Context runContext = timerRun.time();
+            try {
+                task.run();
+            } finally {
+                runContext.stop();
+                if (targetQueue != null) {
+                    finished(targetQueue);
+                }
+            }
+        }
+
+    }
+
+    private static class TargetQueue {
+
+        private final String target;
+        private final Deque<Measured> waiting = new ArrayDeque<>();
+        private int running = 0;
+
+        private TargetQueue(String target) {
+            this.target = target;
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a set of independent tasks in parallel and reports when they have all
+ * finished or a deadline has passed, whichever is first. Tasks write their
+ * results into shared response objects, so when the deadline wins the caller
+ * simply sends whatever has been filled in so far.
+ *
+ * Completion is driven by the tasks themselves, a caller is told as soon as
+ * the slowest task is done rather than on the next tick of a polling loop.
+ */
+public final class FanOut {
+
+    private final static Logger logger = LoggerFactory.getLogger(FanOut.class);
+
+    private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "fanout-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private FanOut() {
+    }
+
+    /**
+     * @return a future that completes with true once every task has finished,
+     * successfully or not, or with false if the timeout passes first. It never
+     * completes exceptionally.
+     */
+    public static CompletableFuture<Boolean> runAll(Collection<? extends Runnable> tasks, Executor executor, long timeoutMillis) {
+        if (tasks.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks.size()];
+        int i = 0;
+        for (Runnable task : tasks) {
+            Tracked tracked = new Tracked(task);
+            try {
+                executor.execute(tracked);
+            } catch (RejectedExecutionException ex) {
+                tracked.rejected(ex);
+            }
+            futures[i] = tracked.future;
+            i++;
+        }
+
+        return withDeadline(CompletableFuture.allOf(futures), timeoutMillis);
+    }
+
+    /**
+     * @return a future that completes with true once work completes, in any
+     * way, or with false if the timeout passes first. It never completes
+     * exceptionally.
+     */
+    public static CompletableFuture<Boolean> withDeadline(CompletableFuture<?> work, long timeoutMillis) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final ScheduledFuture<?> deadline = deadlines.schedule(new Runnable() {
+            @Override
+            public void run() {
+                result.complete(false);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        work.whenComplete((ignore, ex) -> {
+            deadline.cancel(false);
+            result.complete(true);
+        });
+        return result;
+    }
+
+    /**
+     * Blocking form of runAll, for callers that have to return a value.
+     *
+     * @return true if every task finished before the timeout
+     */
+    public static boolean awaitAll(Collection<? extends Runnable> tasks, Executor executor, long timeoutMillis) {
+        return runAll(tasks, executor, timeoutMillis).join();
+    }
+
+    /**
+     * Completes a future when the task finishes, and passes the task's target
+     * through so a Bulkhead can still apply its per target limit.
+     */
+    private static class Tracked implements TargetedRunnable {
+
+        private final Runnable task;
+        private final CompletableFuture<Void> future;
+
+        private Tracked(Runnable task) {
+            this.task = task;
+            this.future = new CompletableFuture<>();
+        }
+
+        @Override
+        public String getTarget() {
+            if (task instanceof TargetedRunnable) {
+                return ((TargetedRunnable) task).getTarget();
+            }
+            return null;
+        }
+
+        @Override
+        public void rejected(RejectedExecutionException ex) {
+            logger.warn("Could not run {}, {}", task.getClass().getSimpleName(), ex.getMessage());
+            future.completeExceptionally(ex);
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+                future.complete(null);
+            } catch (Throwable t) {
+                logger.warn("{} failed, {}", task.getClass().getSimpleName(), t.getMessage());
+                future.completeExceptionally(t);
+            }
+        }
+
+    }
+
+}
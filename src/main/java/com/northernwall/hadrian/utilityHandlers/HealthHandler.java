@@ -22,6 +22,7 @@ import com.northernwall.hadrian.module.ModuleArtifactHelper;
 import com.northernwall.hadrian.messaging.MessagingCoodinator;
 import com.northernwall.hadrian.module.ModuleConfigHelper;
 import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.service.helper.HostStatusPoller;
 import com.northernwall.hadrian.workItem.WorkItemSender;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
@@ -50,9 +51,12 @@ public class HealthHandler extends AbstractHandler {
     private final Parameters parameters;
     private final WorkItemSender workItemSender;
     private final MessagingCoodinator messagingCoodinator;
+    private final InstrumentedThreadPool threadPool;
+    private final OutboundExecutor outboundExecutor;
+    private final HostStatusPoller hostStatusPoller;
     private final String version;
     
-    public HealthHandler(Handler accessHandler, CalendarHelper calendarHelper, DataAccess dataAccess, ModuleArtifactHelper moduleArtifactHelper, ModuleConfigHelper moduleConfigHelper, Parameters parameters, WorkItemSender workItemSender, MessagingCoodinator messagingCoodinator) {
+    public HealthHandler(Handler accessHandler, CalendarHelper calendarHelper, DataAccess dataAccess, ModuleArtifactHelper moduleArtifactHelper, ModuleConfigHelper moduleConfigHelper, Parameters parameters, WorkItemSender workItemSender, MessagingCoodinator messagingCoodinator, InstrumentedThreadPool threadPool, OutboundExecutor outboundExecutor, HostStatusPoller hostStatusPoller) {
         this.accessHandler = accessHandler;
         this.calendarHelper = calendarHelper;
         this.dataAccess = dataAccess;
@@ -61,6 +65,9 @@ public class HealthHandler extends AbstractHandler {
         this.parameters = parameters;
         this.workItemSender = workItemSender;
         this.messagingCoodinator = messagingCoodinator;
+        this.threadPool = threadPool;
+        this.outboundExecutor = outboundExecutor;
+        this.hostStatusPoller = hostStatusPoller;
         String temp = getClass().getPackage().getImplementationVersion();
         if (temp == null) {
             version = "unknown";
@@ -89,6 +96,9 @@ public class HealthHandler extends AbstractHandler {
         writer.addLine("JVM Vendor", runtimeMXBean.getSpecVendor());
         writer.addLine("JVM Threads", threadMXBean.getThreadCount());
         writer.addLine("JVM Peak Threads", threadMXBean.getPeakThreadCount());
+        threadPool.getHealth(writer);
+        outboundExecutor.getHealth(writer);
+        hostStatusPoller.getHealth(writer);
         writer.addLine("Current Time", new Date());
         writer.addLine("Start Time", new Date(runtimeMXBean.getStartTime()));
         writer.addClassLine("Class - Access Handler", accessHandler);
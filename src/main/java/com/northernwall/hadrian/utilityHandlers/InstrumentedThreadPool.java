@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Jetty's QueuedThreadPool with a bounded job queue, publishing busy, idle
+ * and queued counts as gauges and marking a meter for every job the pool
+ * refuses because the queue is full.
+ */
+public class InstrumentedThreadPool extends QueuedThreadPool {
+
+    private final int maxQueued;
+    private final Meter meterRejected;
+
+    public InstrumentedThreadPool(int minThreads, int maxThreads, int idleTimeout, int maxQueued, MetricRegistry metricRegistry) {
+        super(maxThreads, minThreads, idleTimeout, maxQueued > 0
+                ? new BlockingArrayQueue<Runnable>(minThreads, minThreads, maxQueued)
+                : new BlockingArrayQueue<Runnable>(minThreads, minThreads));
+        this.maxQueued = maxQueued;
+        setName("jetty");
+
+        meterRejected = metricRegistry.meter("jetty.threads.rejected");
+        metricRegistry.register("jetty.threads.busy", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getBusyThreads();
+            }
+        });
+        metricRegistry.register("jetty.threads.idle", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getIdleThreads();
+            }
+        });
+        metricRegistry.register("jetty.threads.total", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getThreads();
+            }
+        });
+        metricRegistry.register("jetty.threads.queued", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getQueueSize();
+            }
+        });
+    }
+
+    @Override
+    public void execute(Runnable job) {
+        try {
+            super.execute(job);
+        } catch (RejectedExecutionException ex) {
+            meterRejected.mark();
+            throw ex;
+        }
+    }
+
+    public void getHealth(HealthWriter writer) throws IOException {
+        writer.addLine("Jetty Threads - Min/Max", getMinThreads() + "/" + getMaxThreads());
+        writer.addLine("Jetty Threads - Total", getThreads());
+        writer.addLine("Jetty Threads - Busy", getBusyThreads());
+        writer.addLine("Jetty Threads - Idle", getIdleThreads());
+        writer.addLine("Jetty Threads - Queued", maxQueued > 0 ? getQueueSize() + "/" + maxQueued : Integer.toString(getQueueSize()));
+        writer.addLine("Jetty Threads - Rejected", Long.toString(meterRejected.getCount()));
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.parameters.Parameters;
+import java.io.IOException;
+
+/**
+ * The one place blocking outbound I/O runs. Each kind of call gets its own
+ * Bulkhead: Maven and config version lookups, and VIP details, so one slow
+ * dependency can not starve the others. Host version and availability probes
+ * are non-blocking and run on InfoHelper's own dispatcher instead.
+ */
+public class OutboundExecutor {
+
+    private final Bulkhead maven;
+    private final Bulkhead vipDetails;
+
+    public OutboundExecutor(Parameters parameters, MetricRegistry metricRegistry) {
+        int queueSize = parameters.getInt(Const.OUTBOUND_QUEUE_SIZE, Const.OUTBOUND_QUEUE_SIZE_DEFAULT);
+        int targetLimit = parameters.getInt(Const.OUTBOUND_TARGET_LIMIT, Const.OUTBOUND_TARGET_LIMIT_DEFAULT);
+        maven = new Bulkhead(
+                "maven",
+                parameters.getInt(Const.OUTBOUND_MAVEN_THREADS, Const.OUTBOUND_MAVEN_THREADS_DEFAULT),
+                queueSize,
+                targetLimit,
+                metricRegistry);
+        vipDetails = new Bulkhead(
+                "vipDetails",
+                parameters.getInt(Const.OUTBOUND_VIP_DETAILS_THREADS, Const.OUTBOUND_VIP_DETAILS_THREADS_DEFAULT),
+                queueSize,
+                targetLimit,
+                metricRegistry);
+    }
+
+    public Bulkhead getMaven() {
+        return maven;
+    }
+
+    public Bulkhead getVipDetails() {
+        return vipDetails;
+    }
+
+    public void getHealth(HealthWriter writer) throws IOException {
+        maven.getHealth(writer);
+        vipDetails.getHealth(writer);
+    }
+
+    public void shutdown() {
+        maven.shutdown();
+        vipDetails.shutdown();
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Collapses identical concurrent work in to one computation. The first caller
+ * for a key becomes the leader and runs the work, every caller that asks for
+ * the same key while that work is in flight, or within window millis of it
+ * finishing, shares the leader's result instead of starting its own.
+ *
+ * Each caller gets its own future. A caller that no longer wants the result
+ * cancels its future, which only cancels the shared work once every caller
+ * waiting on it has done the same. Cancelled work counts as failed, and
+ * failed work is never shared with later callers.
+ *
+ * Results must be treated as read only by callers, they are shared.
+ *
+ * @param <K> the key identifying identical work
+ * @param <V> the result of the work
+ */
+public class SingleFlight<K, V> {
+
+    private final long window;
+    private final ConcurrentMap<K, Flight<V>> flights;
+    private final Meter leaders;
+    private final Meter coalesced;
+    private volatile long lastSweep;
+
+    public SingleFlight(String name, long window, MetricRegistry metricRegistry) {
+        this.window = window;
+        this.flights = new ConcurrentHashMap<>();
+        this.leaders = metricRegistry.meter("singleFlight." + name + ".leaders");
+        this.coalesced = metricRegistry.meter("singleFlight." + name + ".coalesced");
+        this.lastSweep = System.currentTimeMillis();
+    }
+
+    public CompletableFuture<V> execute(final K key, Supplier<CompletableFuture<V>> work) {
+        sweep();
+        final Flight<V> mine = new Flight<>();
+        while (true) {
+            Flight<V> current = flights.get(key);
+            if (current != null && current.isFresh(window) && current.join()) {
+                coalesced.mark();
+                return wait(key, current);
+            }
+            boolean won = current == null
+                    ? flights.putIfAbsent(key, mine) == null
+                    : flights.replace(key, current, mine);
+            if (won) {
+                break;
+            }
+        }
+
+        leaders.mark();
+        CompletableFuture<V> result;
+        try {
+            result = work.get();
+        } catch (RuntimeException ex) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(ex);
+        }
+        mine.work = result;
+        result.whenComplete((value, ex) -> {
+            mine.finished = System.currentTimeMillis();
+            if (ex != null || window <= 0) {
+                flights.remove(key, mine);
+            }
+            if (ex != null) {
+                mine.future.completeExceptionally(ex);
+            } else {
+                mine.future.complete(value);
+            }
+        });
+        return wait(key, mine);
+    }
+
+    public int size() {
+        return flights.size();
+    }
+
+    private CompletableFuture<V> wait(final K key, final Flight<V> flight) {
+        final CompletableFuture<V> waiter = new CompletableFuture<>();
+        flight.future.whenComplete((value, ex) -> {
+            if (ex != null) {
+                waiter.completeExceptionally(ex);
+            } else {
+                waiter.complete(value);
+            }
+        });
+        waiter.whenComplete((value, ex) -> {
+            if (waiter.isCancelled() && flight.leave()) {
+                flights.remove(key, flight);
+                flight.work.cancel(false);
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Drops finished flights whose window has passed, at most once a window,
+     * so keys that are never asked for again do not stay in the map.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        if (window <= 0 || now - lastSweep < window) {
+            return;
+        }
+        lastSweep = now;
+        flights.values().removeIf(flight -> !flight.isFresh(window));
+    }
+
+    private static class Flight<V> {
+
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final AtomicInteger waiting = new AtomicInteger(1);
+        private volatile CompletableFuture<V> work;
+        private volatile long finished = 0;
+
+        private boolean isFresh(long window) {
+            if (!future.isDone()) {
+                return true;
+            }
+            return finished > 0 && System.currentTimeMillis() - finished < window;
+        }
+
+        /**
+         * @return false if every caller has already given up on this flight,
+         * it is being cancelled and can not be joined
+         */
+        private boolean join() {
+            while (true) {
+                int count = waiting.get();
+                if (count <= 0 && !future.isDone()) {
+                    return false;
+                }
+                if (waiting.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if this was the last caller waiting on unfinished work
+         */
+        private boolean leave() {
+            return waiting.decrementAndGet() == 0 && !future.isDone();
+        }
+
+    }
+
+}
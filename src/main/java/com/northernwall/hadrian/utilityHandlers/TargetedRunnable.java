@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A task that talks to one remote target, such as a host name or a data
+ * center, so a Bulkhead can cap how many tasks hit that target at once.
+ */
+public interface TargetedRunnable extends Runnable {
+
+    String getTarget();
+
+    /**
+     * Called instead of run when a Bulkhead queued the task behind others for
+     * the same target but could not start it later.
+     */
+    default void rejected(RejectedExecutionException ex) {
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.northernwall.hadrian.utilityHandlers.routingHandler;
 
+import java.util.regex.Pattern;
 import org.eclipse.jetty.server.Handler;
 
 public class RouteEntry {
@@ -9,13 +10,19 @@ public class RouteEntry {
     public final Handler handler;
     public final String name;
     public final boolean logAccess;
+    public final int order;
+    public final Pattern pattern;
+    public final RouteMetrics metrics;
 
-    public RouteEntry(TargetRule targetRule, String targetPattern, Handler handler, boolean logAccess) {
+    public RouteEntry(TargetRule targetRule, String targetPattern, Handler handler, boolean logAccess, int order, RouteMetrics metrics) {
         this.targetRule = targetRule;
         this.targetPattern = targetPattern;
         this.handler = handler;
         this.name = handler.getClass().getSimpleName();
         this.logAccess = logAccess;
+        this.order = order;
+        this.pattern = targetRule == TargetRule.MATCHES ? Pattern.compile(targetPattern) : null;
+        this.metrics = metrics;
     }
 
 }
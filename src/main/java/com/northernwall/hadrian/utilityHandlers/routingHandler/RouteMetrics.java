@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers.routingHandler;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The metrics for one registered route, created when the route is added so
+ * dispatch never has to build a metric name.
+ */
+public class RouteMetrics {
+
+    public final String name;
+    public final Class<?> handlerClass;
+    public final Timer timer;
+    public final Meter meter400;
+    public final Meter meter500;
+    public final Histogram responseSize;
+    public final AtomicInteger inFlight;
+
+    public RouteMetrics(String name, Class<?> handlerClass, MetricRegistry metricRegistry) {
+        this.name = name;
+        this.handlerClass = handlerClass;
+        timer = metricRegistry.timer(name + ".time");
+        meter400 = metricRegistry.meter(name + ".400");
+        meter500 = metricRegistry.meter(name + ".500");
+        responseSize = metricRegistry.histogram(name + ".responseSize");
+        inFlight = new AtomicInteger(0);
+        metricRegistry.register(name + ".inFlight", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return inFlight.get();
+            }
+        });
+    }
+
+    public void markStatus(int status) {
+        if (status >= 500) {
+            meter500.mark();
+        } else if (status >= 400) {
+            meter400.mark();
+        }
+    }
+
+    /**
+     * Turns a route such as PUTPOST /v1/module/file into a name that Graphite
+     * will keep as one metric, http.route.putpost.v1.module.file
+     */
+    public static String buildName(MethodRule methodRule, String targetPattern) {
+        StringBuilder builder = new StringBuilder("http.route.");
+        builder.append(methodRule.name().toLowerCase());
+        boolean separator = true;
+        for (int i = 0; i < targetPattern.length(); i++) {
+            char c = targetPattern.charAt(i);
+            if (c == '/' || c == '.') {
+                separator = true;
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_') {
+                if (separator) {
+                    builder.append('.');
+                    separator = false;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.utilityHandlers.routingHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The routes for one HTTP method, indexed by rule. EQUALS routes live in a
+ * hash table, STARTS_WITH routes in a character trie, and MATCHES routes keep
+ * their compiled pattern, so finding the candidates for a target costs one
+ * hash lookup and one walk down the target instead of a test per route.
+ *
+ * Routes are only added while Hadrian is being set up, lookups after that
+ * are read only and safe from any thread.
+ */
+class RouteTable {
+
+    private static final Comparator<RouteEntry> BY_ORDER = new Comparator<RouteEntry>() {
+        @Override
+        public int compare(RouteEntry o1, RouteEntry o2) {
+            return Integer.compare(o1.order, o2.order);
+        }
+    };
+
+    private final Map<String, List<RouteEntry>> exactRoutes;
+    private final TrieNode prefixRoutes;
+    private final List<RouteEntry> patternRoutes;
+    private final List<RouteEntry> anyRoutes;
+
+    RouteTable() {
+        exactRoutes = new HashMap<>();
+        prefixRoutes = new TrieNode();
+        patternRoutes = new ArrayList<>();
+        anyRoutes = new ArrayList<>();
+    }
+
+    void add(RouteEntry entry) {
+        switch (entry.targetRule) {
+            case EQUALS:
+                String key = entry.targetPattern.toLowerCase(Locale.ENGLISH);
+                List<RouteEntry> entries = exactRoutes.get(key);
+                if (entries == null) {
+                    entries = new ArrayList<>(1);
+                    exactRoutes.put(key, entries);
+                }
+                entries.add(entry);
+                break;
+            case STARTS_WITH:
+                TrieNode node = prefixRoutes;
+                for (int i = 0; i < entry.targetPattern.length(); i++) {
+                    node = node.getOrCreateChild(entry.targetPattern.charAt(i));
+                }
+                node.entries.add(entry);
+                break;
+            case MATCHES:
+                patternRoutes.add(entry);
+                break;
+            case ANY:
+                anyRoutes.add(entry);
+                break;
+        }
+    }
+
+    /**
+     * @return every route that matches the target, in the order they were
+     * added to the RoutingHandler
+     */
+    List<RouteEntry> find(String target) {
+        List<RouteEntry> found = new ArrayList<>(4);
+
+        List<RouteEntry> exact = exactRoutes.get(target.toLowerCase(Locale.ENGLISH));
+        if (exact != null) {
+            found.addAll(exact);
+        }
+
+        TrieNode node = prefixRoutes;
+        found.addAll(node.entries);
+        for (int i = 0; i < target.length() && node != null; i++) {
+            node = node.children.get(target.charAt(i));
+            if (node != null) {
+                found.addAll(node.entries);
+            }
+        }
+
+        for (RouteEntry entry : patternRoutes) {
+            if (entry.pattern.matcher(target).matches()) {
+                found.add(entry);
+            }
+        }
+
+        found.addAll(anyRoutes);
+
+        if (found.size() > 1) {
+            Collections.sort(found, BY_ORDER);
+        }
+        return found;
+    }
+
+    private static class TrieNode {
+
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private final List<RouteEntry> entries = new ArrayList<>(1);
+
+        private TrieNode getOrCreateChild(char c) {
+            TrieNode child = children.get(c);
+            if (child == null) {
+                child = new TrieNode();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+    }
+
+}
@@ -15,37 +15,72 @@
  */
 package com.northernwall.hadrian.utilityHandlers.routingHandler;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.northernwall.hadrian.Const;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Dispatches a request to the routes registered for its method. Every route
+ * whose rule matches the target is tried in the order it was added, until one
+ * of them marks the request as handled. The lookup itself is done by a
+ * RouteTable per method rather than by testing each route in turn.
+ *
+ * Each route has its own RouteMetrics. Every route that is tried is timed,
+ * the route that handles the request also records its status and response
+ * size. A request that goes async is timed until its response is complete.
+ */
 public class RoutingHandler extends AbstractHandler {
 
     private final static Logger logger = LoggerFactory.getLogger(RoutingHandler.class);
 
-    private final List<RouteEntry> getRoutes;
-    private final List<RouteEntry> putRoutes;
-    private final List<RouteEntry> postRoutes;
-    private final List<RouteEntry> deleteRoutes;
+    private final RouteTable getRoutes;
+    private final RouteTable putRoutes;
+    private final RouteTable postRoutes;
+    private final RouteTable deleteRoutes;
+    private final MetricRegistry metricRegistry;
+    private final Map<String, RouteMetrics> routeMetrics;
+    private int order;
 
-    public RoutingHandler() {
-        getRoutes = new LinkedList<>();
-        putRoutes = new LinkedList<>();
-        postRoutes = new LinkedList<>();
-        deleteRoutes = new LinkedList<>();
+    public RoutingHandler(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        routeMetrics = new HashMap<>();
+        getRoutes = new RouteTable();
+        putRoutes = new RouteTable();
+        postRoutes = new RouteTable();
+        deleteRoutes = new RouteTable();
+        order = 0;
     }
 
     public void add(MethodRule methodRule, TargetRule targetRule, String targetPattern, Handler handler, boolean logAccess) {
-        RouteEntry entry = new RouteEntry(targetRule, targetPattern, handler, logAccess);
+        String metricName = RouteMetrics.buildName(methodRule, targetPattern);
+        RouteMetrics metrics = routeMetrics.get(metricName);
+        if (metrics != null && !metrics.handlerClass.equals(handler.getClass())) {
+            //Same route served by a different handler, such as the access and
+            //redirect handlers that both take any target
+            metricName = metricName + "." + handler.getClass().getSimpleName();
+            metrics = routeMetrics.get(metricName);
+        }
+        if (metrics == null) {
+            metrics = new RouteMetrics(metricName, handler.getClass(), metricRegistry);
+            routeMetrics.put(metricName, metrics);
+        }
+        RouteEntry entry = new RouteEntry(targetRule, targetPattern, handler, logAccess, order++, metrics);
         switch (methodRule) {
             case GET:
                 getRoutes.add(entry);
@@ -74,7 +109,7 @@ public class RoutingHandler extends AbstractHandler {
 
     @Override
     public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
-        List<RouteEntry> routes;
+        RouteTable routes;
         switch (request.getMethod()) {
             case Const.HTTP_GET:
                 routes = getRoutes;
@@ -91,32 +126,108 @@ public class RoutingHandler extends AbstractHandler {
             default:
                 return;
         }
-        for (RouteEntry entry : routes) {
-            if (entry.targetRule.test(entry.targetPattern, target)) {
-                try {
-                    if (entry.logAccess) {
-                        logger.info("{} handling {} request for {}", entry.name, request.getMethod(), target);
-                    }
-                    entry.handler.handle(target, request, httpRequest, response);
-                    if (request.isHandled()) {
-                        return;
+        for (RouteEntry entry : routes.find(target)) {
+            RouteMetrics metrics = entry.metrics;
+            Timer.Context context = metrics.timer.time();
+            metrics.inFlight.incrementAndGet();
+            boolean async = false;
+            try {
+                if (entry.logAccess) {
+                    logger.info("{} handling {} request for {}", entry.name, request.getMethod(), target);
+                }
+                entry.handler.handle(target, request, httpRequest, response);
+                if (request.isHandled()) {
+                    if (request.isAsyncStarted()) {
+                        request.getAsyncContext().addListener(new AsyncMetrics(metrics, context, response));
+                        async = true;
+                    } else {
+                        metrics.markStatus(response.getStatus());
+                        markResponseSize(metrics, response);
                     }
-                } catch (HttpAbstractException e) {
-                    logger.error("Exception '{}' while {} was handling {} request for {}", e.getMessage(), entry.name, request.getMethod(), target);
-                    response.getWriter().print(e.getMessage());
-                    response.setStatus(e.getStatus());
-                    request.setHandled(true);
-                    return;
-                } catch (Exception e) {
-                    logger.error("Exception '{}' while {} was handling {} request for {}", e.getMessage(), entry.name, request.getMethod(), target, e);
-                    response.getWriter().print("Internal Server Error.");
-                    response.setStatus(500);
-                    request.setHandled(true);
                     return;
                 }
+            } catch (HttpAbstractException e) {
+                logger.error("Exception '{}' while {} was handling {} request for {}", e.getMessage(), entry.name, request.getMethod(), target);
+                response.getWriter().print(e.getMessage());
+                response.setStatus(e.getStatus());
+                request.setHandled(true);
+                metrics.markStatus(e.getStatus());
+                return;
+            } catch (Exception e) {
+                logger.error("Exception '{}' while {} was handling {} request for {}", e.getMessage(), entry.name, request.getMethod(), target, e);
+                response.getWriter().print("Internal Server Error.");
+                response.setStatus(500);
+                request.setHandled(true);
+                metrics.markStatus(500);
+                return;
+            } finally {
+                if (!async) {
+                    metrics.inFlight.decrementAndGet();
+                    context.stop();
+                }
             }
         }
         logger.info("Could not find a handler for {} {}", request.getMethod(), target);
     }
 
+    private static void markResponseSize(RouteMetrics metrics, HttpServletResponse response) {
+        if (response instanceof Response) {
+            HttpOutput output = ((Response) response).getHttpOutput();
+            if (output != null) {
+                metrics.responseSize.update(output.getWritten());
+            }
+        }
+    }
+
+    /**
+     * Finishes the metrics of a request that went async once the response
+     * is really sent, rather than when the handler returned. A request that
+     * times out or fails still completes, so onComplete always runs; the
+     * other events only guard against the metrics being recorded twice.
+     */
+    private static class AsyncMetrics implements AsyncListener {
+
+        private final RouteMetrics metrics;
+        private final Timer.Context context;
+        private final HttpServletResponse response;
+        private final AtomicBoolean recorded;
+
+        private AsyncMetrics(RouteMetrics metrics, Timer.Context context, HttpServletResponse response) {
+            this.metrics = metrics;
+            this.context = context;
+            this.response = response;
+            this.recorded = new AtomicBoolean(false);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            record();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+            //the request went async again, keep listening to the new cycle
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void record() {
+            if (!recorded.compareAndSet(false, true)) {
+                return;
+            }
+            metrics.inFlight.decrementAndGet();
+            context.stop();
+            metrics.markStatus(response.getStatus());
+            markResponseSize(metrics, response);
+        }
+
+    }
+
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DelegatingDataAccess;
+import com.northernwall.hadrian.domain.Audit;
+import com.northernwall.hadrian.domain.Host;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds back the host updates, audits and work item statuses written while
+ * a group of callbacks is processed, so flush can save each kind with one
+ * grouped write. Reads of a host see its held back update. Every other
+ * write goes straight through. Used by one thread at a time.
+ */
+class CallbackWrites extends DelegatingDataAccess {
+
+    private final Map<String, Host> hosts;
+    private final List<Audit> audits;
+    private final List<String> outputs;
+    private final Map<String, Integer> statuses;
+
+    CallbackWrites(DataAccess dataAccess) {
+        super(dataAccess);
+        hosts = new LinkedHashMap<>();
+        audits = new ArrayList<>();
+        outputs = new ArrayList<>();
+        statuses = new LinkedHashMap<>();
+    }
+
+    @Override
+    public Host getHost(String serviceId, String hostId) {
+        Host host = hosts.get(hostId);
+        if (host != null) {
+            return host;
+        }
+        return dataAccess.getHost(serviceId, hostId);
+    }
+
+    @Override
+    public void saveHost(Host host) {
+        hosts.remove(host.getHostId());
+        dataAccess.saveHost(host);
+    }
+
+    @Override
+    public void updateHost(Host host) {
+        hosts.put(host.getHostId(), host);
+    }
+
+    @Override
+    public void updateHosts(List<Host> hosts) {
+        for (Host host : hosts) {
+            updateHost(host);
+        }
+    }
+
+    @Override
+    public void deleteHost(Host host) {
+        hosts.remove(host.getHostId());
+        dataAccess.deleteHost(host);
+    }
+
+    @Override
+    public void saveWorkItemStatus(String id, int status) {
+        statuses.put(id, status);
+    }
+
+    @Override
+    public void saveWorkItemStatuses(Map<String, Integer> statuses) {
+        this.statuses.putAll(statuses);
+    }
+
+    @Override
+    public void saveAudit(Audit audit, String output) {
+        audits.add(audit);
+        outputs.add(output);
+    }
+
+    @Override
+    public void saveAudits(List<Audit> audits, List<String> outputs) {
+        this.audits.addAll(audits);
+        this.outputs.addAll(outputs);
+    }
+
+    void flush() {
+        if (!hosts.isEmpty()) {
+            dataAccess.updateHosts(new ArrayList<>(hosts.values()));
+            hosts.clear();
+        }
+        if (!audits.isEmpty()) {
+            dataAccess.saveAudits(new ArrayList<>(audits), new ArrayList<>(outputs));
+            audits.clear();
+            outputs.clear();
+        }
+        if (!statuses.isEmpty()) {
+            dataAccess.saveWorkItemStatuses(new LinkedHashMap<>(statuses));
+            statuses.clear();
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem;
+
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.workItem.dao.WaveData;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the work items of a deployment into waves. A wave is either a fixed
+ * number of hosts or a percentage of them, and in data center mode no wave
+ * spans more than one data center. The configured values can be overridden per
+ * deployment.
+ */
+public class DeploymentPlanner {
+
+    private final int batchSize;
+    private final int batchPercent;
+    private final boolean byDataCenter;
+
+    public DeploymentPlanner(Parameters parameters) {
+        batchSize = parameters.getInt(Const.DEPLOY_BATCH_SIZE, Const.DEPLOY_BATCH_SIZE_DEFAULT);
+        batchPercent = parameters.getInt(Const.DEPLOY_BATCH_PERCENT, Const.DEPLOY_BATCH_PERCENT_DEFAULT);
+        byDataCenter = parameters.getBoolean(Const.DEPLOY_WAVE_BY_DATA_CENTER, Const.DEPLOY_WAVE_BY_DATA_CENTER_DEFAULT);
+    }
+
+    /**
+     * Builds the waves and links each work item to its wave. Every work item
+     * joins the chain of the first one, so the later waves can be cancelled
+     * together.
+     *
+     * @param workItems host work items, in the order they should be deployed
+     * @param requestBatchSize hosts per wave, or 0 to use the percentage or the
+     * configured value
+     * @param requestBatchPercent percentage of hosts per wave, or 0 to use the
+     * configured value
+     * @param requestByDataCenter true to keep each wave within one data center
+     * @return the waves, in the order they should be sent
+     */
+    public List<List<WorkItem>> plan(List<WorkItem> workItems, int requestBatchSize, int requestBatchPercent, boolean requestByDataCenter) {
+        Map<String, List<WorkItem>> groups = new LinkedHashMap<>();
+        if (byDataCenter || requestByDataCenter) {
+            for (WorkItem workItem : workItems) {
+                String dataCenter = workItem.getHost().dataCenter == null ? "" : workItem.getHost().dataCenter;
+                groups.computeIfAbsent(dataCenter, k -> new ArrayList<>()).add(workItem);
+            }
+        } else {
+            groups.put("", workItems);
+        }
+
+        List<List<WorkItem>> waves = new ArrayList<>();
+        for (List<WorkItem> group : groups.values()) {
+            int size = getBatchSize(group.size(), requestBatchSize, requestBatchPercent);
+            for (int i = 0; i < group.size(); i += size) {
+                waves.add(new ArrayList<>(group.subList(i, Math.min(i + size, group.size()))));
+            }
+        }
+
+        for (int i = 0; i < waves.size(); i++) {
+            List<String> waveIds = getIds(waves.get(i));
+            List<String> nextWaveIds = i + 1 < waves.size() ? getIds(waves.get(i + 1)) : new ArrayList<>();
+            for (WorkItem workItem : waves.get(i)) {
+                WaveData waveData = new WaveData();
+                waveData.wave = i + 1;
+                waveData.waves = waves.size();
+                waveData.waveIds.addAll(waveIds);
+                waveData.nextWaveIds.addAll(nextWaveIds);
+                workItem.setWave(waveData);
+                workItem.setChainId(workItems.get(0).getId());
+            }
+        }
+        return waves;
+    }
+
+    private int getBatchSize(int hosts, int requestBatchSize, int requestBatchPercent) {
+        int size;
+        if (requestBatchSize > 0) {
+            size = requestBatchSize;
+        } else if (requestBatchPercent > 0) {
+            size = (int) Math.ceil(hosts * Math.min(requestBatchPercent, 100) / 100.0);
+        } else if (batchPercent > 0) {
+            size = (int) Math.ceil(hosts * Math.min(batchPercent, 100) / 100.0);
+        } else {
+            size = batchSize;
+        }
+        return Math.max(size, 1);
+    }
+
+    private static List<String> getIds(List<WorkItem> wave) {
+        List<String> ids = new ArrayList<>(wave.size());
+        for (WorkItem workItem : wave) {
+            ids.add(workItem.getId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.workItem.dao.DispatchData;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands work items to the WorkItemSender off the request thread. A work item
+ * is marked as queued and saved before sendWorkItem returns, a fixed pool of
+ * workers, which is also the concurrency limit for the sender, then sends
+ * it. Failed sends are retried with exponential backoff, and a work item that
+ * still can not be sent after the last attempt is failed as if its callback
+ * had reported an error.
+ *
+ * Work items still marked as queued when Hadrian stops are sent by recover
+ * on the next start. The mark is cleared just before each send, so a restart
+ * never sends a work item the sender has already accepted.
+ */
+class DispatchQueue {
+
+    private final static Logger logger = LoggerFactory.getLogger(DispatchQueue.class);
+
+    private final DataAccess dataAccess;
+    private final WorkItemSender workItemSender;
+    private final WorkItemProcessorImpl workItemProcessor;
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final long maxRetryDelay;
+    private final ScheduledExecutorService workers;
+    private final AtomicInteger depth;
+    private final MetricRegistry metricRegistry;
+    private final Map<String, Timer> timerSend;
+    private final Timer timerLatency;
+    private final Meter meterRetry;
+    private final Meter meterDeadLetter;
+
+    DispatchQueue(DataAccess dataAccess, WorkItemSender workItemSender, WorkItemProcessorImpl workItemProcessor, Parameters parameters, MetricRegistry metricRegistry) {
+        this.dataAccess = dataAccess;
+        this.workItemSender = workItemSender;
+        this.workItemProcessor = workItemProcessor;
+        this.maxAttempts = parameters.getInt(Const.WORK_ITEM_DISPATCH_MAX_ATTEMPTS, Const.WORK_ITEM_DISPATCH_MAX_ATTEMPTS_DEFAULT);
+        this.retryDelay = parameters.getInt(Const.WORK_ITEM_DISPATCH_RETRY_DELAY, Const.WORK_ITEM_DISPATCH_RETRY_DELAY_DEFAULT);
+        this.maxRetryDelay = parameters.getInt(Const.WORK_ITEM_DISPATCH_MAX_RETRY_DELAY, Const.WORK_ITEM_DISPATCH_MAX_RETRY_DELAY_DEFAULT);
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        workers = Executors.newScheduledThreadPool(
+                parameters.getInt(Const.WORK_ITEM_DISPATCH_THREADS, Const.WORK_ITEM_DISPATCH_THREADS_DEFAULT),
+                (Runnable r) -> {
+                    Thread thread = new Thread(r, "workItem-dispatch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        depth = new AtomicInteger(0);
+
+        this.metricRegistry = metricRegistry;
+        timerSend = new ConcurrentHashMap<>();
+        timerLatency = metricRegistry.timer("workItem.dispatch.latency");
+        meterRetry = metricRegistry.meter("workItem.dispatch.retry");
+        meterDeadLetter = metricRegistry.meter("workItem.dispatch.deadLetter");
+        metricRegistry.register("workItem.dispatch.queued", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return depth.get();
+            }
+        });
+    }
+
+    void enqueue(WorkItem workItem) {
+        queue(workItem, null);
+        submit(workItem);
+    }
+
+    /**
+     * Marks the work item as queued and saves it without handing it to the
+     * workers yet, which submit does. With an expected state the work item
+     * is only saved if it is still stored in that state.
+     *
+     * @return false if it was not saved
+     */
+    boolean queue(WorkItem workItem, WorkItemState expected) {
+        markQueued(workItem);
+        if (expected == null) {
+            dataAccess.saveWorkItem(workItem);
+            return true;
+        }
+        return dataAccess.updateWorkItem(workItem, expected);
+    }
+
+    void submit(WorkItem workItem) {
+        schedule(workItem, 0);
+    }
+
+    private void markQueued(WorkItem workItem) {
+        DispatchData dispatch = new DispatchData();
+        dispatch.queued = new Date();
+        dispatch.attempts = 0;
+        dispatch.nextAttempt = dispatch.queued.getTime();
+        workItem.setDispatch(dispatch);
+        workItem.setState(WorkItemState.queued);
+    }
+
+    /**
+     * Queues every stored work item that was still waiting to be sent.
+     */
+    void recover() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (WorkItem workItem : dataAccess.getWorkItems(WorkItemState.queued)) {
+            if (workItem.getDispatch() != null) {
+                schedule(workItem, Math.max(0, workItem.getDispatch().nextAttempt - now));
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("Recovered {} work items waiting to be sent", count);
+        }
+    }
+
+    int getDepth() {
+        return depth.get();
+    }
+
+    private void schedule(final WorkItem workItem, long delay) {
+        depth.incrementAndGet();
+        try {
+            workers.schedule(() -> attempt(workItem), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            depth.decrementAndGet();
+            logger.warn("Could not queue work item {}, it will be sent on restart", workItem.getId());
+        }
+    }
+
+    private void attempt(WorkItem workItem) {
+        depth.decrementAndGet();
+        DispatchData dispatch = workItem.getDispatch();
+        dispatch.attempts++;
+        //The sender sees the work item as it always has
+        workItem.setDispatch(null);
+        workItem.setState(WorkItemState.sent);
+        if (!dataAccess.updateWorkItem(workItem, WorkItemState.queued)) {
+            //Its callback has already been processed
+            return;
+        }
+
+        Result result;
+        Timer.Context context = getTimer(workItem).time();
+        try {
+            result = workItemSender.sendWorkItem(workItem);
+        } catch (IOException | RuntimeException ex) {
+            retry(workItem, dispatch, ex.getClass().getSimpleName() + " " + ex.getMessage());
+            return;
+        } finally {
+            context.stop();
+        }
+        timerLatency.update(System.currentTimeMillis() - dispatch.queued.getTime(), TimeUnit.MILLISECONDS);
+
+        try {
+            workItemProcessor.dispatched(workItem, result, null);
+        } catch (Exception ex) {
+            logger.error("Failed to process result {} for work item {}, {}", result, workItem.getId(), ex.getMessage());
+        }
+    }
+
+    private void retry(WorkItem workItem, DispatchData dispatch, String reason) {
+        if (dispatch.attempts >= maxAttempts) {
+            meterDeadLetter.mark();
+            logger.error("Giving up on work item {} after {} attempts, {}", workItem.getId(), dispatch.attempts, reason);
+            try {
+                workItemProcessor.dispatched(workItem, Result.error, "Could not send work item after " + dispatch.attempts + " attempts, last error was " + reason);
+            } catch (Exception ex) {
+                logger.error("Failed to fail work item {}, {}", workItem.getId(), ex.getMessage());
+            }
+            return;
+        }
+        long delay = Math.min(maxRetryDelay, retryDelay << Math.min(dispatch.attempts - 1, 20));
+        dispatch.nextAttempt = System.currentTimeMillis() + delay;
+        workItem.setDispatch(dispatch);
+        workItem.setState(WorkItemState.queued);
+        if (!dataAccess.updateWorkItem(workItem, WorkItemState.sent)) {
+            //The receiver got it after all and has already called back
+            return;
+        }
+        meterRetry.mark();
+        logger.warn("Failed to send work item {}, attempt {} of {}, retrying in {}ms, {}", workItem.getId(), dispatch.attempts, maxAttempts, delay, reason);
+        schedule(workItem, delay);
+    }
+
+    private Timer getTimer(WorkItem workItem) {
+        String key = workItem.getType() + "." + workItem.getOperation();
+        return timerSend.computeIfAbsent(key, k -> metricRegistry.timer("workItem.send." + k));
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem;
+
+import com.google.gson.stream.JsonWriter;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.service.BasicHandler;
+import com.northernwall.hadrian.workItem.dao.CallbackData;
+import com.northernwall.hadrian.workItem.dao.CallbackResultData;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accepts an array of callbacks in one request and answers with an array of
+ * results in the same order, so a provisioning system can report many work
+ * items at once. A callback that can not be processed does not stop the rest
+ * of the batch.
+ */
+public class WorkItemBatchCallbackHandler extends BasicHandler {
+
+    private final static Logger logger = LoggerFactory.getLogger(WorkItemBatchCallbackHandler.class);
+
+    private final WorkItemProcessor workItemProcess;
+
+    public WorkItemBatchCallbackHandler(WorkItemProcessor workItemProcess) {
+        super(null);
+        this.workItemProcess = workItemProcess;
+    }
+
+    @Override
+    public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
+        CallbackData[] data = fromJson(request, CallbackData[].class);
+        logger.info("Received batch of {} callbacks", data.length);
+        List<CallbackResultData> results = workItemProcess.processCallbacks(Arrays.asList(data));
+
+        response.setContentType(Const.JSON);
+        try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(response.getOutputStream()))) {
+            jw.beginArray();
+            for (CallbackResultData result : results) {
+                getGson().toJson(result, CallbackResultData.class, jw);
+            }
+            jw.endArray();
+        }
+        response.setStatus(200);
+        request.setHandled(true);
+    }
+
+}
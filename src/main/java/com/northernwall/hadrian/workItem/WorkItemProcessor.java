@@ -17,10 +17,17 @@ package com.northernwall.hadrian.workItem;
 
 import com.northernwall.hadrian.domain.WorkItem;
 import com.northernwall.hadrian.workItem.dao.CallbackData;
+import com.northernwall.hadrian.workItem.dao.CallbackResultData;
 import java.io.IOException;
+import java.util.List;
 
 public interface WorkItemProcessor {
 
+    void recover();
     void sendWorkItem(WorkItem workItem) throws IOException;
+    boolean sendPendingWorkItem(WorkItem workItem) throws IOException;
     void processCallback(CallbackData callbackData) throws IOException;
+    List<CallbackResultData> processCallbacks(List<CallbackData> callbacks);
+    void addStatusListener(String workItemId, WorkItemStatusListener listener);
+    void removeStatusListener(String workItemId, WorkItemStatusListener listener);
 }
@@ -27,16 +27,25 @@ import com.northernwall.hadrian.domain.Host;
 import com.northernwall.hadrian.domain.Type;
 import com.northernwall.hadrian.domain.Vip;
 import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.feed.ChangeFeed;
+import com.northernwall.hadrian.parameters.Parameters;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.Http400BadRequestException;
 import com.northernwall.hadrian.utilityHandlers.routingHandler.Http404NotFoundException;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.HttpAbstractException;
 import com.northernwall.hadrian.workItem.action.CreateHostAction;
 import com.northernwall.hadrian.workItem.action.DeploySoftwareAction;
 import com.northernwall.hadrian.workItem.action.RestartHostAction;
 import com.northernwall.hadrian.workItem.dao.CallbackData;
+import com.northernwall.hadrian.workItem.dao.CallbackResultData;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,49 +55,80 @@ public class WorkItemProcessorImpl implements WorkItemProcessor {
 
     private final DataAccess dataAccess;
     private final WorkItemSender workItemSender;
-    private final MetricRegistry metricRegistry;
-    private final Map<String,Timer> timerProcess;
+    private final ChangeFeed changeFeed;
     private final Timer timerCalback;
+    private final Timer timerBatch;
     private final Meter meterSuccess;
     private final Meter meterFail;
     private final Gson gson;
-    private final CreateHostAction createHostAction;
-    private final DeploySoftwareAction deploySoftwareAction;
-    private final RestartHostAction restartHostAction;
+    private final Map<String, List<WorkItemStatusListener>> statusListeners;
+    private final DispatchQueue dispatchQueue;
+    private final Object waveLock;
 
-    public WorkItemProcessorImpl(DataAccess dataAccess, WorkItemSender workItemSender, MetricRegistry metricRegistry) {
+    public WorkItemProcessorImpl(DataAccess dataAccess, WorkItemSender workItemSender, ChangeFeed changeFeed, Parameters parameters, MetricRegistry metricRegistry) {
         this.dataAccess = dataAccess;
         this.workItemSender = workItemSender;
-        this.metricRegistry = metricRegistry;
-
-        timerProcess = new ConcurrentHashMap<>();
+        this.changeFeed = changeFeed;
         timerCalback = metricRegistry.timer("workItem.callback.process");
+        timerBatch = metricRegistry.timer("workItem.callback.batch");
         meterSuccess = metricRegistry.meter("workItem.callback.success");
         meterFail = metricRegistry.meter("workItem.callback.fail");
         gson = new Gson();
 
-        createHostAction = new CreateHostAction(dataAccess, this);
-        deploySoftwareAction = new DeploySoftwareAction(dataAccess, this);
-        restartHostAction = new RestartHostAction(dataAccess, this);
+        statusListeners = new ConcurrentHashMap<>();
+        waveLock = new Object();
+        dispatchQueue = new DispatchQueue(dataAccess, workItemSender, this, parameters, metricRegistry);
+    }
+
+    @Override
+    public void addStatusListener(String workItemId, WorkItemStatusListener listener) {
+        List<WorkItemStatusListener> listeners = statusListeners.computeIfAbsent(workItemId, k -> new CopyOnWriteArrayList<>());
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeStatusListener(String workItemId, WorkItemStatusListener listener) {
+        statusListeners.computeIfPresent(workItemId, (k, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    /**
+     * Starts sending any work items that were queued but not yet sent when
+     * Hadrian last stopped.
+     */
+    @Override
+    public void recover() {
+        dispatchQueue.recover();
     }
 
     @Override
     public void sendWorkItem(WorkItem workItem) throws IOException {
-        Result result;
-        
-        String key = workItem.getType()+"."+workItem.getOperation();
-        Timer timer = timerProcess.get(key);
-        if (timer == null) {
-            timer = metricRegistry.timer("workItem.send."+key);
-            timerProcess.put(key, timer);
-        }
-        Timer.Context context = timer.time();
-        try {
-            result = workItemSender.sendWorkItem(workItem);
-        } finally {
-            context.stop();
+        dispatchQueue.enqueue(workItem);
+    }
+
+    /**
+     * Sends the work item only if it is still stored as pending. The move to
+     * queued is a conditional write, so when several callbacks, in this or
+     * another Hadrian, race to start the same work item only one sends it.
+     *
+     * @return false if it was cancelled or has already been sent
+     */
+    @Override
+    public boolean sendPendingWorkItem(WorkItem workItem) throws IOException {
+        if (!dispatchQueue.queue(workItem, WorkItemState.pending)) {
+            return false;
         }
+        dispatchQueue.submit(workItem);
+        return true;
+    }
 
+    /**
+     * Called by the DispatchQueue once the sender has taken a work item, or
+     * once it has given up trying to send it.
+     */
+    void dispatched(WorkItem workItem, Result result, String output) throws IOException {
         switch (result) {
             case success:
                 logger.info("Work item sender says work item  {} has been process, no callback expected.", workItem.getId());
@@ -108,7 +148,7 @@ public class WorkItemProcessorImpl implements WorkItemProcessor {
         callbackData.errorCode = 0;
         callbackData.errorDescription = " ";
         callbackData.status = result;
-        callbackData.output = null;
+        callbackData.output = output;
         processCallback(callbackData);
     }
 
@@ -123,105 +163,317 @@ public class WorkItemProcessorImpl implements WorkItemProcessor {
             if (callbackData.status == null) {
                 throw new Http400BadRequestException("Callback is missing status, " + callbackData.requestId);
             }
+            if (callbackData.status == Result.wip) {
+                logger.warn("ProcessCallback should never be called for WIP");
+                return;
+            }
+            if (workItem.getWave() != null) {
+                //Callbacks in a wave are processed one at a time, so exactly one
+                //of them sees the wave finish and a failure always cancels the
+                //next wave before it can be sent. The work item is read again
+                //under the lock so a duplicate callback is not processed twice.
+                synchronized (waveLock) {
+                    workItem = dataAccess.getWorkItem(callbackData.requestId);
+                    if (workItem == null) {
+                        throw new Http404NotFoundException("Could not find work item " + callbackData.requestId);
+                    }
+                    Round round = new Round();
+                    dataAccess.deleteWorkItem(workItem.getId());
+                    processWorkItem(round, workItem, callbackData);
+                    round.finish();
+                }
+            } else {
+                Round round = new Round();
+                dataAccess.deleteWorkItem(workItem.getId());
+                processWorkItem(round, workItem, callbackData);
+                round.finish();
+            }
+        } finally {
+            context.stop();
+        }
+    }
 
-            switch (callbackData.status) {
-                case success:
-                    meterSuccess.mark();
-                    break;
-                case error:
-                    meterFail.mark();
-                    break;
-                case wip:
-                    logger.warn("ProcessCallback should never be called for WIP");
-                    return;
+    /**
+     * Processes a batch of callbacks. Every work item in the batch is read
+     * first and then deleted with one grouped write, and the host updates,
+     * audits and statuses written while processing them are saved with one
+     * grouped write of each kind. Callbacks for work items in a wave are
+     * processed as a second group under the wave lock, the rest of the batch
+     * does not wait for it. Failures are processed before successes, so a
+     * failure cancels the later waves of a deployment before a success in
+     * the same batch can start the next wave.
+     *
+     * @return one result per callback, in the order they were given
+     */
+    @Override
+    public List<CallbackResultData> processCallbacks(List<CallbackData> callbacks) {
+        Timer.Context context = timerBatch.time();
+        try {
+            List<CallbackResultData> results = new ArrayList<>(callbacks.size());
+            List<CallbackData> accepted = new ArrayList<>(callbacks.size());
+            Map<String, WorkItem> workItems = new HashMap<>();
+            Map<String, CallbackResultData> acceptedResults = new HashMap<>();
+            for (CallbackData callbackData : callbacks) {
+                CallbackResultData result = new CallbackResultData();
+                results.add(result);
+                if (callbackData == null || callbackData.requestId == null) {
+                    result.status = 400;
+                    result.message = "Callback is missing requestId";
+                    continue;
+                }
+                result.requestId = callbackData.requestId;
+                if (callbackData.status == null) {
+                    result.status = 400;
+                    result.message = "Callback is missing status";
+                    continue;
+                }
+                if (callbackData.status == Result.wip) {
+                    result.status = 200;
+                    result.message = "Ignored WIP callback";
+                    continue;
+                }
+                WorkItem workItem = workItems.containsKey(callbackData.requestId) ? null : dataAccess.getWorkItem(callbackData.requestId);
+                if (workItem == null) {
+                    result.status = 404;
+                    result.message = "Could not find work item " + callbackData.requestId;
+                    continue;
+                }
+                workItems.put(workItem.getId(), workItem);
+                accepted.add(callbackData);
+                acceptedResults.put(workItem.getId(), result);
+                result.status = 200;
+            }
+            if (accepted.isEmpty()) {
+                return results;
             }
+            accepted.sort((CallbackData o1, CallbackData o2) -> Boolean.compare(o1.status != Result.error, o2.status != Result.error));
 
-            dataAccess.deleteWorkItem(callbackData.requestId);
-
-            Map<String, String> notes = new HashMap<>();
-            switch (workItem.getType()) {
-                case module:
-                    switch (workItem.getOperation()) {
-                        case create:
-                            notes.put("Template", workItem.getMainModule().template);
-                            notes.put("Type", workItem.getMainModule().moduleType.toString());
-                            break;
-                        case update:
-                            break;
-                        case delete:
-                            break;
-                        default:
-                            throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
-                    }
-                    break;
-                case host:
-                    switch (workItem.getOperation()) {
-                        case create:
-                            createHostAction.process(workItem, callbackData.status);
-                            notes.put("DC", workItem.getHost().dataCenter);
-                            notes.put("Network", workItem.getHost().network);
-                            notes.put("Operating_Env", workItem.getHost().env);
-                            notes.put("Size_CPU", Integer.toString(workItem.getHost().sizeCpu));
-                            notes.put("Size_Memory", Integer.toString(workItem.getHost().sizeMemory));
-                            notes.put("Size_Storage", Integer.toString(workItem.getHost().sizeStorage));
-                            notes.put("Reason", workItem.getHost().reason);
-                            break;
-                        case deploy:
-                            deploySoftwareAction.process(workItem, callbackData.status);
-                            if (workItem.getHost().version != null) {
-                                notes.put("Version", workItem.getHost().version);
-                            }
-                            if (workItem.getHost().prevVersion != null) {
-                                notes.put("Prev Version", workItem.getHost().prevVersion);
-                            }
-                            if (workItem.getHost().versionUrl != null) {
-                                notes.put("Version Url", workItem.getHost().versionUrl);
-                            }
-                            if (workItem.getHost().configVersion != null) {
-                                notes.put("Config_Version", workItem.getHost().configVersion);
-                            }
-                            notes.put("Reason", workItem.getHost().reason);
-                            break;
-                        case restart:
-                            restartHostAction.process(workItem, callbackData.status);
-                            notes.put("Reason", workItem.getHost().reason);
-                            break;
-                        case delete:
-                            deleteHost(workItem, callbackData.status);
-                            notes.put("Reason", workItem.getHost().reason);
-                            break;
-                        default:
-                            throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
-                    }
-                    break;
-                case vip:
-                    switch (workItem.getOperation()) {
-                        case create:
-                            notes.put("Protocol", workItem.getVip().protocol);
-                            notes.put("DNS", workItem.getVip().dns + "." + workItem.getVip().domain);
-                            notes.put("VIP_Port", Integer.toString(workItem.getVip().vipPort));
-                            notes.put("Service_Port", Integer.toString(workItem.getVip().servicePort));
-                            notes.put("External", Boolean.toString(workItem.getVip().external));
-                            createVip(workItem, callbackData.status);
-                            break;
-                        case update:
-                            notes.put("Protocol", workItem.getVip().protocol);
-                            notes.put("DNS", workItem.getVip().dns + "." + workItem.getVip().domain);
-                            notes.put("VIP_Port", Integer.toString(workItem.getVip().vipPort));
-                            notes.put("Service_Port", Integer.toString(workItem.getVip().servicePort));
-                            notes.put("External", Boolean.toString(workItem.getVip().external));
-                            updateVip(workItem, callbackData.status);
-                            break;
-                        case delete:
-                            deleteVip(workItem, callbackData.status);
-                            break;
-                        default:
-                            throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
+            List<CallbackData> plain = new ArrayList<>(accepted.size());
+            List<CallbackData> waved = new ArrayList<>();
+            for (CallbackData callbackData : accepted) {
+                if (workItems.get(callbackData.requestId).getWave() == null) {
+                    plain.add(callbackData);
+                } else {
+                    waved.add(callbackData);
+                }
+            }
+            processBatch(plain, workItems, acceptedResults);
+            if (!waved.isEmpty()) {
+                synchronized (waveLock) {
+                    //Read again under the lock, another caller may have
+                    //processed a callback for the same work item meanwhile
+                    Iterator<CallbackData> iterator = waved.iterator();
+                    while (iterator.hasNext()) {
+                        CallbackData callbackData = iterator.next();
+                        WorkItem workItem = dataAccess.getWorkItem(callbackData.requestId);
+                        if (workItem == null) {
+                            CallbackResultData result = acceptedResults.get(callbackData.requestId);
+                            result.status = 404;
+                            result.message = "Could not find work item " + callbackData.requestId;
+                            iterator.remove();
+                        } else {
+                            workItems.put(workItem.getId(), workItem);
+                        }
                     }
-                    break;
-                default:
-                    throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
+                    processBatch(waved, workItems, acceptedResults);
+                }
+            }
+            return results;
+        } finally {
+            context.stop();
+        }
+    }
+
+    private void processBatch(List<CallbackData> accepted, Map<String, WorkItem> workItems, Map<String, CallbackResultData> results) {
+        if (accepted.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(accepted.size());
+        for (CallbackData callbackData : accepted) {
+            ids.add(callbackData.requestId);
+        }
+        Round round = new Round();
+        dataAccess.deleteWorkItems(ids);
+        for (CallbackData callbackData : accepted) {
+            try {
+                processWorkItem(round, workItems.get(callbackData.requestId), callbackData);
+            } catch (Exception ex) {
+                logger.error("Failed to process callback for work item {}, {}", callbackData.requestId, ex.getMessage());
+                CallbackResultData result = results.get(callbackData.requestId);
+                result.status = ex instanceof HttpAbstractException ? ((HttpAbstractException) ex).getStatus() : 500;
+                result.message = ex.getMessage();
             }
+        }
+        round.finish();
+    }
+
+    private void processWorkItem(Round round, WorkItem workItem, CallbackData callbackData) throws IOException {
+        switch (callbackData.status) {
+            case success:
+                meterSuccess.mark();
+                break;
+            case error:
+                meterFail.mark();
+                break;
+        }
+
+        Map<String, String> notes = new HashMap<>();
+        switch (workItem.getType()) {
+            case module:
+                switch (workItem.getOperation()) {
+                    case create:
+                        notes.put("Template", workItem.getMainModule().template);
+                        notes.put("Type", workItem.getMainModule().moduleType.toString());
+                        break;
+                    case update:
+                        break;
+                    case delete:
+                        break;
+                    default:
+                        throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
+                }
+                break;
+            case host:
+                switch (workItem.getOperation()) {
+                    case create:
+                        round.createHostAction.process(workItem, callbackData.status);
+                        notes.put("DC", workItem.getHost().dataCenter);
+                        notes.put("Network", workItem.getHost().network);
+                        notes.put("Operating_Env", workItem.getHost().env);
+                        notes.put("Size_CPU", Integer.toString(workItem.getHost().sizeCpu));
+                        notes.put("Size_Memory", Integer.toString(workItem.getHost().sizeMemory));
+                        notes.put("Size_Storage", Integer.toString(workItem.getHost().sizeStorage));
+                        notes.put("Reason", workItem.getHost().reason);
+                        break;
+                    case deploy:
+                        round.deploySoftwareAction.process(workItem, callbackData.status);
+                        if (workItem.getHost().version != null) {
+                            notes.put("Version", workItem.getHost().version);
+                        }
+                        if (workItem.getHost().prevVersion != null) {
+                            notes.put("Prev Version", workItem.getHost().prevVersion);
+                        }
+                        if (workItem.getHost().versionUrl != null) {
+                            notes.put("Version Url", workItem.getHost().versionUrl);
+                        }
+                        if (workItem.getHost().configVersion != null) {
+                            notes.put("Config_Version", workItem.getHost().configVersion);
+                        }
+                        notes.put("Reason", workItem.getHost().reason);
+                        break;
+                    case restart:
+                        round.restartHostAction.process(workItem, callbackData.status);
+                        notes.put("Reason", workItem.getHost().reason);
+                        break;
+                    case delete:
+                        deleteHost(round.writes, workItem, callbackData.status);
+                        notes.put("Reason", workItem.getHost().reason);
+                        break;
+                    default:
+                        throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
+                }
+                break;
+            case vip:
+                switch (workItem.getOperation()) {
+                    case create:
+                        notes.put("Protocol", workItem.getVip().protocol);
+                        notes.put("DNS", workItem.getVip().dns + "." + workItem.getVip().domain);
+                        notes.put("VIP_Port", Integer.toString(workItem.getVip().vipPort));
+                        notes.put("Service_Port", Integer.toString(workItem.getVip().servicePort));
+                        notes.put("External", Boolean.toString(workItem.getVip().external));
+                        createVip(round.writes, workItem, callbackData.status);
+                        break;
+                    case update:
+                        notes.put("Protocol", workItem.getVip().protocol);
+                        notes.put("DNS", workItem.getVip().dns + "." + workItem.getVip().domain);
+                        notes.put("VIP_Port", Integer.toString(workItem.getVip().vipPort));
+                        notes.put("Service_Port", Integer.toString(workItem.getVip().servicePort));
+                        notes.put("External", Boolean.toString(workItem.getVip().external));
+                        updateVip(round.writes, workItem, callbackData.status);
+                        break;
+                    case delete:
+                        deleteVip(round.writes, workItem, callbackData.status);
+                        break;
+                    default:
+                        throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
+                }
+                break;
+            default:
+                throw new RuntimeException("Unknown callback " + workItem.getType() + " " + workItem.getOperation());
+        }
+        Audit audit = new Audit();
+        audit.serviceId = workItem.getService().serviceId;
+        audit.timePerformed = GMT.getGmtAsDate();
+        audit.timeRequested = workItem.getRequestDate();
+        audit.requestor = workItem.getUsername();
+        audit.type = workItem.getType();
+        audit.operation = workItem.getOperation();
+        audit.successfull = (callbackData.status == Result.success);
+        if (workItem.getMainModule() != null) {
+            audit.moduleName = workItem.getMainModule().moduleName;
+        }
+        if (workItem.getHost() != null) {
+            audit.hostName = workItem.getHost().hostName;
+        }
+        if (workItem.getVip() != null) {
+            audit.vipName = workItem.getVip().dns;
+        }
+        if (notes.isEmpty()) {
+            audit.notes = "";
+        } else {
+            audit.notes = gson.toJson(notes);
+        }
+        round.writes.saveAudit(audit, callbackData.output);
+        if (callbackData.status == Result.error) {
+            saveWorkItemStatus(round, workItem, 502);
+            cancelRemaining(round, workItem);
+        } else {
+            saveWorkItemStatus(round, workItem, 200);
+        }
+    }
+
+    private void saveWorkItemStatus(Round round, WorkItem workItem, int status) {
+        round.writes.saveWorkItemStatus(workItem.getId(), status);
+        round.completed.add(() -> workItemCompleted(workItem, status));
+    }
+
+    private void workItemCompleted(WorkItem workItem, int status) {
+        String workItemId = workItem.getId();
+        changeFeed.workItemCompleted(workItem, status);
+        List<WorkItemStatusListener> listeners = statusListeners.remove(workItemId);
+        if (listeners != null) {
+            for (WorkItemStatusListener listener : listeners) {
+                listener.statusChanged(workItemId, status);
+            }
+        }
+    }
+
+    /**
+     * Cancels every work item in the failed work item's chain that has not
+     * been sent yet, both the rest of a chain and any later waves of a rolling
+     * deployment. Work items of the failed wave that are already in flight are
+     * left to finish.
+     */
+    private void cancelRemaining(Round round, WorkItem failedWorkItem) {
+        if (failedWorkItem.getChainId() == null) {
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        for (WorkItem workItem : dataAccess.getChainWorkItems(failedWorkItem.getChainId())) {
+            if (workItem.getState() != WorkItemState.pending) {
+                continue;
+            }
+            if (workItem.getType() == Type.host) {
+                Host host = round.writes.getHost(workItem.getService().serviceId, workItem.getHost().hostId);
+                if (host != null) {
+                    host.setStatus(false, "Last operation cancelled");
+                    round.writes.updateHost(host);
+                }
+            }
+            ids.add(workItem.getId());
+
+            saveWorkItemStatus(round, workItem, 502);
+
             Audit audit = new Audit();
             audit.serviceId = workItem.getService().serviceId;
             audit.timePerformed = GMT.getGmtAsDate();
@@ -229,7 +481,7 @@ public class WorkItemProcessorImpl implements WorkItemProcessor {
             audit.requestor = workItem.getUsername();
             audit.type = workItem.getType();
             audit.operation = workItem.getOperation();
-            audit.successfull = (callbackData.status == Result.success);
+            audit.successfull = false;
             if (workItem.getMainModule() != null) {
                 audit.moduleName = workItem.getMainModule().moduleName;
             }
@@ -239,95 +491,46 @@ public class WorkItemProcessorImpl implements WorkItemProcessor {
             if (workItem.getVip() != null) {
                 audit.vipName = workItem.getVip().dns;
             }
-            if (notes.isEmpty()) {
-                audit.notes = "";
-            } else {
-                audit.notes = gson.toJson(notes);
-            }
-            dataAccess.saveAudit(audit, callbackData.output);
-            if (callbackData.status == Result.error) {
-                dataAccess.saveWorkItemStatus(workItem.getId(), 502);
-                deleteNextWorkItem(workItem.getNextId());
-            } else {
-                dataAccess.saveWorkItemStatus(workItem.getId(), 200);
-            }
-        } finally {
-            context.stop();
+            audit.notes = "";
+            round.writes.saveAudit(audit, "Operation not preformed because an earlier operation in the sequence failed.");
         }
-    }
-
-    private void deleteNextWorkItem(String nextId) {
-        if (nextId != null) {
-            WorkItem nextWorkItem = dataAccess.getWorkItem(nextId);
-            deleteNextWorkItem(nextWorkItem.getNextId());
-            WorkItem workItem = dataAccess.getWorkItem(nextId);
-            if (workItem != null) {
-                if (workItem.getType() == Type.host) {
-                    Host host = dataAccess.getHost(workItem.getService().serviceId, workItem.getHost().hostId);
-                    if (host != null) {
-                        host.setStatus(false, "Last operation cancelled");
-                        dataAccess.updateHost(host);
-                    }
-                }
-                dataAccess.deleteWorkItem(nextId);
-                
-                dataAccess.saveWorkItemStatus(workItem.getId(), 502);
-                
-                Audit audit = new Audit();
-                audit.serviceId = workItem.getService().serviceId;
-                audit.timePerformed = GMT.getGmtAsDate();
-                audit.timeRequested = workItem.getRequestDate();
-                audit.requestor = workItem.getUsername();
-                audit.type = workItem.getType();
-                audit.operation = workItem.getOperation();
-                audit.successfull = false;
-                if (workItem.getMainModule() != null) {
-                    audit.moduleName = workItem.getMainModule().moduleName;
-                }
-                if (workItem.getHost() != null) {
-                    audit.hostName = workItem.getHost().hostName;
-                }
-                if (workItem.getVip() != null) {
-                    audit.vipName = workItem.getVip().dns;
-                }
-                audit.notes = "";
-                dataAccess.saveAudit(audit, "Operation not preformed because an earlier operation in the sequence failed.");
-            }
+        if (!ids.isEmpty()) {
+            dataAccess.deleteWorkItems(ids);
         }
     }
 
-    private void deleteHost(WorkItem workItem, Result result) throws IOException {
-        Host host = dataAccess.getHost(workItem.getService().serviceId, workItem.getHost().hostId);
+    private void deleteHost(DataAccess writes, WorkItem workItem, Result result) throws IOException {
+        Host host = writes.getHost(workItem.getService().serviceId, workItem.getHost().hostId);
         if (host == null) {
             logger.warn("Could not find host {} to delete.", workItem.getHost().hostId);
             return;
         }
         if (result == Result.success) {
-            dataAccess.deleteHost(host);
+            writes.deleteHost(host);
         } else {
             logger.warn("Callback for {} failed with status {}", host.getHostId(), result);
             host.setStatus(false, Const.NO_STATUS);
-            dataAccess.updateHost(host);
+            writes.updateHost(host);
         }
     }
 
-    private void createVip(WorkItem workItem, Result result) throws IOException {
-        Vip vip = dataAccess.getVip(workItem.getService().serviceId, workItem.getVip().vipId);
+    private void createVip(DataAccess writes, WorkItem workItem, Result result) throws IOException {
+        Vip vip = writes.getVip(workItem.getService().serviceId, workItem.getVip().vipId);
         if (vip == null) {
             logger.warn("Could not find vip {} being created", workItem.getVip().vipId);
             return;
         }
         if (result == Result.success) {
             vip.setStatus(Const.NO_STATUS);
-            dataAccess.updateVip(vip);
+            writes.updateVip(vip);
         } else {
             logger.warn("Callback for {} failed with status {}", vip.getVipId(), result);
-            dataAccess.deleteVip(vip.getServiceId(), vip.getVipId());
+            writes.deleteVip(vip.getServiceId(), vip.getVipId());
         }
     }
 
-    private void updateVip(WorkItem workItem, Result result) throws IOException {
-        Vip vip = dataAccess.getVip(workItem.getService().serviceId, workItem.getVip().vipId);
+    private void updateVip(DataAccess writes, WorkItem workItem, Result result) throws IOException {
+        Vip vip = writes.getVip(workItem.getService().serviceId, workItem.getVip().vipId);
         if (vip == null) {
             logger.warn("Could not find vip {} being updated", workItem.getVip().vipId);
             return;
@@ -336,25 +539,100 @@ public class WorkItemProcessorImpl implements WorkItemProcessor {
             vip.setStatus(Const.NO_STATUS);
             vip.setExternal(workItem.getVip().external);
             vip.setServicePort(workItem.getVip().servicePort);
-            dataAccess.updateVip(vip);
+            writes.updateVip(vip);
         } else {
             logger.warn("Callback for {} failed with status {}", workItem.getVip().vipId, result);
         }
     }
 
-    private void deleteVip(WorkItem workItem, Result result) throws IOException {
-        Vip vip = dataAccess.getVip(workItem.getService().serviceId, workItem.getVip().vipId);
+    private void deleteVip(DataAccess writes, WorkItem workItem, Result result) throws IOException {
+        Vip vip = writes.getVip(workItem.getService().serviceId, workItem.getVip().vipId);
         if (vip == null) {
             logger.error("Could not find end point {} to delete.", workItem.getVip().vipId);
             return;
         }
         if (result == Result.success) {
-            dataAccess.deleteVip(vip.getServiceId(), vip.getVipId());
+            writes.deleteVip(vip.getServiceId(), vip.getVipId());
         } else {
             logger.warn("Callback for {} failed with status {}", vip.getVipId(), result);
             vip.setStatus(Const.NO_STATUS);
-            dataAccess.updateVip(vip);
+            writes.updateVip(vip);
+        }
+    }
+
+    /**
+     * One pass over a group of callbacks. The actions write through a
+     * CallbackWrites, and the work items they start, the status listeners
+     * and the change feed are only told once finish has saved those writes.
+     */
+    private class Round implements WorkItemProcessor {
+
+        private final CallbackWrites writes;
+        private final CreateHostAction createHostAction;
+        private final DeploySoftwareAction deploySoftwareAction;
+        private final RestartHostAction restartHostAction;
+        private final List<WorkItem> queued;
+        private final List<Runnable> completed;
+
+        private Round() {
+            writes = new CallbackWrites(dataAccess);
+            createHostAction = new CreateHostAction(writes, this);
+            deploySoftwareAction = new DeploySoftwareAction(writes, this);
+            restartHostAction = new RestartHostAction(writes, this);
+            queued = new ArrayList<>();
+            completed = new ArrayList<>();
+        }
+
+        @Override
+        public void recover() {
+            WorkItemProcessorImpl.this.recover();
+        }
+
+        @Override
+        public void sendWorkItem(WorkItem workItem) throws IOException {
+            dispatchQueue.queue(workItem, null);
+            queued.add(workItem);
         }
+
+        @Override
+        public boolean sendPendingWorkItem(WorkItem workItem) throws IOException {
+            if (!dispatchQueue.queue(workItem, WorkItemState.pending)) {
+                return false;
+            }
+            queued.add(workItem);
+            return true;
+        }
+
+        @Override
+        public void processCallback(CallbackData callbackData) throws IOException {
+            WorkItemProcessorImpl.this.processCallback(callbackData);
+        }
+
+        @Override
+        public List<CallbackResultData> processCallbacks(List<CallbackData> callbacks) {
+            return WorkItemProcessorImpl.this.processCallbacks(callbacks);
+        }
+
+        @Override
+        public void addStatusListener(String workItemId, WorkItemStatusListener listener) {
+            WorkItemProcessorImpl.this.addStatusListener(workItemId, listener);
+        }
+
+        @Override
+        public void removeStatusListener(String workItemId, WorkItemStatusListener listener) {
+            WorkItemProcessorImpl.this.removeStatusListener(workItemId, listener);
+        }
+
+        private void finish() {
+            writes.flush();
+            for (WorkItem workItem : queued) {
+                dispatchQueue.submit(workItem);
+            }
+            for (Runnable runnable : completed) {
+                runnable.run();
+            }
+        }
+
     }
 
 }
@@ -19,7 +19,9 @@ import com.northernwall.hadrian.Const;
 import com.northernwall.hadrian.db.DataAccess;
 import com.northernwall.hadrian.domain.Host;
 import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
 import com.northernwall.hadrian.workItem.WorkItemProcessor;
+import com.northernwall.hadrian.workItem.dao.WaveData;
 import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +45,11 @@ public class DeploySoftwareAction extends Action {
         host.setStatus(false, Const.NO_STATUS);
         dataAccess.updateHost(host);
 
+        if (workItem.getWave() != null) {
+            sendNextWave(workItem.getWave());
+            return;
+        }
+
         if (workItem.getNextId() == null) {
             //No more hosts to update in the chain
             return;
@@ -60,6 +67,45 @@ public class DeploySoftwareAction extends Action {
         workItemProcessor.sendWorkItem(nextWorkItem);
     }
 
+    /**
+     * Sends the next wave once every work item in the current wave has called
+     * back. Work items of the next wave that are missing were cancelled by a
+     * failure in this wave. Another callback, possibly in another Hadrian, may
+     * also see the wave finish, each work item is only sent by whichever of
+     * them moves it out of pending first.
+     */
+    private void sendNextWave(WaveData wave) throws IOException {
+        for (String id : wave.waveIds) {
+            if (dataAccess.getWorkItem(id) != null) {
+                //Still waiting on other hosts in this wave
+                return;
+            }
+        }
+        if (wave.nextWaveIds.isEmpty()) {
+            logger.info("Finished last deployment wave, {} of {}", wave.wave, wave.waves);
+            return;
+        }
+        logger.info("Finished deployment wave {} of {}, starting next wave of {} hosts", wave.wave, wave.waves, wave.nextWaveIds.size());
+        for (String id : wave.nextWaveIds) {
+            WorkItem nextWorkItem = dataAccess.getWorkItem(id);
+            if (nextWorkItem == null || nextWorkItem.getState() != WorkItemState.pending) {
+                //Cancelled, or already started by another callback
+                continue;
+            }
+            Host nextHost = dataAccess.getHost(nextWorkItem.getService().serviceId, nextWorkItem.getHost().hostId);
+            if (nextHost == null) {
+                logger.error("Starting deployment wave {}, but could not find host {}.", wave.wave + 1, nextWorkItem.getHost().hostId);
+                continue;
+            }
+            nextHost.setStatus(true, "Deploying...");
+            dataAccess.updateHost(nextHost);
+
+            if (!workItemProcessor.sendPendingWorkItem(nextWorkItem)) {
+                logger.info("Work item {} of deployment wave {} was already started or cancelled", id, wave.wave + 1);
+            }
+        }
+    }
+
     @Override
     protected void error(WorkItem workItem) throws IOException {
         Host host = dataAccess.getHost(workItem.getService().serviceId, workItem.getHost().hostId);
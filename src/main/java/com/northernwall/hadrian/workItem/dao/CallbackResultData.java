@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem.dao;
+
+/**
+ * The outcome of one callback in a batch.
+ */
+public class CallbackResultData {
+
+    /**
+     * The requestId of the callback, null if the callback did not have one.
+     */
+    public String requestId;
+
+    /**
+     * The HTTP status the callback would have received on its own.
+     */
+    public int status;
+
+    /**
+     * Why the callback was not processed, null when it was.
+     */
+    public String message;
+
+}
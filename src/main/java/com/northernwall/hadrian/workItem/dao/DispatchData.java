@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem.dao;
+
+import java.util.Date;
+
+/**
+ * Dispatch bookkeeping for a work item that is waiting to be handed to the
+ * WorkItemSender. It is stored with the work item so a queued item survives a
+ * restart, and is cleared once the sender has accepted the item.
+ */
+public class DispatchData {
+
+    /**
+     * When the work item was first queued.
+     */
+    public Date queued;
+
+    /**
+     * How many times sending has been tried so far.
+     */
+    public int attempts;
+
+    /**
+     * Earliest time, in millis, the next attempt should be made.
+     */
+    public long nextAttempt;
+
+}
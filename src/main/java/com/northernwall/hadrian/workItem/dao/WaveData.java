@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem.dao;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Places a work item in a wave of a rolling deployment. Every work item in a
+ * wave is sent at once, and the next wave is only sent once all of them have
+ * called back successfully.
+ */
+public class WaveData {
+
+    /**
+     * Position of this wave, starting at 1.
+     */
+    public int wave;
+
+    /**
+     * Total number of waves in the deployment.
+     */
+    public int waves;
+
+    /**
+     * Ids of every work item in this wave, including this one.
+     */
+    public List<String> waveIds = new LinkedList<>();
+
+    /**
+     * Ids of the work items in the following wave, empty for the last wave.
+     */
+    public List<String> nextWaveIds = new LinkedList<>();
+
+}
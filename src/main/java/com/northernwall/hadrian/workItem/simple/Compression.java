@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem.simple;
+
+import java.util.zip.Deflater;
+import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.GzipSink;
+import okio.Sink;
+
+/**
+ * The Content-Encoding used for large work item payloads.
+ */
+public enum Compression {
+
+    none(null) {
+        @Override
+        Sink wrap(BufferedSink sink) {
+            return sink;
+        }
+    },
+    gzip("gzip") {
+        @Override
+        Sink wrap(BufferedSink sink) {
+            return new GzipSink(sink);
+        }
+    },
+    deflate("deflate") {
+        @Override
+        Sink wrap(BufferedSink sink) {
+            return new DeflaterSink(sink, new Deflater());
+        }
+    };
+
+    private final String contentEncoding;
+
+    private Compression(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * @return the Content-Encoding header value, null for no compression
+     */
+    String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * Closing the returned sink finishes the compressed stream.
+     */
+    abstract Sink wrap(BufferedSink sink);
+
+}
@@ -15,7 +15,10 @@
  */
 package com.northernwall.hadrian.workItem.simple;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.gson.Gson;
 import com.northernwall.hadrian.Const;
 import com.northernwall.hadrian.domain.WorkItem;
@@ -23,15 +26,22 @@ import com.northernwall.hadrian.parameters.Parameters;
 import com.northernwall.hadrian.workItem.Result;
 import com.northernwall.hadrian.workItem.WorkItemProcessor;
 import com.northernwall.hadrian.workItem.WorkItemSender;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
 import com.squareup.okhttp.Request;
-import com.squareup.okhttp.RequestBody;
 import com.squareup.okhttp.Response;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Posts each work item as JSON to a single url. The sender has its own
+ * connection pool so work item traffic neither waits on nor evicts the
+ * connections of the shared client, and it prefers HTTP/2 where the receiver
+ * negotiates it. Work items with many modules can be compressed.
  *
  * @author Richard Thurston
  */
@@ -42,13 +52,40 @@ public class SimpleWorkItemSender extends WorkItemSender {
 
     private final Gson gson;
     private final OkHttpClient client;
+    private final Compression compression;
+    private final int compressionMinModules;
+    private final Timer timerPost;
+    private final Histogram histogramBytes;
+    private final Meter meterRejected;
 
     public SimpleWorkItemSender(Parameters parameters, OkHttpClient client, MetricRegistry metricRegistry) {
         super(parameters);
-        this.client = client;
+        this.client = client.clone();
+        this.client.setConnectionPool(new ConnectionPool(
+                parameters.getInt(Const.SIMPLE_WORK_ITEM_MAX_IDLE_CONNECTIONS, Const.SIMPLE_WORK_ITEM_MAX_IDLE_CONNECTIONS_DEFAULT),
+                parameters.getInt(Const.SIMPLE_WORK_ITEM_KEEP_ALIVE, Const.SIMPLE_WORK_ITEM_KEEP_ALIVE_DEFAULT)));
+        this.client.setConnectTimeout(parameters.getInt(Const.SIMPLE_WORK_ITEM_CONNECT_TIMEOUT, Const.SIMPLE_WORK_ITEM_CONNECT_TIMEOUT_DEFAULT), TimeUnit.MILLISECONDS);
+        this.client.setReadTimeout(parameters.getInt(Const.SIMPLE_WORK_ITEM_READ_TIMEOUT, Const.SIMPLE_WORK_ITEM_READ_TIMEOUT_DEFAULT), TimeUnit.MILLISECONDS);
+        if (parameters.getBoolean(Const.SIMPLE_WORK_ITEM_HTTP2, Const.SIMPLE_WORK_ITEM_HTTP2_DEFAULT)) {
+            //Only used when the receiver offers it over TLS, otherwise HTTP/1.1
+            this.client.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            this.client.setProtocols(Arrays.asList(Protocol.HTTP_1_1));
+        }
         gson = new Gson();
 
         url = parameters.getString(Const.SIMPLE_WORK_ITEM_URL, Const.SIMPLE_WORK_ITEM_URL_DEFAULT);
+        String temp = parameters.getString(Const.SIMPLE_WORK_ITEM_COMPRESSION, Const.SIMPLE_WORK_ITEM_COMPRESSION_DEFAULT);
+        try {
+            compression = Compression.valueOf(temp.toLowerCase());
+        } catch (IllegalArgumentException ex) {
+            throw new RuntimeException("Unknown " + Const.SIMPLE_WORK_ITEM_COMPRESSION + " " + temp);
+        }
+        compressionMinModules = parameters.getInt(Const.SIMPLE_WORK_ITEM_COMPRESSION_MIN_MODULES, Const.SIMPLE_WORK_ITEM_COMPRESSION_MIN_MODULES_DEFAULT);
+
+        timerPost = metricRegistry.timer("workItem.send.simple.post");
+        histogramBytes = metricRegistry.histogram("workItem.send.simple.bytes");
+        meterRejected = metricRegistry.meter("workItem.send.simple.rejected");
     }
 
     @Override
@@ -57,17 +94,33 @@ public class SimpleWorkItemSender extends WorkItemSender {
 
     @Override
     public Result sendWorkItem(WorkItem workItem) throws IOException {
-        RequestBody body = RequestBody.create(Const.JSON_MEDIA_TYPE, gson.toJson(workItem));
-        Request request = new Request.Builder()
+        Compression bodyCompression = Compression.none;
+        if (workItem.getModules() != null && workItem.getModules().size() >= compressionMinModules) {
+            bodyCompression = compression;
+        }
+        WorkItemRequestBody body = new WorkItemRequestBody(gson, workItem, bodyCompression);
+        Request.Builder builder = new Request.Builder()
                 .url(url)
                 .addHeader("X-Request-Id", workItem.getId())
-                .post(body)
-                .build();
-        Response response = client.newCall(request).execute();
+                .post(body);
+        if (bodyCompression.getContentEncoding() != null) {
+            builder.addHeader("Content-Encoding", bodyCompression.getContentEncoding());
+        }
+        Response response;
+        Timer.Context context = timerPost.time();
+        try {
+            response = client.newCall(builder.build()).execute();
+        } finally {
+            context.stop();
+        }
+        //Frees the connection for the next work item
+        response.body().close();
+        histogramBytes.update(body.getBytesWritten());
         logger.info("Sent workitem {} and got response {}", workItem.getId(), response.code());
         if (response.isSuccessful()) {
             return Result.wip;
         }
+        meterRejected.mark();
         return Result.error;
     }
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian.workItem.simple;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.northernwall.hadrian.Const;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Writes a work item as JSON straight into the request, through the chosen
+ * compression, without first building the whole document as a String. The
+ * body can be written again if OkHttp has to retry the request.
+ */
+class WorkItemRequestBody extends RequestBody {
+
+    private final Gson gson;
+    private final WorkItem workItem;
+    private final Compression compression;
+    private long bytesWritten;
+
+    WorkItemRequestBody(Gson gson, WorkItem workItem, Compression compression) {
+        this.gson = gson;
+        this.workItem = workItem;
+        this.compression = compression;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return Const.JSON_MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        //Unknown until written, so the body is sent chunked
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        bytesWritten = 0;
+        BufferedSink counted = Okio.buffer(new ForwardingSink(sink) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                bytesWritten += byteCount;
+            }
+
+            @Override
+            public void close() throws IOException {
+                //The request owns the underlying sink
+                flush();
+            }
+        });
+        BufferedSink compressed = Okio.buffer(compression.wrap(counted));
+        JsonWriter jw = new JsonWriter(new OutputStreamWriter(compressed.outputStream(), StandardCharsets.UTF_8));
+        gson.toJson(workItem, WorkItem.class, jw);
+        jw.close();
+    }
+
+    /**
+     * @return bytes sent for the last write, after compression
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+}
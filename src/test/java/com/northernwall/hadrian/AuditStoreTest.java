@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.db.audit.AuditStore;
+import com.northernwall.hadrian.domain.Audit;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AuditStoreTest {
+
+    public AuditStoreTest() {
+    }
+
+    @Test
+    public void rangeAcrossMonthsTest() throws IOException {
+        Path directory = Files.createTempDirectory("audit");
+        Calendar c = new GregorianCalendar();
+        c.add(Calendar.DAY_OF_MONTH, -100);
+        c.set(Calendar.MILLISECOND, 0);
+        Date start = c.getTime();
+
+        AuditStore auditStore = new AuditStore(directory, 3650, new MetricRegistry());
+        for (int i = 0; i < 90; i++) {
+            auditStore.append(buildAudit("s1", c.getTime()), i == 45 ? "output 45" : null);
+            auditStore.append(buildAudit("s2", c.getTime()), null);
+            c.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        Date end = c.getTime();
+        Assert.assertEquals(90, auditStore.getAudit("s1", start, end).size());
+        auditStore.close();
+
+        auditStore = new AuditStore(directory, 3650, new MetricRegistry());
+        Assert.assertEquals(90, auditStore.getSegmentCount());
+        Assert.assertEquals(90, auditStore.getAudit("s2", start, end).size());
+        Assert.assertEquals(0, auditStore.getAudit("s3", start, end).size());
+        String auditId = null;
+        for (Audit audit : auditStore.getAudit("s1", start, end)) {
+            if (auditStore.getAuditOutput("s1", audit.auditId) != null) {
+                auditId = audit.auditId;
+            }
+        }
+        Assert.assertEquals("output 45", auditStore.getAuditOutput("s1", auditId));
+        auditStore.close();
+
+        auditStore = new AuditStore(directory, 30, new MetricRegistry());
+        Assert.assertTrue(auditStore.getSegmentCount() <= 31);
+        Assert.assertEquals(auditStore.getSegmentCount(), auditStore.getAudit("s1", start, end).size());
+        auditStore.close();
+    }
+
+    private Audit buildAudit(String serviceId, Date time) {
+        Audit audit = new Audit();
+        audit.serviceId = serviceId;
+        audit.timePerformed = time;
+        audit.timeRequested = time;
+        audit.requestor = "test";
+        return audit;
+    }
+
+}
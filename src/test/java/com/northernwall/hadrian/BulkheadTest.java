@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.utilityHandlers.Bulkhead;
+import com.northernwall.hadrian.utilityHandlers.TargetedRunnable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class BulkheadTest {
+
+    public BulkheadTest() {
+    }
+
+    @Test
+    public void testTargetLimit() throws InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Bulkhead bulkhead = new Bulkhead("test", 4, 10, 1, metricRegistry);
+        Task first = new Task("a");
+        Task second = new Task("a");
+        Task other = new Task("b");
+
+        bulkhead.execute(first);
+        bulkhead.execute(second);
+        bulkhead.execute(other);
+        Assert.assertTrue(first.started.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(other.started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, metricRegistry.getGauges().get("outbound.test.queued").getValue());
+        Assert.assertEquals(1, second.started.getCount());
+
+        first.release.countDown();
+        Assert.assertTrue(second.started.await(5, TimeUnit.SECONDS));
+        second.release.countDown();
+        other.release.countDown();
+        bulkhead.shutdown();
+    }
+
+    @Test
+    public void testSaturatedPoolFailsWaitingTask() throws InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 1, metricRegistry);
+        Task first = new Task("a");
+        Task waiting = new Task("a");
+        Task untargeted = new Task(null);
+
+        bulkhead.execute(first);
+        Assert.assertTrue(first.started.await(5, TimeUnit.SECONDS));
+        bulkhead.execute(waiting);
+        bulkhead.execute(untargeted);
+
+        //the only thread is still finishing first and the pool queue is full
+        first.release.countDown();
+        Assert.assertTrue(waiting.rejected.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, waiting.started.getCount());
+        Assert.assertEquals(1, metricRegistry.meter("outbound.test.rejected").getCount());
+
+        untargeted.release.countDown();
+        Assert.assertTrue(untargeted.started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, waiting.started.getCount());
+        bulkhead.shutdown();
+    }
+
+    @Test
+    public void testTargetQueueLimit() throws InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 1, metricRegistry);
+        Task first = new Task("a");
+        Task waiting = new Task("a");
+
+        bulkhead.execute(first);
+        bulkhead.execute(waiting);
+        try {
+            bulkhead.execute(new Task("a"));
+            Assert.fail("Expected the target queue to be full");
+        } catch (RejectedExecutionException ex) {
+        }
+        Assert.assertEquals(1, metricRegistry.meter("outbound.test.rejected").getCount());
+
+        first.release.countDown();
+        Assert.assertTrue(waiting.started.await(5, TimeUnit.SECONDS));
+        waiting.release.countDown();
+        bulkhead.shutdown();
+    }
+
+    private static class Task implements TargetedRunnable {
+
+        private final String target;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch rejected = new CountDownLatch(1);
+
+        private Task(String target) {
+            this.target = target;
+        }
+
+        @Override
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public void rejected(RejectedExecutionException ex) {
+            rejected.countDown();
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DelegatingDataAccess;
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+import com.northernwall.hadrian.domain.Audit;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.stubs.StubWorkItemSender;
+import com.northernwall.hadrian.stubs.WorkItemFixture;
+import com.northernwall.hadrian.workItem.Result;
+import com.northernwall.hadrian.workItem.WorkItemProcessor;
+import com.northernwall.hadrian.workItem.WorkItemProcessorImpl;
+import com.northernwall.hadrian.workItem.dao.CallbackResultData;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class CallbackBatchTest {
+
+    public CallbackBatchTest() {
+    }
+
+    @Test
+    public void testResultsPerCallback() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender);
+        List<List<WorkItem>> waves = start(dataAccess, workItemProcessor);
+        Assert.assertTrue(sender.awaitSent(2));
+
+        List<CallbackResultData> results = workItemProcessor.processCallbacks(Arrays.asList(
+                WorkItemFixture.createCallback(waves.get(0).get(0).getId(), Result.success),
+                WorkItemFixture.createCallback(null, Result.success),
+                WorkItemFixture.createCallback("unknown", Result.success),
+                WorkItemFixture.createCallback(waves.get(0).get(1).getId(), null),
+                WorkItemFixture.createCallback(waves.get(0).get(0).getId(), Result.success)));
+
+        Assert.assertEquals(5, results.size());
+        Assert.assertEquals(200, results.get(0).status);
+        Assert.assertEquals(400, results.get(1).status);
+        Assert.assertEquals(404, results.get(2).status);
+        Assert.assertEquals(400, results.get(3).status);
+        //Only the first callback for a work item is processed
+        Assert.assertEquals(404, results.get(4).status);
+        Assert.assertNull(dataAccess.getWorkItem(waves.get(0).get(0).getId()));
+        Assert.assertNotNull(dataAccess.getWorkItem(waves.get(0).get(1).getId()));
+    }
+
+    @Test
+    public void testWaveStartsOnce() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender);
+        List<List<WorkItem>> waves = start(dataAccess, workItemProcessor);
+        Assert.assertTrue(sender.awaitSent(2));
+
+        workItemProcessor.processCallbacks(Arrays.asList(
+                WorkItemFixture.createCallback(waves.get(0).get(0).getId(), Result.success),
+                WorkItemFixture.createCallback(waves.get(0).get(1).getId(), Result.success)));
+
+        Assert.assertTrue(sender.awaitSent(4));
+        //Every work item has been sent and none is queued to be sent again
+        Assert.assertEquals(4, sender.getSent().size());
+        Assert.assertTrue(dataAccess.getWorkItems(WorkItemState.queued).isEmpty());
+    }
+
+    @Test
+    public void testFailureInBatchHaltsNextWave() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender);
+        List<List<WorkItem>> waves = start(dataAccess, workItemProcessor);
+        Assert.assertTrue(sender.awaitSent(2));
+
+        //The success comes first, but the failure must still stop the next wave
+        List<CallbackResultData> results = workItemProcessor.processCallbacks(Arrays.asList(
+                WorkItemFixture.createCallback(waves.get(0).get(0).getId(), Result.success),
+                WorkItemFixture.createCallback(waves.get(0).get(1).getId(), Result.error)));
+
+        Assert.assertEquals(200, results.get(0).status);
+        Assert.assertEquals(200, results.get(1).status);
+        //Nothing was left to send
+        Assert.assertTrue(dataAccess.getWorkItems().isEmpty());
+        Assert.assertEquals(2, sender.getSent().size());
+    }
+
+    @Test
+    public void testWritesAreGrouped() throws IOException, InterruptedException {
+        CountingDataAccess dataAccess = new CountingDataAccess(new InMemoryDataAccess());
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender);
+        List<List<WorkItem>> waves = start(dataAccess, workItemProcessor);
+        Assert.assertTrue(sender.awaitSent(2));
+
+        workItemProcessor.processCallbacks(Arrays.asList(
+                WorkItemFixture.createCallback(waves.get(0).get(0).getId(), Result.success),
+                WorkItemFixture.createCallback(waves.get(0).get(1).getId(), Result.success)));
+
+        Assert.assertEquals(0, dataAccess.single.get());
+        Assert.assertEquals(3, dataAccess.grouped.get());
+        for (WorkItem workItem : waves.get(0)) {
+            Assert.assertEquals(200, dataAccess.getWorkItemStatus(workItem.getId()));
+        }
+    }
+
+    private List<List<WorkItem>> start(DataAccess dataAccess, WorkItemProcessor workItemProcessor) throws IOException {
+        return WorkItemFixture.startWaves(dataAccess, workItemProcessor, WorkItemFixture.createWorkItems(dataAccess, Operation.deploy, "dc", "dc", "dc", "dc"), 2);
+    }
+
+    private static class CountingDataAccess extends DelegatingDataAccess {
+
+        private final AtomicInteger single;
+        private final AtomicInteger grouped;
+
+        private CountingDataAccess(DataAccess dataAccess) {
+            super(dataAccess);
+            this.single = new AtomicInteger(0);
+            this.grouped = new AtomicInteger(0);
+        }
+
+        @Override
+        public void updateHost(Host host) {
+            single.incrementAndGet();
+            super.updateHost(host);
+        }
+
+        @Override
+        public void updateHosts(List<Host> hosts) {
+            grouped.incrementAndGet();
+            super.updateHosts(hosts);
+        }
+
+        @Override
+        public void saveWorkItemStatus(String id, int status) {
+            single.incrementAndGet();
+            super.saveWorkItemStatus(id, status);
+        }
+
+        @Override
+        public void saveWorkItemStatuses(Map<String, Integer> statuses) {
+            grouped.incrementAndGet();
+            super.saveWorkItemStatuses(statuses);
+        }
+
+        @Override
+        public void saveAudit(Audit audit, String output) {
+            single.incrementAndGet();
+            super.saveAudit(audit, output);
+        }
+
+        @Override
+        public void saveAudits(List<Audit> audits, List<String> outputs) {
+            grouped.incrementAndGet();
+            super.saveAudits(audits, outputs);
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.feed.ChangeFeed;
+import com.northernwall.hadrian.service.dao.GetChangeData;
+import com.northernwall.hadrian.service.dao.GetChangesData;
+import com.northernwall.hadrian.stubs.StubParameters;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class ChangeFeedTest {
+
+    public ChangeFeedTest() {
+    }
+
+    @Test
+    public void testReadFromPosition() {
+        ChangeFeed changeFeed = new ChangeFeed(new StubParameters(), new MetricRegistry());
+        long start = changeFeed.read("s1", -1).next;
+        Assert.assertEquals(0, start);
+
+        Host host = new Host("host1", "s1", "Deploying", "m1", "dc", "prd", "env");
+        changeFeed.hostChanged(host);
+        changeFeed.hostProbed("s1", host.getHostId(), "1.2", 200);
+        changeFeed.hostChanged(new Host("host2", "s2", "-", "m1", "dc", "prd", "env"));
+
+        GetChangesData data = changeFeed.read("s1", start);
+        Assert.assertFalse(data.reset);
+        Assert.assertEquals(2, data.changes.size());
+        Assert.assertEquals(GetChangeData.HOST, data.changes.get(0).kind);
+        Assert.assertEquals("Deploying", data.changes.get(0).status);
+        Assert.assertEquals("1.2", data.changes.get(1).version);
+        Assert.assertEquals(2, data.next);
+
+        Assert.assertTrue(changeFeed.read("s1", data.next).changes.isEmpty());
+        Assert.assertEquals(2, changeFeed.read("s1", data.next).next);
+    }
+
+    @Test
+    public void testLappedReaderIsReset() {
+        ChangeFeed changeFeed = new ChangeFeed(new StubParameters(), new MetricRegistry());
+        for (int i = 0; i < Const.CHANGE_FEED_RING_SIZE_DEFAULT + 10; i++) {
+            changeFeed.hostProbed("s1", "h1", "v" + i, 200);
+        }
+        GetChangesData data = changeFeed.read("s1", 0);
+        Assert.assertTrue(data.reset);
+        Assert.assertTrue(data.changes.isEmpty());
+        Assert.assertEquals(Const.CHANGE_FEED_RING_SIZE_DEFAULT + 10, data.next);
+    }
+
+    @Test
+    public void testWaitersAreWokenOnce() throws InterruptedException {
+        ChangeFeed changeFeed = new ChangeFeed(new StubParameters(), new MetricRegistry());
+        final AtomicInteger woken = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread publisher = Thread.currentThread();
+        Runnable waiter = new Runnable() {
+            @Override
+            public void run() {
+                if (Thread.currentThread() != publisher) {
+                    woken.incrementAndGet();
+                }
+                latch.countDown();
+            }
+        };
+        changeFeed.addWaiter("s1", waiter);
+        changeFeed.hostProbed("s2", "h1", "1.0", 200);
+        Assert.assertEquals(1, latch.getCount());
+        changeFeed.hostProbed("s1", "h1", "1.0", 200);
+        changeFeed.hostProbed("s1", "h1", "1.1", 200);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, woken.get());
+    }
+
+    @Test
+    public void testUnusedFeedsAreDropped() {
+        ChangeFeed changeFeed = new ChangeFeed(new StubParameters(), new MetricRegistry());
+        Runnable waiter = () -> {
+        };
+        Assert.assertEquals(0, changeFeed.read("s1", -1).next);
+        changeFeed.addWaiter("s1", waiter);
+        changeFeed.removeWaiter("s1", waiter);
+        changeFeed.hostProbed("s2", "h1", "1.0", 200);
+        Assert.assertEquals(1, changeFeed.size());
+    }
+
+    @Test
+    public void testPublishWhileFeedsAreDropped() throws InterruptedException {
+        ChangeFeed changeFeed = new ChangeFeed(new StubParameters(), new MetricRegistry());
+        int count = 2000;
+        Thread watcher = new Thread(() -> {
+            Runnable waiter = () -> {
+            };
+            for (int i = 0; i < count; i++) {
+                changeFeed.addWaiter("s1", waiter);
+                changeFeed.removeWaiter("s1", waiter);
+            }
+        });
+        watcher.start();
+        for (int i = 0; i < count; i++) {
+            changeFeed.hostProbed("s1", "h1", "1.0", i);
+        }
+        watcher.join();
+
+        //no change was published in to a feed that was being dropped
+        Assert.assertEquals(count, changeFeed.read("s1", -1).next);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.DataAccessUpdater;
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.domain.Type;
+import com.northernwall.hadrian.domain.User;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.workItem.dao.DispatchData;
+import java.util.Arrays;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class DataAccessUpdaterTest {
+
+    public DataAccessUpdaterTest() {
+    }
+
+    @Test
+    public void testOldWorkItemsGetStateAndChain() {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        dataAccess.setVersion("1.5");
+        WorkItem create = createOldWorkItem(Operation.create);
+        WorkItem deploy = createOldWorkItem(Operation.deploy);
+        create.setNextId(deploy.getId());
+        WorkItem restart = createOldWorkItem(Operation.restart);
+        restart.setDispatch(new DispatchData());
+        dataAccess.saveWorkItems(Arrays.asList(create, deploy, restart));
+
+        DataAccessUpdater.update(dataAccess);
+
+        Assert.assertEquals("1.6", dataAccess.getVersion());
+        Assert.assertEquals(WorkItemState.sent, dataAccess.getWorkItem(create.getId()).getState());
+        Assert.assertEquals(WorkItemState.pending, dataAccess.getWorkItem(deploy.getId()).getState());
+        Assert.assertEquals(WorkItemState.queued, dataAccess.getWorkItem(restart.getId()).getState());
+        Assert.assertEquals(2, dataAccess.getChainWorkItems(create.getId()).size());
+        Assert.assertEquals(1, dataAccess.getChainWorkItems(restart.getId()).size());
+        Assert.assertEquals(1, dataAccess.getWorkItems(WorkItemState.sent).size());
+    }
+
+    private WorkItem createOldWorkItem(Operation operation) {
+        Team team = new Team("team", null, null, null, null, null, null, "blue");
+        Service service = new Service("service", team.getTeamId(), null, null, null, null, true);
+        Host host = new Host("host", service.getServiceId(), "Queued", "m1", "dc", "prd", "env");
+        WorkItem workItem = new WorkItem(Type.host, operation, new User("user", "User", false, false, false), team, service, null, host, null);
+        workItem.setState(null);
+        workItem.setChainId(null);
+        return workItem;
+    }
+
+}
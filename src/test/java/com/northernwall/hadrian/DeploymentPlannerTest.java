@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.stubs.StubParameters;
+import com.northernwall.hadrian.stubs.StubWorkItemSender;
+import com.northernwall.hadrian.stubs.WorkItemFixture;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.Http404NotFoundException;
+import com.northernwall.hadrian.workItem.DeploymentPlanner;
+import com.northernwall.hadrian.workItem.Result;
+import com.northernwall.hadrian.workItem.WorkItemProcessor;
+import com.northernwall.hadrian.workItem.WorkItemProcessorImpl;
+import java.io.IOException;
+import java.util.List;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class DeploymentPlannerTest {
+
+    public DeploymentPlannerTest() {
+    }
+
+    @Test
+    public void testPlan() {
+        DeploymentPlanner deploymentPlanner = new DeploymentPlanner(new StubParameters());
+        List<WorkItem> workItems = WorkItemFixture.createWorkItems(new InMemoryDataAccess(), Operation.deploy, "dc1", "dc1", "dc2", "dc1", "dc2");
+
+        //Default is one host at a time
+        Assert.assertEquals(5, deploymentPlanner.plan(workItems, 0, 0, false).size());
+
+        List<List<WorkItem>> waves = deploymentPlanner.plan(workItems, 2, 0, false);
+        Assert.assertEquals(3, waves.size());
+        Assert.assertEquals(1, waves.get(2).size());
+
+        waves = deploymentPlanner.plan(workItems, 2, 0, true);
+        Assert.assertEquals(3, waves.size());
+        Assert.assertEquals(2, waves.get(0).size());
+        Assert.assertEquals(1, waves.get(1).size());
+        Assert.assertEquals("dc1", waves.get(1).get(0).getHost().dataCenter);
+        Assert.assertEquals(2, waves.get(2).size());
+        Assert.assertEquals(3, waves.get(2).get(0).getWave().wave);
+        Assert.assertTrue(waves.get(2).get(0).getWave().nextWaveIds.isEmpty());
+
+        waves = deploymentPlanner.plan(workItems, 0, 100, true);
+        Assert.assertEquals(2, waves.size());
+        Assert.assertEquals(waves.get(1).get(0).getId(), waves.get(0).get(2).getWave().nextWaveIds.get(0));
+
+        waves = deploymentPlanner.plan(workItems, 0, 50, false);
+        Assert.assertEquals(2, waves.size());
+        Assert.assertEquals(3, waves.get(0).size());
+    }
+
+    @Test
+    public void testWavesRunInOrder() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender);
+        List<List<WorkItem>> waves = start(dataAccess, workItemProcessor, "dc", "dc", "dc", "dc");
+
+        Assert.assertTrue(sender.awaitSent(2));
+        Assert.assertEquals(2, dataAccess.getWorkItems(WorkItemState.sent).size());
+        Assert.assertEquals(2, dataAccess.getWorkItems(WorkItemState.pending).size());
+        Assert.assertEquals(4, dataAccess.getChainWorkItems(waves.get(1).get(1).getChainId()).size());
+        callback(workItemProcessor, waves.get(0).get(0), Result.success);
+        //The wave is not finished until every host has called back
+        Assert.assertEquals(2, dataAccess.getWorkItems(WorkItemState.pending).size());
+        callback(workItemProcessor, waves.get(0).get(1), Result.success);
+        Assert.assertTrue(sender.awaitSent(4));
+        Assert.assertTrue(sender.getSent().contains(waves.get(1).get(0).getId()));
+        Assert.assertTrue(sender.getSent().contains(waves.get(1).get(1).getId()));
+        Assert.assertEquals("Deploying...", WorkItemFixture.getHost(dataAccess, waves.get(1).get(0)).getStatus());
+    }
+
+    @Test
+    public void testFailureHaltsLaterWaves() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender);
+        List<List<WorkItem>> waves = start(dataAccess, workItemProcessor, "dc", "dc", "dc", "dc", "dc", "dc");
+
+        Assert.assertTrue(sender.awaitSent(2));
+        callback(workItemProcessor, waves.get(0).get(0), Result.error);
+        //Later waves are cancelled, the rest of the failed wave is left to finish
+        Assert.assertNotNull(dataAccess.getWorkItem(waves.get(0).get(1).getId()));
+        for (int i = 1; i < 3; i++) {
+            for (WorkItem workItem : waves.get(i)) {
+                Assert.assertNull(dataAccess.getWorkItem(workItem.getId()));
+                Assert.assertEquals("Last operation cancelled", WorkItemFixture.getHost(dataAccess, workItem).getStatus());
+            }
+        }
+        callback(workItemProcessor, waves.get(0).get(1), Result.success);
+        //Nothing was left to send
+        Assert.assertTrue(dataAccess.getWorkItems().isEmpty());
+        Assert.assertEquals(2, sender.getSent().size());
+        Assert.assertEquals("Last deployment failed", WorkItemFixture.getHost(dataAccess, waves.get(0).get(0)).getStatus());
+    }
+
+    @Test
+    public void testWaveItemsAreStartedOnce() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender);
+        List<List<WorkItem>> waves = start(dataAccess, workItemProcessor, "dc", "dc", "dc", "dc");
+
+        Assert.assertTrue(sender.awaitSent(2));
+        callback(workItemProcessor, waves.get(0).get(0), Result.success);
+        try {
+            callback(workItemProcessor, waves.get(0).get(0), Result.success);
+            Assert.fail("A duplicate callback should not be processed");
+        } catch (Http404NotFoundException ex) {
+        }
+
+        //Whoever moves a work item out of pending first is the only one to send it
+        WorkItem next = dataAccess.getWorkItem(waves.get(1).get(0).getId());
+        Assert.assertTrue(workItemProcessor.sendPendingWorkItem(next));
+        Assert.assertFalse(workItemProcessor.sendPendingWorkItem(next));
+        callback(workItemProcessor, waves.get(0).get(1), Result.success);
+        Assert.assertTrue(sender.awaitSent(4));
+        //Every work item has been sent and none is queued to be sent again
+        Assert.assertEquals(4, sender.getSent().size());
+        Assert.assertTrue(dataAccess.getWorkItems(WorkItemState.queued).isEmpty());
+    }
+
+    private List<List<WorkItem>> start(DataAccess dataAccess, WorkItemProcessor workItemProcessor, String... dataCenters) throws IOException {
+        return WorkItemFixture.startWaves(dataAccess, workItemProcessor, WorkItemFixture.createWorkItems(dataAccess, Operation.deploy, dataCenters), 2);
+    }
+
+    private void callback(WorkItemProcessor workItemProcessor, WorkItem workItem, Result result) throws IOException {
+        workItemProcessor.processCallback(WorkItemFixture.createCallback(workItem.getId(), result));
+    }
+
+}
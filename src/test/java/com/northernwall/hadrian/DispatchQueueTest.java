@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.stubs.StubParameters;
+import com.northernwall.hadrian.stubs.StubWorkItemSender;
+import com.northernwall.hadrian.stubs.WorkItemFixture;
+import com.northernwall.hadrian.workItem.WorkItemProcessorImpl;
+import com.northernwall.hadrian.workItem.dao.DispatchData;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class DispatchQueueTest {
+
+    public DispatchQueueTest() {
+    }
+
+    @Test
+    public void testRetryUntilSent() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        MetricRegistry metricRegistry = new MetricRegistry();
+        StubWorkItemSender sender = new StubWorkItemSender(2);
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender, new FastRetryParameters(), metricRegistry);
+
+        WorkItem workItem = createWorkItem(dataAccess);
+        workItemProcessor.sendWorkItem(workItem);
+
+        Assert.assertTrue(sender.awaitSent(1));
+        Assert.assertEquals(3, sender.getAttempts());
+        Assert.assertFalse(sender.isDispatchSeen());
+        Assert.assertEquals(2, metricRegistry.meter("workItem.dispatch.retry").getCount());
+        //Sent and waiting for its callback
+        WorkItem stored = dataAccess.getWorkItem(workItem.getId());
+        Assert.assertNotNull(stored);
+        Assert.assertNull(stored.getDispatch());
+        Assert.assertEquals(WorkItemState.sent, stored.getState());
+    }
+
+    @Test
+    public void testDeadLetter() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        MetricRegistry metricRegistry = new MetricRegistry();
+        StubWorkItemSender sender = new StubWorkItemSender(Integer.MAX_VALUE);
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender, new FastRetryParameters(), metricRegistry);
+
+        WorkItem workItem = createWorkItem(dataAccess);
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicInteger status = new AtomicInteger();
+        workItemProcessor.addStatusListener(workItem.getId(), (String workItemId, int newStatus) -> {
+            status.set(newStatus);
+            failed.countDown();
+        });
+        workItemProcessor.sendWorkItem(workItem);
+
+        Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(502, status.get());
+        Assert.assertEquals(3, sender.getAttempts());
+        Assert.assertEquals(1, metricRegistry.meter("workItem.dispatch.deadLetter").getCount());
+        //Failed as if the callback had reported an error
+        Assert.assertNull(dataAccess.getWorkItem(workItem.getId()));
+        Assert.assertEquals("Last restart failed", dataAccess.getHosts(workItem.getService().serviceId).get(0).getStatus());
+    }
+
+    @Test
+    public void testRecover() throws IOException, InterruptedException {
+        DataAccess dataAccess = new InMemoryDataAccess();
+        //Left queued in the store when Hadrian stopped
+        WorkItem queued = createWorkItem(dataAccess);
+        DispatchData dispatch = new DispatchData();
+        dispatch.queued = new Date();
+        dispatch.attempts = 1;
+        dispatch.nextAttempt = System.currentTimeMillis();
+        queued.setDispatch(dispatch);
+        queued.setState(WorkItemState.queued);
+        dataAccess.saveWorkItem(queued);
+        //Already accepted by the sender, waiting for its callback
+        WorkItem sent = createWorkItem(dataAccess);
+        sent.setState(WorkItemState.sent);
+        dataAccess.saveWorkItem(sent);
+
+        StubWorkItemSender sender = new StubWorkItemSender();
+        WorkItemProcessorImpl workItemProcessor = WorkItemFixture.createProcessor(dataAccess, sender, new FastRetryParameters(), new MetricRegistry());
+        workItemProcessor.recover();
+
+        Assert.assertTrue(sender.awaitSent(1));
+        Assert.assertEquals(queued.getId(), sender.getSent().get(0));
+        Assert.assertNull(dataAccess.getWorkItem(queued.getId()).getDispatch());
+        //Nothing else was waiting to be sent
+        Assert.assertTrue(dataAccess.getWorkItems(WorkItemState.queued).isEmpty());
+    }
+
+    private WorkItem createWorkItem(DataAccess dataAccess) {
+        WorkItem workItem = WorkItemFixture.createWorkItems(dataAccess, Operation.restart, "dc").get(0);
+        dataAccess.saveWorkItem(workItem);
+        return workItem;
+    }
+
+    private static class FastRetryParameters extends StubParameters {
+
+        @Override
+        public int getInt(String key, int value) {
+            if (Const.WORK_ITEM_DISPATCH_RETRY_DELAY.equals(key)) {
+                return 10;
+            }
+            if (Const.WORK_ITEM_DISPATCH_MAX_ATTEMPTS.equals(key)) {
+                return 3;
+            }
+            return value;
+        }
+
+    }
+
+}
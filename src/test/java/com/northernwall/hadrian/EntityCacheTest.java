@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.db.cache.CachingDataAccess;
+import com.northernwall.hadrian.db.cache.EntityCache;
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.stubs.StubParameters;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EntityCacheTest {
+
+    public EntityCacheTest() {
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedTest() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        EntityCache<String> cache = new EntityCache<>("test", 2, 60, metricRegistry);
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("3", cache.get("c"));
+        Assert.assertEquals(1, metricRegistry.meter("dataAccess.cache.test.eviction").getCount());
+    }
+
+    @Test
+    public void expireAndInvalidateTest() {
+        EntityCache<String> cache = new EntityCache<>("test", 10, 0, new MetricRegistry());
+
+        cache.put("a", "1");
+        cache.put("b", null);
+        Assert.assertEquals(1, cache.size());
+        cache.invalidate("a");
+        Assert.assertNull(cache.get("a"));
+
+        cache = new EntityCache<>("test", 10, 60, new MetricRegistry());
+        cache.put("a", "1");
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cachedEntitiesAreCopiesTest() {
+        CachingDataAccess dataAccess = new CachingDataAccess(new InMemoryDataAccess(), new StubParameters(), new MetricRegistry());
+        Host host = new Host("host1", "s1", "Active", "m1", "dc1", "net1", "env1");
+        dataAccess.saveHost(host);
+        String hostId = host.getHostId();
+
+        List<Host> hosts = dataAccess.getHosts("s1");
+        Assert.assertEquals(1, hosts.size());
+        hosts.get(0).setStatus(true, "Deploying");
+        dataAccess.getHost("s1", hostId).setStatus(true, "Deploying");
+
+        Host cached = dataAccess.getHost("s1", hostId);
+        Assert.assertFalse(cached.isBusy());
+        Assert.assertEquals("Active", cached.getStatus());
+        Assert.assertNotSame(cached, dataAccess.getHost("s1", hostId));
+    }
+
+}
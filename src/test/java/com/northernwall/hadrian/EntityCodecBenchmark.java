@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.northernwall.hadrian.db.cassandra.CompactEntityCodec;
+import com.northernwall.hadrian.db.cassandra.EntityCodec;
+import com.northernwall.hadrian.db.cassandra.JsonEntityCodec;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.WorkItem;
+
+/**
+ * Compares the bytes stored and the decode throughput of the JSON and
+ * compact codecs for the common entities. Not a unit test, run it by hand:
+ * java -cp ... com.northernwall.hadrian.EntityCodecBenchmark
+ *
+ * @author rthursto
+ */
+public class EntityCodecBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) {
+        Service service = EntityCodecTest.createService();
+        Module module = EntityCodecTest.createModule(service);
+        Host host = EntityCodecTest.createHost(service, module, 7);
+        WorkItem workItem = EntityCodecTest.createWorkItem(service, module, host);
+
+        EntityCodec json = new JsonEntityCodec();
+        EntityCodec compact = new CompactEntityCodec();
+        System.out.println(String.format("%-10s %10s %10s %14s %14s", "entity", "json B", "compact B", "json dec/s", "compact dec/s"));
+        measure("Service", service, Service.class, json, compact);
+        measure("Module", module, Module.class, json, compact);
+        measure("Host", host, Host.class, json, compact);
+        measure("WorkItem", workItem, WorkItem.class, json, compact);
+    }
+
+    private static <T> void measure(String name, T entity, Class<T> classOfT, EntityCodec json, EntityCodec compact) {
+        String jsonData = json.encode(entity);
+        String compactData = compact.encode(entity);
+        System.out.println(String.format("%-10s %10d %10d %14.0f %14.0f",
+                name,
+                jsonData.length(),
+                compactData.length(),
+                decodesPerSecond(json, jsonData, classOfT),
+                decodesPerSecond(compact, compactData, classOfT)));
+    }
+
+    private static double decodesPerSecond(EntityCodec codec, String data, Class<?> classOfT) {
+        int hash = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            hash += codec.decode(data, classOfT).hashCode();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            hash += codec.decode(data, classOfT).hashCode();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (hash == 42) {
+            System.out.print("");
+        }
+        return ITERATIONS * 1_000_000_000.0 / elapsed;
+    }
+
+}
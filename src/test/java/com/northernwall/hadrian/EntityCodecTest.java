@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.northernwall.hadrian.db.cassandra.CompactEntityCodec;
+import com.northernwall.hadrian.db.cassandra.EntityCodec;
+import com.northernwall.hadrian.db.cassandra.JsonEntityCodec;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleType;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.domain.Type;
+import com.northernwall.hadrian.domain.User;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.workItem.dao.ModuleData;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class EntityCodecTest {
+
+    private final EntityCodec json = new JsonEntityCodec();
+    private final EntityCodec compact = new CompactEntityCodec();
+
+    public EntityCodecTest() {
+    }
+
+    @Test
+    public void testReadJsonRows() {
+        Host host = createHost(createService(), createModule(createService()), 1);
+
+        String data = json.encode(host);
+        Assert.assertEquals('{', data.charAt(0));
+        Assert.assertEquals("host001", compact.decode(data, Host.class).getHostName());
+        Assert.assertNull(compact.decode("", Host.class));
+        Assert.assertNull(compact.decode(null, Host.class));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Service service = createService();
+        Module module = createModule(service);
+        Host host = createHost(service, module, 7);
+        WorkItem workItem = createWorkItem(service, module, host);
+
+        assertRoundTrip(service, Service.class);
+        assertRoundTrip(module, Module.class);
+        assertRoundTrip(host, Host.class);
+        assertRoundTrip(workItem, WorkItem.class);
+
+        Host[] hosts = new Host[50];
+        for (int i = 0; i < hosts.length; i++) {
+            hosts[i] = createHost(service, module, i);
+        }
+        assertRoundTrip(hosts, Host[].class);
+    }
+
+    @Test
+    public void testCompactIsSmaller() {
+        Service service = createService();
+        Module module = createModule(service);
+        Host host = createHost(service, module, 7);
+        WorkItem workItem = createWorkItem(service, module, host);
+
+        Assert.assertTrue(compact.encode(module).startsWith("~2"));
+        Assert.assertTrue(compact.encode(module).length() < json.encode(module).length());
+        Assert.assertTrue(compact.encode(workItem).length() < json.encode(workItem).length() * 3 / 4);
+
+        //a small entity is not worth the base64 overhead
+        Assert.assertEquals(json.encode(host), compact.encode(host));
+    }
+
+    @Test
+    public void testReadVersion1Rows() {
+        Host host = createHost(createService(), createModule(createService()), 3);
+        byte[] bytes = json.encode(host).getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        String data = "~1" + Base64.getEncoder().encodeToString(out.toByteArray());
+
+        Assert.assertEquals(json.encode(host), json.encode(compact.decode(data, Host.class)));
+        Assert.assertEquals(json.encode(host), json.encode(json.decode(data, Host.class)));
+    }
+
+    @Test
+    public void testBadRows() {
+        Service service = createService();
+        Module module = createModule(service);
+        String data = compact.encode(createWorkItem(service, module, createHost(service, module, 1)));
+        Assert.assertTrue(data.startsWith("~2"));
+        assertFails("~9abc");
+        assertFails("~2");
+        assertFails(data.substring(0, data.length() - 8));
+    }
+
+    private <T> void assertRoundTrip(T entity, Class<T> classOfT) {
+        String data = compact.encode(entity);
+        Assert.assertEquals(json.encode(entity), json.encode(compact.decode(data, classOfT)));
+        Assert.assertEquals(json.encode(entity), json.encode(json.decode(data, classOfT)));
+    }
+
+    private void assertFails(String data) {
+        try {
+            compact.decode(data, Service.class);
+            Assert.fail("Expected " + data + " to fail");
+        } catch (RuntimeException ex) {
+        }
+    }
+
+    static Service createService() {
+        return new Service("orderService", "1f0c3a48-5e5b-4d1a-9c1e-0b1f5d2e7a61", "Takes and tracks orders", "Service", null, "order-service", true);
+    }
+
+    static Module createModule(Service service) {
+        Map<String, Boolean> networkNames = new HashMap<>();
+        networkNames.put("prd", true);
+        networkNames.put("dev", false);
+        return new Module("order-api", service.getServiceId(), 1, ModuleType.Deployable, "order-service", "order-api",
+                "com.example.orders", "order-api", "jar", "-exec", "ordapi", "ordapi.example.com",
+                "http://{host}:8080/version", "http://{host}:8080/availability", "orders",
+                "/opt/orders/order-api", "/var/lib/orders", "/var/log/orders", 14,
+                "/opt/orders/order-api/bin/start.sh", 120, "/opt/orders/order-api/bin/stop.sh", 60, "order-api.conf", networkNames);
+    }
+
+    static Host createHost(Service service, Module module, int i) {
+        return new Host(String.format("host%03d", i), service.getServiceId(), "Deploying...", module.getModuleId(), "dc1", "prd", "Ubuntu 14.04");
+    }
+
+    static WorkItem createWorkItem(Service service, Module module, Host host) {
+        Team team = new Team("orders", "orders@example.com", "orders", "ORD", "http://calendar", "http://git", "http://team", "blue");
+        User user = new User("jsmith", "J Smith", false, true, false);
+        WorkItem workItem = new WorkItem(Type.host, Operation.deploy, user, team, service, module, host, null);
+        workItem.getModules().add(ModuleData.create(module));
+        return workItem;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.northernwall.hadrian.utilityHandlers.FanOut;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class FanOutTest {
+
+    public FanOutTest() {
+    }
+
+    @Test
+    public void testDeadline() {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        final AtomicInteger finished = new AtomicInteger(0);
+        Runnable fast = new Runnable() {
+            @Override
+            public void run() {
+                finished.incrementAndGet();
+            }
+        };
+        Runnable slow = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ex) {
+                }
+            }
+        };
+        Runnable failing = new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException("probe failed");
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(FanOut.awaitAll(Arrays.asList(fast, failing, fast), executorService, 5000));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertEquals(2, finished.get());
+
+        start = System.currentTimeMillis();
+        Assert.assertFalse(FanOut.awaitAll(Arrays.asList(fast, slow), executorService, 200));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+        Assert.assertEquals(3, finished.get());
+        executorService.shutdownNow();
+    }
+
+}
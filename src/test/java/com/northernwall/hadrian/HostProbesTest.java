@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.service.dao.GetHostData;
+import com.northernwall.hadrian.service.dao.GetModuleData;
+import com.northernwall.hadrian.service.helper.HostProbes;
+import com.northernwall.hadrian.service.helper.InfoHelper;
+import com.northernwall.hadrian.stubs.StubParameters;
+import com.squareup.okhttp.OkHttpClient;
+import java.io.IOException;
+import java.net.ServerSocket;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class HostProbesTest {
+
+    public HostProbesTest() {
+    }
+
+    @Test
+    public void testNoUrls() {
+        InfoHelper infoHelper = new InfoHelper(new StubParameters(), new OkHttpClient(), new MetricRegistry());
+        HostProbes probes = new HostProbes(infoHelper);
+        GetHostData getHostData = new GetHostData();
+        getHostData.hostName = "host1";
+        probes.add(getHostData, new GetModuleData());
+
+        Assert.assertTrue(probes.start(1000).join());
+        Assert.assertEquals("No Version URL", getHostData.version);
+        Assert.assertEquals(-1, getHostData.availability);
+    }
+
+    @Test
+    public void testDeadlineCancelsProbes() throws IOException, InterruptedException {
+        //A server that accepts connections but never answers
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            MetricRegistry metricRegistry = new MetricRegistry();
+            InfoHelper infoHelper = new InfoHelper(new StubParameters(), new OkHttpClient(), metricRegistry);
+            HostProbes probes = new HostProbes(infoHelper);
+            GetModuleData getModuleData = new GetModuleData();
+            getModuleData.versionUrl = Const.HOST + ":" + serverSocket.getLocalPort() + "/version";
+            getModuleData.availabilityUrl = Const.HOST + ":" + serverSocket.getLocalPort() + "/availability";
+            GetHostData getHostData = new GetHostData();
+            getHostData.hostName = "127.0.0.1";
+            probes.add(getHostData, getModuleData);
+
+            long start = System.currentTimeMillis();
+            Assert.assertFalse(probes.start(200).join());
+            Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+
+            //Nobody else wanted the probes, so they were cancelled and the
+            //next round starts its own rather than sharing a dead call
+            Assert.assertNull(getHostData.version);
+            probes = new HostProbes(infoHelper);
+            probes.add(getHostData, getModuleData);
+            Assert.assertFalse(probes.start(50).join());
+            Assert.assertEquals(2, metricRegistry.meter("singleFlight.versionProbe.leaders").getCount());
+            Assert.assertEquals(0, metricRegistry.meter("singleFlight.versionProbe.coalesced").getCount());
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.inMemory.InMemoryDataAccess;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleType;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.feed.ChangeFeed;
+import com.northernwall.hadrian.graph.ModuleGraph;
+import com.northernwall.hadrian.service.dao.GetChangesData;
+import com.northernwall.hadrian.service.dao.GetHostData;
+import com.northernwall.hadrian.service.helper.HostStatus;
+import com.northernwall.hadrian.service.helper.HostStatusPoller;
+import com.northernwall.hadrian.service.helper.InfoHelper;
+import com.northernwall.hadrian.stubs.StubParameters;
+import com.squareup.okhttp.OkHttpClient;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class HostStatusPollerTest {
+
+    public HostStatusPollerTest() {
+    }
+
+    @Test
+    public void testPollFillsSnapshot() throws InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        DataAccess dataAccess = new InMemoryDataAccess();
+        ModuleGraph moduleGraph = new ModuleGraph();
+        ChangeFeed changeFeed = new ChangeFeed(new StubParameters(), metricRegistry);
+        Service service = new Service("service", "team", null, null, null, null, true);
+        Module module = new Module("module", service.getServiceId(), 1, ModuleType.Deployable, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 0, null, 0, null, 0, null, null);
+        moduleGraph.putService(service);
+        moduleGraph.putModule(module);
+        Host host = new Host("host1", service.getServiceId(), "-", module.getModuleId(), "dc", "prd", "env");
+        dataAccess.saveHost(host);
+        Host orphan = new Host("host2", service.getServiceId(), "-", "noModule", "dc", "prd", "env");
+        dataAccess.saveHost(orphan);
+
+        HostStatusPoller poller = new HostStatusPoller(dataAccess, moduleGraph, changeFeed, new InfoHelper(new StubParameters(), new OkHttpClient(), metricRegistry), new StubParameters(), metricRegistry);
+        final CountDownLatch probed = new CountDownLatch(1);
+        changeFeed.addWaiter(service.getServiceId(), () -> probed.countDown());
+        poller.start();
+        try {
+            Assert.assertTrue(probed.await(5, TimeUnit.SECONDS));
+        } finally {
+            poller.stop();
+        }
+
+        HostStatus status = poller.getStatus(host.getHostId());
+        Assert.assertNotNull(status);
+        Assert.assertEquals("No Version URL", status.getVersion());
+        Assert.assertEquals(-1, status.getAvailability());
+        Assert.assertNull(poller.getStatus(orphan.getHostId()));
+        Assert.assertEquals(1, metricRegistry.meter("hostPoller.probes").getCount());
+
+        GetHostData getHostData = GetHostData.create(host);
+        Assert.assertTrue(poller.fill(getHostData));
+        Assert.assertEquals("No Version URL", getHostData.version);
+        Assert.assertEquals(-1, getHostData.availability);
+        Assert.assertFalse(poller.fill(GetHostData.create(orphan)));
+
+        GetChangesData changes = changeFeed.read(service.getServiceId(), 0);
+        Assert.assertEquals(1, changes.changes.size());
+        Assert.assertEquals(host.getHostId(), changes.changes.get(0).hostId);
+    }
+
+}
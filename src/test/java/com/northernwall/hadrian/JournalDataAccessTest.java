@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.db.audit.AuditStoreDataAccess;
+import com.northernwall.hadrian.db.journal.JournalDataAccess;
+import com.northernwall.hadrian.db.journal.JournalDataAccessFactory;
+import com.northernwall.hadrian.domain.Audit;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.ModuleRef;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Type;
+import com.northernwall.hadrian.domain.User;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.domain.WorkItemState;
+import com.northernwall.hadrian.stubs.StubParameters;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JournalDataAccessTest {
+
+    public JournalDataAccessTest() {
+    }
+
+    @Test
+    public void replayTest() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+
+        JournalDataAccess dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        Host host1 = new Host("host001", "s1", "Creating...", "m1", "dc1", "prd", "Ubuntu");
+        Host host2 = new Host("host002", "s1", "Creating...", "m1", "dc1", "prd", "Ubuntu");
+        dataAccess.saveHosts(Arrays.asList(host1, host2));
+        dataAccess.deleteHost(host1);
+        dataAccess.saveModuleRef(new ModuleRef("s1", "m1", "s2", "m2"));
+
+        //reopen without a snapshot, and with a torn last line
+        Files.write(directory.resolve("journal.log"), "{\"seq\":99,\"act".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        Assert.assertEquals(1, dataAccess.getHosts("s1").size());
+        Assert.assertNotNull(dataAccess.getHost("HOST002"));
+        Assert.assertEquals(1, dataAccess.getModuleRefsByServer("s2", "m2").size());
+
+        //snapshot, then more changes, then reopen
+        dataAccess.snapshot();
+        Assert.assertEquals(0, Files.size(directory.resolve("journal.log")));
+        dataAccess.deleteModuleRef("s1", "m1", "s2", "m2");
+        dataAccess.close();
+
+        dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        Assert.assertEquals(1, dataAccess.getHosts("s1").size());
+        Assert.assertTrue(dataAccess.getModuleRefsByServer("s2", "m2").isEmpty());
+        dataAccess.close();
+    }
+
+    @Test
+    public void statusAndCopyTest() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+
+        JournalDataAccess dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        Assert.assertEquals(-1, dataAccess.getWorkItemStatus("w1"));
+        dataAccess.saveWorkItemStatus("w1", 500);
+        Assert.assertEquals(500, dataAccess.getWorkItemStatus("w1"));
+
+        //changing what a read returned, or what was saved, must not reach the store
+        Host host = new Host("host001", "s1", "Creating...", "m1", "dc1", "prd", "Ubuntu");
+        dataAccess.saveHost(host);
+        host.setStatus(true, "Saved");
+        dataAccess.getHost("host001").setStatus(true, "Read");
+        Assert.assertEquals("Creating...", dataAccess.getHost("host001").getStatus());
+        dataAccess.snapshot();
+        dataAccess.close();
+
+        dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        Assert.assertEquals(500, dataAccess.getWorkItemStatus("w1"));
+        Assert.assertEquals("Creating...", dataAccess.getHost("host001").getStatus());
+        dataAccess.close();
+
+        //and the status is replayed from the journal
+        Files.delete(directory.resolve("snapshot.json"));
+        dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        dataAccess.saveWorkItemStatus("w2", 200);
+        dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        Assert.assertEquals(200, dataAccess.getWorkItemStatus("w2"));
+        dataAccess.close();
+    }
+
+    @Test
+    public void conditionalWorkItemUpdateTest() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+
+        JournalDataAccess dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        WorkItem workItem = new WorkItem(Type.host, Operation.deploy, new User("user", "User", false, false, false), null, null, null, null, null);
+        workItem.setState(WorkItemState.queued);
+        dataAccess.saveWorkItem(workItem);
+
+        workItem.setState(WorkItemState.sent);
+        Assert.assertFalse(dataAccess.updateWorkItem(workItem, WorkItemState.pending));
+        Assert.assertTrue(dataAccess.updateWorkItem(workItem, WorkItemState.queued));
+        Assert.assertEquals(WorkItemState.sent, dataAccess.getWorkItem(workItem.getId()).getState());
+
+        //a deleted work item is never written back
+        dataAccess.deleteWorkItem(workItem.getId());
+        workItem.setState(WorkItemState.queued);
+        Assert.assertFalse(dataAccess.updateWorkItem(workItem, WorkItemState.sent));
+        dataAccess.close();
+
+        dataAccess = new JournalDataAccess(directory, new MetricRegistry());
+        Assert.assertNull(dataAccess.getWorkItem(workItem.getId()));
+        dataAccess.close();
+    }
+
+    @Test
+    public void auditStoreTest() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        Service service = new Service("service", "team", null, null, null, null, true);
+
+        //a journal written before the audit store was put in front of it
+        JournalDataAccess journal = new JournalDataAccess(directory, new MetricRegistry());
+        journal.saveService(service);
+        journal.saveAudit(createAudit(service), "old output");
+        journal.close();
+
+        DataAccess dataAccess = new JournalDataAccessFactory().createDataAccess(new StubParameters() {
+            @Override
+            public String getString(String key, String value) {
+                if (key.equals(Const.JOURNAL_DIRECTORY)) {
+                    return directory.toString();
+                }
+                return super.getString(key, value);
+            }
+        }, new MetricRegistry());
+        Assert.assertTrue(dataAccess instanceof AuditStoreDataAccess);
+        Assert.assertTrue(Files.isDirectory(directory.resolve("audit")));
+        Date start = new Date(System.currentTimeMillis() - 86_400_000L);
+        Date end = new Date(System.currentTimeMillis() + 86_400_000L);
+        Assert.assertEquals(1, dataAccess.getAudit(service.getServiceId(), start, end).size());
+
+        Audit audit = createAudit(service);
+        dataAccess.saveAudit(audit, "new output");
+        Assert.assertEquals(2, dataAccess.getAudit(service.getServiceId(), start, end).size());
+        Assert.assertEquals("new output", dataAccess.getAuditOutput(service.getServiceId(), audit.auditId));
+    }
+
+    private static Audit createAudit(Service service) {
+        Audit audit = new Audit();
+        audit.serviceId = service.getServiceId();
+        audit.timePerformed = new Date();
+        audit.timeRequested = audit.timePerformed;
+        audit.requestor = "user";
+        audit.type = Type.service;
+        audit.operation = Operation.update;
+        return audit;
+    }
+
+}
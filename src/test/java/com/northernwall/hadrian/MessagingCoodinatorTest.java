@@ -20,6 +20,7 @@ import com.northernwall.hadrian.domain.Module;
 import com.northernwall.hadrian.domain.ModuleType;
 import com.northernwall.hadrian.domain.Service;
 import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.graph.ModuleGraph;
 import com.northernwall.hadrian.messaging.MessageType;
 import com.northernwall.hadrian.messaging.MessagingCoodinator;
 import com.northernwall.hadrian.stubs.StubDataAccess;
@@ -53,7 +54,7 @@ public class MessagingCoodinatorTest {
 
     @Test
     public void sendMessageTest() {
-        MessagingCoodinator mc = new MessagingCoodinator(new StubDataAccess(), new StubParameters(), client);
+        MessagingCoodinator mc = new MessagingCoodinator(new StubDataAccess(), new ModuleGraph(), new StubParameters(), client);
         MessageType mt = mc.getMessageType("TEST");
         Team team = new Team("test Team", null, null, "myTeam", null, null, null, "black");
         Service service = new Service("Test Service", team.getTeamId(), "Desc", "service", GitMode.Consolidated, "gitGroup", true);
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleRef;
+import com.northernwall.hadrian.domain.ModuleType;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.graph.ModuleClosure;
+import com.northernwall.hadrian.graph.ModuleGraph;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class ModuleGraphTest {
+
+    public ModuleGraphTest() {
+    }
+
+    @Test
+    public void testRefsAreMaintained() {
+        ModuleGraph moduleGraph = new ModuleGraph();
+        Team team = new Team("team", null, null, null, null, null, null, "blue");
+        Service service = new Service("service", team.getTeamId(), null, null, null, null, true);
+        Module client = new Module("client", service.getServiceId(), 1, ModuleType.Deployable, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 0, null, 0, null, 0, null, null);
+        Module server = new Module("server", service.getServiceId(), 2, ModuleType.Library, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 0, null, 0, null, 0, null, null);
+
+        //A ref can be seen before the modules it joins
+        moduleGraph.addModuleRef(new ModuleRef(service.getServiceId(), client.getModuleId(), service.getServiceId(), server.getModuleId()));
+        Assert.assertTrue(moduleGraph.getServers(client).isEmpty());
+
+        moduleGraph.putTeam(team);
+        moduleGraph.putService(service);
+        moduleGraph.putModule(client);
+        moduleGraph.putModule(server);
+        Assert.assertEquals("blue", moduleGraph.getColour(service.getServiceId()));
+        Assert.assertEquals(2, moduleGraph.getModules(service.getServiceId()).size());
+        Assert.assertEquals(server, moduleGraph.getServers(client).get(0));
+        Assert.assertEquals(client, moduleGraph.getClients(server).get(0));
+
+        moduleGraph.removeModuleRef(service.getServiceId(), client.getModuleId(), service.getServiceId(), server.getModuleId());
+        Assert.assertTrue(moduleGraph.getServers(client).isEmpty());
+        Assert.assertTrue(moduleGraph.getClients(server).isEmpty());
+
+        moduleGraph.addModuleRef(new ModuleRef(service.getServiceId(), client.getModuleId(), service.getServiceId(), server.getModuleId()));
+        moduleGraph.removeModule(service.getServiceId(), server.getModuleId());
+        Assert.assertTrue(moduleGraph.getServers(client).isEmpty());
+        Assert.assertEquals(1, moduleGraph.getModules(service.getServiceId()).size());
+    }
+
+    @Test
+    public void testClosures() {
+        ModuleGraph moduleGraph = new ModuleGraph();
+        Module a = new Module("a", "s1", 1, ModuleType.Deployable, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 0, null, 0, null, 0, null, null);
+        Module b = new Module("b", "s1", 2, ModuleType.Library, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 0, null, 0, null, 0, null, null);
+        Module c = new Module("c", "s2", 1, ModuleType.Library, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 0, null, 0, null, 0, null, null);
+        moduleGraph.putModule(a);
+        moduleGraph.putModule(b);
+        moduleGraph.putModule(c);
+        moduleGraph.addModuleRef(new ModuleRef("s1", a.getModuleId(), "s1", b.getModuleId()));
+        moduleGraph.addModuleRef(new ModuleRef("s1", b.getModuleId(), "s2", c.getModuleId()));
+
+        ModuleClosure fanIn = moduleGraph.getFanInClosure("s2", c.getModuleId());
+        Assert.assertEquals(2, fanIn.getModules().size());
+        Assert.assertEquals(2, fanIn.getMaxDepth());
+        Assert.assertFalse(fanIn.isCyclic());
+        Assert.assertTrue(moduleGraph.getCycles().isEmpty());
+
+        //Closing the loop must drop the cached closure
+        moduleGraph.addModuleRef(new ModuleRef("s2", c.getModuleId(), "s1", a.getModuleId()));
+        Assert.assertTrue(moduleGraph.getFanInClosure("s2", c.getModuleId()).isCyclic());
+        Assert.assertEquals(2, moduleGraph.getFanOutClosure("s1", a.getModuleId()).getModules().size());
+        Assert.assertEquals(1, moduleGraph.getCycles().size());
+        Assert.assertEquals(3, moduleGraph.getCycles().get(0).size());
+
+        moduleGraph.removeModuleRef("s1", a.getModuleId(), "s1", b.getModuleId());
+        Assert.assertFalse(moduleGraph.getFanInClosure("s2", c.getModuleId()).isCyclic());
+        Assert.assertEquals(1, moduleGraph.getFanInClosure("s2", c.getModuleId()).getModules().size());
+        Assert.assertTrue(moduleGraph.getCycles().isEmpty());
+    }
+
+}
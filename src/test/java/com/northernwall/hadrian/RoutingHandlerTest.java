@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.MethodRule;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.RoutingHandler;
+import com.northernwall.hadrian.utilityHandlers.routingHandler.TargetRule;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import junit.framework.Assert;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class RoutingHandlerTest {
+
+    private final List<String> calls = new LinkedList<>();
+
+    public RoutingHandlerTest() {
+    }
+
+    @Test
+    public void testRoutesAreTriedInOrder() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RoutingHandler routingHandler = new RoutingHandler(metricRegistry);
+        routingHandler.add(MethodRule.GET, TargetRule.STARTS_WITH, "/ui/", new NamedHandler("content", false), false);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/version", new NamedHandler("version", true), false);
+        routingHandler.add(MethodRule.ANY, TargetRule.ANY, "/", new NamedHandler("access", false), false);
+        routingHandler.add(MethodRule.GET, TargetRule.STARTS_WITH, "/ui/", new NamedHandler("webapp", true), false);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/team", new NamedHandler("team", true), false);
+        routingHandler.add(MethodRule.GET, TargetRule.MATCHES, "/v1/graph/fanin/\\w+-\\w+", new NamedHandler("fanin", true), false);
+        routingHandler.add(MethodRule.PUTPOST, TargetRule.EQUALS, "/v1/team", new NamedHandler("teamCreate", true), false);
+        routingHandler.add(MethodRule.ANY, TargetRule.ANY, "/", new NamedHandler("redirect", true), false);
+
+        Assert.assertEquals("[version]", dispatch(routingHandler, "GET", "/version"));
+        Assert.assertEquals("[content, access, webapp]", dispatch(routingHandler, "GET", "/ui/index.html"));
+        Assert.assertEquals("[access, team]", dispatch(routingHandler, "GET", "/V1/Team"));
+        Assert.assertEquals("[access, fanin]", dispatch(routingHandler, "GET", "/v1/graph/fanin/abc-123"));
+        Assert.assertEquals("[access, redirect]", dispatch(routingHandler, "GET", "/v1/graph/fanin/abc"));
+        Assert.assertEquals("[access, teamCreate]", dispatch(routingHandler, "POST", "/v1/team"));
+        Assert.assertEquals("[access, redirect]", dispatch(routingHandler, "DELETE", "/v1/team"));
+
+        Assert.assertEquals(1, metricRegistry.timer("http.route.get.version.time").getCount());
+        Assert.assertEquals(1, metricRegistry.timer("http.route.get.v1.graph.fanin.w-w.time").getCount());
+        Assert.assertEquals(8, metricRegistry.timer("http.route.any.time").getCount());
+    }
+
+    @Test
+    public void testAsyncRouteIsTimedUntilComplete() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RoutingHandler routingHandler = new RoutingHandler(metricRegistry);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        routingHandler.add(MethodRule.GET, TargetRule.EQUALS, "/v1/service", new AbstractHandler() {
+            @Override
+            public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
+                final AsyncContext asyncContext = request.startAsync();
+                request.setHandled(true);
+                started.countDown();
+                new Thread(() -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                        HttpServletResponse asyncResponse = (HttpServletResponse) asyncContext.getResponse();
+                        asyncResponse.setStatus(404);
+                        asyncResponse.getWriter().print("Could not find service");
+                    } catch (InterruptedException | IOException ex) {
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }).start();
+            }
+        }, false);
+
+        //runs after the route's own listener, which was added first
+        final CountDownLatch completed = new CountDownLatch(1);
+        HandlerWrapper wrapper = new HandlerWrapper() {
+            @Override
+            public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
+                super.handle(target, request, httpRequest, response);
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) throws IOException {
+                        completed.countDown();
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) throws IOException {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) throws IOException {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) throws IOException {
+                    }
+                });
+            }
+        };
+        wrapper.setHandler(routingHandler);
+        Server server = new Server(0);
+        server.setHandler(wrapper);
+        server.start();
+        try {
+            int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/v1/service").openConnection();
+            CompletableFuture<Integer> status = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return connection.getResponseCode();
+                } catch (IOException ex) {
+                    return -1;
+                }
+            });
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            //the handler went async but the response has not been sent
+            Assert.assertEquals(0, metricRegistry.timer("http.route.get.v1.service.time").getCount());
+            Assert.assertEquals(1, metricRegistry.getGauges().get("http.route.get.v1.service.inFlight").getValue());
+            release.countDown();
+            Assert.assertEquals(404, status.get(5, TimeUnit.SECONDS).intValue());
+            Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+
+            Assert.assertEquals(1, metricRegistry.timer("http.route.get.v1.service.time").getCount());
+            Assert.assertEquals(1, metricRegistry.meter("http.route.get.v1.service.400").getCount());
+            Assert.assertEquals(22, metricRegistry.histogram("http.route.get.v1.service.responseSize").getSnapshot().getMax());
+            Assert.assertEquals(0, metricRegistry.getGauges().get("http.route.get.v1.service.inFlight").getValue());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private String dispatch(RoutingHandler routingHandler, String method, String target) throws IOException, ServletException {
+        calls.clear();
+        Request request = new Request(null, null) {
+            @Override
+            public String getMethod() {
+                return method;
+            }
+
+            @Override
+            public boolean isAsyncStarted() {
+                return false;
+            }
+        };
+        routingHandler.handle(target, request, request, new Response(null, null));
+        return calls.toString();
+    }
+
+    private class NamedHandler extends AbstractHandler {
+
+        private final String name;
+        private final boolean handles;
+
+        private NamedHandler(String name, boolean handles) {
+            this.name = name;
+            this.handles = handles;
+        }
+
+        @Override
+        public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException, ServletException {
+            calls.add(name);
+            request.setHandled(handles);
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.gson.Gson;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Module;
+import com.northernwall.hadrian.domain.ModuleType;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.domain.Type;
+import com.northernwall.hadrian.domain.User;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.stubs.StubParameters;
+import com.northernwall.hadrian.workItem.Result;
+import com.northernwall.hadrian.workItem.simple.SimpleWorkItemSender;
+import com.squareup.okhttp.OkHttpClient;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import junit.framework.Assert;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class SimpleWorkItemSenderTest {
+
+    public SimpleWorkItemSenderTest() {
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        Receiver receiver = new Receiver(200);
+        Server server = start(receiver);
+        try {
+            MetricRegistry metricRegistry = new MetricRegistry();
+            SimpleWorkItemSender sender = new SimpleWorkItemSender(new SenderParameters(server, "gzip"), new OkHttpClient(), metricRegistry);
+
+            WorkItem small = createWorkItem(1);
+            Assert.assertEquals(Result.wip, sender.sendWorkItem(small));
+            Assert.assertNull(receiver.contentEncoding);
+            Assert.assertEquals(small.getId(), receiver.received.getId());
+
+            WorkItem large = createWorkItem(20);
+            Assert.assertEquals(Result.wip, sender.sendWorkItem(large));
+            Assert.assertEquals("gzip", receiver.contentEncoding);
+            Assert.assertEquals(large.getId(), receiver.received.getId());
+            Assert.assertEquals(20, receiver.received.getModules().size());
+
+            Assert.assertEquals(2, metricRegistry.timer("workItem.send.simple.post").getCount());
+            Assert.assertEquals(2, metricRegistry.histogram("workItem.send.simple.bytes").getCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        Server server = start(new Receiver(500));
+        try {
+            MetricRegistry metricRegistry = new MetricRegistry();
+            SimpleWorkItemSender sender = new SimpleWorkItemSender(new SenderParameters(server, "none"), new OkHttpClient(), metricRegistry);
+            Assert.assertEquals(Result.error, sender.sendWorkItem(createWorkItem(1)));
+            Assert.assertEquals(1, metricRegistry.meter("workItem.send.simple.rejected").getCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private Server start(Receiver receiver) throws Exception {
+        Server server = new Server(0);
+        server.setHandler(receiver);
+        server.start();
+        return server;
+    }
+
+    private WorkItem createWorkItem(int modules) {
+        Team team = new Team("team", null, null, null, null, null, null, "blue");
+        Service service = new Service("service", team.getTeamId(), null, null, null, null, true);
+        Host host = new Host("host1", service.getServiceId(), "Deploying...", "m1", "dc", "prd", "env");
+        WorkItem workItem = new WorkItem(Type.host, Operation.deploy, new User("user", "User", false, false, false), team, service, null, host, null);
+        for (int i = 0; i < modules; i++) {
+            workItem.addModule(new Module("module" + i, service.getServiceId(), i, ModuleType.Library, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 0, null, 0, null, 0, null, null));
+        }
+        return workItem;
+    }
+
+    private static class SenderParameters extends StubParameters {
+
+        private final String url;
+        private final String compression;
+
+        private SenderParameters(Server server, String compression) {
+            this.url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/webhook/simple";
+            this.compression = compression;
+        }
+
+        @Override
+        public String getString(String key, String value) {
+            if (Const.SIMPLE_WORK_ITEM_URL.equals(key)) {
+                return url;
+            }
+            if (Const.SIMPLE_WORK_ITEM_COMPRESSION.equals(key)) {
+                return compression;
+            }
+            return super.getString(key, value);
+        }
+
+    }
+
+    private static class Receiver extends AbstractHandler {
+
+        private final int status;
+        private volatile String contentEncoding;
+        private volatile WorkItem received;
+
+        private Receiver(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public void handle(String target, Request request, HttpServletRequest httpRequest, HttpServletResponse response) throws IOException {
+            contentEncoding = request.getHeader("Content-Encoding");
+            InputStream in = request.getInputStream();
+            if ("gzip".equals(contentEncoding)) {
+                in = new GZIPInputStream(in);
+            }
+            received = new Gson().fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), WorkItem.class);
+            response.setStatus(status);
+            request.setHandled(true);
+        }
+
+    }
+
+}
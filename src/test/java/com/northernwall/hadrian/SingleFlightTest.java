@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Richard Thurston.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.northernwall.hadrian;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.utilityHandlers.SingleFlight;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author rthursto
+ */
+public class SingleFlightTest {
+
+    public SingleFlightTest() {
+    }
+
+    @Test
+    public void testCoalescing() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", 0, metricRegistry);
+        final AtomicInteger runs = new AtomicInteger(0);
+        final CompletableFuture<String> work = new CompletableFuture<>();
+
+        CompletableFuture<String> leader = singleFlight.execute("a", () -> {
+            runs.incrementAndGet();
+            return work;
+        });
+        CompletableFuture<String> follower = singleFlight.execute("a", () -> {
+            runs.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        Assert.assertEquals(1, runs.get());
+
+        work.complete("done");
+        Assert.assertEquals("done", leader.join());
+        Assert.assertEquals("done", follower.join());
+
+        //With no window a finished flight is not reused
+        Assert.assertEquals(0, singleFlight.size());
+        singleFlight.execute("a", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture("again");
+        });
+        Assert.assertEquals(2, runs.get());
+        Assert.assertEquals(2, metricRegistry.meter("singleFlight.test.leaders").getCount());
+        Assert.assertEquals(1, metricRegistry.meter("singleFlight.test.coalesced").getCount());
+    }
+
+    @Test
+    public void testWindow() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", 60000, new MetricRegistry());
+        Assert.assertEquals("first", singleFlight.execute("a", () -> CompletableFuture.completedFuture("first")).join());
+        Assert.assertEquals("first", singleFlight.execute("a", () -> CompletableFuture.completedFuture("second")).join());
+        Assert.assertEquals("other", singleFlight.execute("b", () -> CompletableFuture.completedFuture("other")).join());
+
+        //Failures are never shared with later callers
+        singleFlight.execute("c", () -> {
+            throw new RuntimeException("failed");
+        });
+        Assert.assertEquals("ok", singleFlight.execute("c", () -> CompletableFuture.completedFuture("ok")).join());
+    }
+
+    @Test
+    public void testCancel() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", 60000, new MetricRegistry());
+        final CompletableFuture<String> work = new CompletableFuture<>();
+        CompletableFuture<String> leader = singleFlight.execute("a", () -> work);
+        CompletableFuture<String> follower = singleFlight.execute("a", () -> new CompletableFuture<>());
+
+        //The work carries on while anyone is still waiting on it
+        leader.cancel(false);
+        Assert.assertFalse(work.isCancelled());
+        Assert.assertFalse(follower.isDone());
+
+        //and is cancelled once the last one gives up, never to be shared
+        follower.cancel(false);
+        Assert.assertTrue(work.isCancelled());
+        Assert.assertEquals(0, singleFlight.size());
+        Assert.assertEquals("fresh", singleFlight.execute("a", () -> CompletableFuture.completedFuture("fresh")).join());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", 20, new MetricRegistry());
+        singleFlight.execute("a", () -> CompletableFuture.completedFuture("a"));
+        singleFlight.execute("b", () -> CompletableFuture.completedFuture("b"));
+        Assert.assertEquals(2, singleFlight.size());
+
+        Thread.sleep(50);
+        singleFlight.execute("c", () -> CompletableFuture.completedFuture("c"));
+        Assert.assertEquals(1, singleFlight.size());
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.northernwall.hadrian.stubs;
+
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.workItem.Result;
+import com.northernwall.hadrian.workItem.WorkItemProcessor;
+import com.northernwall.hadrian.workItem.WorkItemSender;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts every work item after failing the first few sends, and records the
+ * ids it accepted so a test can wait for them instead of sleeping.
+ */
+public class StubWorkItemSender extends WorkItemSender {
+
+    private static final long WAIT = TimeUnit.SECONDS.toMillis(5);
+
+    private final int failures;
+    private final List<String> sent;
+    private int attempts;
+    private boolean dispatchSeen;
+
+    public StubWorkItemSender() {
+        this(0);
+    }
+
+    public StubWorkItemSender(int failures) {
+        super(new StubParameters());
+        this.failures = failures;
+        this.sent = new ArrayList<>();
+        this.attempts = 0;
+        this.dispatchSeen = false;
+    }
+
+    @Override
+    public void setWorkItemProcessor(WorkItemProcessor workItemProcessor) {
+    }
+
+    @Override
+    public synchronized Result sendWorkItem(WorkItem workItem) throws IOException {
+        attempts++;
+        dispatchSeen = dispatchSeen || workItem.getDispatch() != null;
+        notifyAll();
+        if (attempts <= failures) {
+            throw new IOException("Connection refused");
+        }
+        sent.add(workItem.getId());
+        return Result.wip;
+    }
+
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Ids of the accepted work items, in the order they were sent, a work
+     * item sent twice is listed twice.
+     */
+    public synchronized List<String> getSent() {
+        return new ArrayList<>(sent);
+    }
+
+    /**
+     * True if any work item reached the sender still carrying its
+     * DispatchData.
+     */
+    public synchronized boolean isDispatchSeen() {
+        return dispatchSeen;
+    }
+
+    /**
+     * Waits until there have been at least count send attempts.
+     *
+     * @return false if they did not happen in time
+     */
+    public synchronized boolean awaitAttempts(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT;
+        while (attempts < count) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until at least count work items have been accepted.
+     *
+     * @return false if they were not accepted in time
+     */
+    public synchronized boolean awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT;
+        while (sent.size() < count) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.northernwall.hadrian.stubs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.northernwall.hadrian.db.DataAccess;
+import com.northernwall.hadrian.domain.Host;
+import com.northernwall.hadrian.domain.Operation;
+import com.northernwall.hadrian.domain.Service;
+import com.northernwall.hadrian.domain.Team;
+import com.northernwall.hadrian.domain.Type;
+import com.northernwall.hadrian.domain.User;
+import com.northernwall.hadrian.domain.WorkItem;
+import com.northernwall.hadrian.feed.ChangeFeed;
+import com.northernwall.hadrian.parameters.Parameters;
+import com.northernwall.hadrian.workItem.DeploymentPlanner;
+import com.northernwall.hadrian.workItem.Result;
+import com.northernwall.hadrian.workItem.WorkItemProcessor;
+import com.northernwall.hadrian.workItem.WorkItemProcessorImpl;
+import com.northernwall.hadrian.workItem.WorkItemSender;
+import com.northernwall.hadrian.workItem.dao.CallbackData;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the hosts, work items and processor the work item tests share.
+ */
+public class WorkItemFixture {
+
+    public static WorkItemProcessorImpl createProcessor(DataAccess dataAccess, WorkItemSender sender) {
+        return createProcessor(dataAccess, sender, new StubParameters(), new MetricRegistry());
+    }
+
+    public static WorkItemProcessorImpl createProcessor(DataAccess dataAccess, WorkItemSender sender, Parameters parameters, MetricRegistry metricRegistry) {
+        return new WorkItemProcessorImpl(dataAccess, sender, new ChangeFeed(parameters, metricRegistry), parameters, metricRegistry);
+    }
+
+    /**
+     * Saves one host per data center and returns a work item for each, the
+     * work items themselves are not saved.
+     */
+    public static List<WorkItem> createWorkItems(DataAccess dataAccess, Operation operation, String... dataCenters) {
+        Team team = new Team("team", null, null, null, null, null, null, "blue");
+        Service service = new Service("service", team.getTeamId(), null, null, null, null, true);
+        User user = new User("user", "User", false, false, false);
+        List<WorkItem> workItems = new ArrayList<>(dataCenters.length);
+        for (int i = 0; i < dataCenters.length; i++) {
+            Host host = new Host("host" + i, service.getServiceId(), "Queued", "m1", dataCenters[i], "prd", "env");
+            dataAccess.saveHost(host);
+            workItems.add(new WorkItem(Type.host, operation, user, team, service, null, host, null));
+        }
+        return workItems;
+    }
+
+    /**
+     * Plans the work items in waves of batchSize, saves them and sends the
+     * first wave.
+     */
+    public static List<List<WorkItem>> startWaves(DataAccess dataAccess, WorkItemProcessor workItemProcessor, List<WorkItem> workItems, int batchSize) throws IOException {
+        List<List<WorkItem>> waves = new DeploymentPlanner(new StubParameters()).plan(workItems, batchSize, 0, false);
+        dataAccess.saveWorkItems(workItems);
+        for (WorkItem workItem : waves.get(0)) {
+            workItemProcessor.sendWorkItem(workItem);
+        }
+        return waves;
+    }
+
+    public static CallbackData createCallback(String requestId, Result result) {
+        CallbackData callbackData = new CallbackData();
+        callbackData.requestId = requestId;
+        callbackData.status = result;
+        callbackData.output = " ";
+        return callbackData;
+    }
+
+    public static Host getHost(DataAccess dataAccess, WorkItem workItem) {
+        return dataAccess.getHost(workItem.getService().serviceId, workItem.getHost().hostId);
+    }
+
+    private WorkItemFixture() {
+    }
+
+}